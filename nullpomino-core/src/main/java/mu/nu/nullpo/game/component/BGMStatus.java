@@ -30,6 +30,8 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 
+import mu.nu.nullpo.util.StateBuffer;
+
 /**
  * Class that manages the state of music playback
  */
@@ -102,6 +104,26 @@ public class BGMStatus implements Serializable {
 		fadesw = b.fadesw;
 	}
 
+	/**
+	 * Writes the settings to a snapshot (The version is written by the owner)
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeInt(bgm);
+		buf.writeFloat(volume);
+		buf.writeBoolean(fadesw);
+	}
+
+	/**
+	 * Reads the settings written by writeState
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(StateBuffer buf) {
+		bgm = buf.readInt();
+		volume = buf.readFloat();
+		fadesw = buf.readBoolean();
+	}
+
 	/**
 	 * BGM fadeUpdate of state and volume
 	 */
@@ -30,6 +30,8 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 
+import mu.nu.nullpo.util.StateBuffer;
+
 /**
  * BackgroundImage state
  */
@@ -90,6 +92,30 @@ public class BackgroundStatus implements Serializable {
 		fadebg = b.fadebg;
 	}
 
+	/**
+	 * Writes the settings to a snapshot (The version is written by the owner)
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeInt(bg);
+		buf.writeBoolean(fadesw);
+		buf.writeBoolean(fadestat);
+		buf.writeInt(fadecount);
+		buf.writeInt(fadebg);
+	}
+
+	/**
+	 * Reads the settings written by writeState
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(StateBuffer buf) {
+		bg = buf.readInt();
+		fadesw = buf.readBoolean();
+		fadestat = buf.readBoolean();
+		fadecount = buf.readInt();
+		fadebg = buf.readInt();
+	}
+
 	/**
 	 * Update background fade state
 	 */
@@ -31,6 +31,7 @@ package mu.nu.nullpo.game.component;
 import java.io.Serializable;
 
 import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.util.StateBuffer;
 
 /**
  * Block
@@ -265,6 +266,66 @@ public class Block implements Serializable {
 		bonusValue = b.bonusValue;
 	}
 
+	/**
+	 * Writes the settings to a snapshot (The version is written by the owner, Field or Piece)
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeInt(color);
+		buf.writeInt(skin);
+		buf.writeInt(attribute);
+		buf.writeInt(elapsedFrames);
+		buf.writeFloat(darkness);
+		buf.writeFloat(alpha);
+		buf.writeInt(pieceNum);
+		buf.writeInt(item);
+		buf.writeInt(hard);
+		buf.writeInt(countdown);
+		buf.writeInt(secondaryColor);
+		buf.writeInt(bonusValue);
+	}
+
+	/**
+	 * Reads the settings written by writeState
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(StateBuffer buf) {
+		color = buf.readInt();
+		skin = buf.readInt();
+		attribute = buf.readInt();
+		elapsedFrames = buf.readInt();
+		darkness = buf.readFloat();
+		alpha = buf.readFloat();
+		pieceNum = buf.readInt();
+		item = buf.readInt();
+		hard = buf.readInt();
+		countdown = buf.readInt();
+		secondaryColor = buf.readInt();
+		bonusValue = buf.readInt();
+	}
+
+	/**
+	 * Checks if every setting is the same as another Block
+	 * @param b Block to compare
+	 * @return <code>true</code> if b has the same settings
+	 */
+	public boolean isSameState(Block b) {
+		return (color == b.color) && (skin == b.skin) && (attribute == b.attribute) && (elapsedFrames == b.elapsedFrames) &&
+			   (darkness == b.darkness) && (alpha == b.alpha) && (pieceNum == b.pieceNum) && (item == b.item) &&
+			   (hard == b.hard) && (countdown == b.countdown) && (secondaryColor == b.secondaryColor) &&
+			   (bonusValue == b.bonusValue);
+	}
+
+	/**
+	 * Checks if every setting is the same as a newly created Block
+	 * @return <code>true</code> if this Block is still in its default state
+	 */
+	public boolean isDefaultState() {
+		return (color == BLOCK_COLOR_NONE) && (skin == 0) && (attribute == 0) && (elapsedFrames == 0) &&
+			   (darkness == 0f) && (alpha == 1f) && (pieceNum == -1) && (item == 0) && (hard == 0) &&
+			   (countdown == 0) && (secondaryColor == 0) && (bonusValue == 0);
+	}
+
 	/**
 	 * Specified attribute stateExamine the
 	 * @param attr I want to examine the attributes
@@ -30,6 +30,8 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 
+import mu.nu.nullpo.util.StateBuffer;
+
 /**
  *  button inputClass to manage the state
  */
@@ -125,6 +127,24 @@ public class Controller implements Serializable {
 		}
 	}
 
+	/**
+	 * Writes the button states to a snapshot (The version is written by the owner)
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeBooleanArray(buttonPress);
+		buf.writeIntArray(buttonTime);
+	}
+
+	/**
+	 * Reads the button states written by writeState
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(StateBuffer buf) {
+		buttonPress = buf.readBooleanArray(buttonPress);
+		buttonTime = buf.readIntArray(buttonTime);
+	}
+
 	/**
 	 *  buttonThe state is not pressed all the
 	 */
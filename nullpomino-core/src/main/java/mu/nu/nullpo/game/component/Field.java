@@ -30,10 +30,12 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.StateBuffer;
 
 import org.apache.log4j.Logger;
 
@@ -68,6 +70,21 @@ public class Field implements Serializable {
 	/** Attributes of the coordinate (Wall) */
 	public static final int COORD_WALL = 3;
 
+	/** Version of the snapshot written by writeState */
+	public static final int STATE_VERSION = 1;
+
+	/** Maximum field width supported by the occupancy row masks */
+	public static final int OCCUPANCY_MAX_WIDTH = 64;
+
+	/** Empty Block shared by every cell that is still in the default state (shared blocks mode only, never modified) */
+	protected static final Block SHARED_EMPTY_BLOCK = new Block();
+
+	/** X offsets of the flood fill, in the order the neighbors are visited (right, left, down, up) */
+	protected static final int[] FLOOD_DX = {1, -1, 0, 0};
+
+	/** Y offsets of the flood fill */
+	protected static final int[] FLOOD_DY = {0, 0, 1, -1};
+
 	/** fieldThe width of the */
 	protected int width;
 
@@ -99,6 +116,72 @@ public class Field implements Serializable {
 	/** I do not look the part ofLine clear flag */
 	protected boolean[] lineflag_hidden;
 
+	/** Occupancy row masks of the field (bit x is set when column x is not empty, null if disabled) */
+	protected long[] occupancy_field;
+
+	/** Occupancy row masks of the invisible part (null if disabled) */
+	protected long[] occupancy_hidden;
+
+	/** Shared blocks mode (empty cells share one Block, copy reuses the Block objects of this field) */
+	protected boolean sharedBlocks;
+
+	/** Columns whose cached summary is out of date (bit x is set for column x) */
+	protected long summary_dirty = -1L;
+
+	/** Cached top block Y-coordinate of each column (null until the occupancy row masks are used) */
+	protected int[] summary_height;
+
+	/** Cached hole count of each column */
+	protected int[] summary_holes;
+
+	/** Cached count of blocks stacked on the holes of each column */
+	protected int[] summary_lids;
+
+	/** Cached count of empty spaces below the top block of each column */
+	protected int[] summary_covered;
+
+	/** Cached valley depth of each column */
+	protected int[] summary_valley;
+
+	/** Flood fill stack (X-coordinate, Y-coordinate and next direction of each entry, reused between calls) */
+	protected transient int[] flood_x, flood_y, flood_dir;
+
+	/** Flood fill counting pass: cells whose color changed in the current pass have the current stamp */
+	protected transient int[] flood_color_stamp;
+
+	/** Flood fill counting pass: color of the cells changed in the current pass */
+	protected transient int[] flood_color;
+
+	/** Flood fill counting pass: cells whose hardness changed in the current pass have the current stamp */
+	protected transient int[] flood_hard_stamp;
+
+	/** Flood fill counting pass: hardness of the cells changed in the current pass */
+	protected transient int[] flood_hard;
+
+	/** Stamp of the current flood fill counting pass */
+	protected transient int flood_stamp;
+
+	/** Coordinates of the blocks found by markBlockLink */
+	protected transient int[] link_x, link_y;
+
+	/** Sort keys of the coordinates found by markBlockLink */
+	protected transient int[] link_key;
+
+	/** Cascade gravity: number of the step in which the group of each cell was last checked (one value per cell) */
+	protected transient int[] cascade_step;
+
+	/** Cascade gravity: number of blocks moved in the step when the group of each cell did not fall (-1 if it fell) */
+	protected transient int[] cascade_moves;
+
+	/** Number of the current cascade gravity step */
+	protected transient int cascade_stepCount;
+
+	/** Destination coordinates of the blocks moved by the last cascade gravity step */
+	protected transient int[] cascadeMovedX, cascadeMovedY;
+
+	/** Number of blocks moved by the last cascade gravity step */
+	protected transient int cascadeMovedCount;
+
 	/** HURRY UPOf groundcount */
 	protected int hurryupFloorLines;
 
@@ -172,12 +255,20 @@ public class Field implements Serializable {
 	 * Called at initialization
 	 */
 	public void reset() {
-		block_field = new Block[height][width];
-		block_hidden = new Block[hidden_height][width];
+		if(!sharedBlocks || !isSameSize(this)) {
+			block_field = new Block[height][width];
+			block_hidden = new Block[hidden_height][width];
+		}
 		lineflag_field = new boolean[height];
 		lineflag_hidden = new boolean[hidden_height];
 		hurryupFloorLines = 0;
 
+		if(occupancy_field != null) {
+			occupancy_field = new long[height];
+			occupancy_hidden = new long[hidden_height];
+		}
+		summary_dirty = -1L;
+
 		colorClearExtraCount = 0;
 		colorsCleared = 0;
 		gemsCleared = 0;
@@ -187,26 +278,31 @@ public class Field implements Serializable {
 
 		for(int i = 0; i < width; i++) {
 			for(int j = 0; j < height; j++) {
-				block_field[j][i] = new Block();
+				block_field[j][i] = sharedBlocks ? SHARED_EMPTY_BLOCK : new Block();
 			}
 			for(int j = 0; j < hidden_height; j++) {
-				block_hidden[j][i] = new Block();
+				block_hidden[j][i] = sharedBlocks ? SHARED_EMPTY_BLOCK : new Block();
 			}
 		}
 	}
 
 	/**
 	 * AnotherFieldCopied from the
+	 * (The shared blocks mode of this field is kept, it is never taken from the copy source)
 	 * @param f Copy source
 	 */
 	public void copy(Field f) {
+		boolean reuse = sharedBlocks && isSameSize(f);
+
 		width = f.width;
 		height = f.height;
 		hidden_height = f.hidden_height;
 		ceiling = f.ceiling;
 
-		block_field = new Block[height][width];
-		block_hidden = new Block[hidden_height][width];
+		if(!reuse) {
+			block_field = new Block[height][width];
+			block_hidden = new Block[hidden_height][width];
+		}
 		lineflag_field = new boolean[height];
 		lineflag_hidden = new boolean[hidden_height];
 		hurryupFloorLines = f.hurryupFloorLines;
@@ -218,16 +314,434 @@ public class Field implements Serializable {
 		lastLinesCleared = f.lastLinesCleared;
 		garbageCleared = f.garbageCleared;
 
-		for(int i = 0; i < width; i++) {
+		if(sharedBlocks) {
 			for(int j = 0; j < height; j++) {
-				block_field[j][i] = new Block(f.getBlock(i, j));
+				copyRowShared(f.block_field[j], block_field[j]);
 			}
 			for(int j = 0; j < hidden_height; j++) {
-				block_hidden[j][i] = new Block(f.getBlock(i, -j-1));
+				copyRowShared(f.block_hidden[j], block_hidden[j]);
+			}
+		} else {
+			for(int i = 0; i < width; i++) {
+				for(int j = 0; j < height; j++) {
+					block_field[j][i] = new Block(f.peekBlock(i, j));
+				}
+				for(int j = 0; j < hidden_height; j++) {
+					block_hidden[j][i] = new Block(f.peekBlock(i, -j-1));
+				}
+			}
+		}
+
+		if(f.occupancy_field != null) {
+			if(reuse && (occupancy_field != null)) {
+				System.arraycopy(f.occupancy_field, 0, occupancy_field, 0, height);
+				System.arraycopy(f.occupancy_hidden, 0, occupancy_hidden, 0, hidden_height);
+			} else {
+				occupancy_field = f.occupancy_field.clone();
+				occupancy_hidden = f.occupancy_hidden.clone();
+			}
+		} else if(occupancy_field != null) {
+			if(!reuse) {
+				occupancy_field = new long[height];
+				occupancy_hidden = new long[hidden_height];
+			}
+			rebuildOccupancy();
+		}
+
+		if((f.occupancy_field != null) && (f.summary_height != null) && (f.summary_height.length == width)) {
+			if((summary_height == null) || (summary_height.length != width)) {
+				summary_height = new int[width];
+				summary_holes = new int[width];
+				summary_lids = new int[width];
+				summary_covered = new int[width];
+				summary_valley = new int[width];
+			}
+			System.arraycopy(f.summary_height, 0, summary_height, 0, width);
+			System.arraycopy(f.summary_holes, 0, summary_holes, 0, width);
+			System.arraycopy(f.summary_lids, 0, summary_lids, 0, width);
+			System.arraycopy(f.summary_covered, 0, summary_covered, 0, width);
+			System.arraycopy(f.summary_valley, 0, summary_valley, 0, width);
+			// Line clear flags are not copied, so the summary is only valid if the source has none
+			summary_dirty = f.hasLineFlag() ? -1L : f.summary_dirty;
+		} else {
+			summary_dirty = -1L;
+		}
+	}
+
+	/**
+	 * Copies a row in shared blocks mode.
+	 * Default state cells become the shared empty Block, other cells reuse the Block already in the destination.
+	 * @param src Source row
+	 * @param dst Destination row
+	 */
+	protected void copyRowShared(Block[] src, Block[] dst) {
+		for(int i = 0; i < width; i++) {
+			Block b = src[i];
+
+			if((b == SHARED_EMPTY_BLOCK) || b.isDefaultState()) {
+				dst[i] = SHARED_EMPTY_BLOCK;
+			} else if((dst[i] == null) || (dst[i] == SHARED_EMPTY_BLOCK)) {
+				dst[i] = new Block(b);
+			} else {
+				dst[i].copy(b);
+			}
+		}
+	}
+
+	/**
+	 * Writes the field to a snapshot.
+	 * Cells in the default state take only one byte.
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeVersion(STATE_VERSION);
+		buf.writeInt(width);
+		buf.writeInt(height);
+		buf.writeInt(hidden_height);
+		buf.writeBoolean(ceiling);
+		buf.writeInt(hurryupFloorLines);
+		buf.writeInt(colorClearExtraCount);
+		buf.writeInt(colorsCleared);
+		buf.writeInt(gemsCleared);
+		buf.writeInt(garbageCleared);
+
+		for(int i = 0; i < hidden_height; i++) {
+			buf.writeBoolean(lineflag_hidden[i]);
+			for(int j = 0; j < width; j++) writeStateBlock(buf, block_hidden[i][j]);
+		}
+		for(int i = 0; i < height; i++) {
+			buf.writeBoolean(lineflag_field[i]);
+			for(int j = 0; j < width; j++) writeStateBlock(buf, block_field[i][j]);
+		}
+
+		if(lineColorsCleared == null) {
+			buf.writeInt(-1);
+		} else {
+			buf.writeInt(lineColorsCleared.size());
+			for(Integer c : lineColorsCleared) buf.writeInt(c);
+		}
+
+		if(lastLinesCleared == null) {
+			buf.writeInt(-1);
+		} else {
+			buf.writeInt(lastLinesCleared.size());
+			for(Block[] row : lastLinesCleared) {
+				buf.writeInt(row.length);
+				for(int j = 0; j < row.length; j++) writeStateBlock(buf, row[j]);
 			}
 		}
 	}
 
+	/**
+	 * Restores the field written by writeState.
+	 * Block objects and arrays of this field are reused when the size is the same.
+	 * @param buf Snapshot buffer
+	 * @throws IllegalStateException If the snapshot is broken or newer than this version
+	 */
+	public void readState(StateBuffer buf) {
+		buf.readVersion(STATE_VERSION);
+		width = buf.readInt();
+		height = buf.readInt();
+		hidden_height = buf.readInt();
+		ceiling = buf.readBoolean();
+		hurryupFloorLines = buf.readInt();
+		colorClearExtraCount = buf.readInt();
+		colorsCleared = buf.readInt();
+		gemsCleared = buf.readInt();
+		garbageCleared = buf.readInt();
+
+		if(!isSameSize(this)) {
+			block_field = new Block[height][width];
+			block_hidden = new Block[hidden_height][width];
+		}
+		if((lineflag_field == null) || (lineflag_field.length != height)) lineflag_field = new boolean[height];
+		if((lineflag_hidden == null) || (lineflag_hidden.length != hidden_height)) lineflag_hidden = new boolean[hidden_height];
+
+		for(int i = 0; i < hidden_height; i++) {
+			lineflag_hidden[i] = buf.readBoolean();
+			for(int j = 0; j < width; j++) block_hidden[i][j] = readStateBlock(buf, block_hidden[i][j]);
+		}
+		for(int i = 0; i < height; i++) {
+			lineflag_field[i] = buf.readBoolean();
+			for(int j = 0; j < width; j++) block_field[i][j] = readStateBlock(buf, block_field[i][j]);
+		}
+
+		int count = buf.readInt();
+		if(count < 0) {
+			lineColorsCleared = null;
+		} else {
+			lineColorsCleared = new ArrayList<Integer>(count);
+			for(int i = 0; i < count; i++) lineColorsCleared.add(buf.readInt());
+		}
+
+		count = buf.readInt();
+		if(count < 0) {
+			lastLinesCleared = null;
+		} else {
+			lastLinesCleared = new ArrayList<Block[]>(count);
+			for(int i = 0; i < count; i++) {
+				Block[] row = new Block[buf.readInt()];
+				for(int j = 0; j < row.length; j++) {
+					// These rows can be put back into a field (garbage), so every cell gets its own Block
+					row[j] = new Block();
+					if(buf.readBoolean()) row[j].readState(buf);
+				}
+				lastLinesCleared.add(row);
+			}
+		}
+
+		if(occupancy_field != null) {
+			if(width > OCCUPANCY_MAX_WIDTH) {
+				setOccupancyEnabled(false);
+			} else {
+				if(occupancy_field.length != height) occupancy_field = new long[height];
+				if(occupancy_hidden.length != hidden_height) occupancy_hidden = new long[hidden_height];
+				rebuildOccupancy();
+			}
+		}
+		summary_dirty = -1L;
+	}
+
+	/**
+	 * Writes one cell to a snapshot
+	 * @param buf Snapshot buffer
+	 * @param b Block (Can be null)
+	 */
+	protected static void writeStateBlock(StateBuffer buf, Block b) {
+		if((b == null) || b.isDefaultState()) {
+			buf.writeBoolean(false);
+		} else {
+			buf.writeBoolean(true);
+			b.writeState(buf);
+		}
+	}
+
+	/**
+	 * Reads one cell written by writeStateBlock
+	 * @param buf Snapshot buffer
+	 * @param b Block currently in the cell, reused if possible (Can be null)
+	 * @return Block to put in the cell
+	 */
+	protected Block readStateBlock(StateBuffer buf, Block b) {
+		if(!buf.readBoolean()) {
+			if(sharedBlocks) return SHARED_EMPTY_BLOCK;
+			if((b == null) || (b == SHARED_EMPTY_BLOCK)) return new Block();
+			b.reset();
+			return b;
+		}
+		if((b == null) || (b == SHARED_EMPTY_BLOCK)) b = new Block();
+		b.readState(buf);
+		return b;
+	}
+
+	/**
+	 * Checks if another field has the same size as the Block arrays of this field
+	 * @param f Field
+	 * @return <code>true</code> if the arrays of this field can hold the blocks of f
+	 */
+	protected boolean isSameSize(Field f) {
+		return (block_field != null) && (block_hidden != null) &&
+			   (block_field.length == f.height) && (block_hidden.length == f.hidden_height) &&
+			   ((f.height == 0) || (block_field[0].length == f.width)) &&
+			   ((f.hidden_height == 0) || (block_hidden[0].length == f.width));
+	}
+
+	/**
+	 * Enables or disables the shared blocks mode.
+	 * In this mode, cells in the default state share one empty Block and copy reuses the Block objects
+	 * of this field instead of allocating new ones, which suits scratch fields copied over and over (AI).
+	 * A private Block is created as soon as a shared cell is obtained by getBlock or written.
+	 * Note that a Block obtained by getBlock is overwritten in place by the next copy.
+	 * @param enable <code>true</code> to enable
+	 */
+	public void setSharedBlocksEnabled(boolean enable) {
+		sharedBlocks = enable;
+	}
+
+	/**
+	 * Checks if the shared blocks mode is enabled
+	 * @return <code>true</code> if enabled
+	 */
+	public boolean isSharedBlocksEnabled() {
+		return sharedBlocks;
+	}
+
+	/**
+	 * Gets the Block at the specified coordinates without creating a private copy of a shared cell.
+	 * The result must not be modified.
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return Block at the coordinates, null if out of range
+	 */
+	protected Block peekBlock(int x, int y) {
+		if((x < 0) || (x >= width)) return null;
+		if(y >= 0) {
+			return (y < height) ? block_field[y][x] : null;
+		}
+		int y2 = (y * -1) - 1;
+		return (y2 < hidden_height) ? block_hidden[y2][x] : null;
+	}
+
+	/**
+	 * Enables or disables the occupancy row masks.
+	 * While enabled, every block write done through this class keeps one bit mask per line in sync,
+	 * and line, height and hole queries read those masks instead of the Block objects.
+	 * Fields wider than {@link #OCCUPANCY_MAX_WIDTH} can't use the masks and stay disabled.
+	 * @param enable <code>true</code> to enable
+	 */
+	public void setOccupancyEnabled(boolean enable) {
+		if(enable && (width <= OCCUPANCY_MAX_WIDTH)) {
+			if(occupancy_field == null) {
+				occupancy_field = new long[height];
+				occupancy_hidden = new long[hidden_height];
+				rebuildOccupancy();
+			}
+		} else {
+			summary_height = null;
+			occupancy_field = null;
+			occupancy_hidden = null;
+		}
+	}
+
+	/**
+	 * Checks if the occupancy row masks are enabled
+	 * @return <code>true</code> if enabled
+	 */
+	public boolean isOccupancyEnabled() {
+		return (occupancy_field != null);
+	}
+
+	/**
+	 * Recalculates the occupancy row masks from the Block objects.
+	 * Needed only after changing the color of a Block obtained by getBlock directly.
+	 */
+	public void rebuildOccupancy() {
+		if(occupancy_field == null) return;
+
+		for(int i = 0; i < height; i++) {
+			occupancy_field[i] = calcOccupancy(block_field[i]);
+		}
+		for(int i = 0; i < hidden_height; i++) {
+			occupancy_hidden[i] = calcOccupancy(block_hidden[i]);
+		}
+		summary_dirty = -1L;
+	}
+
+	/**
+	 * Calculates the occupancy mask of a row
+	 * @param row Row of blocks
+	 * @return Occupancy mask
+	 */
+	protected long calcOccupancy(Block[] row) {
+		long mask = 0;
+		for(int j = 0; j < row.length; j++) {
+			if((row[j] != null) && !row[j].isEmpty()) mask |= (1L << j);
+		}
+		return mask;
+	}
+
+	/**
+	 * Updates one bit of the occupancy row masks
+	 * @param x X-coordinate (must be valid)
+	 * @param y Y-coordinate (must be valid)
+	 * @param blk Block now at the coordinate
+	 */
+	protected void updateOccupancy(int x, int y, Block blk) {
+		long[] rows = (y >= 0) ? occupancy_field : occupancy_hidden;
+		int r = (y >= 0) ? y : (y * -1) - 1;
+		long old = rows[r];
+
+		if(blk.isEmpty()) rows[r] &= ~(1L << x);
+		else rows[r] |= (1L << x);
+
+		if(rows[r] != old) summary_dirty |= (1L << x);
+	}
+
+	/**
+	 * Recalculates the cached summary of the columns changed since the last call.
+	 * Only the changed columns are scanned, the valley depth is also redone for their neighbors.
+	 * (Requires the occupancy row masks to be enabled)
+	 */
+	protected void updateColumnSummary() {
+		if((summary_height == null) || (summary_height.length != width)) {
+			summary_height = new int[width];
+			summary_holes = new int[width];
+			summary_lids = new int[width];
+			summary_covered = new int[width];
+			summary_valley = new int[width];
+			summary_dirty = -1L;
+		}
+		if(summary_dirty == 0) return;
+
+		long dirty = summary_dirty;
+		long valleyDirty = dirty | (dirty << 1) | (dirty >>> 1);
+
+		for(int j = 0; j < width; j++) {
+			if(((dirty >>> j) & 1L) != 0) {
+				int top = calcHighestBlockY(j);
+				summary_height[j] = top;
+				summary_holes[j] = calcHowManyHoles(j, top);
+				summary_lids[j] = calcHowManyLidAboveHoles(j, top);
+				summary_covered[j] = calcHowManyBlocksCovered(j, top);
+			}
+		}
+		for(int j = 0; j < width; j++) {
+			if(((valleyDirty >>> j) & 1L) != 0) {
+				int highest = summary_height[j];
+				if(j > 0) highest = Math.min(highest, summary_height[j - 1]);
+				if(j < width - 1) highest = Math.min(highest, summary_height[j + 1]);
+				summary_valley[j] = calcValleyDepth(j, highest);
+			}
+		}
+
+		summary_dirty = 0;
+	}
+
+	/**
+	 * Gets the occupancy mask of a line (Requires the occupancy row masks to be enabled)
+	 * @param y Y-coordinate
+	 * @return Occupancy mask (bit x is set when column x is not empty, 0 if the coordinate is out of range)
+	 */
+	public long getOccupancyRow(int y) {
+		if(y >= 0) {
+			return (y < height) ? occupancy_field[y] : 0;
+		}
+		int y2 = (y * -1) - 1;
+		return (y2 < hidden_height) ? occupancy_hidden[y2] : 0;
+	}
+
+	/**
+	 * Gets the occupancy mask of a completely filled line
+	 * @return Occupancy mask of a full line
+	 */
+	public long getOccupancyFullRow() {
+		return (width >= 64) ? -1L : ((1L << width) - 1);
+	}
+
+	/**
+	 * Determine whether the space is, using the occupancy row masks when enabled
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return <code>true</code> if the space is empty (also <code>true</code> if out of range)
+	 */
+	protected boolean isEmptyCell(int x, int y) {
+		if(occupancy_field == null) return getBlockEmpty(x, y);
+		if((x < 0) || (x >= width)) return true;
+		return ((getOccupancyRow(y) >>> x) & 1L) == 0;
+	}
+
+	/**
+	 * Determine whether the space is, using the occupancy row masks when enabled
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return <code>true</code> if the space is empty (<code>false</code> if out of range)
+	 */
+	protected boolean isEmptyCellF(int x, int y) {
+		if(occupancy_field == null) return getBlockEmptyF(x, y);
+		if((x < 0) || (x >= width) || (y >= height) || (y < hidden_height * -1)) return false;
+		return ((getOccupancyRow(y) >>> x) & 1L) == 0;
+	}
+
 	/**
 	 * Stored in the property set
 	 * @param p Property Set
@@ -338,20 +852,14 @@ public class Field implements Serializable {
 	 * @throws ArrayIndexOutOfBoundsException
 	 */
 	public Block[] getRowE(int y) throws ArrayIndexOutOfBoundsException {
-		if(y >= 0) {
-			try {
-				return block_field[y];
-			} catch(ArrayIndexOutOfBoundsException e) {
-				throw e;
-			}
-		}
-		// fieldOutside
-		try {
-			int y2 = (y * -1) - 1;
-			return block_hidden[y2];
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw e;
+		Block[] row = (y >= 0) ? block_field[y] : block_hidden[(y * -1) - 1];
+
+		// The caller may modify any Block of the row
+		for(int i = 0; i < row.length; i++) {
+			if(row[i] == SHARED_EMPTY_BLOCK) row[i] = new Block();
 		}
+
+		return row;
 	}
 
 	/**
@@ -376,11 +884,16 @@ public class Field implements Serializable {
 	 * @throws ArrayIndexOutOfBoundsException The specified coordinates out of range
 	 */
 	public Block getBlockE(int x, int y) throws ArrayIndexOutOfBoundsException {
-		try {
-			return getRowE(y)[x];
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw e;
+		Block[] row = (y >= 0) ? block_field[y] : block_hidden[(y * -1) - 1];
+		Block b = row[x];
+
+		// The caller may modify the Block, so a shared cell gets its own
+		if(b == SHARED_EMPTY_BLOCK) {
+			b = new Block();
+			row[x] = b;
 		}
+
+		return b;
 	}
 
 	/**
@@ -411,7 +924,11 @@ public class Field implements Serializable {
 	 */
 	public void setBlockE(int x, int y, Block blk) throws ArrayIndexOutOfBoundsException {
 		try {
-			getBlock(x,y).copy(blk);
+			if((peekBlock(x, y) == SHARED_EMPTY_BLOCK) && blk.isDefaultState()) return;
+
+			Block b = getBlock(x,y);
+			b.copy(blk);
+			if(occupancy_field != null) updateOccupancy(x, y, b);
 		} catch(ArrayIndexOutOfBoundsException e) {
 			throw e;
 		}
@@ -424,11 +941,8 @@ public class Field implements Serializable {
 	 * @return Is located at the specified coordinatesBlock color (FailedBLOCK_COLOR_INVALID)
 	 */
 	public int getBlockColor(int x, int y) {
-		try {
-			return getBlockColorE(x, y);
-		} catch(ArrayIndexOutOfBoundsException e) {
-			return Block.BLOCK_COLOR_INVALID;
-		}
+		Block b = peekBlock(x, y);
+		return (b != null) ? b.color : Block.BLOCK_COLOR_INVALID;
 	}
 
 	/**
@@ -450,11 +964,9 @@ public class Field implements Serializable {
 	 * @throws ArrayIndexOutOfBoundsException The specified coordinates out of range
 	 */
 	public int getBlockColorE(int x, int y) throws ArrayIndexOutOfBoundsException {
-		try {
-			return getBlockE(x,y).color;
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw e;
-		}
+		Block b = peekBlock(x, y);
+		if(b == null) throw new ArrayIndexOutOfBoundsException();
+		return b.color;
 	}
 
 	/**
@@ -483,7 +995,11 @@ public class Field implements Serializable {
 	 */
 	public void setBlockColorE(int x, int y, int c) throws ArrayIndexOutOfBoundsException {
 		try {
-			getBlockE(x,y).color = c;
+			if((c == Block.BLOCK_COLOR_NONE) && (peekBlock(x, y) == SHARED_EMPTY_BLOCK)) return;
+
+			Block b = getBlockE(x,y);
+			b.color = c;
+			if(occupancy_field != null) updateOccupancy(x, y, b);
 		} catch(ArrayIndexOutOfBoundsException e) {
 			throw e;
 		}
@@ -521,11 +1037,8 @@ public class Field implements Serializable {
 	 * @return Is located at the specified coordinatesBlockIf space istrue (In the case of a specified coordinate is out of rangetrue)
 	 */
 	public boolean getBlockEmpty(int x, int y) {
-		try {
-			return getBlockEmptyE(x,y);
-		} catch(ArrayIndexOutOfBoundsException e) {
-			return true;
-		}
+		Block b = peekBlock(x, y);
+		return (b == null) || b.isEmpty();
 	}
 
 	/**
@@ -535,11 +1048,8 @@ public class Field implements Serializable {
 	 * @return Is located at the specified coordinatesBlockIf space istrue (If the coordinates are outside the specified rangefalse)
 	 */
 	public boolean getBlockEmptyF(int x, int y) {
-		try {
-			return getBlockEmptyE(x,y);
-		} catch(ArrayIndexOutOfBoundsException e) {
-			return false;
-		}
+		Block b = peekBlock(x, y);
+		return (b != null) && b.isEmpty();
 	}
 
 	/**
@@ -550,11 +1060,9 @@ public class Field implements Serializable {
 	 * @throws ArrayIndexOutOfBoundsException The specified coordinates out of range
 	 */
 	public boolean getBlockEmptyE(int x, int y) throws ArrayIndexOutOfBoundsException {
-		try {
-			return getBlockE(x,y).isEmpty();
-		} catch(ArrayIndexOutOfBoundsException e) {
-			throw e;
-		}
+		Block b = peekBlock(x, y);
+		if(b == null) throw new ArrayIndexOutOfBoundsException();
+		return b.isEmpty();
 	}
 
 	/**
@@ -592,6 +1100,7 @@ public class Field implements Serializable {
 		// fieldIn
 		if(y >= 0) {
 			try {
+				if(lineflag_field[y] != flag) summary_dirty = -1L;
 				lineflag_field[y] = flag;
 			} catch(ArrayIndexOutOfBoundsException e) {
 				return false;
@@ -602,6 +1111,7 @@ public class Field implements Serializable {
 			int y2 = (y * -1) - 1;
 
 			try {
+				if(lineflag_hidden[y2] != flag) summary_dirty = -1L;
 				lineflag_hidden[y2] = flag;
 			} catch(ArrayIndexOutOfBoundsException e) {
 				return false;
@@ -621,6 +1131,7 @@ public class Field implements Serializable {
 		// fieldIn
 		if(y >= 0) {
 			try {
+				if(lineflag_field[y] != flag) summary_dirty = -1L;
 				lineflag_field[y] = flag;
 			} catch(ArrayIndexOutOfBoundsException e) {
 				throw e;
@@ -630,6 +1141,7 @@ public class Field implements Serializable {
 		else {
 			try {
 				int y2 = (y * -1) - 1;
+				if(lineflag_hidden[y2] != flag) summary_dirty = -1L;
 				lineflag_hidden[y2] = flag;
 			} catch(ArrayIndexOutOfBoundsException e) {
 				throw e;
@@ -637,6 +1149,20 @@ public class Field implements Serializable {
 		}
 	}
 
+	/**
+	 * Line clear flagCheck if any line has it
+	 * @return true if at least one line has the Line clear flag
+	 */
+	protected boolean hasLineFlag() {
+		for(int i = 0; i < lineflag_field.length; i++) {
+			if(lineflag_field[i]) return true;
+		}
+		for(int i = 0; i < lineflag_hidden.length; i++) {
+			if(lineflag_hidden[i]) return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Line clear check
 	 * @return VanishLinescount
@@ -655,8 +1181,8 @@ public class Field implements Serializable {
 			boolean flag = true;
 
 			for(int j = 0; j < width; j++) {
-				row[j] = new Block(getBlock(j, i));
-				if((getBlockEmpty(j, i) == true) || (getBlock(j, i).getAttribute(Block.BLOCK_ATTRIBUTE_WALL) == true)) {
+				row[j] = new Block(peekBlock(j, i));
+				if(isEmptyCell(j, i) || (row[j].getAttribute(Block.BLOCK_ATTRIBUTE_WALL) == true)) {
 					flag = false;
 					break;
 				}
@@ -685,10 +1211,12 @@ public class Field implements Serializable {
 		int lines = 0;
 
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
+			if((occupancy_field != null) && (getOccupancyRow(i) != getOccupancyFullRow())) continue;
+
 			boolean flag = true;
 
 			for(int j = 0; j < width; j++) {
-				if((getBlockEmpty(j, i) == true) || (getBlock(j, i).getAttribute(Block.BLOCK_ATTRIBUTE_WALL) == true)) {
+				if(isEmptyCell(j, i) || (peekBlock(j, i).getAttribute(Block.BLOCK_ATTRIBUTE_WALL) == true)) {
 					flag = false;
 					break;
 				}
@@ -733,9 +1261,10 @@ public class Field implements Serializable {
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i - 1)) {
 				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i);
+					Block blk = peekBlock(j, i);
 
 					if(blk != null && blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP)) {
+						blk = getBlock(j, i);
 						blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
 						setBlockLinkBroken(j, i);
 					}
@@ -743,9 +1272,10 @@ public class Field implements Serializable {
 			}
 			if(getLineFlag(i + 1)) {
 				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i);
+					Block blk = peekBlock(j, i);
 
 					if(blk != null && blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN)) {
+						blk = getBlock(j, i);
 						blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
 						setBlockLinkBroken(j, i);
 					}
@@ -863,6 +1393,8 @@ public class Field implements Serializable {
 	 * @return <code>true</code> if the specified line is completely empty, <code>false</code> otherwise.
 	 */
 	public boolean isEmptyLine(int y) {
+		if(occupancy_field != null) return (getOccupancyRow(y) == 0);
+
 		for(int x = 0; x < width; x++) {
 			if(getBlockEmpty(x, y) == false) return false;
 		}
@@ -1002,17 +1534,35 @@ public class Field implements Serializable {
 	public int getHowManyBlocksCovered() {
 		int blocksCovered = 0;
 
+		if(occupancy_field != null) {
+			updateColumnSummary();
+			for(int j = 0; j < width; j++) blocksCovered += summary_covered[j];
+			return blocksCovered;
+		}
+
 		for(int j = 0; j < width; j++) {
+			blocksCovered += calcHowManyBlocksCovered(j, getHighestBlockY(j));
+		}
 
-            int highestBlockY=getHighestBlockY(j);
-			for(int i = highestBlockY; i < getHeightWithoutHurryupFloor(); i++) {
-				if(getLineFlag(i) == false) {
+		return blocksCovered;
+	}
 
-					if( getBlockEmpty(j, i)) {
-					blocksCovered++;
-					}
+	/**
+	 * Empty space below the top block of one column count
+	 * @param x X-coordinate
+	 * @param highestBlockY Top block Y-coordinate of the column
+	 * @return Empty space count
+	 */
+	protected int calcHowManyBlocksCovered(int x, int highestBlockY) {
+		int blocksCovered = 0;
+
+		for(int i = highestBlockY; i < getHeightWithoutHurryupFloor(); i++) {
+			if(getLineFlag(i) == false) {
 
+				if( isEmptyCell(x, i)) {
+				blocksCovered++;
 				}
+
 			}
 		}
 
@@ -1103,6 +1653,10 @@ public class Field implements Serializable {
 
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i) == false) {
+				if(occupancy_field != null) {
+					count += Long.bitCount(getOccupancyRow(i));
+					continue;
+				}
 				for(int j = 0; j < width; j++) {
 					if(!getBlockEmpty(j, i)) {
 						count++;
@@ -1163,6 +1717,13 @@ public class Field implements Serializable {
 	 * @return At the topBlockOfY-coordinate
 	 */
 	public int getHighestBlockY() {
+		if(occupancy_field != null) {
+			updateColumnSummary();
+			int highest = height;
+			for(int j = 0; j < width; j++) highest = Math.min(highest, summary_height[j]);
+			return highest;
+		}
+
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i) == false) {
 				for(int j = 0; j < width; j++) {
@@ -1180,9 +1741,22 @@ public class Field implements Serializable {
 	 * @return At the topBlockOfY-coordinate
 	 */
 	public int getHighestBlockY(int x) {
+		if((occupancy_field != null) && (x >= 0) && (x < width)) {
+			updateColumnSummary();
+			return summary_height[x];
+		}
+		return calcHighestBlockY(x);
+	}
+
+	/**
+	 * At the topBlockOfY-coordinateCalculate the (Does not use the cached column summary)
+	 * @param x X-coordinate
+	 * @return At the topBlockOfY-coordinate
+	 */
+	protected int calcHighestBlockY(int x) {
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i) == false) {
-				if(!getBlockEmpty(x, i)) return i;
+				if(!isEmptyCell(x, i)) return i;
 			}
 		}
 
@@ -1213,7 +1787,7 @@ public class Field implements Serializable {
 	 * @return If there is a gap under the specified coordinatestrue
 	 */
 	public boolean isHoleBelow(int x, int y) {
-		if(!getBlockEmpty(x, y) && getBlockEmpty(x, y + 1)) return true;
+		if(!isEmptyCell(x, y) && isEmptyCell(x, y + 1)) return true;
 		return false;
 	}
 
@@ -1223,20 +1797,40 @@ public class Field implements Serializable {
 	 */
 	public int getHowManyHoles() {
 		int hole = 0;
-		boolean samehole = false;
+
+		if(occupancy_field != null) {
+			updateColumnSummary();
+			for(int j = 0; j < width; j++) hole += summary_holes[j];
+			return hole;
+		}
+
+		int highest = getHighestBlockY();
 
 		for(int j = 0; j < width; j++) {
-			samehole = false;
+			hole += calcHowManyHoles(j, highest);
+		}
 
-			for(int i = getHighestBlockY(); i < getHeightWithoutHurryupFloor(); i++) {
-				if(getLineFlag(i) == false) {
-					if(isHoleBelow(j, i)) {
-						samehole = true;
-					} else if(samehole && getBlockEmpty(j, i)) {
-						hole++;
-					} else {
-						samehole = false;
-					}
+		return hole;
+	}
+
+	/**
+	 * The gap in one columncountExamine the
+	 * @param x X-coordinate
+	 * @param highest Y-coordinate to start from (Any line above it must be empty)
+	 * @return The gap in the columncount
+	 */
+	protected int calcHowManyHoles(int x, int highest) {
+		int hole = 0;
+		boolean samehole = false;
+
+		for(int i = highest; i < getHeightWithoutHurryupFloor(); i++) {
+			if(getLineFlag(i) == false) {
+				if(isHoleBelow(x, i)) {
+					samehole = true;
+				} else if(samehole && isEmptyCell(x, i)) {
+					hole++;
+				} else {
+					samehole = false;
 				}
 			}
 		}
@@ -1251,18 +1845,39 @@ public class Field implements Serializable {
 	public int getHowManyLidAboveHoles() {
 		int blocks = 0;
 
+		if(occupancy_field != null) {
+			updateColumnSummary();
+			for(int j = 0; j < width; j++) blocks += summary_lids[j];
+			return blocks;
+		}
+
+		int highest = getHighestBlockY();
+
 		for(int j = 0; j < width; j++) {
-			int count = 0;
+			blocks += calcHowManyLidAboveHoles(j, highest);
+		}
 
-			for(int i = getHighestBlockY(); i < getHeightWithoutHurryupFloor() - 1; i++) {
-				if(getLineFlag(i) == false) {
-					if(isHoleBelow(j, i)) {
-						count++;
-						blocks += count;
-						count = 0;
-					} else if(!getBlockEmpty(j, i)) {
-						count++;
-					}
+		return blocks;
+	}
+
+	/**
+	 * Pieces on top of the gap in one columnBlockI find out that you have stacked
+	 * @param x X-coordinate
+	 * @param highest Y-coordinate to start from (Any line above it must be empty)
+	 * @return Are stackedBlockOfcount
+	 */
+	protected int calcHowManyLidAboveHoles(int x, int highest) {
+		int blocks = 0;
+		int count = 0;
+
+		for(int i = highest; i < getHeightWithoutHurryupFloor() - 1; i++) {
+			if(getLineFlag(i) == false) {
+				if(isHoleBelow(x, i)) {
+					count++;
+					blocks += count;
+					count = 0;
+				} else if(!isEmptyCell(x, i)) {
+					count++;
 				}
 			}
 		}
@@ -1305,15 +1920,30 @@ public class Field implements Serializable {
 	 * @return The depth of the valley (If you do not have0)
 	 */
 	public int getValleyDepth(int x) {
+		if((occupancy_field != null) && (x >= 0) && (x < width)) {
+			updateColumnSummary();
+			return summary_valley[x];
+		}
+
+		int highest = getHighestBlockY(x - 1);
+		highest = Math.min(highest, getHighestBlockY(x));
+		highest = Math.min(highest, getHighestBlockY(x + 1));
+
+		return calcValleyDepth(x, highest);
+	}
+
+	/**
+	 * Valley depth Calculate the
+	 * @param x X-coordinate
+	 * @param highest Highest top block Y-coordinate of the column and its neighbors
+	 * @return Valley depth
+	 */
+	protected int calcValleyDepth(int x, int highest) {
 		int depth = 0;
 
-		int highest = getHighestBlockY(x - 1);
-		highest = Math.min(highest, getHighestBlockY(x));
-		highest = Math.min(highest, getHighestBlockY(x + 1));
-
 		for(int i = highest; i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i) == false) {
-				if( (!getBlockEmptyF(x - 1, i) || (x <= 0)) && getBlockEmptyF(x, i) && (!getBlockEmptyF(x + 1, i) || (x >= width - 1)) )
+				if( (!isEmptyCellF(x - 1, i) || (x <= 0)) && isEmptyCellF(x, i) && (!isEmptyCellF(x + 1, i) || (x >= width - 1)) )
 					depth++;
 			}
 		}
@@ -1560,6 +2190,9 @@ public class Field implements Serializable {
 	public void setAllAttribute(int attr, boolean status) {
 		for(int i = (hidden_height * -1); i < height; i++) {
 			for(int j = 0; j < width; j++) {
+				// Shared cells have no attributes to clear
+				if(!status && (peekBlock(j, i) == SHARED_EMPTY_BLOCK)) continue;
+
 				Block blk = getBlock(j, i);
 
 				if(blk != null) {
@@ -1593,7 +2226,7 @@ public class Field implements Serializable {
 		int gems = 0;
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				Block blk = getBlock(j, i);
+				Block blk = peekBlock(j, i);
 
 				if((blk != null) && (blk.isGemBlock())) {
 					gems++;
@@ -1613,7 +2246,7 @@ public class Field implements Serializable {
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i)) {
 				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i);
+					Block blk = peekBlock(j, i);
 
 					if((blk != null) && (blk.isGemBlock())) {
 						gems++;
@@ -1636,7 +2269,7 @@ public class Field implements Serializable {
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(i)) {
 				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i);
+					Block blk = peekBlock(j, i);
 
 					if((blk != null) && (blk.item > 0) && blk.item <= Block.MAX_ITEM) {
 						result[blk.item] = true;
@@ -1796,7 +2429,7 @@ public class Field implements Serializable {
 			// Check the lines we are clearing.
 			if (getLineFlag(i)) {
 				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i);
+					Block blk = peekBlock(j, i);
 
 					// Silver blocks are worth 1, gold are worth 2, but not if they are garbage (avalanche)
 					if (blk != null && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE)) {
@@ -1957,18 +2590,18 @@ public class Field implements Serializable {
 	 */
 	public int gemClearColor (int size, boolean garbageClear, boolean ignoreHidden)
 	{
-		Field temp = new Field(this);
 		int total = 0;
 		Block b;
 
+		startCountColor();
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				b = getBlock(j, i);
+				b = peekBlock(j, i);
 				if (b == null)
 					continue;
 				if (!b.isGemBlock())
 					continue;
-				int clear = temp.clearColor(j, i, false, garbageClear, true, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, true, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -1991,11 +2624,11 @@ public class Field implements Serializable {
 	 */
 	public int clearColor (int size, boolean garbageClear, boolean gemSame, boolean ignoreHidden)
 	{
-		Field temp = new Field(this);
 		int total = 0;
+		startCountColor();
 		for(int i = ignoreHidden ? 0 : (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				int clear = temp.clearColor(j, i, false, garbageClear, gemSame, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, gemSame, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -2031,25 +2664,113 @@ public class Field implements Serializable {
 		if (b.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE))
 			return 0;
 		else
-			return clearColor(x, y, blockColor, flag, garbageClear, gemSame, ignoreHidden);
+			return floodColor(x, y, blockColor, flag, garbageClear, gemSame, ignoreHidden, false);
+	}
+
+	/**
+	 * Starts a new color clear counting pass.
+	 * The counting pass works like clearColor on a copy of this field (without the ERASE flag),
+	 * but the changes are only recorded in the stamp arrays, so the field itself is never copied.
+	 * Every countColor call until the next startCountColor sees the changes of the previous calls,
+	 * but not the blocks cleared by clearColor in the meantime.
+	 */
+	protected void startCountColor() {
+		int cells = width * (height + hidden_height);
+
+		if((flood_color_stamp == null) || (flood_color_stamp.length != cells)) {
+			flood_color_stamp = new int[cells];
+			flood_color = new int[cells];
+			flood_hard_stamp = new int[cells];
+			flood_hard = new int[cells];
+			flood_stamp = 0;
+		}
+
+		flood_stamp++;
+		if(flood_stamp == 0) {
+			Arrays.fill(flood_color_stamp, 0);
+			Arrays.fill(flood_hard_stamp, 0);
+			flood_stamp = 1;
+		}
+	}
+
+	/**
+	 * Counts the blocks clearColor would clear, in the current counting pass (see startCountColor)
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param garbageClear <code>true</code> to clear garbage blocks adjacent to cleared clusters
+	 * @param gemSame <code>true</code> to check gem blocks
+	 * @param ignoreHidden <code>true</code> to ignore the hidden part of the field
+	 * @return The number of blocks clearColor would clear
+	 */
+	protected int countColor(int x, int y, boolean garbageClear, boolean gemSame, boolean ignoreHidden) {
+		int blockColor = getFloodColor(x, y, gemSame, true);
+		if (blockColor == Block.BLOCK_COLOR_NONE || blockColor == Block.BLOCK_COLOR_INVALID)
+			return 0;
+		if (peekBlock(x, y).getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE))
+			return 0;
+		return floodColor(x, y, blockColor, false, garbageClear, gemSame, ignoreHidden, true);
 	}
+
 	/**
-	 * Note: This method is private because calling it with a targetColor parameter
-	 *       of BLOCK_COLOR_NONE or BLOCK_COLOR_INVALID may cause an infinite loop
-	 *       and crash the game. This check is handled by the above public method
-	 *       so as to avoid redundant checks.
+	 * Iterative flood fill used by clearColor and countColor.
+	 * The cells are visited in the same order as a recursive right, left, down, up fill,
+	 * so hard blocks and garbage blocks give the same results.
+	 * Note: targetColor must not be BLOCK_COLOR_NONE or BLOCK_COLOR_INVALID.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param targetColor Color of the cluster
+	 * @param flag <code>true</code> to set BLOCK_ATTRIBUTE_ERASE to true on cleared blocks.
+	 * @param garbageClear <code>true</code> to clear garbage blocks adjacent to cleared clusters
+	 * @param gemSame <code>true</code> to check gem blocks
+	 * @param ignoreHidden <code>true</code> to ignore the hidden part of the field
+	 * @param count <code>true</code> for the counting pass (the field is not modified)
+	 * @return The number of blocks cleared
 	 */
-	private int clearColor (int x, int y, int targetColor, boolean flag, boolean garbageClear,
-			boolean gemSame, boolean ignoreHidden)
+	protected int floodColor(int x, int y, int targetColor, boolean flag, boolean garbageClear,
+			boolean gemSame, boolean ignoreHidden, boolean count)
 	{
-		if (ignoreHidden && y < 0)
+		if (!floodColorVisit(x, y, targetColor, flag, garbageClear, gemSame, ignoreHidden, count))
 			return 0;
-		int blockColor = getBlockColor(x, y, gemSame);
+
+		int cleared = 1;
+		int sp = pushFlood(0, x, y);
+
+		while(sp > 0) {
+			int top = sp - 1;
+			int dir = flood_dir[top];
+
+			if(dir >= FLOOD_DX.length) {
+				sp--;
+				continue;
+			}
+			flood_dir[top]++;
+
+			int x2 = flood_x[top] + FLOOD_DX[dir];
+			int y2 = flood_y[top] + FLOOD_DY[dir];
+			if(floodColorVisit(x2, y2, targetColor, flag, garbageClear, gemSame, ignoreHidden, count)) {
+				cleared++;
+				sp = pushFlood(sp, x2, y2);
+			}
+		}
+
+		return cleared;
+	}
+
+	/**
+	 * Visits one cell of the color clear flood fill
+	 * @return <code>true</code> if the cell is part of the cluster (its neighbors must be visited next)
+	 */
+	private boolean floodColorVisit(int x, int y, int targetColor, boolean flag, boolean garbageClear,
+			boolean gemSame, boolean ignoreHidden, boolean count)
+	{
+		if (ignoreHidden && y < 0)
+			return false;
+		int blockColor = getFloodColor(x, y, gemSame, count);
 		if (blockColor == Block.BLOCK_COLOR_INVALID)
-			return 0;
-		Block b = getBlock(x, y);
+			return false;
+		Block b = peekBlock(x, y);
 		if (flag && b.getAttribute(Block.BLOCK_ATTRIBUTE_ERASE))
-			return 0;
+			return false;
 		if (garbageClear && b.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE)
 				 && !b.getAttribute(Block.BLOCK_ATTRIBUTE_WALL))
 		{
@@ -2058,23 +2779,107 @@ public class Field implements Serializable {
 				b.setAttribute(Block.BLOCK_ATTRIBUTE_ERASE, true);
 				garbageCleared++;
 			}
-			else if (b.hard > 0)
-				b.hard--;
 			else
-				setBlockColor(x, y, Block.BLOCK_COLOR_NONE);
+				floodClearBlock(x, y, b, count);
 		}
 		if (blockColor != targetColor)
-			return 0;
+			return false;
 		if (flag)
 			b.setAttribute(Block.BLOCK_ATTRIBUTE_ERASE, true);
-		else if (b.hard > 0)
-			b.hard--;
 		else
-			setBlockColor(x, y, Block.BLOCK_COLOR_NONE);
-		return 1 + clearColor(x+1, y, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x-1, y, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x, y+1, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x, y-1, targetColor, flag, garbageClear, gemSame, ignoreHidden);
+			floodClearBlock(x, y, b, count);
+		return true;
+	}
+
+	/**
+	 * Gets the block color seen by the color clear flood fill
+	 * @param count <code>true</code> to include the changes of the current counting pass
+	 * @return Block color (BLOCK_COLOR_INVALID if out of range)
+	 */
+	private int getFloodColor(int x, int y, boolean gemSame, boolean count) {
+		int color = getBlockColor(x, y, gemSame);
+		if (count && (color != Block.BLOCK_COLOR_INVALID))
+		{
+			int index = getFloodIndex(x, y);
+			if (flood_color_stamp[index] == flood_stamp)
+				return Block.gemToNormalColor(flood_color[index]);
+		}
+		return color;
+	}
+
+	/**
+	 * Lowers the hardness of a block, or clears it if it has none left
+	 * @param count <code>true</code> to only record the change in the current counting pass
+	 */
+	private void floodClearBlock(int x, int y, Block b, boolean count) {
+		if (count)
+		{
+			int index = getFloodIndex(x, y);
+			int hard = (flood_hard_stamp[index] == flood_stamp) ? flood_hard[index] : b.hard;
+			if (hard > 0)
+			{
+				flood_hard[index] = hard - 1;
+				flood_hard_stamp[index] = flood_stamp;
+			}
+			else
+			{
+				flood_color[index] = Block.BLOCK_COLOR_NONE;
+				flood_color_stamp[index] = flood_stamp;
+			}
+		}
+		else
+		{
+			// Keep the counting pass from seeing this change
+			if ((flood_color_stamp != null) && (flood_color_stamp.length == width * (height + hidden_height)))
+			{
+				int index = getFloodIndex(x, y);
+				if (flood_color_stamp[index] != flood_stamp)
+				{
+					flood_color[index] = b.color;
+					flood_color_stamp[index] = flood_stamp;
+				}
+				if (flood_hard_stamp[index] != flood_stamp)
+				{
+					flood_hard[index] = b.hard;
+					flood_hard_stamp[index] = flood_stamp;
+				}
+			}
+
+			if (b.hard > 0)
+				b.hard--;
+			else
+				setBlockColor(x, y, Block.BLOCK_COLOR_NONE);
+		}
+	}
+
+	/**
+	 * Gets the index of a cell in the flood fill stamp arrays
+	 * @param x X-coordinate (must be valid)
+	 * @param y Y-coordinate (must be valid)
+	 * @return Index
+	 */
+	private int getFloodIndex(int x, int y) {
+		return ((y + hidden_height) * width) + x;
+	}
+
+	/**
+	 * Pushes a cell onto the flood fill stack, growing it if needed
+	 * @param sp Current stack size
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return New stack size
+	 */
+	protected int pushFlood(int sp, int x, int y) {
+		if((flood_x == null) || (sp >= flood_x.length)) {
+			int size = Math.max(sp * 2, width * (height + hidden_height) + 1);
+			flood_x = (flood_x == null) ? new int[size] : Arrays.copyOf(flood_x, size);
+			flood_y = (flood_y == null) ? new int[size] : Arrays.copyOf(flood_y, size);
+			flood_dir = (flood_dir == null) ? new int[size] : Arrays.copyOf(flood_dir, size);
+		}
+		flood_x[sp] = x;
+		flood_y[sp] = y;
+		flood_dir[sp] = 0;
+		return sp + 1;
 	}
 
 	/**
@@ -2117,62 +2922,153 @@ public class Field implements Serializable {
 	 * @return <code>true</code> if something falls. <code>false</code> if nothing falls.
 	 */
 	public boolean doCascadeGravity() {
+		return doCascadeStep(false);
+	}
+
+	/**
+	 * Routine for cascade gravity which checks from the top down for a slower fall animation.
+	 * @return <code>true</code> if something falls. <code>false</code> if nothing falls.
+	 */
+	public boolean doCascadeSlow() {
+		return doCascadeStep(true);
+	}
+
+	/**
+	 * Moves every falling block group down by one line.
+	 * A group whose links all go both ways is found again from any of its blocks, so it is not checked again
+	 * if it did not fall and no block has moved since, or if all of its blocks fell and it is still the same group
+	 * at the new position (marked once more to find out). Groups with one-sided links are checked from each of their blocks.
+	 * Only the blocks of the group are checked and moved. The Block objects are moved instead of copied.
+	 * The destination of every moved block can be read with getCascadeMovedX/Y (For the fall animation of renderers).
+	 * @param topDown <code>true</code> to check from the top down (CASCADE_SLOW), <code>false</code> to check from the bottom up
+	 * @return <code>true</code> if something falls. <code>false</code> if nothing falls.
+	 */
+	protected boolean doCascadeStep(boolean topDown) {
 		boolean result = false;
+		int yMin = hidden_height * -1;
+		int yMax = getHeightWithoutHurryupFloor() - 1;
 
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
+		setAllAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
+		cascadeMovedCount = 0;
+		int groupSize = 0;
+		int moves = 0;
+
+		int cells = width * (hidden_height + height);
+		if((cascade_step == null) || (cascade_step.length != cells) || (cascade_stepCount == Integer.MAX_VALUE)) {
+			cascade_step = new int[cells];
+			cascade_moves = new int[cells];
+			cascade_stepCount = 0;
+		}
+		cascade_stepCount++;
+
+		for(int n = 0; n <= yMax - yMin; n++) {
+			int i = topDown ? (yMin + n) : (yMax - n);
 
-		for(int i = (getHeightWithoutHurryupFloor() - 1); i >= (hidden_height * -1); i--) {
 			for(int j = 0; j < width; j++) {
-				Block blk = getBlock(j, i);
+				Block blk = peekBlock(j, i);
 
 				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) {
+					// The group of this block has fallen, or nothing has changed since it failed to fall
+					int cell = (i + hidden_height) * width + j;
+					if((cascade_step[cell] == cascade_stepCount) &&
+					   ((cascade_moves[cell] == -1) || (cascade_moves[cell] == moves))) continue;
+
+					// Remove the marks of the previous group
+					for(int m = 0; m < groupSize; m++) {
+						Block bTemp = peekBlock(link_x[m], link_y[m]);
+						if(bTemp != null) bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
+					}
+					groupSize = markBlockLink(j, i);
+					sortBlockLink(groupSize);
+					boolean mutual = isBlockLinkMutual(groupSize, false);
+
 					boolean fall = true;
-					checkBlockLink(j, i);
 
-					for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-						for(int l = 0; l < width; l++) {
-							Block bTemp = getBlock(l, k);
+					for(int m = 0; (m < groupSize) && fall; m++) {
+						int l = link_x[m];
+						int k = link_y[m];
+						if((k < yMin) || (k > yMax)) continue;
 
-							if( (bTemp != null) && !bTemp.isEmpty() &&
-								bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-							{
-								Block bBelow = getBlock(l, k + 1);
+						Block bTemp = peekBlock(l, k);
+						if(!bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL)) {
+							Block bBelow = peekBlock(l, k + 1);
 
-								if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
-									((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK))
-								  )
-								{
-									fall = false;
-								}
+							if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
+								((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) )
+							{
+								fall = false;
 							}
 						}
 					}
 
 					if(fall) {
 						result = true;
-						for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-							for(int l = 0; l < width; l++) {
-								Block bTemp = getBlock(l, k);
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) != COORD_WALL) &&
-								    (bTemp != null) && !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
-								    bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
+						int lastX = j;
+						int lastY = i;
+						for(int m = 0; m < groupSize; m++) {
+							int l = link_x[m];
+							int k = link_y[m];
+							if((k < yMin) || (k > yMax)) continue;
+
+							Block bTemp = peekBlock(l, k);
+							Block bBelow = peekBlock(l, k + 1);
+
+							if( (getCoordAttribute(l, k + 1) != COORD_WALL) &&
+							    !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
+							    bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
+							{
+								bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
+								bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
+								if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
 								{
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
-									if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
-									{
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
-									}
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
-									setBlock(l, k + 1, bTemp);
-									setBlock(l, k, new Block());
+									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
+									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
+									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
+									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
+								}
+								bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
+								moveBlockDown(l, k);
+								moves++;
+								k++;
+							}
+							lastX = l;
+							lastY = k;
+						}
+
+						if(mutual) {
+							// The links may reach other blocks at the new position, so the group is only skipped if it is the same there
+							for(int m = 0; m < groupSize; m++) {
+								Block bTemp = peekBlock(link_x[m], link_y[m]);
+								if(bTemp != null) bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
+							}
+							int newSize = markBlockLink(lastX, lastY);
+							boolean same = (newSize == groupSize) && isBlockLinkMutual(newSize, true);
+							for(int m = 0; (m < newSize) && same; m++) {
+								int k = link_y[m];
+								if((k >= yMin) && (k <= yMax) && !peekBlock(link_x[m], k).getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL))
+									same = false;
+							}
+							if(same) {
+								for(int m = 0; m < newSize; m++) {
+									int k = link_y[m];
+									if((k < yMin) || (k > yMax)) continue;
+
+									int c = (k + hidden_height) * width + link_x[m];
+									cascade_step[c] = cascade_stepCount;
+									cascade_moves[c] = -1;
 								}
 							}
+							groupSize = newSize;
+						}
+					} else if(mutual) {
+						for(int m = 0; m < groupSize; m++) {
+							int k = link_y[m];
+							if((k < yMin) || (k > yMax)) continue;
+
+							int c = (k + hidden_height) * width + link_x[m];
+							cascade_step[c] = cascade_stepCount;
+							cascade_moves[c] = moves;
 						}
 					}
 				}
@@ -2182,85 +3078,67 @@ public class Field implements Serializable {
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
 
-		/*
-		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
-			setLineFlag(i, false);
-		}
-		*/
-
 		return result;
 	}
 
 	/**
-	 * Routine for cascade gravity which checks from the top down for a slower fall animation.
-	 * @return <code>true</code> if something falls. <code>false</code> if nothing falls.
+	 * Moves a block down by one line, swapping it with the empty block below.
+	 * The empty block is reset, so the vacated space is the same as a new Block.
+	 * The destination is added to the blocks moved by the current cascade gravity step.
+	 * @param x X coord
+	 * @param y Y coord (the space below must be empty and inside the field)
 	 */
-	public boolean doCascadeSlow() {
-		boolean result = false;
-
-		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
-
-		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
-			for(int j = 0; j < width; j++) {
-				Block blk = getBlock(j, i);
-
-				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) {
-					boolean fall = true;
-					checkBlockLink(j, i);
+	protected void moveBlockDown(int x, int y) {
+		Block[] row = (y >= 0) ? block_field[y] : block_hidden[(y * -1) - 1];
+		Block[] rowBelow = (y + 1 >= 0) ? block_field[y + 1] : block_hidden[(y * -1) - 2];
 
-					for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-						for(int l = 0; l < width; l++) {
-							Block bTemp = getBlock(l, k);
-
-							if( (bTemp != null) && !bTemp.isEmpty() &&
-								bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-							{
-								Block bBelow = getBlock(l, k + 1);
+		Block blk = row[x];
+		Block empty = rowBelow[x];
+		if(empty != SHARED_EMPTY_BLOCK) empty.reset();
 
-								if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
-									((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) )
-								{
-									fall = false;
-								}
-							}
-						}
-					}
+		rowBelow[x] = blk;
+		row[x] = empty;
 
-					if(fall) {
-						result = true;
-						for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-							for(int l = 0; l < width; l++) {
-								Block bTemp = getBlock(l, k);
-								Block bBelow = getBlock(l, k + 1);
+		if(occupancy_field != null) {
+			updateOccupancy(x, y + 1, blk);
+			updateOccupancy(x, y, empty);
+		}
 
-								if( (getCoordAttribute(l, k + 1) != COORD_WALL) &&
-								    (bTemp != null) && !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
-								    bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-								{
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
-									if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
-									{
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
-									}
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
-									setBlock(l, k + 1, bTemp);
-									setBlock(l, k, new Block());
-								}
-							}
-						}
-					}
-				}
-			}
+		if((cascadeMovedX == null) || (cascadeMovedCount >= cascadeMovedX.length)) {
+			int size = Math.max(cascadeMovedCount * 2, width * 4);
+			cascadeMovedX = (cascadeMovedX == null) ? new int[size] : Arrays.copyOf(cascadeMovedX, size);
+			cascadeMovedY = (cascadeMovedY == null) ? new int[size] : Arrays.copyOf(cascadeMovedY, size);
 		}
+		cascadeMovedX[cascadeMovedCount] = x;
+		cascadeMovedY[cascadeMovedCount] = y + 1;
+		cascadeMovedCount++;
+	}
 
-		setAllAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
-		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
+	/**
+	 * Gets the number of blocks moved by the last cascade gravity step
+	 * (Renderers can draw these blocks between Y-1 and Y during the cascade delay to animate the fall)
+	 * @return Number of moved blocks
+	 */
+	public int getCascadeMovedCount() {
+		return cascadeMovedCount;
+	}
 
-		return result;
+	/**
+	 * Gets the X-coordinate a block was moved to by the last cascade gravity step
+	 * @param index Index (0 to getCascadeMovedCount() - 1)
+	 * @return X-coordinate
+	 */
+	public int getCascadeMovedX(int index) {
+		return cascadeMovedX[index];
+	}
+
+	/**
+	 * Gets the Y-coordinate a block was moved to by the last cascade gravity step (it was at Y-1 before)
+	 * @param index Index (0 to getCascadeMovedCount() - 1)
+	 * @return Y-coordinate
+	 */
+	public int getCascadeMovedY(int index) {
+		return cascadeMovedY[index];
 	}
 
 	/**
@@ -2279,17 +3157,108 @@ public class Field implements Serializable {
 	 * @param y Y coord
 	 */
 	protected void checkBlockLinkSub(int x, int y) {
-		Block blk = getBlock(x, y);
-		if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) {
-			blk.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, true);
+		markBlockLink(x, y);
+	}
+
+	/**
+	 * Sets "mark" to the blocks linked to the specified block, and stores their coordinates in link_x and link_y.
+	 * Blocks that already have the mark are not included.
+	 * @param x X coord
+	 * @param y Y coord
+	 * @return Number of newly marked blocks
+	 */
+	protected int markBlockLink(int x, int y) {
+		int count = 0;
+		int sp = pushFlood(0, x, y);
+
+		while(sp > 0) {
+			sp--;
+			int x2 = flood_x[sp];
+			int y2 = flood_y[sp];
 
-			if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK)) {
-				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP)) checkBlockLinkSub(x, y - 1);
-				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN)) checkBlockLinkSub(x, y + 1);
-				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT)) checkBlockLinkSub(x - 1, y);
-				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT)) checkBlockLinkSub(x + 1, y);
+			Block blk = peekBlock(x2, y2);
+			if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) {
+				blk.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, true);
+
+				if((link_x == null) || (count >= link_x.length)) {
+					int size = Math.max(count * 2, width * 4);
+					link_x = (link_x == null) ? new int[size] : Arrays.copyOf(link_x, size);
+					link_y = (link_y == null) ? new int[size] : Arrays.copyOf(link_y, size);
+				}
+				link_x[count] = x2;
+				link_y[count] = y2;
+				count++;
+
+				if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK)) {
+					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP)) sp = pushFlood(sp, x2, y2 - 1);
+					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN)) sp = pushFlood(sp, x2, y2 + 1);
+					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT)) sp = pushFlood(sp, x2 - 1, y2);
+					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT)) sp = pushFlood(sp, x2 + 1, y2);
+				}
 			}
 		}
+
+		return count;
+	}
+
+	/**
+	 * Checks if every link between the blocks found by markBlockLink goes both ways,
+	 * in which case markBlockLink finds the same blocks from any of them
+	 * @param count Number of blocks found by markBlockLink
+	 * @param closed <code>true</code> to also fail on a link to an empty space (a block falling there later would join the group)
+	 * @return <code>true</code> if every link goes both ways
+	 */
+	protected boolean isBlockLinkMutual(int count, boolean closed) {
+		for(int m = 0; m < count; m++) {
+			int x = link_x[m];
+			int y = link_y[m];
+			Block blk = peekBlock(x, y);
+			if((count > 1) && blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK)) return false;
+
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP) &&
+			   !isLinkedBack(x, y - 1, Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, closed)) return false;
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN) &&
+			   !isLinkedBack(x, y + 1, Block.BLOCK_ATTRIBUTE_CONNECT_UP, closed)) return false;
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT) &&
+			   !isLinkedBack(x - 1, y, Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, closed)) return false;
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT) &&
+			   !isLinkedBack(x + 1, y, Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, closed)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if a linked block links back to the block next to it (used by isBlockLinkMutual)
+	 * @param x X coord of the linked block
+	 * @param y Y coord of the linked block
+	 * @param attr Link attribute toward the block next to it
+	 * @param closed <code>true</code> if an empty space does not count as linking back
+	 * @return <code>true</code> if there is no block to link to, or if it links back
+	 */
+	protected boolean isLinkedBack(int x, int y, int attr, boolean closed) {
+		Block blk = peekBlock(x, y);
+		if(blk == null) return true;
+		if(blk.isEmpty()) return !closed;
+		return blk.getAttribute(attr) && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK);
+	}
+
+	/**
+	 * Sorts the coordinates stored by markBlockLink from the bottom line up, and from left to right in each line
+	 * @param count Number of coordinates
+	 */
+	protected void sortBlockLink(int count) {
+		if((link_key == null) || (link_key.length < count)) link_key = new int[link_x.length];
+
+		// The key grows with the distance from the bottom line, then with X
+		for(int i = 0; i < count; i++) {
+			link_key[i] = (height - 1 - link_y[i]) * width + link_x[i];
+		}
+		Arrays.sort(link_key, 0, count);
+		for(int i = 0; i < count; i++) {
+			link_x[i] = link_key[i] % width;
+			link_y[i] = height - 1 - (link_key[i] / width);
+		}
 	}
 
 	/**
@@ -2326,9 +3295,13 @@ public class Field implements Serializable {
 	public void setBlockLinkByColor() {
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				setBlockLinkByColor(j, i);
+				Block blk = peekBlock(j, i);
+				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE) && blk.isNormalBlock()) {
+					setBlockLinkByColorFlags(j, i, blk);
+				}
 			}
 		}
+		setAllAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
 	}
 
 	/**
@@ -2347,38 +3320,41 @@ public class Field implements Serializable {
 	 * @param y Y coord
 	 */
 	protected void setBlockLinkByColorSub(int x, int y) {
-		Block blk = getBlock(x, y);
-		if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) &&
-		    !blk.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE) && blk.isNormalBlock())
-		{
-			blk.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, true);
-			if(getBlockColor(x, y - 1) == blk.color) {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, true);
-				setBlockLinkByColorSub(x, y - 1);
-			} else {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
-			}
-			if(getBlockColor(x, y + 1) == blk.color) {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, true);
-				setBlockLinkByColorSub(x, y + 1);
-			} else {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
-			}
-			if(getBlockColor(x - 1, y) == blk.color) {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, true);
-				setBlockLinkByColorSub(x - 1, y);
-			} else {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
-			}
-			if(getBlockColor(x + 1, y) == blk.color) {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, true);
-				setBlockLinkByColorSub(x + 1, y);
-			} else {
-				blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
+		int sp = pushFlood(0, x, y);
+
+		while(sp > 0) {
+			sp--;
+			int x2 = flood_x[sp];
+			int y2 = flood_y[sp];
+
+			Block blk = peekBlock(x2, y2);
+			if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) &&
+			    !blk.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE) && blk.isNormalBlock())
+			{
+				blk.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, true);
+				setBlockLinkByColorFlags(x2, y2, blk);
+
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP)) sp = pushFlood(sp, x2, y2 - 1);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN)) sp = pushFlood(sp, x2, y2 + 1);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT)) sp = pushFlood(sp, x2 - 1, y2);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT)) sp = pushFlood(sp, x2 + 1, y2);
 			}
 		}
 	}
 
+	/**
+	 * Sets the connection flags of one block from the colors of its neighbors
+	 * @param x X coord
+	 * @param y Y coord
+	 * @param blk Block at the coordinate
+	 */
+	protected void setBlockLinkByColorFlags(int x, int y, Block blk) {
+		blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, getBlockColor(x, y - 1) == blk.color);
+		blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, getBlockColor(x, y + 1) == blk.color);
+		blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, getBlockColor(x - 1, y) == blk.color);
+		blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, getBlockColor(x + 1, y) == blk.color);
+	}
+
 	/**
 	 * HURRY UPAdded to the bottom of the ground
 	 * @param lines RaiseLinescount
@@ -2397,6 +3373,7 @@ public class Field implements Serializable {
 			}
 
 			hurryupFloorLines++;
+			summary_dirty = -1L;
 		}
 	}
 
@@ -2655,7 +3632,6 @@ public class Field implements Serializable {
 	}
 
 	public int checkColor(int size, boolean flag, boolean garbageClear, boolean gemSame, boolean ignoreHidden) {
-		Field temp = new Field(this);
 		int total = 0;
 		boolean[] colorsClearedArray = new boolean[7];
 		if (flag)
@@ -2668,11 +3644,12 @@ public class Field implements Serializable {
 				colorsClearedArray[i] = false;
 		}
 
+		startCountColor();
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++)
 		{
 			for(int j = 0; j < width; j++)
 			{
-				int clear = temp.clearColor(j, i, false, garbageClear, gemSame, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, gemSame, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -3112,6 +4089,7 @@ public class Field implements Serializable {
 		if (b == null)
 			return false;
 		b.color = color;
+		if(occupancy_field != null) updateOccupancy(x, y, b);
 		b.setAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY, true);
 		b.setAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE, false);
 		b.setAttribute(Block.BLOCK_ATTRIBUTE_BROKEN, true);
@@ -3155,18 +4133,18 @@ public class Field implements Serializable {
 		if (flag)
 			setAllAttribute(Block.BLOCK_ATTRIBUTE_ERASE, false);
 
-		Field temp = new Field(this);
 		int total = 0;
 		Block b;
 
+		startCountColor();
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				b = getBlock(j, i);
+				b = peekBlock(j, i);
 				if (b == null)
 					continue;
 				if (!b.isGemBlock())
 					continue;
-				int clear = temp.clearColor(j, i, false, garbageClear, true, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, true, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -3304,6 +4282,7 @@ public class Field implements Serializable {
 				block_field[yMax] = temp;
 			}
 		}
+		rebuildOccupancy();
 	}
 
 	public void mirror() {
@@ -30,6 +30,8 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 
+import mu.nu.nullpo.util.StateBuffer;
+
 /**
  * BlockPeace
  */
@@ -156,6 +158,9 @@ public class Piece implements Serializable {
 	/** DirectionOfMaximumcount */
 	public static final int DIRECTION_COUNT = 4;
 
+	/** Version of the snapshot written by writeState */
+	public static final int STATE_VERSION = 1;
+
 	/** RelativeXPosition (4Direction×nBlock) */
 	public int[][] dataX;
 
@@ -186,6 +191,9 @@ public class Piece implements Serializable {
 	/** Connect blocks in this piece? */
 	public boolean connectBlocks;
 
+	/** Collision row masks (null until first use) */
+	protected transient CollisionMasks collisionMasks;
+
 	/**
 	 * Gets the name of the piece
 	 * @param id PeaceID
@@ -240,10 +248,98 @@ public class Piece implements Serializable {
 		for(int i = 0; i < block.length; i++) block[i] = new Block();
 		dataOffsetX = new int[DIRECTION_COUNT];
 		dataOffsetY = new int[DIRECTION_COUNT];
+		collisionMasks = null;
 
 		resetOffsetArray();
 	}
 
+	/**
+	 * Writes the piece to a snapshot
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeVersion(STATE_VERSION);
+		buf.writeInt(id);
+		buf.writeInt(direction);
+		buf.writeBoolean(big);
+		buf.writeBoolean(offsetApplied);
+		buf.writeBoolean(connectBlocks);
+
+		buf.writeInt(block.length);
+		for(int i = 0; i < DIRECTION_COUNT; i++) {
+			for(int j = 0; j < block.length; j++) {
+				buf.writeInt(dataX[i][j]);
+				buf.writeInt(dataY[i][j]);
+			}
+			buf.writeInt(dataOffsetX[i]);
+			buf.writeInt(dataOffsetY[i]);
+		}
+		for(int i = 0; i < block.length; i++) block[i].writeState(buf);
+	}
+
+	/**
+	 * Restores the piece written by writeState.
+	 * Arrays and Block objects are reused, and the collision masks are kept if the shape is the same.
+	 * @param buf Snapshot buffer
+	 * @throws IllegalStateException If the snapshot is broken or newer than this version
+	 */
+	public void readState(StateBuffer buf) {
+		buf.readVersion(STATE_VERSION);
+		id = buf.readInt();
+		direction = buf.readInt();
+		big = buf.readBoolean();
+		offsetApplied = buf.readBoolean();
+		connectBlocks = buf.readBoolean();
+
+		int maxBlock = buf.readInt();
+		boolean changed = (block == null) || (block.length != maxBlock);
+		if(changed) {
+			dataX = new int[DIRECTION_COUNT][maxBlock];
+			dataY = new int[DIRECTION_COUNT][maxBlock];
+			block = new Block[maxBlock];
+			for(int i = 0; i < maxBlock; i++) block[i] = new Block();
+			dataOffsetX = new int[DIRECTION_COUNT];
+			dataOffsetY = new int[DIRECTION_COUNT];
+		}
+
+		for(int i = 0; i < DIRECTION_COUNT; i++) {
+			for(int j = 0; j < maxBlock; j++) {
+				int x = buf.readInt();
+				int y = buf.readInt();
+				if((dataX[i][j] != x) || (dataY[i][j] != y)) changed = true;
+				dataX[i][j] = x;
+				dataY[i][j] = y;
+			}
+			dataOffsetX[i] = buf.readInt();
+			dataOffsetY[i] = buf.readInt();
+		}
+		for(int i = 0; i < maxBlock; i++) block[i].readState(buf);
+
+		if(changed) collisionMasks = null;
+	}
+
+	/**
+	 * Checks if another piece has the same shape, direction and blocks
+	 * @param p Piece to compare
+	 * @return <code>true</code> if writeState would write the same data for both pieces
+	 */
+	public boolean isSameState(Piece p) {
+		if((id != p.id) || (direction != p.direction) || (big != p.big) || (offsetApplied != p.offsetApplied) ||
+		   (connectBlocks != p.connectBlocks) || (block.length != p.block.length))
+			return false;
+
+		for(int i = 0; i < DIRECTION_COUNT; i++) {
+			if((dataOffsetX[i] != p.dataOffsetX[i]) || (dataOffsetY[i] != p.dataOffsetY[i])) return false;
+			for(int j = 0; j < block.length; j++) {
+				if((dataX[i][j] != p.dataX[i][j]) || (dataY[i][j] != p.dataY[i][j])) return false;
+			}
+		}
+		for(int i = 0; i < block.length; i++) {
+			if(!block[i].isSameState(p.block[i])) return false;
+		}
+		return true;
+	}
+
 	/**
 	 * BlockOf Peace dataOtherPieceCopied from the
 	 * @param p Copy source
@@ -271,6 +367,9 @@ public class Piece implements Serializable {
 			dataOffsetX[i] = p.dataOffsetX[i];
 			dataOffsetY[i] = p.dataOffsetY[i];
 		}
+
+		// The masks are never modified after creation, so they can be shared
+		collisionMasks = p.collisionMasks;
 	}
 
 	/**
@@ -438,6 +537,7 @@ public class Piece implements Serializable {
 			}
 			dataOffsetX[i] = offsetX[i];
 		}
+		collisionMasks = null;
 	}
 
 	/**
@@ -453,6 +553,7 @@ public class Piece implements Serializable {
 			}
 			dataOffsetY[i] = offsetY[i];
 		}
+		collisionMasks = null;
 	}
 
 	/**
@@ -468,6 +569,7 @@ public class Piece implements Serializable {
 			dataOffsetY[i] = 0;
 		}
 		offsetApplied = false;
+		collisionMasks = null;
 	}
 
 	/**
@@ -795,6 +897,9 @@ public class Piece implements Serializable {
 	 * @return BlockI was overlaptrue, They do not overlapfalse
 	 */
 	public boolean checkCollision(int x, int y, int rt, Field fld) {
+		// Use the row masks if the field has them
+		if(fld.isOccupancyEnabled()) return checkCollisionMask(x, y, rt, fld);
+
 		// BigThe only treatment
 		if(big == true) return checkCollisionBig(x, y, rt, fld);
 
@@ -855,6 +960,55 @@ public class Piece implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Collision detection of Peace using the occupancy row masks of the field.
+	 * Gives the same result as the per-block check (Field blocks never hold negative colors).
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param fld field (Occupancy row masks must be enabled)
+	 * @return BlockI was overlaptrue, They do not overlapfalse
+	 */
+	protected boolean checkCollisionMask(int x, int y, int rt, Field fld) {
+		CollisionMasks masks = collisionMasks;
+		if(masks == null) {
+			masks = new CollisionMasks(this);
+			collisionMasks = masks;
+		}
+
+		int size = big ? 1 : 0;
+		long[] rows = masks.rows[size][rt];
+		int left = x + masks.minX[size][rt];
+		int top = y + masks.minY[size][rt];
+
+		// Walls
+		if(left <= -64) return true;
+		if(left < 0) {
+			for(int i = 0; i < rows.length; i++) {
+				if((rows[i] & ((1L << -left) - 1)) != 0) return true;
+			}
+		}
+		if(left + masks.maxBit[size][rt] >= fld.getWidth()) return true;
+
+		for(int i = 0; i < rows.length; i++) {
+			int y2 = top + i;
+
+			if(rows[i] == 0) continue;
+			if(y2 >= fld.getHeight()) return true;
+			if(y2 < 0) {
+				if(fld.ceiling) return true;
+				if(y2 < fld.getHiddenHeight() * -1) continue;
+			}
+			if(left < 0) {
+				if((fld.getOccupancyRow(y2) & (rows[i] >>> -left)) != 0) return true;
+			} else {
+				if((fld.getOccupancyRow(y2) & (rows[i] << left)) != 0) return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * When I dropped the piece as it isY-coordinateGet the
 	 * @param x X-coordinate
@@ -1068,4 +1222,61 @@ public class Piece implements Serializable {
 
 		return rt;
 	}
+
+	/**
+	 * Collision row masks of a piece for every Direction (normal and big).
+	 * Immutable after creation, so it can be shared between threads and copies.
+	 */
+	protected static class CollisionMasks {
+		/** Row masks ([0]: normal [1]: big, then Direction and row) */
+		final long[][][] rows;
+
+		/** Relative X position of bit 0 of the row masks ([0]: normal [1]: big, then Direction) */
+		final int[][] minX;
+
+		/** Relative Y position of the first row mask ([0]: normal [1]: big, then Direction) */
+		final int[][] minY;
+
+		/** Highest bit used by the row masks ([0]: normal [1]: big, then Direction) */
+		final int[][] maxBit;
+
+		/**
+		 * Creates the row masks from the current block data of a piece
+		 * @param p Piece
+		 */
+		CollisionMasks(Piece p) {
+			rows = new long[2][DIRECTION_COUNT][];
+			minX = new int[2][DIRECTION_COUNT];
+			minY = new int[2][DIRECTION_COUNT];
+			maxBit = new int[2][DIRECTION_COUNT];
+
+			for(int s = 0; s < 2; s++) {
+				int size = s + 1;
+
+				for(int rt = 0; rt < DIRECTION_COUNT; rt++) {
+					int x1 = Integer.MAX_VALUE, x2 = Integer.MIN_VALUE;
+					int y1 = Integer.MAX_VALUE, y2 = Integer.MIN_VALUE;
+
+					for(int i = 0; i < p.getMaxBlock(); i++) {
+						x1 = Math.min(x1, p.dataX[rt][i] * size);
+						x2 = Math.max(x2, p.dataX[rt][i] * size + size - 1);
+						y1 = Math.min(y1, p.dataY[rt][i] * size);
+						y2 = Math.max(y2, p.dataY[rt][i] * size + size - 1);
+					}
+
+					long[] r = new long[y2 - y1 + 1];
+					for(int i = 0; i < p.getMaxBlock(); i++) {
+						for(int k = 0; k < size; k++) for(int l = 0; l < size; l++) {
+							r[p.dataY[rt][i] * size + l - y1] |= (1L << (p.dataX[rt][i] * size + k - x1));
+						}
+					}
+
+					rows[s][rt] = r;
+					minX[s][rt] = x1;
+					minY[s][rt] = y1;
+					maxBit[s][rt] = x2 - x1;
+				}
+			}
+		}
+	}
 }
@@ -28,8 +28,10 @@
 */
 package mu.nu.nullpo.game.component;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
 
 import mu.nu.nullpo.util.CustomProperties;
 
@@ -43,8 +45,14 @@ public class ReplayData implements Serializable {
 	/** Button input dataOf default The length of the */
 	public static final int DEFAULT_ARRAYLIST_SIZE = 60 * 60 * 10;
 
-	/** Button input data */
-	public ArrayList<Integer> inputDataArray;
+	/** Largest number of frames accepted when reading a replay (24 hours at 60fps) */
+	public static final int MAX_FRAMES = 60 * 60 * 60 * 24;
+
+	/** Button input data (Only the first inputDataLength frames are used) */
+	public int[] inputDataArray;
+
+	/** Number of recorded frames */
+	public int inputDataLength;
 
 	/**
 	 * Default constructor
@@ -66,9 +74,29 @@ public class ReplayData implements Serializable {
 	 */
 	public void reset() {
 		if(inputDataArray == null)
-			inputDataArray = new ArrayList<Integer>(DEFAULT_ARRAYLIST_SIZE);
-		else
-			inputDataArray.clear();
+			inputDataArray = new int[DEFAULT_ARRAYLIST_SIZE];
+		inputDataLength = 0;
+	}
+
+	/**
+	 * Get the number of recorded frames
+	 * @return Number of recorded frames
+	 */
+	public int getLength() {
+		return inputDataLength;
+	}
+
+	/**
+	 * Makes the buffer big enough for the given number of frames
+	 * @param length Number of frames
+	 */
+	protected void ensureCapacity(int length) {
+		if(length > inputDataArray.length) {
+			int newSize = Math.max(length, inputDataArray.length * 2);
+			int[] newArray = new int[newSize];
+			System.arraycopy(inputDataArray, 0, newArray, 0, inputDataLength);
+			inputDataArray = newArray;
+		}
 	}
 
 	/**
@@ -77,10 +105,9 @@ public class ReplayData implements Serializable {
 	 */
 	public void copy(ReplayData r) {
 		reset();
-
-		for(int i = 0; i < r.inputDataArray.size(); i++) {
-			inputDataArray.add(i, r.inputDataArray.get(i));
-		}
+		ensureCapacity(r.inputDataLength);
+		System.arraycopy(r.inputDataArray, 0, inputDataArray, 0, r.inputDataLength);
+		inputDataLength = r.inputDataLength;
 	}
 
 	/**
@@ -89,10 +116,12 @@ public class ReplayData implements Serializable {
 	 * @param frame  frame  (Course time)
 	 */
 	public void setInputData(int input, int frame) {
-		if((frame < 0) || (frame >= inputDataArray.size())) {
-			inputDataArray.add(input);
+		if((frame < 0) || (frame >= inputDataLength)) {
+			ensureCapacity(inputDataLength + 1);
+			inputDataArray[inputDataLength] = input;
+			inputDataLength++;
 		} else {
-			inputDataArray.set(frame, input);
+			inputDataArray[frame] = input;
 		}
 	}
 
@@ -102,21 +131,30 @@ public class ReplayData implements Serializable {
 	 * @return  button inputBit of status flag
 	 */
 	public int getInputData(int frame) {
-		if((frame < 0) || (frame >= inputDataArray.size())) {
+		if((frame < 0) || (frame >= inputDataLength)) {
 			return 0;
 		}
-		return inputDataArray.get(frame);
+		return inputDataArray[frame];
 	}
 
 	/**
 	 * Stored in the property set
+	 * (ReplayProperties keeps the input as it is instead of making one key for each change)
 	 * @param p Property Set
 	 * @param id AnyID (Player IDEtc.)
 	 * @param maxFrame Save frame count (-1Save in all)
 	 */
 	public void writeProperty(CustomProperties p, int id, int maxFrame) {
 		int max = maxFrame;
-		if((maxFrame < 0) || (maxFrame > inputDataArray.size())) max = inputDataArray.size();
+		if((maxFrame < 0) || (maxFrame > inputDataLength)) max = inputDataLength;
+
+		if(p instanceof ReplayProperties) {
+			ReplayData r = new ReplayData(this);
+			r.inputDataLength = max;
+			((ReplayProperties)p).setInputData(id, r);
+			p.setProperty(id + ".r.max", max);
+			return;
+		}
 
 		for(int i = 0; i < max; i++) {
 			int input = getInputData(i);
@@ -132,14 +170,124 @@ public class ReplayData implements Serializable {
 	 * @param id AnyID (Player IDEtc.)
 	 */
 	public void readProperty(CustomProperties p, int id) {
+		if(p instanceof ReplayProperties) {
+			ReplayData r = ((ReplayProperties)p).getInputData(id);
+			if(r != null) {
+				copy(r);
+				return;
+			}
+		}
+
 		reset();
 		int max = p.getProperty(id + ".r.max", 0);
-		int input = 0;
+		if((max < 0) || (max > MAX_FRAMES)) return;	// Broken, read as an empty replay
+		ensureCapacity(max);
+
+		// Look at every key once instead of looking up every frame
+		int[] changes = new int[max];
+		for(int i = 0; i < max; i++) changes[i] = -1;
+
+		String prefix = id + ".r.";
+		for(Object key : p.keySet()) {
+			String strKey = (String)key;
+			if(!strKey.startsWith(prefix)) continue;
+			try {
+				int frame = Integer.parseInt(strKey.substring(prefix.length()));
+				if((frame >= 0) && (frame < max)) changes[frame] = p.getProperty(strKey, -1);
+			} catch (NumberFormatException e) {}
+		}
 
+		int input = 0;
 		for(int i = 0; i < max; i++) {
-			int data = p.getProperty(id + ".r." + i, -1);
-			if(data != -1) input = data;
+			if(changes[i] != -1) input = changes[i];
 			setInputData(input, i);
 		}
 	}
+
+	/**
+	 * Writes the input in the binary replay format (Number of frames, then runs of the same input)
+	 * @param out Output
+	 * @param maxFrame Save frame count (-1Save in all)
+	 * @throws IOException If write fails
+	 */
+	public void writeBinary(DataOutput out, int maxFrame) throws IOException {
+		int max = maxFrame;
+		if((maxFrame < 0) || (maxFrame > inputDataLength)) max = inputDataLength;
+
+		int runs = 0;
+		for(int i = 0; i < max; i++) {
+			if((i == 0) || (getInputData(i) != getInputData(i - 1))) runs++;
+		}
+
+		writeVarInt(out, max);
+		writeVarInt(out, runs);
+
+		int i = 0;
+		while(i < max) {
+			int input = getInputData(i);
+			int length = 1;
+			while((i + length < max) && (getInputData(i + length) == input)) length++;
+			writeVarInt(out, input);
+			writeVarInt(out, length);
+			i += length;
+		}
+	}
+
+	/**
+	 * Reads the input written by writeBinary
+	 * @param in Input
+	 * @throws IOException If read fails or the data is broken
+	 */
+	public void readBinary(DataInput in) throws IOException {
+		reset();
+		int max = readVarInt(in);
+		int runs = readVarInt(in);
+		int frame = 0;
+		if((max < 0) || (max > MAX_FRAMES) || (runs < 0) || (runs > max)) throw new IOException("Broken replay input header");
+		ensureCapacity(max);
+
+		for(int i = 0; i < runs; i++) {
+			int input = readVarInt(in);
+			int length = readVarInt(in);
+			if((length < 0) || (length > max - frame)) throw new IOException("Replay input is longer than " + max + " frames");
+			for(int j = 0; j < length; j++) {
+				setInputData(input, frame);
+				frame++;
+			}
+		}
+		while(frame < max) {
+			setInputData(0, frame);
+			frame++;
+		}
+	}
+
+	/**
+	 * Writes an unsigned int in 7 bit groups (Small values take one byte)
+	 * @param out Output
+	 * @param v Value
+	 * @throws IOException If write fails
+	 */
+	static void writeVarInt(DataOutput out, int v) throws IOException {
+		while((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * Reads an unsigned int written by writeVarInt
+	 * @param in Input
+	 * @return Value
+	 * @throws IOException If read fails or the value is too long
+	 */
+	static int readVarInt(DataInput in) throws IOException {
+		int v = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return v;
+		}
+		throw new IOException("Broken variable length number");
+	}
 }
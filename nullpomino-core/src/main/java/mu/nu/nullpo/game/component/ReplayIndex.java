@@ -0,0 +1,319 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Index of the replay files in a directory, for the replay selection screens.
+ * The summary of each replay (Mode, rule and statistics) is kept in an index file
+ * together with the size and the last modified time of the replay file,
+ * so only new or changed replays have to be read.
+ * Those are read by a background thread, the replay at the cursor first.
+ */
+public class ReplayIndex {
+	/** Log */
+	static Logger log = Logger.getLogger(ReplayIndex.class);
+
+	/** Default index file */
+	public static final String DEFAULT_INDEX_FILE = "config/setting/replayindex.cfg";
+
+	/**
+	 * Summary of a replay file
+	 */
+	public static class Entry {
+		/** Filename */
+		public final String name;
+
+		/** Path (Used as the key in the index file) */
+		public final String path;
+
+		/** Mode name */
+		public String modeName = "";
+
+		/** Rule name */
+		public String ruleName = "";
+
+		/** Statistics of player 1 */
+		public Statistics statistics = new Statistics();
+
+		/** true if the summary is ready (Set after the other fields) */
+		public volatile boolean loaded;
+
+		/** File size */
+		long size;
+
+		/** Last modified time */
+		long lastModified;
+
+		/**
+		 * Constructor
+		 * @param name Filename
+		 * @param path Path
+		 */
+		Entry(String name, String path) {
+			this.name = name;
+			this.path = path;
+		}
+	}
+
+	/** Index filename */
+	protected String indexFilename;
+
+	/** Index (Loaded at the first update) */
+	protected CustomProperties index;
+
+	/** true if the index has to be saved */
+	protected boolean modified;
+
+	/** Replay directory */
+	protected String directory;
+
+	/** Replays of the directory */
+	protected Entry[] entries = new Entry[0];
+
+	/** Replay the user is looking at (Read before the others, -1 if none) */
+	protected volatile int wanted = -1;
+
+	/** Background thread */
+	protected Thread thread;
+
+	/**
+	 * Constructor
+	 * @param indexFilename Index filename
+	 */
+	public ReplayIndex(String indexFilename) {
+		this.indexFilename = indexFilename;
+	}
+
+	/**
+	 * Constructor (Uses the default index file)
+	 */
+	public ReplayIndex() {
+		this(DEFAULT_INDEX_FILE);
+	}
+
+	/**
+	 * Sets the replay files to show, and starts reading the ones which are not in the index.
+	 * Returns at once, the summaries of unknown replays become ready later.
+	 * @param directory Replay directory
+	 * @param list Filenames in the directory
+	 */
+	public synchronized void update(String directory, String[] list) {
+		stop();
+
+		if(index == null) {
+			index = new CustomProperties();
+			try {
+				FileInputStream in = new FileInputStream(indexFilename);
+				index.load(in);
+				in.close();
+			} catch (IOException e) {
+				log.debug("Replay index not found (" + indexFilename + ")");
+			}
+		}
+
+		this.directory = directory;
+		entries = new Entry[list.length];
+		boolean complete = true;
+		for(int i = 0; i < list.length; i++) {
+			File file = new File(directory, list[i]);
+			entries[i] = new Entry(list[i], file.getPath());
+			entries[i].size = file.length();
+			entries[i].lastModified = file.lastModified();
+			if(!readIndex(entries[i])) complete = false;
+		}
+		wanted = -1;
+
+		if(!complete || hasRemovedFiles()) {
+			thread = new Thread(new Runnable() {
+				public void run() {
+					loadAll();
+				}
+			}, "ReplayIndex");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the background thread (The replays read so far are saved to the index)
+	 */
+	public synchronized void stop() {
+		if(thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	/**
+	 * Get the number of replays
+	 * @return Number of replays
+	 */
+	public int getSize() {
+		return entries.length;
+	}
+
+	/**
+	 * Get the summary of a replay. If it's not ready yet, it will be read next.
+	 * @param i Index in the list given to update
+	 * @return Summary (Check loaded before using the fields)
+	 */
+	public Entry getEntry(int i) {
+		Entry entry = entries[i];
+		if(!entry.loaded) wanted = i;
+		return entry;
+	}
+
+	/**
+	 * Fills an entry from the index
+	 * @param entry Entry
+	 * @return false if the replay is not in the index or has been changed
+	 */
+	protected boolean readIndex(Entry entry) {
+		String key = entry.path;
+		if((index.getProperty(key + ".size", -1L) != entry.size) || (index.getProperty(key + ".time", -1L) != entry.lastModified))
+			return false;
+
+		try {
+			entry.statistics.importString(index.getProperty(key + ".stats", ""));
+		} catch (RuntimeException e) {
+			return false;
+		}
+		entry.modeName = index.getProperty(key + ".mode", "");
+		entry.ruleName = index.getProperty(key + ".rule", "");
+		entry.loaded = true;
+		return true;
+	}
+
+	/**
+	 * Reads a replay file and writes its summary to the index
+	 * @param entry Entry
+	 */
+	protected void readReplay(Entry entry) {
+		CustomProperties prop = new ReplayProperties();
+		try {
+			FileInputStream in = new FileInputStream(entry.path);
+			prop.load(in);
+			in.close();
+		} catch (IOException e) {
+			log.error("Failed to load replay file (" + entry.name + ")", e);
+		}
+
+		entry.modeName = prop.getProperty("name.mode", "");
+		entry.ruleName = prop.getProperty("name.rule", "");
+		entry.statistics.readProperty(prop, 0);
+		entry.loaded = true;
+
+		String key = entry.path;
+		index.setProperty(key + ".size", entry.size);
+		index.setProperty(key + ".time", entry.lastModified);
+		index.setProperty(key + ".mode", entry.modeName);
+		index.setProperty(key + ".rule", entry.ruleName);
+		index.setProperty(key + ".stats", entry.statistics.exportString());
+		modified = true;
+	}
+
+	/**
+	 * Checks if the index has replays of the directory which are gone, and removes them
+	 * @return true if something was removed
+	 */
+	protected boolean hasRemovedFiles() {
+		HashSet<String> paths = new HashSet<String>();
+		for(int i = 0; i < entries.length; i++) paths.add(entries[i].path);
+
+		String dirPath = new File(directory).getPath() + File.separator;
+		ArrayList<String> removed = new ArrayList<String>();
+		for(Object k : index.keySet()) {
+			String key = (String)k;
+			if(key.endsWith(".size")) {
+				String path = key.substring(0, key.length() - 5);
+				if(path.startsWith(dirPath) && (path.indexOf(File.separatorChar, dirPath.length()) < 0) && !paths.contains(path))
+					removed.add(path);
+			}
+		}
+
+		String[] suffix = {".size", ".time", ".mode", ".rule", ".stats"};
+		for(String path : removed) {
+			for(int i = 0; i < suffix.length; i++) index.remove(path + suffix[i]);
+		}
+		if(!removed.isEmpty()) modified = true;
+		return modified;
+	}
+
+	/**
+	 * Background thread: Reads every replay which is not ready, then saves the index
+	 */
+	protected void loadAll() {
+		try {
+			int next = 0;
+			while(!Thread.currentThread().isInterrupted()) {
+				// The replay at the cursor first
+				int i = wanted;
+				if((i < 0) || entries[i].loaded) {
+					while((next < entries.length) && entries[next].loaded) next++;
+					if(next >= entries.length) break;
+					i = next;
+				}
+				readReplay(entries[i]);
+			}
+		} finally {
+			if(modified) save();
+		}
+	}
+
+	/**
+	 * Saves the index file
+	 */
+	protected void save() {
+		try {
+			FileOutputStream out = new FileOutputStream(indexFilename);
+			index.store(out, "NullpoMino Replay Index");
+			out.close();
+			modified = false;
+		} catch (IOException e) {
+			log.error("Failed to save replay index (" + indexFilename + ")", e);
+		}
+	}
+}
@@ -0,0 +1,373 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Property set of a replay, which can be saved as a text .rep file (Same as CustomProperties)
+ * or in the binary replay format.
+ * The button input of each player is kept as ReplayData instead of one "id.r.(frame)" key per change,
+ * and is turned into those keys only when saving as text.
+ * load() reads both formats, so every replay loader can use this class in place of CustomProperties.
+ * <p>
+ * Binary format (Numbers are big endian, "varint" is an unsigned int in 7 bit groups):
+ * <ul>
+ * <li>Magic "NPRB", format version (varint)</li>
+ * <li>Header: Mode name, rule name (UTF), number of players (varint), random seed of each player (long)</li>
+ * <li>Every other property (Tuning, statistics, mode settings etc.): count (varint), then key and value (UTF)</li>
+ * <li>Input of each player: number of frames and number of runs (varint), then input bits and length of each run (varint)</li>
+ * </ul>
+ */
+public class ReplayProperties extends CustomProperties {
+	/** Serial version ID */
+	private static final long serialVersionUID = 1L;
+
+	/** Replay formats */
+	public static final int FORMAT_TEXT = 0, FORMAT_BINARY = 1;
+
+	/** Names of the replay formats (Used in the settings) */
+	public static final String[] FORMAT_NAMES = {"text", "binary"};
+
+	/** Version of the binary format */
+	public static final int BINARY_VERSION = 1;
+
+	/** Start of a binary replay file */
+	protected static final byte[] BINARY_MAGIC = {'N', 'P', 'R', 'B'};
+
+	/** Format used by storeReplay (Also the format of the last loaded file) */
+	protected int format;
+
+	/** Input of each player (null if the input is in "id.r.(frame)" keys) */
+	protected ArrayList<ReplayData> inputData;
+
+	/**
+	 * Default constructor (Text format)
+	 */
+	public ReplayProperties() {
+		this(FORMAT_TEXT);
+	}
+
+	/**
+	 * Constructor
+	 * @param format Format used by storeReplay
+	 */
+	public ReplayProperties(int format) {
+		super();
+		this.format = format;
+		inputData = new ArrayList<ReplayData>();
+	}
+
+	/**
+	 * Get the format number from its name
+	 * @param name Format name ("text" or "binary")
+	 * @return Format number (FORMAT_TEXT if unknown)
+	 */
+	public static int getFormat(String name) {
+		for(int i = 0; i < FORMAT_NAMES.length; i++) {
+			if(FORMAT_NAMES[i].equalsIgnoreCase(name)) return i;
+		}
+		return FORMAT_TEXT;
+	}
+
+	/**
+	 * Get the format used by storeReplay
+	 * @return FORMAT_TEXT or FORMAT_BINARY
+	 */
+	public int getFormat() {
+		return format;
+	}
+
+	/**
+	 * Set the format used by storeReplay
+	 * @param format FORMAT_TEXT or FORMAT_BINARY
+	 */
+	public void setFormat(int format) {
+		this.format = format;
+	}
+
+	/**
+	 * Get the input of a player
+	 * @param id Player ID
+	 * @return Input (null if the input is in the property keys)
+	 */
+	public ReplayData getInputData(int id) {
+		if((id < 0) || (id >= inputData.size())) return null;
+		return inputData.get(id);
+	}
+
+	/**
+	 * Set the input of a player
+	 * @param id Player ID
+	 * @param r Input
+	 */
+	public void setInputData(int id, ReplayData r) {
+		while(inputData.size() <= id) inputData.add(null);
+		inputData.set(id, r);
+	}
+
+	/*
+	 * Copy (The input of each player is copied too)
+	 */
+	@Override
+	public synchronized Object clone() {
+		ReplayProperties p = (ReplayProperties)super.clone();
+		p.inputData = new ArrayList<ReplayData>(inputData.size());
+		for(ReplayData r : inputData) {
+			p.inputData.add((r == null) ? null : new ReplayData(r));
+		}
+		return p;
+	}
+
+	/**
+	 * Get the number of players which have input
+	 * @return Number of players
+	 */
+	public int getPlayers() {
+		int players = 0;
+		while(containsKey(players + ".r.max")) players++;
+		return players;
+	}
+
+	/**
+	 * Saves the replay in the format set by setFormat
+	 * @param out Output stream
+	 * @param comments Comment (Text format only)
+	 * @throws IOException If write fails
+	 */
+	public void storeReplay(OutputStream out, String comments) throws IOException {
+		if(format == FORMAT_BINARY) {
+			storeBinary(out);
+		} else {
+			store(out, comments);
+		}
+	}
+
+	/*
+	 * Saves as a text .rep file (The input is written as "id.r.(frame)" keys)
+	 */
+	@Override
+	public void store(OutputStream out, String comments) throws IOException {
+		toTextProperties().store(out, comments);
+	}
+
+	/*
+	 * Saves as a text .rep file (The input is written as "id.r.(frame)" keys)
+	 */
+	@Override
+	public void store(Writer writer, String comments) throws IOException {
+		toTextProperties().store(writer, comments);
+	}
+
+	/**
+	 * Makes a CustomProperties which has the input as "id.r.(frame)" keys
+	 * @return CustomProperties
+	 */
+	public synchronized CustomProperties toTextProperties() {
+		CustomProperties prop = new CustomProperties();
+		prop.putAll(this);
+		for(int i = 0; i < inputData.size(); i++) {
+			ReplayData r = inputData.get(i);
+			if(r != null) r.writeProperty(prop, i, getProperty(i + ".r.max", -1));
+		}
+		return prop;
+	}
+
+	/**
+	 * Saves in the binary replay format
+	 * @param out Output stream
+	 * @throws IOException If write fails
+	 */
+	public synchronized void storeBinary(OutputStream out) throws IOException {
+		DataOutputStream dout = new DataOutputStream(out);
+		int players = getPlayers();
+
+		// Header
+		dout.write(BINARY_MAGIC);
+		ReplayData.writeVarInt(dout, BINARY_VERSION);
+		dout.writeUTF(getProperty("name.mode", ""));
+		dout.writeUTF(getProperty("name.rule", ""));
+		ReplayData.writeVarInt(dout, players);
+		for(int i = 0; i < players; i++) {
+			dout.writeLong(getSeed(i));
+		}
+
+		// Other properties (Sorted, so the same replay always makes the same file)
+		TreeMap<String, String> others = new TreeMap<String, String>();
+		for(Map.Entry<Object, Object> e : entrySet()) {
+			String key = (String)e.getKey();
+			if(!isHeaderKey(key, players) && !isInputKey(key)) others.put(key, (String)e.getValue());
+		}
+		ReplayData.writeVarInt(dout, others.size());
+		for(Map.Entry<String, String> e : others.entrySet()) {
+			dout.writeUTF(e.getKey());
+			dout.writeUTF(e.getValue());
+		}
+
+		// Input
+		for(int i = 0; i < players; i++) {
+			ReplayData r = getInputData(i);
+			if(r == null) {
+				r = new ReplayData();
+				r.readProperty(this, i);
+			}
+			r.writeBinary(dout, getProperty(i + ".r.max", -1));
+		}
+
+		dout.flush();
+	}
+
+	/*
+	 * Loads a replay in either format
+	 */
+	@Override
+	public synchronized void load(InputStream in) throws IOException {
+		BufferedInputStream bin = new BufferedInputStream(in);
+		bin.mark(BINARY_MAGIC.length);
+		byte[] magic = new byte[BINARY_MAGIC.length];
+		int len = 0;
+		while(len < magic.length) {
+			int n = bin.read(magic, len, magic.length - len);
+			if(n < 0) break;
+			len += n;
+		}
+
+		boolean binary = (len == magic.length);
+		for(int i = 0; binary && (i < magic.length); i++) {
+			if(magic[i] != BINARY_MAGIC[i]) binary = false;
+		}
+
+		if(binary) {
+			loadBinary(new DataInputStream(bin));
+			format = FORMAT_BINARY;
+		} else {
+			bin.reset();
+			super.load(bin);
+			format = FORMAT_TEXT;
+		}
+	}
+
+	/**
+	 * Reads the rest of a binary replay after the magic
+	 * @param in Input stream
+	 * @throws IOException If read fails or the file is broken
+	 */
+	protected void loadBinary(DataInputStream in) throws IOException {
+		int version = ReplayData.readVarInt(in);
+		if(version > BINARY_VERSION) {
+			throw new IOException("Unsupported binary replay version " + version);
+		}
+
+		setProperty("name.mode", in.readUTF());
+		setProperty("name.rule", in.readUTF());
+		int players = ReplayData.readVarInt(in);
+		for(int i = 0; i < players; i++) {
+			setProperty(i + ".replay.randSeed", Long.toString(in.readLong(), 16));
+		}
+
+		int count = ReplayData.readVarInt(in);
+		for(int i = 0; i < count; i++) {
+			String key = in.readUTF();
+			setProperty(key, in.readUTF());
+		}
+
+		for(int i = 0; i < players; i++) {
+			ReplayData r = new ReplayData();
+			r.readBinary(in);
+			setInputData(i, r);
+			setProperty(i + ".r.max", r.getLength());
+		}
+	}
+
+	/**
+	 * Get the random seed of a player
+	 * @param id Player ID
+	 * @return Random seed (0 if not set or broken)
+	 */
+	protected long getSeed(int id) {
+		try {
+			return Long.parseLong(getProperty(id + ".replay.randSeed", "0"), 16);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Checks if a key is written in the header of the binary format
+	 * (A broken random seed is kept in the other properties as it is)
+	 * @param key Key
+	 * @param players Number of players
+	 * @return true if the key is in the header
+	 */
+	protected boolean isHeaderKey(String key, int players) {
+		if(key.equals("name.mode") || key.equals("name.rule")) return true;
+		for(int i = 0; i < players; i++) {
+			if(key.equals(i + ".replay.randSeed")) {
+				try {
+					Long.parseLong(getProperty(key), 16);
+					return true;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a key is button input ("id.r.(frame)" or "id.r.max")
+	 * @param key Key
+	 * @return true if the key is button input
+	 */
+	protected static boolean isInputKey(String key) {
+		int dot = key.indexOf(".r.");
+		if(dot <= 0) return false;
+		for(int i = 0; i < dot; i++) {
+			if(!Character.isDigit(key.charAt(i))) return false;
+		}
+		String rest = key.substring(dot + 3);
+		if(rest.equals("max")) return true;
+		if(rest.length() == 0) return false;
+		for(int i = 0; i < rest.length(); i++) {
+			if(!Character.isDigit(rest.charAt(i))) return false;
+		}
+		return true;
+	}
+}
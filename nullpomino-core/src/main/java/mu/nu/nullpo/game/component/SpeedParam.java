@@ -30,6 +30,8 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 
+import mu.nu.nullpo.util.StateBuffer;
+
 /**
  * BlockWait and emergence rate of fall of the piece timeSuch as data
  */
@@ -99,4 +101,32 @@ public class SpeedParam implements Serializable {
 		lockDelay = s.lockDelay;
 		das = s.das;
 	}
+
+	/**
+	 * Writes the settings to a snapshot (The version is written by the owner)
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeInt(gravity);
+		buf.writeInt(denominator);
+		buf.writeInt(are);
+		buf.writeInt(areLine);
+		buf.writeInt(lineDelay);
+		buf.writeInt(lockDelay);
+		buf.writeInt(das);
+	}
+
+	/**
+	 * Reads the settings written by writeState
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(StateBuffer buf) {
+		gravity = buf.readInt();
+		denominator = buf.readInt();
+		are = buf.readInt();
+		areLine = buf.readInt();
+		lineDelay = buf.readInt();
+		lockDelay = buf.readInt();
+		das = buf.readInt();
+	}
 }
@@ -31,6 +31,7 @@ package mu.nu.nullpo.game.component;
 import java.io.Serializable;
 
 import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.StateBuffer;
 
 /**
  * ScoreInformation such as the
@@ -39,6 +40,9 @@ public class Statistics implements Serializable {
 	/** Serial version ID */
 	private static final long serialVersionUID = -499640168205398295L;
 
+	/** Version of the snapshot written by writeState */
+	public static final int STATE_VERSION = 1;
+
 	/** Total score */
 	public int score;
 
@@ -259,6 +263,7 @@ public class Statistics implements Serializable {
 		totalTSpinTriple = s.totalTSpinTriple;
 		totalB2BFour = s.totalB2BFour;
 		totalB2BTSpin = s.totalB2BTSpin;
+		totalHoldUsed = s.totalHoldUsed;
 		maxCombo = s.maxCombo;
 		spl = s.spl;
 		spm = s.spm;
@@ -272,6 +277,45 @@ public class Statistics implements Serializable {
 		rollclear = s.rollclear;
 	}
 
+	/**
+	 * OtherStatisticsAdd the value of the (To total the results of many games)
+	 * Counters are added, level and maximum values keep the larger one.
+	 * The rates are not added, call update() after adding every game.
+	 * @param s Statistics to add
+	 */
+	public void add(Statistics s) {
+		score += s.score;
+		scoreFromLineClear += s.scoreFromLineClear;
+		scoreFromSoftDrop += s.scoreFromSoftDrop;
+		scoreFromHardDrop += s.scoreFromHardDrop;
+		scoreFromOtherBonus += s.scoreFromOtherBonus;
+		lines += s.lines;
+		time += s.time;
+		level = Math.max(level, s.level);
+		levelDispAdd = Math.max(levelDispAdd, s.levelDispAdd);
+		totalPieceLocked += s.totalPieceLocked;
+		totalPieceActiveTime += s.totalPieceActiveTime;
+		totalPieceMove += s.totalPieceMove;
+		totalPieceRotate += s.totalPieceRotate;
+		totalSingle += s.totalSingle;
+		totalDouble += s.totalDouble;
+		totalTriple += s.totalTriple;
+		totalFour += s.totalFour;
+		totalTSpinZeroMini += s.totalTSpinZeroMini;
+		totalTSpinZero += s.totalTSpinZero;
+		totalTSpinSingleMini += s.totalTSpinSingleMini;
+		totalTSpinSingle += s.totalTSpinSingle;
+		totalTSpinDoubleMini += s.totalTSpinDoubleMini;
+		totalTSpinDouble += s.totalTSpinDouble;
+		totalTSpinTriple += s.totalTSpinTriple;
+		totalB2BFour += s.totalB2BFour;
+		totalB2BTSpin += s.totalB2BTSpin;
+		totalHoldUsed += s.totalHoldUsed;
+		maxCombo = Math.max(maxCombo, s.maxCombo);
+		maxChain = Math.max(maxChain, s.maxChain);
+		rollclear = Math.max(rollclear, s.rollclear);
+	}
+
 	/**
 	 * SPMYaLPMUpdates
 	 */
@@ -289,6 +333,99 @@ public class Statistics implements Serializable {
 		}
 	}
 
+	/**
+	 * Writes the statistics to a snapshot
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeVersion(STATE_VERSION);
+		buf.writeInt(score);
+		buf.writeInt(scoreFromLineClear);
+		buf.writeInt(scoreFromSoftDrop);
+		buf.writeInt(scoreFromHardDrop);
+		buf.writeInt(scoreFromOtherBonus);
+		buf.writeInt(lines);
+		buf.writeInt(time);
+		buf.writeInt(level);
+		buf.writeInt(levelDispAdd);
+		buf.writeInt(totalPieceLocked);
+		buf.writeInt(totalPieceActiveTime);
+		buf.writeInt(totalPieceMove);
+		buf.writeInt(totalPieceRotate);
+		buf.writeInt(totalSingle);
+		buf.writeInt(totalDouble);
+		buf.writeInt(totalTriple);
+		buf.writeInt(totalFour);
+		buf.writeInt(totalTSpinZeroMini);
+		buf.writeInt(totalTSpinZero);
+		buf.writeInt(totalTSpinSingleMini);
+		buf.writeInt(totalTSpinSingle);
+		buf.writeInt(totalTSpinDoubleMini);
+		buf.writeInt(totalTSpinDouble);
+		buf.writeInt(totalTSpinTriple);
+		buf.writeInt(totalB2BFour);
+		buf.writeInt(totalB2BTSpin);
+		buf.writeInt(totalHoldUsed);
+		buf.writeInt(maxCombo);
+		buf.writeDouble(spl);
+		buf.writeDouble(spm);
+		buf.writeDouble(sps);
+		buf.writeFloat(lpm);
+		buf.writeFloat(lps);
+		buf.writeFloat(ppm);
+		buf.writeFloat(pps);
+		buf.writeFloat(gamerate);
+		buf.writeInt(maxChain);
+		buf.writeInt(rollclear);
+	}
+
+	/**
+	 * Restores the statistics written by writeState
+	 * @param buf Snapshot buffer
+	 * @throws IllegalStateException If the snapshot is broken or newer than this version
+	 */
+	public void readState(StateBuffer buf) {
+		buf.readVersion(STATE_VERSION);
+		score = buf.readInt();
+		scoreFromLineClear = buf.readInt();
+		scoreFromSoftDrop = buf.readInt();
+		scoreFromHardDrop = buf.readInt();
+		scoreFromOtherBonus = buf.readInt();
+		lines = buf.readInt();
+		time = buf.readInt();
+		level = buf.readInt();
+		levelDispAdd = buf.readInt();
+		totalPieceLocked = buf.readInt();
+		totalPieceActiveTime = buf.readInt();
+		totalPieceMove = buf.readInt();
+		totalPieceRotate = buf.readInt();
+		totalSingle = buf.readInt();
+		totalDouble = buf.readInt();
+		totalTriple = buf.readInt();
+		totalFour = buf.readInt();
+		totalTSpinZeroMini = buf.readInt();
+		totalTSpinZero = buf.readInt();
+		totalTSpinSingleMini = buf.readInt();
+		totalTSpinSingle = buf.readInt();
+		totalTSpinDoubleMini = buf.readInt();
+		totalTSpinDouble = buf.readInt();
+		totalTSpinTriple = buf.readInt();
+		totalB2BFour = buf.readInt();
+		totalB2BTSpin = buf.readInt();
+		totalHoldUsed = buf.readInt();
+		maxCombo = buf.readInt();
+		spl = buf.readDouble();
+		spm = buf.readDouble();
+		sps = buf.readDouble();
+		lpm = buf.readFloat();
+		lps = buf.readFloat();
+		ppm = buf.readFloat();
+		pps = buf.readFloat();
+		gamerate = buf.readFloat();
+		maxChain = buf.readInt();
+		rollclear = buf.readInt();
+	}
+
 	/**
 	 * Stored in the property set
 	 * @param p Property Set
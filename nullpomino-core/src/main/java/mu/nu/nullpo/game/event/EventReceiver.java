@@ -30,7 +30,6 @@ package mu.nu.nullpo.game.event;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 import org.apache.log4j.Logger;
@@ -38,6 +37,7 @@ import org.apache.log4j.Logger;
 import mu.nu.nullpo.game.component.Block;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.util.AsyncPropertiesWriter;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
 
@@ -871,6 +871,10 @@ public class EventReceiver {
 	 * @return Properties from "config/setting/mode.cfg". null if load fails.
 	 */
 	public CustomProperties loadModeConfig() {
+		// Saved but not written yet
+		CustomProperties pending = AsyncPropertiesWriter.getPending("config/setting/mode.cfg");
+		if(pending != null) return pending;
+
 		CustomProperties propModeConfig = new CustomProperties();
 
 		try {
@@ -885,17 +889,11 @@ public class EventReceiver {
 	}
 
 	/**
-	 * Save properties to "config/setting/mode.cfg"
+	 * Save properties to "config/setting/mode.cfg" (Written in the background)
 	 * @param modeConfig Properties you want to save
 	 */
 	public void saveModeConfig(CustomProperties modeConfig) {
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/mode.cfg");
-			modeConfig.store(out, "NullpoMino Mode Config");
-			out.close();
-		} catch(IOException e) {
-			log.error("Failed to save mode config", e);
-		}
+		AsyncPropertiesWriter.save("config/setting/mode.cfg", modeConfig, "NullpoMino Mode Config");
 	}
 
 	/**
@@ -904,6 +902,10 @@ public class EventReceiver {
 	 * @return Properties you specified, or null if the file doesn't exist.
 	 */
 	public CustomProperties loadProperties(String filename) {
+		// Saved but not written yet
+		CustomProperties pending = AsyncPropertiesWriter.getPending(filename);
+		if(pending != null) return pending;
+
 		CustomProperties prop = new CustomProperties();
 
 		try {
@@ -919,21 +921,13 @@ public class EventReceiver {
 	}
 
 	/**
-	 * Save any properties to any location.
+	 * Save any properties to any location. (Written in the background)
 	 * @param filename Filename
 	 * @param prop Properties you want to save
-	 * @return true if success
+	 * @return true if the file is going to be saved
 	 */
 	public boolean saveProperties(String filename, CustomProperties prop) {
-		try {
-			FileOutputStream out = new FileOutputStream(filename);
-			prop.store(out, "NullpoMino Custom Property File");
-			out.close();
-		} catch(IOException e) {
-			log.debug("Failed to save custom property file to " + filename, e);
-			return false;
-		}
-
+		AsyncPropertiesWriter.save(filename, prop, "NullpoMino Custom Property File");
 		return true;
 	}
 
@@ -1234,22 +1228,17 @@ public class EventReceiver {
 		if(owner.mode.isNetplayMode()) return;
 
 		String filename = foldername + "/" + GeneralUtil.getReplayFilename();
-		try {
-			File repfolder = new File(foldername);
-			if (!repfolder.exists()) {
-				if (repfolder.mkdir()) {
-					log.info("Created replay folder: " + foldername);
-				} else {
-					log.info("Couldn't create replay folder at "+ foldername);
-				}
+		File repfolder = new File(foldername);
+		if (!repfolder.exists()) {
+			if (repfolder.mkdir()) {
+				log.info("Created replay folder: " + foldername);
+			} else {
+				log.info("Couldn't create replay folder at "+ foldername);
 			}
-
-			FileOutputStream out = new FileOutputStream(filename);
-			prop.store(new FileOutputStream(filename), "NullpoMino Replay");
-			out.close();
-			log.info("Saved replay file: " + filename);
-		} catch(IOException e) {
-			log.error("Couldn't save replay file to " + filename, e);
 		}
+
+		// Written in the background (ReplayProperties are saved in their own format)
+		AsyncPropertiesWriter.save(filename, prop, "NullpoMino Replay");
+		log.info("Saving replay file: " + filename);
 	}
 }
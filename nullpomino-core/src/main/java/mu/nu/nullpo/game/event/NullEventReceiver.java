@@ -0,0 +1,91 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.event;
+
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * EventReceiver for games without a screen (SimulationRunner etc.)
+ * Nothing is drawn or played, and the mode config and replays are kept in memory instead of being saved to files.
+ */
+public class NullEventReceiver extends EventReceiver {
+	/** Mode config returned by loadModeConfig */
+	protected CustomProperties propModeConfig;
+
+	/** Last saved replay (null if none) */
+	protected CustomProperties propReplay;
+
+	/**
+	 * Constructor (Every mode uses its default settings)
+	 */
+	public NullEventReceiver() {
+		this(null);
+	}
+
+	/**
+	 * Constructor
+	 * @param propModeConfig Mode config (copied, so the modes can't change the original)
+	 */
+	public NullEventReceiver(CustomProperties propModeConfig) {
+		this.propModeConfig = new CustomProperties();
+		if(propModeConfig != null) this.propModeConfig.putAll(propModeConfig);
+	}
+
+	/*
+	 * Returns the mode config given to the constructor
+	 */
+	@Override
+	public CustomProperties loadModeConfig() {
+		return propModeConfig;
+	}
+
+	/*
+	 * Mode config is not saved
+	 */
+	@Override
+	public void saveModeConfig(CustomProperties modeConfig) {
+	}
+
+	/*
+	 * Keeps the replay in memory
+	 */
+	@Override
+	public void saveReplay(GameManager owner, CustomProperties prop) {
+		propReplay = prop;
+	}
+
+	/**
+	 * Get the last saved replay
+	 * @return Replay (null if no replay was saved)
+	 */
+	public CustomProperties getReplay() {
+		return propReplay;
+	}
+}
@@ -0,0 +1,472 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Player data storage in an append-only log file.
+ * Every save of a player adds a record with the whole data of that player at the end of the file,
+ * and only the position of the latest record of each player is kept in memory.
+ * Player data is read from the file when needed (Usually at login) and kept in a cache of limited size.
+ * The file is rewritten without the old records when they take more space than the current ones.
+ * The file is written and synced by the background thread of NetServerJournal, so commit returns at once.
+ */
+public class NetPlayerDataLogStore implements NetPlayerDataStore {
+	/** Log */
+	static Logger log = Logger.getLogger(NetPlayerDataLogStore.class);
+
+	/** Default filename */
+	public static final String DEFAULT_FILE = "config/setting/netserver_playerdata.dat";
+
+	/** Default number of players kept in memory */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+
+	/** The file is not compacted until it's this large (Bytes) */
+	protected static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+	/** Prefixes of the player data keys followed by "[STYLE].[NAME]" */
+	protected static final String[] STYLE_KEY_PREFIX = {"p.rating.", "p.playCount.", "p.winCount."};
+
+	/** Prefix of the personal best keys ("sppersonal.[NAME].*") */
+	protected static final String PERSONAL_BEST_KEY_PREFIX = "sppersonal.";
+
+	/**
+	 * Position of a record in the file
+	 */
+	protected static class Location {
+		/** Offset */
+		final long offset;
+
+		/** Length (Including the header) */
+		final int length;
+
+		/**
+		 * Constructor
+		 * @param offset Offset
+		 * @param length Length
+		 */
+		Location(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/** File */
+	protected File file;
+
+	/** Journal which runs the writes */
+	protected NetServerJournal journal;
+
+	/** File access for writing (Used by the journal thread only) */
+	protected RandomAccessFile raf;
+
+	/** File access for get */
+	protected RandomAccessFile reader;
+
+	/** Length of the valid records (New records are written here) */
+	protected long dataLength;
+
+	/** Latest record of each player (Changed by the journal thread only) */
+	protected HashMap<String, Location> index = new HashMap<String, Location>();
+
+	/** Records committed but not written to the file yet */
+	protected HashMap<String, byte[]> writing = new HashMap<String, byte[]>();
+
+	/** Total length of the old records */
+	protected long garbageSize;
+
+	/** Maximum number of players kept in memory */
+	protected int cacheSize;
+
+	/** Players changed since the last commit */
+	protected LinkedHashMap<String, CustomProperties> dirty = new LinkedHashMap<String, CustomProperties>();
+
+	/** Players kept in memory (Least recently used first) */
+	protected LinkedHashMap<String, CustomProperties> cache = new LinkedHashMap<String, CustomProperties>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CustomProperties> eldest) {
+			return (size() > cacheSize) && !dirty.containsKey(eldest.getKey());
+		}
+	};
+
+	/**
+	 * Constructor (Opens the file and reads the positions of the records)
+	 * @param filename Filename
+	 * @param cacheSize Maximum number of players kept in memory
+	 * @param journal Journal which runs the writes
+	 * @throws IOException When the file can't be opened
+	 */
+	public NetPlayerDataLogStore(String filename, int cacheSize, NetServerJournal journal) throws IOException {
+		this.file = new File(filename);
+		this.cacheSize = cacheSize;
+		this.journal = journal;
+		raf = new RandomAccessFile(file, "rw");
+		readIndex();
+		reader = new RandomAccessFile(file, "r");
+	}
+
+	/**
+	 * Checks if the file has any player
+	 * @return true if there is no player
+	 */
+	public synchronized boolean isEmpty() {
+		return index.isEmpty() && writing.isEmpty() && dirty.isEmpty();
+	}
+
+	/**
+	 * Reads the whole file and finds the latest record of each player.
+	 * A broken record at the end (Crash while writing it) is removed.
+	 * @throws IOException When the file can't be read
+	 */
+	protected void readIndex() throws IOException {
+		long fileLength = raf.length();
+		long pos = 0;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while(pos < fileLength) {
+				byte[] payload;
+				try {
+					int length = in.readInt();
+					int crcValue = in.readInt();
+					if((length < 2) || (pos + 8 + length > fileLength)) break;
+					payload = new byte[length];
+					in.readFully(payload);
+
+					CRC32 crc = new CRC32();
+					crc.update(payload);
+					if((int)crc.getValue() != crcValue) break;
+				} catch (EOFException e) {
+					break;
+				}
+
+				String name = new DataInputStream(new ByteArrayInputStream(payload)).readUTF();
+				Location old = index.put(name, new Location(pos, payload.length + 8));
+				if(old != null) garbageSize += old.length;
+				pos += payload.length + 8;
+			}
+		} finally {
+			in.close();
+		}
+
+		if(pos < fileLength) {
+			log.warn("Removed a broken record at the end of " + file + " (" + (fileLength - pos) + " bytes)");
+			raf.setLength(pos);
+		}
+		dataLength = pos;
+		log.info(index.size() + " players in " + file);
+	}
+
+	/*
+	 * Get the data of a player
+	 */
+	public CustomProperties get(String name) {
+		CustomProperties data = cache.get(name);
+		if(data != null) return data;
+
+		data = new CustomProperties();
+		try {
+			byte[] record = readLatestRecord(name);
+			if(record != null) {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 8, record.length - 8));
+				in.readUTF();
+				data.load(in);
+			}
+		} catch (IOException e) {
+			log.error("Failed to read player data of " + name, e);
+		}
+		cache.put(name, data);
+		return data;
+	}
+
+	/**
+	 * Read the latest record of a player, which may not be written to the file yet
+	 * @param name Player name
+	 * @return Record (null if the player is new)
+	 * @throws IOException When it can't be read
+	 */
+	protected synchronized byte[] readLatestRecord(String name) throws IOException {
+		byte[] record = writing.get(name);
+		if(record != null) return record;
+
+		Location loc = index.get(name);
+		return (loc != null) ? readRecord(reader, loc) : null;
+	}
+
+	/*
+	 * Mark the data of a player as changed
+	 */
+	public void put(String name, CustomProperties data) {
+		dirty.put(name, data);
+		cache.put(name, data);
+	}
+
+	/*
+	 * Save the changed player data (The records are made now, and written by the journal thread)
+	 */
+	public void commit() {
+		if(dirty.isEmpty()) return;
+
+		HashMap<String, byte[]> records = new HashMap<String, byte[]>();
+		try {
+			for(Map.Entry<String, CustomProperties> e : dirty.entrySet()) {
+				records.put(e.getKey(), createRecord(e.getKey(), e.getValue()));
+			}
+		} catch (IOException e) {
+			log.error("Failed to write player data to " + file, e);
+			return;
+		}
+		dirty.clear();
+
+		synchronized(this) {
+			writing.putAll(records);
+		}
+		journal.execute(new NetServerJournal.Task() {
+			public void run() throws IOException {
+				writeRecords();
+			}
+		});
+	}
+
+	/**
+	 * Journal thread: Appends the records which are not written yet and syncs the file.
+	 * They are removed from writing only after the sync, and a failed write is tried again by the next one.
+	 * @throws IOException When the file can't be written
+	 */
+	protected void writeRecords() throws IOException {
+		HashMap<String, byte[]> records;
+		synchronized(this) {
+			if(writing.isEmpty()) return;
+			records = new HashMap<String, byte[]>(writing);
+		}
+
+		long offset = dataLength;
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		HashMap<String, Location> added = new HashMap<String, Location>();
+		for(Map.Entry<String, byte[]> e : records.entrySet()) {
+			added.put(e.getKey(), new Location(offset + buf.size(), e.getValue().length));
+			buf.write(e.getValue());
+		}
+
+		// Written at once, so a crash only loses the last record
+		raf.seek(offset);
+		raf.write(buf.toByteArray());
+		raf.getFD().sync();
+
+		synchronized(this) {
+			dataLength = offset + buf.size();
+			for(Map.Entry<String, Location> e : added.entrySet()) {
+				Location old = index.put(e.getKey(), e.getValue());
+				if(old != null) garbageSize += old.length;
+
+				// Keep it if it has been committed again while writing
+				if(writing.get(e.getKey()) == records.get(e.getKey())) writing.remove(e.getKey());
+			}
+		}
+
+		if((dataLength >= MIN_COMPACT_SIZE) && (garbageSize * 2 > dataLength)) compact();
+	}
+
+	/*
+	 * Get the number of players
+	 */
+	public synchronized int getSize() {
+		int count = index.size();
+		for(String name : writing.keySet()) {
+			if(!index.containsKey(name)) count++;
+		}
+		return count;
+	}
+
+	/*
+	 * Save everything and close the storage (Closed by the journal thread after the last write)
+	 */
+	public void close() {
+		commit();
+		journal.execute(new NetServerJournal.Task() {
+			public void run() throws IOException {
+				raf.close();
+				synchronized(NetPlayerDataLogStore.this) {
+					reader.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds every player of netserver_playerdata.cfg
+	 * @param prop Properties of all players
+	 * @return Number of players
+	 */
+	public int importProperties(CustomProperties prop) {
+		HashMap<String, CustomProperties> players = new HashMap<String, CustomProperties>();
+
+		for(Object k : prop.keySet()) {
+			String key = (String)k;
+			String name = getPlayerName(key);
+			if(name == null) continue;
+
+			CustomProperties data = players.get(name);
+			if(data == null) {
+				data = new CustomProperties();
+				players.put(name, data);
+			}
+			data.setProperty(key, prop.getProperty(key));
+		}
+
+		for(Map.Entry<String, CustomProperties> e : players.entrySet()) {
+			dirty.put(e.getKey(), e.getValue());
+		}
+		commit();
+		return players.size();
+	}
+
+	/**
+	 * Get the player name from a key of netserver_playerdata.cfg
+	 * @param key Key
+	 * @return Player name (null if it's not a player data key)
+	 */
+	protected static String getPlayerName(String key) {
+		for(int i = 0; i < STYLE_KEY_PREFIX.length; i++) {
+			if(key.startsWith(STYLE_KEY_PREFIX[i])) {
+				int dot = key.indexOf('.', STYLE_KEY_PREFIX[i].length());
+				return (dot < 0) ? null : key.substring(dot + 1);
+			}
+		}
+		if(key.startsWith(PERSONAL_BEST_KEY_PREFIX)) {
+			int dot = key.lastIndexOf('.');
+			return (dot < PERSONAL_BEST_KEY_PREFIX.length()) ? null : key.substring(PERSONAL_BEST_KEY_PREFIX.length(), dot);
+		}
+		return null;
+	}
+
+	/**
+	 * Create a record ([Length][CRC32][Name][Properties])
+	 * @param name Player name
+	 * @param data Player data
+	 * @return Record
+	 * @throws IOException Never (Written to memory)
+	 */
+	protected static byte[] createRecord(String name, CustomProperties data) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		new DataOutputStream(payload).writeUTF(name);
+		data.store(payload, null);
+		byte[] b = payload.toByteArray();
+
+		CRC32 crc = new CRC32();
+		crc.update(b);
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream(b.length + 8);
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeInt(b.length);
+		out.writeInt((int)crc.getValue());
+		out.write(b);
+		return record.toByteArray();
+	}
+
+	/**
+	 * Read a whole record
+	 * @param f File access
+	 * @param loc Position
+	 * @return Record (Including the header)
+	 * @throws IOException When it can't be read
+	 */
+	protected static byte[] readRecord(RandomAccessFile f, Location loc) throws IOException {
+		byte[] record = new byte[loc.length];
+		f.seek(loc.offset);
+		f.readFully(record);
+		return record;
+	}
+
+	/**
+	 * Journal thread: Rewrites the file with the latest record of each player only.
+	 * get waits only while the new file replaces the old one.
+	 * @throws IOException When the file can't be written
+	 */
+	protected void compact() throws IOException {
+		long startTime = System.currentTimeMillis();
+		File temp = new File(file.getPath() + ".tmp");
+		HashMap<String, Location> newIndex = new HashMap<String, Location>(index.size() * 2);
+
+		long pos = 0;
+
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			BufferedOutputStream out = new BufferedOutputStream(fileOut);
+			for(Map.Entry<String, Location> e : index.entrySet()) {
+				byte[] record = readRecord(raf, e.getValue());
+				out.write(record);
+				newIndex.put(e.getKey(), new Location(pos, record.length));
+				pos += record.length;
+			}
+			out.flush();
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+
+		synchronized(this) {
+			raf.close();
+			reader.close();
+			try {
+				NetServerJournal.replaceFile(temp, file);
+				index = newIndex;
+				dataLength = pos;
+				garbageSize = 0;
+			} finally {
+				raf = new RandomAccessFile(file, "rw");
+				reader = new RandomAccessFile(file, "r");
+			}
+		}
+
+		log.info("Compacted " + file + " (" + (System.currentTimeMillis() - startTime) + "ms)");
+	}
+}
@@ -0,0 +1,82 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Player data storage which keeps every player in one properties file (netserver_playerdata.cfg) in memory.
+ * The file is saved through NetServerJournal.
+ */
+public class NetPlayerDataPropertiesStore implements NetPlayerDataStore {
+	/** Properties of all players */
+	protected NetServerJournal.JournaledProperties prop;
+
+	/**
+	 * Constructor
+	 * @param prop Properties of all players (Already loaded)
+	 */
+	public NetPlayerDataPropertiesStore(NetServerJournal.JournaledProperties prop) {
+		this.prop = prop;
+	}
+
+	/*
+	 * Get the data of a player (Every player shares the same properties)
+	 */
+	public CustomProperties get(String name) {
+		return prop;
+	}
+
+	/*
+	 * Mark the data of a player as changed
+	 */
+	public void put(String name, CustomProperties data) {
+	}
+
+	/*
+	 * Save the changed player data
+	 */
+	public void commit() {
+		prop.commit();
+	}
+
+	/*
+	 * Get the number of players
+	 */
+	public int getSize() {
+		return -1;
+	}
+
+	/*
+	 * Save everything and close the storage
+	 */
+	public void close() {
+		prop.commit();
+	}
+}
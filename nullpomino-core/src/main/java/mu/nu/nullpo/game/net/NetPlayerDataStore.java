@@ -0,0 +1,68 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Storage of the player data of NetServer (Ratings, play counts and personal bests of each player).
+ * The data of a player is a CustomProperties with the same keys as netserver_playerdata.cfg
+ * ("p.rating.[STYLE].[NAME]", "sppersonal.[NAME].*" etc.)
+ */
+public interface NetPlayerDataStore {
+	/**
+	 * Get the data of a player. The returned properties can be changed, then given to put.
+	 * @param name Player name
+	 * @return Player data (Empty if the player is new)
+	 */
+	public CustomProperties get(String name);
+
+	/**
+	 * Mark the data of a player as changed (Saved by the next commit)
+	 * @param name Player name
+	 * @param data Player data returned by get
+	 */
+	public void put(String name, CustomProperties data);
+
+	/**
+	 * Save the changed player data
+	 */
+	public void commit();
+
+	/**
+	 * Get the number of players
+	 * @return Number of players (-1 if unknown)
+	 */
+	public int getSize();
+
+	/**
+	 * Save everything and close the storage
+	 */
+	public void close();
+}
@@ -38,9 +38,12 @@ public class NetSPRecord implements Serializable {
 	/** List of custom stats (Each String is NAME;VALUE format) */
 	public LinkedList<String> listCustomStats;
 
-	/** Replay data (Compressed) */
+	/** Replay data (Compressed, empty if saved in NetSPReplayStore) */
 	public String strReplayProp;
 
+	/** Hash of the replay in NetSPReplayStore (Empty if not saved there) */
+	public String strReplayHash;
+
 	/** Time stamp (GMT) */
 	public String strTimeStamp;
 
@@ -178,6 +181,7 @@ public class NetSPRecord implements Serializable {
 		stats = null;
 		listCustomStats = new LinkedList<String>();
 		strReplayProp = "";
+		strReplayHash = "";
 		strTimeStamp = "";
 		gameType = 0;
 		style = 0;
@@ -198,6 +202,7 @@ public class NetSPRecord implements Serializable {
 		listCustomStats = new LinkedList<String>(s.listCustomStats);
 
 		strReplayProp = s.strReplayProp;
+		strReplayHash = s.strReplayHash;
 		strTimeStamp = s.strTimeStamp;
 		gameType = s.gameType;
 		style = s.style;
@@ -257,10 +262,10 @@ public class NetSPRecord implements Serializable {
 
 	/**
 	 * Export to a String Array
-	 * @return String Array (String[9])
+	 * @return String Array (String[10])
 	 */
 	public String[] exportStringArray() {
-		String[] s = new String[9];
+		String[] s = new String[10];
 		s[0] = NetUtil.urlEncode(strPlayerName);
 		s[1] = NetUtil.urlEncode(strModeName);
 		s[2] = NetUtil.urlEncode(strRuleName);
@@ -270,6 +275,7 @@ public class NetSPRecord implements Serializable {
 		s[6] = Integer.toString(gameType);
 		s[7] = Integer.toString(style);
 		s[8] = strTimeStamp;
+		s[9] = strReplayHash;
 		return s;
 	}
 
@@ -291,7 +297,7 @@ public class NetSPRecord implements Serializable {
 
 	/**
 	 * Import from a String Array
-	 * @param s String Array (String[9])
+	 * @param s String Array (String[10])
 	 */
 	public void importStringArray(String[] s) {
 		strPlayerName = NetUtil.urlDecode(s[0]);
@@ -305,6 +311,7 @@ public class NetSPRecord implements Serializable {
 		gameType = Integer.parseInt(s[6]);
 		style = Integer.parseInt(s[7]);
 		strTimeStamp = (s.length > 8) ? s[8] : "";
+		strReplayHash = (s.length > 9) ? s[9] : "";
 	}
 
 	/**
@@ -0,0 +1,193 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Storage of single player replays on the server.
+ * Each replay (The compressed String of NetSPRecord.strReplayProp) is saved in its own file named by its SHA-1 hash,
+ * so the leaderboards only keep the hash and the same replay is never saved twice.
+ */
+public class NetSPReplayStore {
+	/** Log */
+	static Logger log = Logger.getLogger(NetSPReplayStore.class);
+
+	/** Default directory */
+	public static final String DEFAULT_DIRECTORY = "config/setting/netserver_spreplay";
+
+	/** Directory */
+	protected File directory;
+
+	/**
+	 * Constructor
+	 * @param directory Directory (Created when the first replay is saved)
+	 */
+	public NetSPReplayStore(String directory) {
+		this.directory = new File(directory);
+	}
+
+	/**
+	 * Get the hash of a replay
+	 * @param strReplayProp Replay data (Compressed)
+	 * @return SHA-1 hash (40 hex digits)
+	 */
+	public static String getHash(String strReplayProp) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(NetUtil.stringToBytes(strReplayProp));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for(int i = 0; i < digest.length; i++) {
+				sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-1 Not Supported", e);
+		}
+	}
+
+	/**
+	 * Get the file of a replay
+	 * @param hash Hash
+	 * @return File (Grouped in subdirectories by the first 2 digits)
+	 */
+	protected File getFile(String hash) {
+		return new File(new File(directory, hash.substring(0, 2)), hash + ".dat");
+	}
+
+	/**
+	 * Checks if a hash is valid (So it can be used as a filename)
+	 * @param hash Hash
+	 * @return true if valid
+	 */
+	public static boolean isValidHash(String hash) {
+		if((hash == null) || (hash.length() != 40)) return false;
+		for(int i = 0; i < hash.length(); i++) {
+			if(Character.digit(hash.charAt(i), 16) < 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Saves a replay (Nothing is written if it's already saved)
+	 * @param strReplayProp Replay data (Compressed)
+	 * @return Hash of the replay
+	 * @throws IOException If the replay can't be written
+	 */
+	public String put(String strReplayProp) throws IOException {
+		String hash = getHash(strReplayProp);
+		File file = getFile(hash);
+		if(file.exists()) return hash;
+
+		File dir = file.getParentFile();
+		if(!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Couldn't create " + dir);
+
+		// Write to a temporary file first so a crash never leaves a broken replay
+		File temp = new File(dir, hash + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(NetUtil.stringToBytes(strReplayProp));
+		} finally {
+			out.close();
+		}
+		if(!temp.renameTo(file) && !file.exists()) {
+			temp.delete();
+			throw new IOException("Couldn't rename " + temp + " to " + file);
+		}
+		temp.delete();
+		return hash;
+	}
+
+	/**
+	 * Loads a replay
+	 * @param hash Hash
+	 * @return Replay data (Compressed), or null if not found
+	 */
+	public String get(String hash) {
+		if(!isValidHash(hash)) return null;
+
+		File file = getFile(hash);
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream((int)file.length());
+				byte[] buf = new byte[8192];
+				int len;
+				while((len = in.read(buf)) != -1) out.write(buf, 0, len);
+				return NetUtil.bytesToString(out.toByteArray());
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.warn("Couldn't load replay " + hash, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Moves the replay of a record to this store.
+	 * strReplayProp is emptied and strReplayHash is set, so the record only keeps the hash in memory and in the leaderboard files.
+	 * @param record Record
+	 * @return true if the record has been changed
+	 */
+	public boolean store(NetSPRecord record) {
+		if((record.strReplayProp == null) || (record.strReplayProp.length() == 0)) return false;
+
+		try {
+			record.strReplayHash = put(record.strReplayProp);
+			record.strReplayProp = "";
+			return true;
+		} catch (IOException e) {
+			// Keep the replay in the record
+			log.error("Couldn't save replay of " + record.strPlayerName, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Get the replay of a record
+	 * @param record Record
+	 * @return Replay data (Compressed), empty if the record has no replay or it's not found
+	 */
+	public String getReplay(NetSPRecord record) {
+		if((record.strReplayProp != null) && (record.strReplayProp.length() > 0)) return record.strReplayProp;
+		if((record.strReplayHash == null) || (record.strReplayHash.length() == 0)) return "";
+
+		String strReplay = get(record.strReplayHash);
+		return (strReplay == null) ? "" : strReplay;
+	}
+}
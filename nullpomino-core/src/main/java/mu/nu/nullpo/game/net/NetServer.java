@@ -30,11 +30,11 @@ package mu.nu.nullpo.game.net;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.CancelledKeyException;
@@ -117,16 +117,19 @@ public class NetServer {
 	private static CustomProperties propPresets;
 
 	/** Properties of player data list (mainly for rating) */
-	private static CustomProperties propPlayerData;
+	private static NetServerJournal.JournaledProperties propPlayerData;
+
+	/** Player data storage */
+	private static NetPlayerDataStore playerDataStore;
 
 	/** Properties of multiplayer leaderboard */
-	private static CustomProperties propMPRanking;
+	private static NetServerJournal.JournaledProperties propMPRanking;
 
 	/** Properties of single player all-time leaderboard */
-	private static CustomProperties propSPRankingAlltime;
+	private static NetServerJournal.JournaledProperties propSPRankingAlltime;
 
 	/** Properties of single player daily leaderboard */
-	private static CustomProperties propSPRankingDaily;
+	private static NetServerJournal.JournaledProperties propSPRankingDaily;
 
 	/** Properties of single player personal best */
 	private static CustomProperties propSPPersonalBest;
@@ -203,6 +206,12 @@ public class NetServer {
 	/** Last-update time of single player daily leaderboard */
 	private static Calendar spDailyLastUpdate;
 
+	/** Single player replays (Leaderboards and personal bests only keep their hashes) */
+	private static NetSPReplayStore spReplayStore;
+
+	/** Journal of player data, leaderboards, ban list and lobby chat */
+	private static NetServerJournal journal;
+
 	/** Ban list */
 	private static LinkedList<NetServerBan> banList;
 
@@ -516,13 +525,7 @@ public class NetServer {
 			}
 		}
 
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_mpranking.cfg");
-			propMPRanking.store(out, "NullpoMino NetServer Multiplayer Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write multiplayer ranking data", e);
-		}
+		propMPRanking.commit();
 	}
 
 	/**
@@ -624,6 +627,22 @@ public class NetServer {
 		}
 	}
 
+	/**
+	 * Move the replays which are still in the leaderboards (Saved by older versions) to the replay store
+	 * @return true if a replay has been moved
+	 */
+	private static boolean storeSPRankingReplays() {
+		boolean changed = false;
+		for(NetSPRanking r : spRankingListAlltime) {
+			for(NetSPRecord record : r.listRecord) changed |= spReplayStore.store(record);
+		}
+		for(NetSPRanking r : spRankingListDaily) {
+			for(NetSPRecord record : r.listRecord) changed |= spReplayStore.store(record);
+		}
+		if(changed) log.info("Moved single player replays to the replay store");
+		return changed;
+	}
+
 	/**
 	 * Get specific all-time NetSPRanking
 	 * @param rule Rule Name
@@ -713,40 +732,75 @@ public class NetServer {
 		for(NetSPRanking r: spRankingListAlltime) {
 			r.writeProperty(propSPRankingAlltime);
 		}
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_spranking.cfg");
-			propSPRankingAlltime.store(out, "NullpoMino NetServer Single Player All-time Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write single player all-time ranking data", e);
-		}
+		propSPRankingAlltime.commit();
 
 		// Daily
 		for(NetSPRanking r: spRankingListDaily) {
 			r.writeProperty(propSPRankingDaily);
 		}
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_spranking_daily.cfg");
-			propSPRankingDaily.store(out, "NullpoMino NetServer Single Player Daily Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write single player daily ranking data", e);
+		propSPRankingDaily.commit();
+	}
+
+	/**
+	 * Open the player data storage selected by netserver.playerDataStore ("log" or "properties")
+	 * @return Player data storage
+	 */
+	private static NetPlayerDataStore openPlayerDataStore() {
+		String type = propServer.getProperty("netserver.playerDataStore", "log");
+
+		if(type.equals("log")) {
+			String filename = propServer.getProperty("netserver.playerDataFile", NetPlayerDataLogStore.DEFAULT_FILE);
+			int cacheSize = propServer.getProperty("netserver.playerDataCacheSize", NetPlayerDataLogStore.DEFAULT_CACHE_SIZE);
+			try {
+				NetPlayerDataLogStore store = new NetPlayerDataLogStore(filename, cacheSize, journal);
+
+				// Import netserver_playerdata.cfg of older versions
+				if(store.isEmpty()) {
+					loadPlayerDataFile();
+					if(!propPlayerData.isEmpty()) {
+						int count = store.importProperties(propPlayerData);
+						log.info("Imported " + count + " players from netserver_playerdata.cfg");
+						propPlayerData.clear();
+					}
+				}
+				return store;
+			} catch (IOException e) {
+				log.error("Failed to open player data file " + filename + ", using netserver_playerdata.cfg instead", e);
+			}
+		} else if(!type.equals("properties")) {
+			log.warn("Unknown player data storage: " + type);
 		}
+
+		loadPlayerDataFile();
+		return new NetPlayerDataPropertiesStore(propPlayerData);
 	}
 
 	/**
-	 * Get player data from propPlayerData
+	 * Load player data file (netserver_playerdata.cfg) to propPlayerData
+	 */
+	private static void loadPlayerDataFile() {
+		try {
+			FileInputStream in = new FileInputStream("config/setting/netserver_playerdata.cfg");
+			propPlayerData.load(in);
+			in.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Get player data from the player data storage
 	 * @param pInfo NetPlayerInfo
 	 */
 	private static void getPlayerDataFromProperty(NetPlayerInfo pInfo) {
 		if(pInfo.isTripUse) {
+			CustomProperties prop = playerDataStore.get(pInfo.strName);
 			for(int i = 0; i < GameEngine.MAX_GAMESTYLE; i++) {
-				pInfo.rating[i] = propPlayerData.getProperty("p.rating." + i + "." + pInfo.strName, ratingDefault);
-				pInfo.playCount[i] = propPlayerData.getProperty("p.playCount." + i + "." + pInfo.strName, 0);
-				pInfo.winCount[i] = propPlayerData.getProperty("p.winCount." + i + "." + pInfo.strName, 0);
+				pInfo.rating[i] = prop.getProperty("p.rating." + i + "." + pInfo.strName, ratingDefault);
+				pInfo.playCount[i] = prop.getProperty("p.playCount." + i + "." + pInfo.strName, 0);
+				pInfo.winCount[i] = prop.getProperty("p.winCount." + i + "." + pInfo.strName, 0);
 			}
 			pInfo.spPersonalBest.strPlayerName = pInfo.strName;
-			pInfo.spPersonalBest.readProperty(propPlayerData);
+			pInfo.spPersonalBest.readProperty(prop);
+			for(NetSPRecord record : pInfo.spPersonalBest.listRecord) spReplayStore.store(record);
 		} else {
 			for(int i = 0; i < GameEngine.MAX_GAMESTYLE; i++) {
 				pInfo.rating[i] = ratingDefault;
@@ -758,32 +812,28 @@ public class NetServer {
 	}
 
 	/**
-	 * Set player data to propPlayerData
+	 * Set player data to the player data storage (Saved by writePlayerDataToFile)
 	 * @param pInfo NetPlayerInfo
 	 */
 	private static void setPlayerDataToProperty(NetPlayerInfo pInfo) {
 		if(pInfo.isTripUse) {
+			CustomProperties prop = playerDataStore.get(pInfo.strName);
 			for(int i = 0; i < GameEngine.MAX_GAMESTYLE; i++) {
-				propPlayerData.setProperty("p.rating." + i + "." + pInfo.strName, pInfo.rating[i]);
-				propPlayerData.setProperty("p.playCount." + i + "." + pInfo.strName, pInfo.playCount[i]);
-				propPlayerData.setProperty("p.winCount." + i + "." + pInfo.strName, pInfo.winCount[i]);
+				prop.setProperty("p.rating." + i + "." + pInfo.strName, pInfo.rating[i]);
+				prop.setProperty("p.playCount." + i + "." + pInfo.strName, pInfo.playCount[i]);
+				prop.setProperty("p.winCount." + i + "." + pInfo.strName, pInfo.winCount[i]);
 			}
 			pInfo.spPersonalBest.strPlayerName = pInfo.strName;
-			pInfo.spPersonalBest.writeProperty(propPlayerData);
+			pInfo.spPersonalBest.writeProperty(prop);
+			playerDataStore.put(pInfo.strName, prop);
 		}
 	}
 
 	/**
-	 * Write player data properties (propPlayerData) to a file
+	 * Save the changed player data
 	 */
 	private static void writePlayerDataToFile() {
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_playerdata.cfg");
-			propPlayerData.store(out, "NullpoMino NetServer PlayerData");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write player data", e);
-		}
+		playerDataStore.commit();
 	}
 
 	/**
@@ -814,21 +864,17 @@ public class NetServer {
 	 * Write ban list to a file
 	 */
 	private static void saveBanList() {
-		try {
-			FileWriter outFile = new FileWriter("config/setting/netserver_banlist.cfg");
-			PrintWriter out = new PrintWriter(outFile);
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
 
-			for(NetServerBan ban: banList) {
-				out.println(ban.exportString());
-			}
+		for(NetServerBan ban: banList) {
+			writer.println(ban.exportString());
+		}
 
-			out.flush();
-			out.close();
+		writer.flush();
+		journal.writeTextFile("config/setting/netserver_banlist.cfg", out.toString());
 
-			log.info("Ban list saved");
-		} catch (Exception e) {
-			log.error("Failed to save ban list", e);
-		}
+		log.info("Ban list saved");
 	}
 
 	/**
@@ -862,23 +908,19 @@ public class NetServer {
 	 * Save lobby chat history file
 	 */
 	private static void saveLobbyChatHistory() {
-		try {
-			FileWriter outFile = new FileWriter("config/setting/netserver_lobbychat.cfg");
-			PrintWriter out = new PrintWriter(outFile);
+		StringWriter out = new StringWriter();
+		PrintWriter writer = new PrintWriter(out);
 
-			while(lobbyChatList.size() > maxLobbyChatHistory) lobbyChatList.removeFirst();
+		while(lobbyChatList.size() > maxLobbyChatHistory) lobbyChatList.removeFirst();
 
-			for(NetChatMessage chat: lobbyChatList) {
-				out.println(chat.exportString());
-			}
+		for(NetChatMessage chat: lobbyChatList) {
+			writer.println(chat.exportString());
+		}
 
-			out.flush();
-			out.close();
+		writer.flush();
+		journal.writeTextFile("config/setting/netserver_lobbychat.cfg", out.toString());
 
-			log.debug("Lobby chat history saved");
-		} catch (Exception e) {
-			log.error("Failed to save lobby chat history file", e);
-		}
+		log.debug("Lobby chat history saved");
 	}
 
 	/**
@@ -979,16 +1021,20 @@ public class NetServer {
 	private void init(int port) {
 		this.port = port;
 
-		// Load player data file
-		propPlayerData = new CustomProperties();
-		try {
-			FileInputStream in = new FileInputStream("config/setting/netserver_playerdata.cfg");
-			propPlayerData.load(in);
-			in.close();
-		} catch (IOException e) {}
+		// Apply the changes left in the journal by the last run
+		journal = new NetServerJournal(propServer.getProperty("netserver.journalFile", NetServerJournal.DEFAULT_FILE));
+		journal.setCompactSize(propServer.getProperty("netserver.journalCompactSize", NetServerJournal.DEFAULT_COMPACT_SIZE));
+		journal.setCompactInterval(propServer.getProperty("netserver.journalCompactInterval", NetServerJournal.DEFAULT_COMPACT_INTERVAL));
+		propPlayerData = journal.createProperties("config/setting/netserver_playerdata.cfg", "NullpoMino NetServer PlayerData");
+		propMPRanking = journal.createProperties("config/setting/netserver_mpranking.cfg", "NullpoMino NetServer Multiplayer Leaderboard");
+		propSPRankingAlltime = journal.createProperties("config/setting/netserver_spranking.cfg", "NullpoMino NetServer Single Player All-time Leaderboard");
+		propSPRankingDaily = journal.createProperties("config/setting/netserver_spranking_daily.cfg", "NullpoMino NetServer Single Player Daily Leaderboard");
+		journal.recover();
+
+		// Open player data
+		playerDataStore = openPlayerDataStore();
 
 		// Load multiplayer leaderboard file
-		propMPRanking = new CustomProperties();
 		try {
 			FileInputStream in = new FileInputStream("config/setting/netserver_mpranking.cfg");
 			propMPRanking.load(in);
@@ -996,14 +1042,12 @@ public class NetServer {
 		} catch (IOException e) {}
 
 		// Load single player leaderboard file
-		propSPRankingAlltime = new CustomProperties();
 		try {
 			FileInputStream in = new FileInputStream("config/setting/netserver_spranking.cfg");
 			propSPRankingAlltime.load(in);
 			in.close();
 		} catch (IOException e) {}
 
-		propSPRankingDaily = new CustomProperties();
 		try {
 			FileInputStream in = new FileInputStream("config/setting/netserver_spranking_daily.cfg");
 			propSPRankingDaily.load(in);
@@ -1018,6 +1062,9 @@ public class NetServer {
 			in.close();
 		} catch (IOException e) {}
 
+		// Changes from here are saved through the journal
+		journal.start();
+
 		// Load settings
 		allowDNSAccess = propServer.getProperty("netserver.allowDNSAccess", true);
 		timeoutTime = propServer.getProperty("netserver.timeoutTime", DEFAULT_TIMEOUT_TIME);
@@ -1034,6 +1081,7 @@ public class NetServer {
 		spMinGameRate = propServer.getProperty("netserver.spMinGameRate", DEFAULT_MIN_GAMERATE);
 		maxLobbyChatHistory = propServer.getProperty("netserver.maxLobbyChatHistory", DEFAULT_MAX_LOBBYCHAT_HISTORY);
 		maxRoomChatHistory = propServer.getProperty("netserver.maxRoomChatHistory", DEFAULT_MAX_ROOMCHAT_HISTORY);
+		spReplayStore = new NetSPReplayStore(propServer.getProperty("netserver.spReplayDirectory", NetSPReplayStore.DEFAULT_DIRECTORY));
 
 		// Load rules for rated game
 		loadRuleList();
@@ -1049,6 +1097,7 @@ public class NetServer {
 		loadSPRankingList();
 		propSPRankingAlltime.clear();	// Clear all entries in order to reduce file size
 		propSPRankingDaily.clear();
+		if(storeSPRankingReplays()) writeSPRankingToFile();
 
 		// Load ban list
 		loadBanList();
@@ -1178,6 +1227,10 @@ public class NetServer {
 			}
 		}
 
+		// Save everything left in the journal
+		playerDataStore.close();
+		journal.shutdown();
+
 		log.warn("Server Shutdown!");
 	}
 
@@ -2583,6 +2636,7 @@ public class NetServer {
 						record.strRuleName = rule;
 						record.style = roomInfo.style;
 						record.strTimeStamp = GeneralUtil.exportCalendarString();
+						record.strReplayHash = "";	// Only set by spReplayStore, never by the client
 
 						float gamerate = record.stats.gamerate * 100f;
 
@@ -2596,6 +2650,11 @@ public class NetServer {
 						if(rankingDaily == null) log.warn("Daily ranking not found:" + record.strModeName);
 
 						if((ranking != null || rankingDaily != null) && (gamerate >= spMinGameRate)) {
+							// Save the replay only if the record is going to be kept
+							boolean isKept = (ranking != null) && (ranking.isNewRecord(record) || pInfo.spPersonalBest.isNewRecord(ranking.rankingType, record));
+							if(rankingDaily != null) isKept |= rankingDaily.isNewRecord(record);
+							if(isKept) spReplayStore.store(record);
+
 							if(ranking != null)
 								rank = ranking.registerRecord(record);
 							if(rankingDaily != null)
@@ -2715,11 +2774,12 @@ public class NetServer {
 				if(record == null && !isDaily) record = pInfo.spPersonalBest.getRecord(strRule, strMode, gameType);
 
 				if(record != null) {
+					String strReplayProp = spReplayStore.getReplay(record);
 					Adler32 checksumObj = new Adler32();
-					checksumObj.update(NetUtil.stringToBytes(record.strReplayProp));
+					checksumObj.update(NetUtil.stringToBytes(strReplayProp));
 					long sChecksum = checksumObj.getValue();
 
-					String strMsg = "spdownload\t" + sChecksum + "\t" + record.strReplayProp + "\n";
+					String strMsg = "spdownload\t" + sChecksum + "\t" + strReplayProp + "\n";
 					send(client, strMsg);
 				} else {
 					log.warn("Record not found (Mode:" + strMode + ", Rule:" + strRule + ", Type:" + gameType + " Name:" + strName + ")");
@@ -2920,16 +2980,17 @@ public class NetServer {
 			boolean playerDataChange = false;
 			boolean mpRankingDataChange = false;
 			boolean spRankingDataChange = false;
+			CustomProperties propPlayer = playerDataStore.get(strName);
 
 			for(int i = 0; i < GameEngine.MAX_GAMESTYLE; i++) {
-				if(propPlayerData.getProperty("p.rating." + i + "." + strName) != null) {
-					propPlayerData.setProperty("p.rating." + i + "." + strName, ratingDefault);
-					propPlayerData.setProperty("p.playCount." + i + "." + strName, 0);
-					propPlayerData.setProperty("p.winCount." + i + "." + strName, 0);
+				if(propPlayer.getProperty("p.rating." + i + "." + strName) != null) {
+					propPlayer.setProperty("p.rating." + i + "." + strName, ratingDefault);
+					propPlayer.setProperty("p.playCount." + i + "." + strName, 0);
+					propPlayer.setProperty("p.winCount." + i + "." + strName, 0);
 					playerDataChange = true;
 				}
-				if(propPlayerData.getProperty("sppersonal." + strName + ".numRecords") != null) {
-					propPlayerData.setProperty("sppersonal." + strName + ".numRecords", 0);
+				if(propPlayer.getProperty("sppersonal." + strName + ".numRecords") != null) {
+					propPlayer.setProperty("sppersonal." + strName + ".numRecords", 0);
 					playerDataChange = true;
 				}
 
@@ -2964,7 +3025,10 @@ public class NetServer {
 
 			sendAdminResult(client, "playerdelete\t" + strName);
 
-			if(playerDataChange) writePlayerDataToFile();
+			if(playerDataChange) {
+				playerDataStore.put(strName, propPlayer);
+				writePlayerDataToFile();
+			}
 			if(mpRankingDataChange) writeMPRankingToFile();
 			if(spRankingDataChange) writeSPRankingToFile();
 		}
@@ -0,0 +1,655 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Write-ahead log of the files saved by NetServer (Player data, leaderboards, ban list and lobby chat).
+ * Changes are appended to one journal file by a background thread instead of rewriting the whole files,
+ * and the files are rewritten (Compaction) only when the journal gets large or from time to time.
+ * Files are replaced by renaming a temporary file, so a crash never leaves a half written file,
+ * and changes which were in the journal but not in the files yet are applied by recover() at the next startup.
+ * Other files can be written by the same thread with execute, in order with the records.
+ */
+public class NetServerJournal {
+	/** Log */
+	static Logger log = Logger.getLogger(NetServerJournal.class);
+
+	/** Default journal file */
+	public static final String DEFAULT_FILE = "config/setting/netserver_journal.dat";
+
+	/** Default journal size which starts a compaction (Bytes) */
+	public static final long DEFAULT_COMPACT_SIZE = 1024 * 1024;
+
+	/** Default time between compactions when something has changed (Milliseconds) */
+	public static final long DEFAULT_COMPACT_INTERVAL = 1000 * 60 * 10;
+
+	/** Operation: Set a property */
+	protected static final int OP_SET = 0;
+
+	/** Operation: Remove a property */
+	protected static final int OP_REMOVE = 1;
+
+	/** Operation: Replace a whole text file */
+	protected static final int OP_TEXT = 2;
+
+	/**
+	 * CustomProperties saved through the journal.
+	 * After NetServerJournal.start, every change is kept until commit, which adds them to the journal as one record.
+	 */
+	public static class JournaledProperties extends CustomProperties {
+		/** Serial version */
+		private static final long serialVersionUID = 1L;
+
+		/** Journal */
+		protected transient NetServerJournal journal;
+
+		/** Filename */
+		protected String filename;
+
+		/** Comment of the file */
+		protected String comment;
+
+		/** Changes not committed yet */
+		protected transient Batch pending;
+
+		/**
+		 * Constructor
+		 * @param journal Journal
+		 * @param filename Filename
+		 * @param comment Comment of the file
+		 */
+		protected JournaledProperties(NetServerJournal journal, String filename, String comment) {
+			this.journal = journal;
+			this.filename = filename;
+			this.comment = comment;
+		}
+
+		/*
+		 * Set a value
+		 */
+		@Override
+		public synchronized Object put(Object key, Object value) {
+			Object old = super.put(key, value);
+			if((journal != null) && journal.started && (key instanceof String) && (value instanceof String) && !value.equals(old)) {
+				if(pending == null) pending = new Batch();
+				pending.add(OP_SET, filename, (String)key, (String)value);
+			}
+			return old;
+		}
+
+		/*
+		 * Remove a value
+		 */
+		@Override
+		public synchronized Object remove(Object key) {
+			Object old = super.remove(key);
+			if((journal != null) && journal.started && (key instanceof String) && (old != null)) {
+				if(pending == null) pending = new Batch();
+				pending.add(OP_REMOVE, filename, (String)key, null);
+			}
+			return old;
+		}
+
+		/**
+		 * Adds the changes since the last commit to the journal (Returns at once, they are written by the background thread)
+		 */
+		public synchronized void commit() {
+			if(pending != null) {
+				journal.enqueue(pending, filename);
+				pending = null;
+			}
+		}
+	}
+
+	/**
+	 * Work done by the background thread (Writing a file which isn't in the journal)
+	 */
+	public interface Task {
+		/**
+		 * Do the work
+		 * @throws IOException When a file can't be written
+		 */
+		void run() throws IOException;
+	}
+
+	/**
+	 * Journal record (A list of operations which are applied together)
+	 */
+	protected static class Batch {
+		/** Encoded operations */
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		/** Output stream for bytes */
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		/** Number of operations */
+		int count;
+
+		/**
+		 * Add an operation
+		 * @param op Operation (OP_*)
+		 * @param filename Filename
+		 * @param key Key (Ignored by OP_TEXT)
+		 * @param value Value (null for OP_REMOVE)
+		 */
+		void add(int op, String filename, String key, String value) {
+			try {
+				out.writeByte(op);
+				out.writeUTF(filename);
+				if(op != OP_TEXT) out.writeUTF(key);
+				if(value != null) {
+					byte[] b = NetUtil.stringToBytes(value);
+					out.writeInt(b.length);
+					out.write(b);
+				}
+			} catch (IOException e) {
+				throw new Error("ByteArrayOutputStream failed", e);
+			}
+			count++;
+		}
+
+		/**
+		 * Get the record as written to the journal ([Length][CRC32][Number of operations][Operations])
+		 * @return Record
+		 */
+		byte[] toRecord() {
+			byte[] ops = bytes.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(count >>> 24);
+			crc.update(count >>> 16);
+			crc.update(count >>> 8);
+			crc.update(count);
+			crc.update(ops);
+
+			ByteArrayOutputStream b = new ByteArrayOutputStream(ops.length + 12);
+			DataOutputStream d = new DataOutputStream(b);
+			try {
+				d.writeInt(ops.length + 4);
+				d.writeInt((int)crc.getValue());
+				d.writeInt(count);
+				d.write(ops);
+			} catch (IOException e) {
+				throw new Error("ByteArrayOutputStream failed", e);
+			}
+			return b.toByteArray();
+		}
+	}
+
+	/**
+	 * Record or task waiting to be done
+	 */
+	protected static class QueueEntry {
+		/** Record (null for a task) */
+		final byte[] record;
+
+		/** File changed by the record */
+		final String filename;
+
+		/** Task (null for a record) */
+		final Task task;
+
+		/**
+		 * Constructor
+		 * @param record Record
+		 * @param filename File changed by the record
+		 */
+		QueueEntry(byte[] record, String filename) {
+			this.record = record;
+			this.filename = filename;
+			this.task = null;
+		}
+
+		/**
+		 * Constructor
+		 * @param task Task
+		 */
+		QueueEntry(Task task) {
+			this.record = null;
+			this.filename = null;
+			this.task = task;
+		}
+	}
+
+	/** Journal file */
+	protected File file;
+
+	/** Journal size which starts a compaction */
+	protected long compactSize = DEFAULT_COMPACT_SIZE;
+
+	/** Time between compactions when something has changed */
+	protected long compactInterval = DEFAULT_COMPACT_INTERVAL;
+
+	/** Properties files */
+	protected Map<String, JournaledProperties> propertiesMap = new LinkedHashMap<String, JournaledProperties>();
+
+	/** Latest content of the text files */
+	protected Map<String, String> textMap = new ConcurrentHashMap<String, String>();
+
+	/** Records waiting to be written */
+	protected LinkedBlockingQueue<QueueEntry> queue = new LinkedBlockingQueue<QueueEntry>();
+
+	/** true after start (Changes are journaled) */
+	protected volatile boolean started;
+
+	/** true when shutdown is requested */
+	protected volatile boolean shutdownRequested;
+
+	/** Background thread */
+	protected Thread thread;
+
+	/** Journal output (Used only by the background thread) */
+	protected FileOutputStream out;
+
+	/** Current journal size */
+	protected long size;
+
+	/** Files changed since the last compaction */
+	protected LinkedHashSet<String> dirtyFiles = new LinkedHashSet<String>();
+
+	/** Time of the last compaction */
+	protected long lastCompactTime;
+
+	/**
+	 * Constructor
+	 * @param filename Journal filename
+	 */
+	public NetServerJournal(String filename) {
+		file = new File(filename);
+	}
+
+	/**
+	 * Set the journal size which starts a compaction
+	 * @param compactSize Size (Bytes)
+	 */
+	public void setCompactSize(long compactSize) {
+		this.compactSize = compactSize;
+	}
+
+	/**
+	 * Set the time between compactions when something has changed
+	 * @param compactInterval Time (Milliseconds)
+	 */
+	public void setCompactInterval(long compactInterval) {
+		this.compactInterval = compactInterval;
+	}
+
+	/**
+	 * Create a CustomProperties saved through this journal (Call before recover)
+	 * @param filename Filename
+	 * @param comment Comment of the file
+	 * @return Empty properties (Load the file into it after recover)
+	 */
+	public JournaledProperties createProperties(String filename, String comment) {
+		JournaledProperties prop = new JournaledProperties(this, filename, comment);
+		propertiesMap.put(filename, prop);
+		return prop;
+	}
+
+	/**
+	 * Applies the journal left by the last run to the files, then deletes it.
+	 * Call before loading the files. A broken record at the end (Crash while writing it) is ignored.
+	 */
+	public void recover() {
+		if(!file.exists()) return;
+
+		HashMap<String, CustomProperties> changedProps = new LinkedHashMap<String, CustomProperties>();
+		HashMap<String, String> changedTexts = new LinkedHashMap<String, String>();
+		int records = 0;
+
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				while(true) {
+					byte[] ops;
+					int count;
+					try {
+						int length = in.readInt();
+						int crcValue = in.readInt();
+						if((length < 4) || (length > file.length())) break;
+						byte[] data = new byte[length];
+						in.readFully(data);
+
+						CRC32 crc = new CRC32();
+						crc.update(data);
+						if((int)crc.getValue() != crcValue) break;
+
+						count = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+						ops = new byte[length - 4];
+						System.arraycopy(data, 4, ops, 0, ops.length);
+					} catch (EOFException e) {
+						break;
+					}
+
+					DataInputStream d = new DataInputStream(new ByteArrayInputStream(ops));
+					for(int i = 0; i < count; i++) {
+						int op = d.readByte();
+						String filename = d.readUTF();
+
+						if(op == OP_TEXT) {
+							changedTexts.put(filename, readString(d));
+						} else {
+							CustomProperties prop = changedProps.get(filename);
+							if(prop == null) {
+								prop = loadProperties(filename);
+								changedProps.put(filename, prop);
+							}
+							String key = d.readUTF();
+							if(op == OP_SET) prop.setProperty(key, readString(d));
+							else prop.remove(key);
+						}
+					}
+					records++;
+				}
+			} finally {
+				in.close();
+			}
+
+			for(Map.Entry<String, CustomProperties> e : changedProps.entrySet()) {
+				JournaledProperties registered = propertiesMap.get(e.getKey());
+				writeProperties(e.getKey(), e.getValue(), (registered != null) ? registered.comment : null);
+			}
+			for(Map.Entry<String, String> e : changedTexts.entrySet()) {
+				writeText(e.getKey(), e.getValue());
+			}
+
+			if(!file.delete()) log.warn("Couldn't delete the journal " + file);
+			log.info("Applied " + records + " journal records to " + (changedProps.size() + changedTexts.size()) + " files");
+		} catch (IOException e) {
+			log.error("Failed to recover from the journal " + file, e);
+		}
+	}
+
+	/**
+	 * Starts journaling changes and the background thread
+	 */
+	public void start() {
+		try {
+			out = new FileOutputStream(file, true);
+			size = file.length();
+		} catch (IOException e) {
+			log.error("Failed to open the journal " + file, e);
+		}
+		lastCompactTime = System.currentTimeMillis();
+		started = true;
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "NetServerJournal");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes every remaining record, rewrites the changed files and stops the background thread
+	 */
+	public void shutdown() {
+		if(thread == null) return;
+
+		shutdownRequested = true;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Replace a text file through the journal (Returns at once)
+	 * @param filename Filename
+	 * @param content New content
+	 */
+	public void writeTextFile(String filename, String content) {
+		textMap.put(filename, content);
+		if(started) {
+			Batch b = new Batch();
+			b.add(OP_TEXT, filename, null, content);
+			enqueue(b, filename);
+		} else {
+			try {
+				writeText(filename, content);
+			} catch (IOException e) {
+				log.error("Failed to write " + filename, e);
+			}
+		}
+	}
+
+	/**
+	 * Run a task on the background thread after the records and tasks queued before it
+	 * (Returns at once. Before start, the task is run at once by the caller)
+	 * @param task Task
+	 */
+	public void execute(Task task) {
+		if(started) {
+			queue.add(new QueueEntry(task));
+		} else {
+			runTask(task);
+		}
+	}
+
+	/**
+	 * Add a record to the queue of the background thread
+	 * @param b Operations
+	 * @param filename File changed by the operations
+	 */
+	protected void enqueue(Batch b, String filename) {
+		queue.add(new QueueEntry(b.toRecord(), filename));
+	}
+
+	/**
+	 * Run a task and log its error
+	 * @param task Task
+	 */
+	protected void runTask(Task task) {
+		try {
+			task.run();
+		} catch (IOException e) {
+			log.error("Failed to run a journal task", e);
+		}
+	}
+
+	/**
+	 * Background thread: Writes the queued records, and compacts the journal when needed
+	 */
+	protected void writeLoop() {
+		while(true) {
+			try {
+				QueueEntry entry = queue.poll(1, TimeUnit.SECONDS);
+				if(entry != null) {
+					// Write every queued record, then sync once
+					do {
+						if(entry.task != null) {
+							runTask(entry.task);
+						} else {
+							if(out != null) {
+								out.write(entry.record);
+								size += entry.record.length;
+							}
+							dirtyFiles.add(entry.filename);
+						}
+					} while((entry = queue.poll()) != null);
+					if(out != null) out.getFD().sync();
+				} else if(shutdownRequested) {
+					break;
+				}
+
+				if(!dirtyFiles.isEmpty() &&
+				   ((size >= compactSize) || (System.currentTimeMillis() - lastCompactTime >= compactInterval)))
+				{
+					compact();
+				}
+			} catch (InterruptedException e) {
+				break;
+			} catch (IOException e) {
+				log.error("Failed to write the journal " + file, e);
+			}
+		}
+
+		try {
+			if(!dirtyFiles.isEmpty()) compact();
+			if(out != null) out.close();
+		} catch (IOException e) {
+			log.error("Failed to close the journal " + file, e);
+		}
+	}
+
+	/**
+	 * Rewrites the changed files and empties the journal.
+	 * Records queued while doing this are written to the new journal. They may already be in the files,
+	 * but applying them again at recovery gives the same result.
+	 * @throws IOException When a file can't be written
+	 */
+	protected void compact() throws IOException {
+		long startTime = System.currentTimeMillis();
+
+		for(String filename : dirtyFiles) {
+			JournaledProperties prop = propertiesMap.get(filename);
+			if(prop != null) {
+				writeProperties(filename, (CustomProperties)prop.clone(), prop.comment);
+			} else {
+				String content = textMap.get(filename);
+				if(content != null) writeText(filename, content);
+			}
+		}
+
+		if(out != null) out.close();
+		out = new FileOutputStream(file, false);
+		out.getFD().sync();
+		size = 0;
+		dirtyFiles.clear();
+		lastCompactTime = System.currentTimeMillis();
+
+		log.debug("Journal compacted (" + (lastCompactTime - startTime) + "ms)");
+	}
+
+	/**
+	 * Read a String written by Batch.add
+	 * @param in Input stream
+	 * @return String
+	 * @throws IOException When the data is broken
+	 */
+	protected static String readString(DataInputStream in) throws IOException {
+		byte[] b = new byte[in.readInt()];
+		in.readFully(b);
+		return NetUtil.bytesToString(b);
+	}
+
+	/**
+	 * Load a properties file
+	 * @param filename Filename
+	 * @return Properties (Empty if the file doesn't exist)
+	 */
+	protected static CustomProperties loadProperties(String filename) {
+		CustomProperties prop = new CustomProperties();
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			prop.load(in);
+			in.close();
+		} catch (IOException e) {}
+		return prop;
+	}
+
+	/**
+	 * Write a properties file (Through a temporary file)
+	 * @param filename Filename
+	 * @param prop Properties
+	 * @param comment Comment
+	 * @throws IOException When the file can't be written
+	 */
+	protected static void writeProperties(String filename, CustomProperties prop, String comment) throws IOException {
+		File temp = new File(filename + ".tmp");
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			prop.store(fileOut, comment);
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+		replaceFile(temp, new File(filename));
+	}
+
+	/**
+	 * Write a text file (Through a temporary file)
+	 * @param filename Filename
+	 * @param content Content
+	 * @throws IOException When the file can't be written
+	 */
+	protected static void writeText(String filename, String content) throws IOException {
+		File temp = new File(filename + ".tmp");
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			fileOut.write(content.getBytes());
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+		replaceFile(temp, new File(filename));
+	}
+
+	/**
+	 * Replace a file by renaming another one
+	 * @param source New file
+	 * @param target File to replace
+	 * @throws IOException When the file can't be replaced
+	 */
+	protected static void replaceFile(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Time counters of the hot paths of GameEngine (Each state, mode hooks, receiver hooks and AI).
+ * Disabled by default, then each measuring point costs only one check of a flag.
+ * Start the VM with -D{@value #PROPERTY_ENABLE}=true or call setEnabled through JMX to start recording,
+ * and -D{@value #PROPERTY_DUMP}=(filename) to write the report when the VM exits.
+ * Times are recorded into power of 2 histograms, so the percentiles in the report are upper bounds.
+ * The counters are shared by every GameEngine in the VM and can be updated from many threads.
+ */
+public class EngineProfiler implements EngineProfilerMBean {
+	/** Log */
+	static Logger log = Logger.getLogger(EngineProfiler.class);
+
+	/** JMX object name */
+	public static final String OBJECT_NAME = "mu.nu.nullpo:type=EngineProfiler";
+
+	/** System property to enable recording from the start */
+	public static final String PROPERTY_ENABLE = "nullpomino.profile";
+
+	/** System property of the file the report is written to when the VM exits */
+	public static final String PROPERTY_DUMP = "nullpomino.profile.dump";
+
+	/** Number of histogram buckets of each section (Bucket n holds times below 2^n nanoseconds) */
+	public static final int BUCKET_COUNT = 64;
+
+	/** Number of game states */
+	private static final int STATUS_COUNT = GameEngine.Status.values().length;
+
+	/** First section of the GameEngine states (Add Status.ordinal()) */
+	public static final int SECTION_STATE = 0;
+
+	/** First section of the state hooks of the mode (onMove etc., add Status.ordinal()) */
+	public static final int SECTION_MODE_STATE = SECTION_STATE + STATUS_COUNT;
+
+	/** First section of the state hooks of the EventReceiver (onMove etc., add Status.ordinal()) */
+	public static final int SECTION_RECEIVER_STATE = SECTION_MODE_STATE + STATUS_COUNT;
+
+	/** Other sections */
+	public static final int SECTION_MODE_ON_FIRST = SECTION_RECEIVER_STATE + STATUS_COUNT,
+							SECTION_MODE_ON_LAST = SECTION_MODE_ON_FIRST + 1,
+							SECTION_RECEIVER_ON_FIRST = SECTION_MODE_ON_FIRST + 2,
+							SECTION_RECEIVER_ON_LAST = SECTION_MODE_ON_FIRST + 3,
+							SECTION_AI_SET_CONTROL = SECTION_MODE_ON_FIRST + 4,
+							SECTION_AI_ON_FIRST = SECTION_MODE_ON_FIRST + 5,
+							SECTION_AI_ON_LAST = SECTION_MODE_ON_FIRST + 6,
+							SECTION_FIELD_UPDATE = SECTION_MODE_ON_FIRST + 7,
+							SECTION_UPDATE = SECTION_MODE_ON_FIRST + 8,
+							SECTION_RENDER = SECTION_MODE_ON_FIRST + 9;
+
+	/** Number of sections */
+	public static final int SECTION_COUNT = SECTION_MODE_ON_FIRST + 10;
+
+	/** Names of the other sections */
+	private static final String[] OTHER_SECTION_NAMES = {
+		"mode.onFirst", "mode.onLast", "receiver.onFirst", "receiver.onLast",
+		"ai.setControl", "ai.onFirst", "ai.onLast", "engine.fieldUpdate", "engine.update", "engine.render"
+	};
+
+	/** The only instance (Registered to JMX) */
+	private static final EngineProfiler INSTANCE = new EngineProfiler();
+
+	/** true while recording */
+	private static volatile boolean enabled;
+
+	/** Call counts */
+	private static final AtomicLongArray counts = new AtomicLongArray(SECTION_COUNT);
+
+	/** Total times */
+	private static final AtomicLongArray totals = new AtomicLongArray(SECTION_COUNT);
+
+	/** Histograms (Section * BUCKET_COUNT + bucket) */
+	private static final AtomicLongArray histogram = new AtomicLongArray(SECTION_COUNT * BUCKET_COUNT);
+
+	static {
+		enabled = Boolean.getBoolean(PROPERTY_ENABLE);
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(!server.isRegistered(name)) server.registerMBean(INSTANCE, name);
+		} catch (Exception e) {
+			log.debug("EngineProfiler couldn't be registered to JMX", e);
+		}
+
+		final String dumpFile = System.getProperty(PROPERTY_DUMP);
+		if(dumpFile != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					INSTANCE.dump(dumpFile);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Get the instance which is registered to JMX
+	 * @return EngineProfiler
+	 */
+	public static EngineProfiler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Call before a measured section
+	 * @return Start time (0 if disabled)
+	 */
+	public static long begin() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Call after a measured section
+	 * @param section Section number
+	 * @param start Value returned by begin (Nothing is recorded if 0)
+	 */
+	public static void end(int section, long start) {
+		if(start != 0L) record(section, System.nanoTime() - start);
+	}
+
+	/**
+	 * Adds one call to a section
+	 * @param section Section number
+	 * @param nanos Time in nanoseconds
+	 */
+	public static void record(int section, long nanos) {
+		if(nanos < 0) nanos = 0;
+		counts.incrementAndGet(section);
+		totals.addAndGet(section, nanos);
+		histogram.incrementAndGet(section * BUCKET_COUNT + Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKET_COUNT - 1));
+	}
+
+	/**
+	 * Get the name of a section
+	 * @param section Section number
+	 * @return Section name
+	 */
+	public static String getSectionName(int section) {
+		GameEngine.Status[] status = GameEngine.Status.values();
+		if(section < SECTION_MODE_STATE) return "state." + status[section - SECTION_STATE];
+		if(section < SECTION_RECEIVER_STATE) return "mode.state." + status[section - SECTION_MODE_STATE];
+		if(section < SECTION_MODE_ON_FIRST) return "receiver.state." + status[section - SECTION_RECEIVER_STATE];
+		return OTHER_SECTION_NAMES[section - SECTION_MODE_ON_FIRST];
+	}
+
+	/**
+	 * Get a percentile of a section from its histogram
+	 * @param section Section number
+	 * @param percent Percentile (0-100)
+	 * @return Upper bound of the time in nanoseconds (0 if never called)
+	 */
+	public static long getPercentile(int section, double percent) {
+		long count = counts.get(section);
+		if(count == 0) return 0;
+
+		long target = (long)Math.ceil(count * percent / 100.0);
+		long sum = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			sum += histogram.get(section * BUCKET_COUNT + i);
+			if(sum >= Math.max(target, 1)) return (i == 0) ? 0 : (1L << Math.min(i, 62));
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/*
+	 * Checks if the profiler is recording
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/*
+	 * Starts or stops recording
+	 */
+	public void setEnabled(boolean enable) {
+		enabled = enable;
+		log.info("EngineProfiler " + (enable ? "enabled" : "disabled"));
+	}
+
+	/*
+	 * Clears every counter
+	 */
+	public void reset() {
+		for(int i = 0; i < SECTION_COUNT; i++) {
+			counts.set(i, 0);
+			totals.set(i, 0);
+		}
+		for(int i = 0; i < histogram.length(); i++) histogram.set(i, 0);
+	}
+
+	/*
+	 * Get the name of every section
+	 */
+	public String[] getSectionNames() {
+		String[] names = new String[SECTION_COUNT];
+		for(int i = 0; i < SECTION_COUNT; i++) names[i] = getSectionName(i);
+		return names;
+	}
+
+	/*
+	 * Get the number of calls of every section
+	 */
+	public long[] getCounts() {
+		long[] result = new long[SECTION_COUNT];
+		for(int i = 0; i < SECTION_COUNT; i++) result[i] = counts.get(i);
+		return result;
+	}
+
+	/*
+	 * Get the total time of every section
+	 */
+	public long[] getTotalNanos() {
+		long[] result = new long[SECTION_COUNT];
+		for(int i = 0; i < SECTION_COUNT; i++) result[i] = totals.get(i);
+		return result;
+	}
+
+	/*
+	 * Get the counters as a text table
+	 */
+	public String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-32s %12s %12s %10s %10s %10s %10s%n",
+				"section", "count", "total(ms)", "avg(us)", "p50(us)", "p99(us)", "p999(us)"));
+
+		for(int i = 0; i < SECTION_COUNT; i++) {
+			long count = counts.get(i);
+			if(count == 0) continue;
+			long total = totals.get(i);
+			sb.append(String.format("%-32s %12d %12.3f %10.3f %10.3f %10.3f %10.3f%n",
+					getSectionName(i), count, total / 1000000.0, total / 1000.0 / count,
+					getPercentile(i, 50) / 1000.0, getPercentile(i, 99) / 1000.0, getPercentile(i, 99.9) / 1000.0));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Writes the report to a file
+	 */
+	public boolean dump(String filename) {
+		try {
+			FileWriter out = new FileWriter(filename);
+			out.write(getReport());
+			out.close();
+		} catch (IOException e) {
+			log.error("Failed to write profile to " + filename, e);
+			return false;
+		}
+		return true;
+	}
+}
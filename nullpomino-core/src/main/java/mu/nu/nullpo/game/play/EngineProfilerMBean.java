@@ -0,0 +1,82 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+/**
+ * JMX interface of EngineProfiler (Registered as {@value EngineProfiler#OBJECT_NAME})
+ */
+public interface EngineProfilerMBean {
+	/**
+	 * Checks if the profiler is recording
+	 * @return true if enabled
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Starts or stops recording
+	 * @param enable true to start
+	 */
+	public void setEnabled(boolean enable);
+
+	/**
+	 * Clears every counter
+	 */
+	public void reset();
+
+	/**
+	 * Get the name of every section
+	 * @return Section names
+	 */
+	public String[] getSectionNames();
+
+	/**
+	 * Get the number of calls of every section
+	 * @return Call counts (Same order as getSectionNames)
+	 */
+	public long[] getCounts();
+
+	/**
+	 * Get the total time of every section
+	 * @return Total time in nanoseconds (Same order as getSectionNames)
+	 */
+	public long[] getTotalNanos();
+
+	/**
+	 * Get the counters as a text table
+	 * @return Report (One line per section that was called)
+	 */
+	public String getReport();
+
+	/**
+	 * Writes the report to a file
+	 * @param filename Filename
+	 * @return true if successful
+	 */
+	public boolean dump(String filename);
+}
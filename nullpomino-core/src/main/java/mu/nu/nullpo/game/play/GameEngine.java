@@ -28,6 +28,7 @@
 */
 package mu.nu.nullpo.game.play;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Random;
 import org.apache.log4j.Logger;
@@ -45,6 +46,8 @@ import mu.nu.nullpo.game.component.WallkickResult;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
+import mu.nu.nullpo.util.StateBuffer;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.MemorylessRandomizer;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
 
@@ -75,6 +78,12 @@ public class GameEngine {
 	/** Number of free status counters (used by statc array) */
 	public static final int MAX_STATC = 10;
 
+	/** Version of the snapshot written by writeState */
+	public static final int STATE_VERSION = 1;
+
+	/** Number of different NEXT pieces searched for a match when writing a snapshot */
+	protected static final int STATE_PALETTE_SEARCH = 16;
+
 	/** Constants of last successful movements */
 	public enum LastMove {
 		NONE, FALL_AUTO, FALL_SELF, SLIDE_AIR, SLIDE_GROUND, ROTATE_AIR, ROTATE_GROUND
@@ -180,6 +189,9 @@ public class GameEngine {
 	/** The first random-seed */
 	public long randSeed;
 
+	/** true to keep the randSeed set before init() instead of making a new one (ignored in replay mode) */
+	public boolean randSeedFixed;
+
 	/** Random: Used for creating various randomness */
 	public Random random;
 
@@ -207,6 +219,15 @@ public class GameEngine {
 	/** Show internal state of AI */
 	public boolean aiShowState;
 
+	/** Search the moves of the AI with several threads (BasicAI and its subclasses) */
+	public boolean aiParallelThink;
+
+	/** Maximum compromise level of the AI (0: Default of the AI) */
+	public int aiThinkDepth;
+
+	/** Plan the moves of the AI with MoveGenerator, including tucks and spins (BasicAI and its subclasses) */
+	public boolean aiMoveSearch;
+
 	/** AI Hint piece (copy of current or hold) */
 	public Piece aiHintPiece;
 
@@ -654,6 +675,9 @@ public class GameEngine {
 	/** 0 = default, 1 = link by color, 2 = link by color but ignore links for cascade (Avalanche) */
 	public int sticky;
 
+	/** Work array of writeStateNextPieces */
+	protected int[] stateNextIndex;
+
 	/**
 	 * Constructor
 	 * @param owner Own the game engineGameOwnerClass
@@ -711,10 +735,12 @@ public class GameEngine {
 			versionMinorOld = GameManager.getVersionMinorOld();
 			versionIsDevBuild = GameManager.isDevBuild();
 
-			Random tempRand = new Random();
-			randSeed = tempRand.nextLong();
+			if(!randSeedFixed) {
+				Random tempRand = new Random();
+				randSeed = tempRand.nextLong();
+			}
 			log.debug("Player + " + playerID + "Random seed :" + Long.toString(randSeed, 16));
-			random = new Random(randSeed);
+			random = new SeedRandom(randSeed);
 		} else {
 			versionMajor = owner.replayProp.getProperty("version.core.major", 0f);
 			versionMinor = owner.replayProp.getProperty("version.core.minor", 0);
@@ -725,7 +751,7 @@ public class GameEngine {
 
 			String tempRand = owner.replayProp.getProperty(playerID + ".replay.randSeed", "0");
 			randSeed = Long.parseLong(tempRand, 16);
-			random = new Random(randSeed);
+			random = new SeedRandom(randSeed);
 
 			owRotateButtonDefaultRight = owner.replayProp.getProperty(playerID + ".tuning.owRotateButtonDefaultRight", -1);
 			owSkin = owner.replayProp.getProperty(playerID + ".tuning.owSkin", -1);
@@ -954,6 +980,473 @@ public class GameEngine {
 		replayData = null;
 	}
 
+	/**
+	 * Writes the state of this player to a snapshot.
+	 * Everything which changes during a game is written: field, pieces, random state, timers, statistics and settings.
+	 * Not written: rule, wallkick, randomizer (used only in init), replay input data, AI and the mode's own variables.
+	 * @param buf Snapshot buffer
+	 */
+	public void writeState(StateBuffer buf) {
+		buf.writeVersion(STATE_VERSION);
+		writeStateField(buf, field);
+		ctrl.writeState(buf);
+		statistics.writeState(buf);
+		speed.writeState(buf);
+		buf.writeInt(gcount);
+		buf.writeLong(randSeed);
+		buf.writeBoolean(random instanceof SeedRandom);
+		if(random instanceof SeedRandom) buf.writeLong(((SeedRandom)random).getState());
+		buf.writeEnum(stat);
+		buf.writeIntArray(statc);
+		buf.writeBoolean(isInGame);
+		buf.writeBoolean(gameActive);
+		buf.writeBoolean(timerActive);
+		buf.writeBoolean(gameStarted);
+		buf.writeInt(replayTimer);
+		buf.writeLong(startTime);
+		buf.writeLong(endTime);
+		buf.writeFloat(versionMajor);
+		buf.writeInt(versionMinor);
+		buf.writeFloat(versionMinorOld);
+		buf.writeBoolean(versionIsDevBuild);
+		buf.writeBoolean(quitflag);
+		writeStatePiece(buf, nowPieceObject);
+		buf.writeInt(nowPieceX);
+		buf.writeInt(nowPieceY);
+		buf.writeInt(nowPieceBottomY);
+		buf.writeInt(nowPieceColorOverride);
+		buf.writeBooleanArray(nextPieceEnable);
+		buf.writeInt(nextPieceArraySize);
+		buf.writeIntArray(nextPieceArrayID);
+		writeStateNextPieces(buf);
+		buf.writeInt(nextPieceCount);
+		writeStatePiece(buf, holdPieceObject);
+		buf.writeBoolean(holdDisable);
+		buf.writeInt(holdUsedCount);
+		buf.writeInt(lineClearing);
+		buf.writeEnum(lineGravityType);
+		buf.writeInt(chain);
+		buf.writeInt(lineGravityTotalLines);
+		buf.writeInt(lockDelayNow);
+		buf.writeInt(dasCount);
+		buf.writeInt(dasDirection);
+		buf.writeInt(dasSpeedCount);
+		buf.writeBoolean(dasRepeat);
+		buf.writeBoolean(dasInstant);
+		buf.writeInt(shiftLock);
+		buf.writeInt(initialRotateDirection);
+		buf.writeInt(initialRotateLastDirection);
+		buf.writeBoolean(initialRotateContinuousUse);
+		buf.writeBoolean(initialHoldFlag);
+		buf.writeBoolean(initialHoldContinuousUse);
+		buf.writeInt(nowPieceMoveCount);
+		buf.writeInt(nowPieceRotateCount);
+		buf.writeInt(nowPieceRotateFailCount);
+		buf.writeInt(extendedMoveCount);
+		buf.writeInt(extendedRotateCount);
+		buf.writeInt(nowWallkickCount);
+		buf.writeInt(nowUpwardWallkickCount);
+		buf.writeInt(softdropFall);
+		buf.writeInt(harddropFall);
+		buf.writeBoolean(softdropContinuousUse);
+		buf.writeBoolean(harddropContinuousUse);
+		buf.writeBoolean(manualLock);
+		buf.writeEnum(lastmove);
+		buf.writeBoolean(tspin);
+		buf.writeBoolean(tspinmini);
+		buf.writeBoolean(tspinez);
+		buf.writeBoolean(b2b);
+		buf.writeInt(b2bcount);
+		buf.writeInt(combo);
+		buf.writeBoolean(tspinEnable);
+		buf.writeBoolean(tspinEnableEZ);
+		buf.writeBoolean(tspinAllowKick);
+		buf.writeInt(tspinminiType);
+		buf.writeInt(spinCheckType);
+		buf.writeBoolean(useAllSpinBonus);
+		buf.writeBoolean(b2bEnable);
+		buf.writeInt(comboType);
+		buf.writeInt(blockHidden);
+		buf.writeBoolean(blockHiddenAnim);
+		buf.writeInt(blockOutlineType);
+		buf.writeBoolean(blockShowOutlineOnly);
+		buf.writeBoolean(heboHiddenEnable);
+		buf.writeInt(heboHiddenTimerNow);
+		buf.writeInt(heboHiddenTimerMax);
+		buf.writeInt(heboHiddenYNow);
+		buf.writeInt(heboHiddenYLimit);
+		buf.writeBoolean(delayCancel);
+		buf.writeBoolean(delayCancelMoveLeft);
+		buf.writeBoolean(delayCancelMoveRight);
+		buf.writeBoolean(bone);
+		buf.writeBoolean(big);
+		buf.writeBoolean(bigmove);
+		buf.writeBoolean(bighalf);
+		buf.writeBoolean(kickused);
+		buf.writeInt(fieldWidth);
+		buf.writeInt(fieldHeight);
+		buf.writeInt(fieldHiddenHeight);
+		buf.writeInt(ending);
+		buf.writeBoolean(staffrollEnable);
+		buf.writeBoolean(staffrollNoDeath);
+		buf.writeBoolean(staffrollEnableStatistics);
+		buf.writeInt(framecolor);
+		buf.writeInt(readyStart);
+		buf.writeInt(readyEnd);
+		buf.writeInt(goStart);
+		buf.writeInt(goEnd);
+		buf.writeBoolean(readyDone);
+		buf.writeInt(lives);
+		buf.writeBoolean(ghost);
+		buf.writeInt(meterValue);
+		buf.writeInt(meterColor);
+		buf.writeInt(meterValueSub);
+		buf.writeInt(meterColorSub);
+		buf.writeBoolean(lagARE);
+		buf.writeBoolean(lagStop);
+		buf.writeInt(displaysize);
+		buf.writeBoolean(enableSE);
+		buf.writeBoolean(gameoverAll);
+		buf.writeBoolean(isVisible);
+		buf.writeBoolean(isNextVisible);
+		buf.writeBoolean(isHoldVisible);
+		buf.writeInt(fldeditX);
+		buf.writeInt(fldeditY);
+		buf.writeInt(fldeditColor);
+		buf.writeEnum(fldeditPreviousStat);
+		buf.writeInt(fldeditFrames);
+		buf.writeBoolean(holdButtonNextSkip);
+		buf.writeBoolean(allowTextRenderByReceiver);
+		buf.writeBoolean(itemRollRollEnable);
+		buf.writeInt(itemRollRollInterval);
+		buf.writeBoolean(itemXRayEnable);
+		buf.writeInt(itemXRayCount);
+		buf.writeBoolean(itemColorEnable);
+		buf.writeInt(itemColorCount);
+		buf.writeInt(interruptItemNumber);
+		buf.writeEnum(interruptItemPreviousStat);
+		writeStateField(buf, interruptItemMirrorField);
+		buf.writeInt(owRotateButtonDefaultRight);
+		buf.writeInt(owSkin);
+		buf.writeInt(owMinDAS);
+		buf.writeInt(owMaxDAS);
+		buf.writeInt(owDasDelay);
+		buf.writeBoolean(owReverseUpDown);
+		buf.writeInt(owMoveDiagonal);
+		buf.writeInt(owBlockOutlineType);
+		buf.writeInt(owBlockShowOutlineOnly);
+		buf.writeEnum(clearMode);
+		buf.writeInt(colorClearSize);
+		buf.writeBoolean(garbageColorClear);
+		buf.writeBoolean(randomBlockColor);
+		buf.writeBoolean(connectBlocks);
+		buf.writeIntArray(blockColors);
+		buf.writeInt(numColors);
+		buf.writeBoolean(lineColorDiagonals);
+		buf.writeBoolean(gemSameColor);
+		buf.writeInt(cascadeDelay);
+		buf.writeInt(cascadeClearDelay);
+		buf.writeBoolean(ignoreHidden);
+		buf.writeBoolean(rainbowAnimate);
+		buf.writeBoolean(dominoQuickTurn);
+		buf.writeInt(sticky);
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * The engine must have the same rule as when the snapshot was taken (Call this after init).
+	 * Objects of this engine (field, pieces etc.) are reused where possible, so restoring every frame stays cheap.
+	 * @param buf Snapshot buffer
+	 * @throws IllegalStateException If the snapshot is broken or newer than this version
+	 */
+	public void readState(StateBuffer buf) {
+		buf.readVersion(STATE_VERSION);
+		field = readStateField(buf, field);
+		if(ctrl == null) ctrl = new Controller();
+		ctrl.readState(buf);
+		if(statistics == null) statistics = new Statistics();
+		statistics.readState(buf);
+		if(speed == null) speed = new SpeedParam();
+		speed.readState(buf);
+		gcount = buf.readInt();
+		randSeed = buf.readLong();
+		if(buf.readBoolean()) {
+			if(!(random instanceof SeedRandom)) random = new SeedRandom(randSeed);
+			((SeedRandom)random).setState(buf.readLong());
+		}
+		stat = buf.readEnum(Status.values());
+		statc = buf.readIntArray(statc);
+		isInGame = buf.readBoolean();
+		gameActive = buf.readBoolean();
+		timerActive = buf.readBoolean();
+		gameStarted = buf.readBoolean();
+		replayTimer = buf.readInt();
+		startTime = buf.readLong();
+		endTime = buf.readLong();
+		versionMajor = buf.readFloat();
+		versionMinor = buf.readInt();
+		versionMinorOld = buf.readFloat();
+		versionIsDevBuild = buf.readBoolean();
+		quitflag = buf.readBoolean();
+		nowPieceObject = readStatePiece(buf, nowPieceObject);
+		nowPieceX = buf.readInt();
+		nowPieceY = buf.readInt();
+		nowPieceBottomY = buf.readInt();
+		nowPieceColorOverride = buf.readInt();
+		nextPieceEnable = buf.readBooleanArray(nextPieceEnable);
+		nextPieceArraySize = buf.readInt();
+		nextPieceArrayID = buf.readIntArray(nextPieceArrayID);
+		readStateNextPieces(buf);
+		nextPieceCount = buf.readInt();
+		holdPieceObject = readStatePiece(buf, (holdPieceObject != nowPieceObject) ? holdPieceObject : null);
+		holdDisable = buf.readBoolean();
+		holdUsedCount = buf.readInt();
+		lineClearing = buf.readInt();
+		lineGravityType = buf.readEnum(LineGravity.values());
+		chain = buf.readInt();
+		lineGravityTotalLines = buf.readInt();
+		lockDelayNow = buf.readInt();
+		dasCount = buf.readInt();
+		dasDirection = buf.readInt();
+		dasSpeedCount = buf.readInt();
+		dasRepeat = buf.readBoolean();
+		dasInstant = buf.readBoolean();
+		shiftLock = buf.readInt();
+		initialRotateDirection = buf.readInt();
+		initialRotateLastDirection = buf.readInt();
+		initialRotateContinuousUse = buf.readBoolean();
+		initialHoldFlag = buf.readBoolean();
+		initialHoldContinuousUse = buf.readBoolean();
+		nowPieceMoveCount = buf.readInt();
+		nowPieceRotateCount = buf.readInt();
+		nowPieceRotateFailCount = buf.readInt();
+		extendedMoveCount = buf.readInt();
+		extendedRotateCount = buf.readInt();
+		nowWallkickCount = buf.readInt();
+		nowUpwardWallkickCount = buf.readInt();
+		softdropFall = buf.readInt();
+		harddropFall = buf.readInt();
+		softdropContinuousUse = buf.readBoolean();
+		harddropContinuousUse = buf.readBoolean();
+		manualLock = buf.readBoolean();
+		lastmove = buf.readEnum(LastMove.values());
+		tspin = buf.readBoolean();
+		tspinmini = buf.readBoolean();
+		tspinez = buf.readBoolean();
+		b2b = buf.readBoolean();
+		b2bcount = buf.readInt();
+		combo = buf.readInt();
+		tspinEnable = buf.readBoolean();
+		tspinEnableEZ = buf.readBoolean();
+		tspinAllowKick = buf.readBoolean();
+		tspinminiType = buf.readInt();
+		spinCheckType = buf.readInt();
+		useAllSpinBonus = buf.readBoolean();
+		b2bEnable = buf.readBoolean();
+		comboType = buf.readInt();
+		blockHidden = buf.readInt();
+		blockHiddenAnim = buf.readBoolean();
+		blockOutlineType = buf.readInt();
+		blockShowOutlineOnly = buf.readBoolean();
+		heboHiddenEnable = buf.readBoolean();
+		heboHiddenTimerNow = buf.readInt();
+		heboHiddenTimerMax = buf.readInt();
+		heboHiddenYNow = buf.readInt();
+		heboHiddenYLimit = buf.readInt();
+		delayCancel = buf.readBoolean();
+		delayCancelMoveLeft = buf.readBoolean();
+		delayCancelMoveRight = buf.readBoolean();
+		bone = buf.readBoolean();
+		big = buf.readBoolean();
+		bigmove = buf.readBoolean();
+		bighalf = buf.readBoolean();
+		kickused = buf.readBoolean();
+		fieldWidth = buf.readInt();
+		fieldHeight = buf.readInt();
+		fieldHiddenHeight = buf.readInt();
+		ending = buf.readInt();
+		staffrollEnable = buf.readBoolean();
+		staffrollNoDeath = buf.readBoolean();
+		staffrollEnableStatistics = buf.readBoolean();
+		framecolor = buf.readInt();
+		readyStart = buf.readInt();
+		readyEnd = buf.readInt();
+		goStart = buf.readInt();
+		goEnd = buf.readInt();
+		readyDone = buf.readBoolean();
+		lives = buf.readInt();
+		ghost = buf.readBoolean();
+		meterValue = buf.readInt();
+		meterColor = buf.readInt();
+		meterValueSub = buf.readInt();
+		meterColorSub = buf.readInt();
+		lagARE = buf.readBoolean();
+		lagStop = buf.readBoolean();
+		displaysize = buf.readInt();
+		enableSE = buf.readBoolean();
+		gameoverAll = buf.readBoolean();
+		isVisible = buf.readBoolean();
+		isNextVisible = buf.readBoolean();
+		isHoldVisible = buf.readBoolean();
+		fldeditX = buf.readInt();
+		fldeditY = buf.readInt();
+		fldeditColor = buf.readInt();
+		fldeditPreviousStat = buf.readEnum(Status.values());
+		fldeditFrames = buf.readInt();
+		holdButtonNextSkip = buf.readBoolean();
+		allowTextRenderByReceiver = buf.readBoolean();
+		itemRollRollEnable = buf.readBoolean();
+		itemRollRollInterval = buf.readInt();
+		itemXRayEnable = buf.readBoolean();
+		itemXRayCount = buf.readInt();
+		itemColorEnable = buf.readBoolean();
+		itemColorCount = buf.readInt();
+		interruptItemNumber = buf.readInt();
+		interruptItemPreviousStat = buf.readEnum(Status.values());
+		interruptItemMirrorField = readStateField(buf, interruptItemMirrorField);
+		owRotateButtonDefaultRight = buf.readInt();
+		owSkin = buf.readInt();
+		owMinDAS = buf.readInt();
+		owMaxDAS = buf.readInt();
+		owDasDelay = buf.readInt();
+		owReverseUpDown = buf.readBoolean();
+		owMoveDiagonal = buf.readInt();
+		owBlockOutlineType = buf.readInt();
+		owBlockShowOutlineOnly = buf.readInt();
+		clearMode = buf.readEnum(ClearType.values());
+		colorClearSize = buf.readInt();
+		garbageColorClear = buf.readBoolean();
+		randomBlockColor = buf.readBoolean();
+		connectBlocks = buf.readBoolean();
+		blockColors = buf.readIntArray(blockColors);
+		numColors = buf.readInt();
+		lineColorDiagonals = buf.readBoolean();
+		gemSameColor = buf.readBoolean();
+		cascadeDelay = buf.readInt();
+		cascadeClearDelay = buf.readInt();
+		ignoreHidden = buf.readBoolean();
+		rainbowAnimate = buf.readBoolean();
+		dominoQuickTurn = buf.readBoolean();
+		sticky = buf.readInt();
+	}
+
+	/**
+	 * Writes a field (or null) to a snapshot
+	 * @param buf Snapshot buffer
+	 * @param fld Field (Can be null)
+	 */
+	protected void writeStateField(StateBuffer buf, Field fld) {
+		buf.writeBoolean(fld != null);
+		if(fld != null) fld.writeState(buf);
+	}
+
+	/**
+	 * Reads a field written by writeStateField
+	 * @param buf Snapshot buffer
+	 * @param fld Current field, reused if not null
+	 * @return Field (null if null was written)
+	 */
+	protected Field readStateField(StateBuffer buf, Field fld) {
+		if(!buf.readBoolean()) return null;
+		if(fld == null) fld = new Field();
+		fld.readState(buf);
+		return fld;
+	}
+
+	/**
+	 * Writes a piece (or null) to a snapshot
+	 * @param buf Snapshot buffer
+	 * @param piece Piece (Can be null)
+	 */
+	protected void writeStatePiece(StateBuffer buf, Piece piece) {
+		buf.writeBoolean(piece != null);
+		if(piece != null) piece.writeState(buf);
+	}
+
+	/**
+	 * Reads a piece written by writeStatePiece
+	 * @param buf Snapshot buffer
+	 * @param piece Current piece, reused if not null
+	 * @return Piece (null if null was written)
+	 */
+	protected Piece readStatePiece(StateBuffer buf, Piece piece) {
+		if(!buf.readBoolean()) return null;
+		if(piece == null) piece = new Piece();
+		piece.readState(buf);
+		return piece;
+	}
+
+	/**
+	 * Writes the NEXT piece objects to a snapshot.
+	 * The array usually holds only a few different pieces (One per kind), so each different piece is written once
+	 * and the array is written as indices into that list (Only the last few different pieces are searched).
+	 * @param buf Snapshot buffer
+	 */
+	protected void writeStateNextPieces(StateBuffer buf) {
+		if(nextPieceArrayObject == null) {
+			buf.writeInt(-1);
+			return;
+		}
+
+		int len = nextPieceArrayObject.length;
+		if((stateNextIndex == null) || (stateNextIndex.length < len)) stateNextIndex = new int[len];
+		ArrayList<Piece> palette = new ArrayList<Piece>();
+
+		for(int i = 0; i < len; i++) {
+			Piece p = nextPieceArrayObject[i];
+			int index = -1;
+			if(p != null) {
+				for(int j = palette.size() - 1; j >= Math.max(0, palette.size() - STATE_PALETTE_SEARCH); j--) {
+					if(palette.get(j).isSameState(p)) {
+						index = j;
+						break;
+					}
+				}
+				if(index == -1) {
+					index = palette.size();
+					palette.add(p);
+				}
+			}
+			stateNextIndex[i] = index;
+		}
+
+		buf.writeInt(len);
+		buf.writeInt(palette.size());
+		for(Piece p : palette) p.writeState(buf);
+		for(int i = 0; i < len; i++) buf.writeInt(stateNextIndex[i]);
+	}
+
+	/**
+	 * Reads the NEXT piece objects written by writeStateNextPieces.
+	 * Pieces which are already the same are left alone.
+	 * @param buf Snapshot buffer
+	 */
+	protected void readStateNextPieces(StateBuffer buf) {
+		int len = buf.readInt();
+		if(len < 0) {
+			nextPieceArrayObject = null;
+			return;
+		}
+
+		Piece[] palette = new Piece[buf.readInt()];
+		for(int i = 0; i < palette.length; i++) {
+			palette[i] = new Piece();
+			palette[i].readState(buf);
+		}
+
+		if((nextPieceArrayObject == null) || (nextPieceArrayObject.length != len)) {
+			nextPieceArrayObject = new Piece[len];
+		}
+		for(int i = 0; i < len; i++) {
+			int index = buf.readInt();
+			if(index < 0) {
+				nextPieceArrayObject[i] = null;
+			} else if((nextPieceArrayObject[i] == null) || !nextPieceArrayObject[i].isSameState(palette[index])) {
+				nextPieceArrayObject[i] = new Piece(palette[index]);
+			}
+		}
+	}
+
 	/**
 	 * Status counterInitialization
 	 */
@@ -1692,13 +2185,17 @@ public class GameEngine {
 	 * Game stateUpdates
 	 */
 	public void update() {
+		long profileUpdate = EngineProfiler.begin();
+
 		if(gameActive) {
 			// Related processing replay
 			if(!owner.replayMode || owner.replayRerecord) {
 				// AIOf buttonProcessing
 				if (ai != null) {
 					if (aiShowHint == false) {
+						long profileStart = EngineProfiler.begin();
 						ai.setControl(this, playerID, ctrl);
+						EngineProfiler.end(EngineProfiler.SECTION_AI_SET_CONTROL, profileStart);
 					} else {
 						aiHintReady = (ai.thinkComplete || ((ai.thinkCurrentPieceNo > 0)
 								&& (ai.thinkCurrentPieceNo <= ai.thinkLastPieceNo)));
@@ -1735,12 +2232,17 @@ public class GameEngine {
 		ctrl.updateButtonTime();
 
 		// æœ€åˆ�ã�®å‡¦ç�†
+		long profileStart = EngineProfiler.begin();
 		if(owner.mode != null) owner.mode.onFirst(this, playerID);
+		profileStart = profileEnd(EngineProfiler.SECTION_MODE_ON_FIRST, profileStart);
 		owner.receiver.onFirst(this, playerID);
+		profileStart = profileEnd(EngineProfiler.SECTION_RECEIVER_ON_FIRST, profileStart);
 		if((ai != null) && (!owner.replayMode || owner.replayRerecord)) ai.onFirst(this, playerID);
+		profileStart = profileEnd(EngineProfiler.SECTION_AI_ON_FIRST, profileStart);
 
 		// Processing status of each
 		if(!lagStop) {
+			Status profileStat = stat;
 			switch(stat) {
 			case NOTHING:
 				break;
@@ -1788,16 +2290,21 @@ public class GameEngine {
 				statInterruptItem();
 				break;
 			}
+			profileStart = profileEnd(EngineProfiler.SECTION_STATE + profileStat.ordinal(), profileStart);
 		}
 
 		// fieldOfBlock stateUpdate and statistics
 		fieldUpdate();
 		if((ending == 0) || (staffrollEnableStatistics)) statistics.update();
+		profileStart = profileEnd(EngineProfiler.SECTION_FIELD_UPDATE, profileStart);
 
 		// æœ€å¾Œã�®å‡¦ç�†
 		if(owner.mode != null) owner.mode.onLast(this, playerID);
+		profileStart = profileEnd(EngineProfiler.SECTION_MODE_ON_LAST, profileStart);
 		owner.receiver.onLast(this, playerID);
+		profileStart = profileEnd(EngineProfiler.SECTION_RECEIVER_ON_LAST, profileStart);
 		if((ai != null) && (!owner.replayMode || owner.replayRerecord)) ai.onLast(this, playerID);
+		profileEnd(EngineProfiler.SECTION_AI_ON_LAST, profileStart);
 
 		// TimerIncrease
 		if(gameActive && timerActive) {
@@ -1809,6 +2316,21 @@ public class GameEngine {
 			statistics.gamerate = (float)(replayTimer / (0.00000006*(System.nanoTime() - startTime)));
 		}
 		*/
+
+		EngineProfiler.end(EngineProfiler.SECTION_UPDATE, profileUpdate);
+	}
+
+	/**
+	 * Ends a profiled section and starts the next one (Sections measured back to back)
+	 * @param section Section number
+	 * @param start Start time of the section (0 if profiling is disabled)
+	 * @return Start time of the next section (0 if profiling is disabled)
+	 */
+	protected long profileEnd(int section, long start) {
+		if(start == 0L) return 0L;
+		long now = System.nanoTime();
+		EngineProfiler.record(section, now - start);
+		return now;
 	}
 
 	/**
@@ -1816,6 +2338,8 @@ public class GameEngine {
 	 *  (EachMode Ya event Processing classes event Just call, OtherwiseGameEngineItself does not do anything)
 	 */
 	public void render() {
+		long profileStart = EngineProfiler.begin();
+
 		// æœ€åˆ�ã�®å‡¦ç�†
 		owner.receiver.renderFirst(this, playerID);
 		if(owner.mode != null) owner.mode.renderFirst(this, playerID);
@@ -1895,6 +2419,8 @@ public class GameEngine {
 		// æœ€å¾Œã�®å‡¦ç�†
 		if(owner.mode != null) owner.mode.renderLast(this, playerID);
 		owner.receiver.renderLast(this, playerID);
+
+		EngineProfiler.end(EngineProfiler.SECTION_RENDER, profileStart);
 	}
 
 	/**
@@ -1903,9 +2429,14 @@ public class GameEngine {
 	public void statSetting() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onSetting(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onSetting(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.SETTING.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onSetting(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.SETTING.ordinal(), profileStart);
 
 		// Modeå�´ã�Œä½•ã‚‚ã�—ã�ªã�„å ´å�ˆã�¯Readyç”»é�¢ã�¸ç§»å‹•
 		stat = Status.READY;
@@ -1918,9 +2449,14 @@ public class GameEngine {
 	public void statReady() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onReady(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onReady(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.READY.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onReady(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.READY.ordinal(), profileStart);
 
 		// Horizontal reservoir
 		if(ruleopt.dasInReady && gameActive) padRepeat();
@@ -2040,9 +2576,14 @@ public class GameEngine {
 
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onMove(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onMove(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.MOVE.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onMove(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.MOVE.ordinal(), profileStart);
 
 		// Horizontal reservoirInitialization
 		int moveDirection = getMoveDirection();
@@ -2721,9 +3262,14 @@ public class GameEngine {
 	public void statLockFlash() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onLockFlash(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onLockFlash(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.LOCKFLASH.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onLockFlash(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.LOCKFLASH.ordinal(), profileStart);
 
 		statc[0]++;
 
@@ -2756,9 +3302,14 @@ public class GameEngine {
 	public void statLineClear() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onLineClear(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onLineClear(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.LINECLEAR.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onLineClear(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.LINECLEAR.ordinal(), profileStart);
 
 		checkDropContinuousUse();
 
@@ -3019,9 +3570,14 @@ public class GameEngine {
 	public void statARE() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onARE(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onARE(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.ARE.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onARE(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.ARE.ordinal(), profileStart);
 
 		statc[0]++;
 
@@ -3072,9 +3628,14 @@ public class GameEngine {
 	public void statEndingStart() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onEndingStart(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onEndingStart(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.ENDINGSTART.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onEndingStart(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.ENDINGSTART.ordinal(), profileStart);
 
 		checkDropContinuousUse();
 
@@ -3130,9 +3691,14 @@ public class GameEngine {
 	public void statCustom() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onCustom(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onCustom(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.CUSTOM.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onCustom(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.CUSTOM.ordinal(), profileStart);
 	}
 
 	/**
@@ -3141,9 +3707,14 @@ public class GameEngine {
 	public void statExcellent() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onExcellent(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onExcellent(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.EXCELLENT.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onExcellent(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.EXCELLENT.ordinal(), profileStart);
 
 		if(statc[0] == 0) {
 			gameEnded();
@@ -3172,9 +3743,14 @@ public class GameEngine {
 	public void statGameOver() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onGameOver(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onGameOver(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.GAMEOVER.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onGameOver(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.GAMEOVER.ordinal(), profileStart);
 
 		if(lives <= 0) {
 			// When I can not be recovered anymore
@@ -3267,9 +3843,14 @@ public class GameEngine {
 	public void statResult() {
 		// Event
 		if(owner.mode != null) {
-			if(owner.mode.onResult(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onResult(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.RESULT.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onResult(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.RESULT.ordinal(), profileStart);
 
 		// Turn-off in-game flags
 		gameActive = false;
@@ -3301,9 +3882,14 @@ public class GameEngine {
 	public void statFieldEdit() {
 		//  event ç™ºç”Ÿ
 		if(owner.mode != null) {
-			if(owner.mode.onFieldEdit(this, playerID) == true) return;
+			long profileStart = EngineProfiler.begin();
+			boolean modeResult = owner.mode.onFieldEdit(this, playerID);
+			EngineProfiler.end(EngineProfiler.SECTION_MODE_STATE + Status.FIELDEDIT.ordinal(), profileStart);
+			if(modeResult == true) return;
 		}
+		long profileStart = EngineProfiler.begin();
 		owner.receiver.onFieldEdit(this, playerID);
+		EngineProfiler.end(EngineProfiler.SECTION_RECEIVER_STATE + Status.FIELDEDIT.ordinal(), profileStart);
 
 		fldeditFrames++;
 
@@ -30,9 +30,11 @@ package mu.nu.nullpo.game.play;
 
 import mu.nu.nullpo.game.component.BGMStatus;
 import mu.nu.nullpo.game.component.BackgroundStatus;
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.event.EventReceiver;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.StateBuffer;
 
 import org.apache.log4j.Logger;
 
@@ -43,6 +45,9 @@ public class GameManager {
 	/** Log (Apache log4j) */
 	static Logger log = Logger.getLogger(GameManager.class);
 
+	/** Version of the snapshot written by writeState */
+	public static final int STATE_VERSION = 2;
+
 	/** Major version */
 	public static final float VERSION_MAJOR = 7.6f;
 
@@ -61,12 +66,18 @@ public class GameManager {
 	/** Properties for replay file */
 	public CustomProperties replayProp;
 
+	/** Format of saved replay files (ReplayProperties.FORMAT_TEXT or FORMAT_BINARY) */
+	public int replayFormat;
+
 	/** true if replay mode */
 	public boolean replayMode;
 
 	/** true if replay rerecording */
 	public boolean replayRerecord;
 
+	/** Keyframes for seeking in the replay (null if not used) */
+	public ReplayKeyframes replayKeyframes;
+
 	/** true if display menus only (No game screens) */
 	public boolean menuOnly;
 
@@ -202,6 +213,7 @@ public class GameManager {
 		bgmStatus.reset();
 		backgroundStatus.reset();
 		if(!replayMode) replayProp = new CustomProperties();
+		if(replayKeyframes != null) replayKeyframes.reset();
 		for(int i = 0; i < engine.length; i++) engine[i].init();
 	}
 
@@ -286,6 +298,7 @@ public class GameManager {
 	 * Update every GameEngine
 	 */
 	public void updateAll() {
+		if(replayKeyframes != null) replayKeyframes.onUpdate(this);
 		for(int i = 0; i < engine.length; i++) {
 			engine[i].update();
 		}
@@ -302,11 +315,58 @@ public class GameManager {
 		}
 	}
 
+	/**
+	 * Writes the state of the game (BGM, background, every GameEngine and the mode) to a snapshot.
+	 * Take it between two updateAll calls, so the snapshot is at the start of a frame.
+	 * @param buf Snapshot buffer
+	 * @return false if the mode couldn't save its state (Everything else is written)
+	 */
+	public boolean writeState(StateBuffer buf) {
+		buf.writeVersion(STATE_VERSION);
+		bgmStatus.writeState(buf);
+		backgroundStatus.writeState(buf);
+		buf.writeInt(engine.length);
+		for(int i = 0; i < engine.length; i++) {
+			engine[i].writeState(buf);
+		}
+
+		int modeStart = buf.size();
+		buf.writeBoolean(true);
+		if((mode == null) || !mode.writeState(this, buf)) {
+			buf.setSize(modeStart);
+			buf.writeBoolean(false);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Restores the state written by writeState.
+	 * The game must have been created with the same mode and rules (init and GameEngine.init done).
+	 * @param buf Snapshot buffer
+	 * @throws IllegalStateException If the snapshot is broken, newer than this version or has another number of players
+	 */
+	public void readState(StateBuffer buf) {
+		int version = buf.readVersion(STATE_VERSION);
+		bgmStatus.readState(buf);
+		backgroundStatus.readState(buf);
+		int players = buf.readInt();
+		if(players != engine.length) {
+			throw new IllegalStateException("Snapshot has " + players + " players (Game has " + engine.length + ")");
+		}
+		for(int i = 0; i < engine.length; i++) {
+			engine[i].readState(buf);
+		}
+		if((version >= 2) && buf.readBoolean()) {
+			mode.readState(this, buf);
+		}
+	}
+
 	/**
 	 * Replay save routine
 	 */
 	public void saveReplay() {
-		replayProp = new CustomProperties();
+		replayProp = new ReplayProperties(replayFormat);
 		for(int i = 0; i < engine.length; i++) {
 			engine[i].saveReplay();
 		}
@@ -0,0 +1,264 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import mu.nu.nullpo.util.StateBuffer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keyframes of a replay for seeking.
+ * While a replay plays, a snapshot of the whole game (GameManager.writeState) is taken every interval frames.
+ * seek() restores the nearest keyframe before the target and runs the rest without drawing,
+ * so seeking into a part which has been played takes at most interval frames of simulation.
+ * Keyframes are compressed and kept in memory only; they are not written to the replay file,
+ * because a snapshot is only valid for the version of the game which made it.
+ */
+public class ReplayKeyframes {
+	/** Log */
+	static Logger log = Logger.getLogger(ReplayKeyframes.class);
+
+	/** Default number of frames between keyframes (10 seconds) */
+	public static final int DEFAULT_INTERVAL = 600;
+
+	/** Number of frames between keyframes */
+	protected int interval;
+
+	/** Keyframes (Frame number to compressed snapshot) */
+	protected TreeMap<Integer, byte[]> keyframes;
+
+	/** Number of updateAll calls since the replay started */
+	protected int frame;
+
+	/** false if the mode can't save its state (Only seeking forward is possible) */
+	protected boolean modeSupported;
+
+	/** true while seek is running */
+	protected boolean seeking;
+
+	/** Work buffer for snapshots */
+	protected StateBuffer buf;
+
+	/** Compressor */
+	protected Deflater deflater;
+
+	/** Decompressor */
+	protected Inflater inflater;
+
+	/** Work buffer for compression */
+	protected byte[] zipBuffer;
+
+	/**
+	 * Default constructor (Keyframe every DEFAULT_INTERVAL frames)
+	 */
+	public ReplayKeyframes() {
+		this(DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Constructor
+	 * @param interval Number of frames between keyframes
+	 */
+	public ReplayKeyframes(int interval) {
+		this.interval = Math.max(1, interval);
+		keyframes = new TreeMap<Integer, byte[]>();
+		buf = new StateBuffer();
+		deflater = new Deflater(Deflater.BEST_SPEED);
+		inflater = new Inflater();
+		zipBuffer = new byte[4096];
+		reset();
+	}
+
+	/**
+	 * Forget every keyframe (Called when the replay restarts)
+	 */
+	public void reset() {
+		keyframes.clear();
+		frame = 0;
+		modeSupported = true;
+	}
+
+	/**
+	 * Get the current frame number
+	 * @return Number of updateAll calls since the replay started
+	 */
+	public int getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Get the number of frames between keyframes
+	 * @return Number of frames
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get the number of keyframes
+	 * @return Number of keyframes
+	 */
+	public int getKeyframeCount() {
+		return keyframes.size();
+	}
+
+	/**
+	 * Get the frame number of the last keyframe
+	 * @return Frame number (-1 if there is none)
+	 */
+	public int getLastKeyframe() {
+		return keyframes.isEmpty() ? -1 : keyframes.lastKey();
+	}
+
+	/**
+	 * Checks if seeking backward is possible
+	 * @return false if the mode can't save its state
+	 */
+	public boolean canSeekBackward() {
+		return modeSupported;
+	}
+
+	/**
+	 * Called by GameManager.updateAll before the frame runs. Takes a keyframe if needed.
+	 * @param manager GameManager
+	 */
+	public void onUpdate(GameManager manager) {
+		if(manager.replayRerecord) {
+			// Input after this frame is going to change
+			if(!keyframes.isEmpty()) keyframes.tailMap(frame, false).clear();
+		} else if(modeSupported && (frame % interval == 0) && !keyframes.containsKey(frame)) {
+			buf.clear();
+			if(manager.writeState(buf)) {
+				keyframes.put(frame, compress(buf));
+			} else {
+				log.info("Mode " + manager.mode.getName() + " can't save its state. Replay keyframes are disabled.");
+				modeSupported = false;
+				keyframes.clear();
+			}
+		}
+		frame++;
+	}
+
+	/**
+	 * Moves the replay to a frame
+	 * @param manager GameManager (Must be playing the replay this object was made for)
+	 * @param target Frame number
+	 * @return true if the replay is at the target frame (false if it ended first or seeking backward is not possible)
+	 */
+	public boolean seek(GameManager manager, int target) {
+		if(seeking || manager.replayRerecord || (target < 0)) return false;
+		if(target == frame) return true;
+
+		// Sound settings (Keyframes taken during a seek have sound turned off)
+		boolean[] enableSE = new boolean[manager.getPlayers()];
+		for(int i = 0; i < enableSE.length; i++) enableSE[i] = manager.engine[i].enableSE;
+
+		// Restore the nearest keyframe if it is closer than the current frame
+		Map.Entry<Integer, byte[]> key = keyframes.floorEntry(target);
+		if((target < frame) || ((key != null) && (key.getKey() > frame))) {
+			if(key == null) return false;
+			try {
+				manager.readState(decompress(key.getValue()));
+			} catch (IllegalStateException e) {
+				log.warn("Couldn't restore replay keyframe at frame " + key.getKey(), e);
+				keyframes.clear();
+				return false;
+			} finally {
+				for(int i = 0; i < enableSE.length; i++) manager.engine[i].enableSE = enableSE[i];
+			}
+			frame = key.getKey();
+		}
+
+		// Run the rest without sound
+		for(int i = 0; i < enableSE.length; i++) manager.engine[i].enableSE = false;
+
+		seeking = true;
+		boolean wasActive = manager.isGameActive();
+		try {
+			while(frame < target) {
+				manager.updateAll();
+				if(manager.getQuitFlag()) break;
+				if(manager.isGameActive()) wasActive = true;
+				else if(wasActive) break;
+			}
+		} finally {
+			seeking = false;
+			for(int i = 0; i < enableSE.length; i++) manager.engine[i].enableSE = enableSE[i];
+		}
+
+		return frame == target;
+	}
+
+	/**
+	 * Compresses a snapshot
+	 * @param src Snapshot
+	 * @return Compressed snapshot
+	 */
+	protected byte[] compress(StateBuffer src) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(src.size() / 4);
+		deflater.reset();
+		deflater.setInput(src.toByteArray());
+		deflater.finish();
+		while(!deflater.finished()) {
+			int n = deflater.deflate(zipBuffer);
+			out.write(zipBuffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decompresses a snapshot made by compress
+	 * @param src Compressed snapshot
+	 * @return Snapshot
+	 */
+	protected StateBuffer decompress(byte[] src) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(src.length * 4);
+		inflater.reset();
+		inflater.setInput(src);
+		try {
+			while(!inflater.finished()) {
+				int n = inflater.inflate(zipBuffer);
+				if((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalStateException("Replay keyframe is truncated");
+				}
+				out.write(zipBuffer, 0, n);
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Replay keyframe is broken", e);
+		}
+		return new StateBuffer(out.toByteArray());
+	}
+}
@@ -0,0 +1,366 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mu.nu.nullpo.game.component.ReplayProperties;
+import mu.nu.nullpo.game.component.RuleOptions;
+import mu.nu.nullpo.game.component.Statistics;
+import mu.nu.nullpo.game.event.NullEventReceiver;
+import mu.nu.nullpo.game.subsystem.mode.GameMode;
+import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
+import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.ModeManager;
+import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Plays replays without a screen and checks that they reproduce the statistics recorded in them.
+ * Each replay is loaded the same way as the replay screens do (Rule, random seed and input from the replay file),
+ * played until the point where it was saved (The end of the game over screen),
+ * and every counter of Statistics is compared with the recorded one.
+ * Rates (SPM, PPS etc.) and gamerate are not compared because they depend on floating point formatting and real time.
+ */
+public class ReplayVerifier {
+	/** Log */
+	static Logger log = Logger.getLogger(ReplayVerifier.class);
+
+	/** Statistics compared with the replay ("(playerID).statistics." + key) */
+	public static final String[] STATISTICS_KEYS = {
+		"score", "scoreFromLineClear", "scoreFromSoftDrop", "scoreFromHardDrop", "scoreFromOtherBonus",
+		"lines", "time", "level", "levelDispAdd",
+		"totalPieceLocked", "totalPieceActiveTime", "totalPieceMove", "totalPieceRotate",
+		"totalSingle", "totalDouble", "totalTriple", "totalFour",
+		"totalTSpinZeroMini", "totalTSpinZero", "totalTSpinSingleMini", "totalTSpinSingle",
+		"totalTSpinDoubleMini", "totalTSpinDouble", "totalTSpinTriple",
+		"totalB2BFour", "totalB2BTSpin", "totalHoldUsed", "maxCombo", "maxChain", "rollclear"
+	};
+
+	/** Mode list */
+	protected ModeManager modeManager;
+
+	/** Frame limit of one replay */
+	protected int maxFrames;
+
+	/**
+	 * Constructor
+	 * @param modeManager Mode list
+	 */
+	public ReplayVerifier(ModeManager modeManager) {
+		this.modeManager = modeManager;
+		maxFrames = SimulationRunner.DEFAULT_MAX_FRAMES;
+	}
+
+	/**
+	 * Get the frame limit of one replay
+	 * @return Frame limit
+	 */
+	public int getMaxFrames() {
+		return maxFrames;
+	}
+
+	/**
+	 * Set the frame limit of one replay
+	 * @param maxFrames Frame limit
+	 */
+	public void setMaxFrames(int maxFrames) {
+		this.maxFrames = maxFrames;
+	}
+
+	/**
+	 * Creates a game which plays a replay (Same as startReplayGame of the GUIs, without a screen)
+	 * @param prop Replay
+	 * @return GameManager (null if the mode of the replay can't be found)
+	 */
+	public GameManager createGame(CustomProperties prop) {
+		GameMode modeBase = modeManager.getMode(prop.getProperty("name.mode", ""));
+		if(modeBase == null) return null;
+
+		GameMode modeObj;
+		try {
+			modeObj = modeBase.getClass().newInstance();
+		} catch(Exception e) {
+			log.warn("Mode class " + modeBase.getClass().getName() + " load failed", e);
+			return null;
+		}
+
+		GameManager gameManager = new GameManager(new NullEventReceiver(null));
+		gameManager.replayMode = true;
+		gameManager.replayProp = prop;
+		gameManager.mode = modeObj;
+		gameManager.init();
+
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			GameEngine engine = gameManager.engine[i];
+
+			// Rule
+			RuleOptions ruleopt = new RuleOptions();
+			ruleopt.readProperty(prop, i);
+			engine.ruleopt = ruleopt;
+
+			// NEXTOrder generation algorithm
+			if((ruleopt.strRandomizer != null) && (ruleopt.strRandomizer.length() > 0)) {
+				Randomizer randomizerObject = GeneralUtil.loadRandomizer(ruleopt.strRandomizer);
+				engine.randomizer = randomizerObject;
+			}
+
+			// Wallkick
+			if((ruleopt.strWallkick != null) && (ruleopt.strWallkick.length() > 0)) {
+				Wallkick wallkickObject = GeneralUtil.loadWallkick(ruleopt.strWallkick);
+				engine.wallkick = wallkickObject;
+			}
+
+			// Called at initialization (Input data and random seed are read from the replay)
+			engine.init();
+		}
+
+		return gameManager;
+	}
+
+	/**
+	 * Plays a replay and compares the statistics
+	 * @param name Replay name (Used in the result)
+	 * @param prop Replay
+	 * @return Result
+	 */
+	public ReplayVerifyResult verify(String name, CustomProperties prop) {
+		ReplayVerifyResult result = new ReplayVerifyResult(name);
+		result.modeName = prop.getProperty("name.mode", "");
+
+		long startTime = System.nanoTime();
+		if(result.modeName.length() == 0) return result.setError("Not a replay file");
+		GameManager gameManager = createGame(prop);
+		if(gameManager == null) return result.setError("Unknown mode " + result.modeName);
+
+		try {
+			while(result.frames < maxFrames) {
+				gameManager.updateAll();
+				result.frames++;
+
+				// Replays are saved when the game over screen ends
+				if(isSaved(gameManager) || gameManager.getQuitFlag()) {
+					result.finished = true;
+					break;
+				}
+			}
+
+			result.statistics = new Statistics[gameManager.getPlayers()];
+			for(int i = 0; i < gameManager.getPlayers(); i++) {
+				result.statistics[i] = new Statistics(gameManager.engine[i].statistics);
+				compareStatistics(result, prop, i);
+			}
+		} catch (RuntimeException e) {
+			log.debug("Replay " + name + " failed", e);
+			result.setError(e.toString());
+		} finally {
+			gameManager.shutdown();
+		}
+
+		result.nanoTime = System.nanoTime() - startTime;
+		if((result.status == ReplayVerifyResult.STATUS_OK) && !result.mismatches.isEmpty()) {
+			result.status = ReplayVerifyResult.STATUS_MISMATCH;
+		}
+		return result;
+	}
+
+	/**
+	 * Loads a replay file and checks it
+	 * @param file Replay file (Text or binary)
+	 * @return Result
+	 */
+	public ReplayVerifyResult verify(File file) {
+		ReplayProperties prop = new ReplayProperties();
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				prop.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return new ReplayVerifyResult(file.getPath()).setError("Couldn't load: " + e.getMessage());
+		}
+		return verify(file.getPath(), prop);
+	}
+
+	/**
+	 * Checks many replay files at the same time, one replay per task on a fixed number of threads
+	 * @param files Replay files
+	 * @param threads Number of threads (0 or less to use one thread per processor)
+	 * @return Report (null if interrupted)
+	 */
+	public ReplayVerifyReport verifyAll(List<File> files, int threads) {
+		if(threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		int poolSize = Math.max(1, Math.min(threads, files.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		long startTime = System.nanoTime();
+
+		try {
+			List<Future<ReplayVerifyResult>> futures = new ArrayList<Future<ReplayVerifyResult>>(files.size());
+			for(final File file : files) {
+				futures.add(executor.submit(new Callable<ReplayVerifyResult>() {
+					public ReplayVerifyResult call() {
+						return verify(file);
+					}
+				}));
+			}
+
+			// Collect in file order
+			ReplayVerifyResult[] results = new ReplayVerifyResult[files.size()];
+			for(int i = 0; i < results.length; i++) {
+				try {
+					results[i] = futures.get(i).get();
+				} catch (ExecutionException e) {
+					log.error("Replay " + files.get(i) + " failed", e.getCause());
+					results[i] = new ReplayVerifyResult(files.get(i).getPath()).setError(e.getCause().toString());
+				}
+			}
+
+			ReplayVerifyReport report = new ReplayVerifyReport(results, poolSize);
+			report.nanoTime = System.nanoTime() - startTime;
+			return report;
+		} catch (InterruptedException e) {
+			log.warn("Replay verification interrupted");
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if the game has reached the point where the replay was saved
+	 * @param gameManager GameManager
+	 * @return true if a player is on the results screen
+	 */
+	protected boolean isSaved(GameManager gameManager) {
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			if(gameManager.engine[i].stat == GameEngine.Status.RESULT) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compares the statistics of a player with the ones in the replay
+	 * @param result Result (Mismatches are added here)
+	 * @param prop Replay
+	 * @param playerID Player ID
+	 */
+	protected void compareStatistics(ReplayVerifyResult result, CustomProperties prop, int playerID) {
+		CustomProperties simulated = new CustomProperties();
+		result.statistics[playerID].writeProperty(simulated, playerID);
+
+		for(int i = 0; i < STATISTICS_KEYS.length; i++) {
+			String key = playerID + ".statistics." + STATISTICS_KEYS[i];
+			String recorded = prop.getProperty(key);
+			if(recorded == null) continue;
+
+			String value = simulated.getProperty(key);
+			if(!recorded.equals(value)) {
+				result.mismatches.add(key + ": recorded " + recorded + ", simulated " + value);
+			}
+		}
+	}
+
+	/**
+	 * Adds replay files to a list (Directories are searched for .rep files, including subdirectories)
+	 * @param file File or directory
+	 * @param list List of replay files
+	 */
+	public static void addReplayFiles(File file, List<File> list) {
+		if(file.isDirectory()) {
+			File[] children = file.listFiles();
+			if(children == null) return;
+			Arrays.sort(children);
+			for(int i = 0; i < children.length; i++) {
+				if(children[i].isDirectory() || children[i].getName().toLowerCase().endsWith(".rep")) {
+					addReplayFiles(children[i], list);
+				}
+			}
+		} else {
+			list.add(file);
+		}
+	}
+
+	/**
+	 * Main (Command line: [-threads N] [-frames N] [-all] file or directory...)
+	 * @param args Command line arguments
+	 */
+	public static void main(String[] args) {
+		PropertyConfigurator.configure("config/etc/log_simulation.cfg");
+
+		int threads = 0;
+		int frames = -1;
+		boolean showAll = false;
+		ArrayList<File> files = new ArrayList<File>();
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-frames")) frames = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-all")) showAll = true;
+				else if(args[i].startsWith("-")) throw new IllegalArgumentException(args[i]);
+				else addReplayFiles(new File(args[i]), files);
+			}
+			if(files.isEmpty()) throw new IllegalArgumentException("No replay files");
+		} catch (RuntimeException e) {
+			System.err.println("Usage: ReplayVerifier [-threads N] [-frames N] [-all] file or directory...");
+			System.exit(1);
+		}
+
+		ReplayVerifier verifier = new ReplayVerifier(SimulationRunner.loadModeList("config/list/mode.lst"));
+		if(frames > 0) verifier.setMaxFrames(frames);
+
+		ReplayVerifyReport report = verifier.verifyAll(files, threads);
+		if(report == null) System.exit(1);
+
+		for(int i = 0; i < report.results.length; i++) {
+			if(showAll || (report.results[i].status != ReplayVerifyResult.STATUS_OK)) {
+				System.out.println(report.results[i]);
+			}
+		}
+		System.out.println(report);
+		System.exit((report.getFailures() > 0) ? 2 : 0);
+	}
+}
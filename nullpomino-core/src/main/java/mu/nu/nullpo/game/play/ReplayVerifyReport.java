@@ -0,0 +1,109 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+/**
+ * Results of a batch of replays checked by ReplayVerifier
+ */
+public class ReplayVerifyReport {
+	/** Result of each replay (Same order as the input) */
+	public ReplayVerifyResult[] results;
+
+	/** Number of threads used */
+	public int threads;
+
+	/** Number of replays for each status (Index is ReplayVerifyResult.STATUS_*) */
+	public int[] count;
+
+	/** Total number of frames simulated */
+	public long frames;
+
+	/** Time the whole batch took (in nanoseconds) */
+	public long nanoTime;
+
+	/**
+	 * Constructor
+	 * @param results Result of each replay
+	 * @param threads Number of threads used
+	 */
+	public ReplayVerifyReport(ReplayVerifyResult[] results, int threads) {
+		this.results = results;
+		this.threads = threads;
+		count = new int[ReplayVerifyResult.STATUS_NAMES.length];
+		for(int i = 0; i < results.length; i++) {
+			count[results[i].status]++;
+			frames += results[i].frames;
+		}
+	}
+
+	/**
+	 * Get the number of replays which didn't reproduce their statistics or couldn't be played
+	 * @return Number of failed replays
+	 */
+	public int getFailures() {
+		return count[ReplayVerifyResult.STATUS_MISMATCH] + count[ReplayVerifyResult.STATUS_ERROR];
+	}
+
+	/**
+	 * Get the throughput
+	 * @return Replays per hour (0 if the time is unknown)
+	 */
+	public double getReplaysPerHour() {
+		if(nanoTime <= 0) return 0;
+		return results.length / (nanoTime / 3600000000000.0);
+	}
+
+	/**
+	 * Get the simulation speed of the whole batch
+	 * @return Frames per second (0 if the time is unknown)
+	 */
+	public double getFPS() {
+		if(nanoTime <= 0) return 0;
+		return frames / (nanoTime / 1000000000.0);
+	}
+
+	/**
+	 * Get the summary as text
+	 * @return Summary string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Replays: ").append(results.length);
+		for(int i = 0; i < count.length; i++) {
+			sb.append(", ").append(ReplayVerifyResult.STATUS_NAMES[i]).append(": ").append(count[i]);
+		}
+		sb.append("\nThreads: ").append(threads);
+		sb.append(", Time: ").append(String.format("%.2f", nanoTime / 1000000000.0)).append("s");
+		sb.append(", Frames: ").append(frames);
+		sb.append(", FPS: ").append(String.format("%.1f", getFPS()));
+		sb.append(", Replays/hour: ").append(String.format("%.0f", getReplaysPerHour()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.util.ArrayList;
+
+import mu.nu.nullpo.game.component.Statistics;
+
+/**
+ * Result of one replay checked by ReplayVerifier
+ */
+public class ReplayVerifyResult {
+	/** Status: The replay reproduced every recorded statistic */
+	public static final int STATUS_OK = 0;
+
+	/** Status: At least one statistic is different */
+	public static final int STATUS_MISMATCH = 1;
+
+	/** Status: The replay couldn't be loaded or played (Unknown mode, broken file etc.) */
+	public static final int STATUS_ERROR = 2;
+
+	/** Status names */
+	public static final String[] STATUS_NAMES = {"OK", "MISMATCH", "ERROR"};
+
+	/** Replay name (Usually the filename) */
+	public String name;
+
+	/** Status (STATUS_*) */
+	public int status;
+
+	/** Error message (STATUS_ERROR only) */
+	public String message;
+
+	/** Mode name */
+	public String modeName;
+
+	/** Number of frames simulated */
+	public int frames;
+
+	/** Time the simulation took (in nanoseconds) */
+	public long nanoTime;
+
+	/** true if the game reached the point where the replay was saved, false if it hit the frame limit */
+	public boolean finished;
+
+	/** Statistics of each player after the simulation */
+	public Statistics[] statistics;
+
+	/** Statistics which are different ("key: recorded X, simulated Y") */
+	public ArrayList<String> mismatches;
+
+	/**
+	 * Constructor
+	 * @param name Replay name
+	 */
+	public ReplayVerifyResult(String name) {
+		this.name = name;
+		status = STATUS_OK;
+		statistics = new Statistics[0];
+		mismatches = new ArrayList<String>();
+	}
+
+	/**
+	 * Marks this result as an error
+	 * @param message Error message
+	 * @return this
+	 */
+	public ReplayVerifyResult setError(String message) {
+		status = STATUS_ERROR;
+		this.message = message;
+		return this;
+	}
+
+	/**
+	 * Get the result as one line of text
+	 * @return Result string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(STATUS_NAMES[status]).append(" ").append(name);
+		if(status == STATUS_ERROR) {
+			sb.append(" : ").append(message);
+			return sb.toString();
+		}
+		sb.append(" mode=").append(modeName);
+		sb.append(" frames=").append(frames);
+		if(!finished) sb.append(" (frame limit)");
+		for(int i = 0; i < mismatches.size(); i++) {
+			sb.append(i == 0 ? " | " : ", ").append(mismatches.get(i));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Plays many games of SimulationRunner at the same time, one game per task on a fixed number of threads.
+ * Every game has its own GameManager, mode, randomizer and AI, and game i always uses seed + i,
+ * so the results (and their totals) don't depend on the number of threads.
+ */
+public class SimulationBatch {
+	/** Log */
+	static Logger log = Logger.getLogger(SimulationBatch.class);
+
+	/** Runner which creates and plays each game */
+	protected SimulationRunner runner;
+
+	/** Number of threads */
+	protected int threads;
+
+	/**
+	 * Constructor
+	 * @param runner Runner which creates and plays each game
+	 * @param threads Number of threads (0 or less to use one thread per processor)
+	 */
+	public SimulationBatch(SimulationRunner runner, int threads) {
+		this.runner = runner;
+		if(threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the number of threads
+	 * @return Number of threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Plays the games and waits until all of them end
+	 * @param seed Random seed of the first game (Game i uses seed + i)
+	 * @param games Number of games
+	 * @return Results (null if a game couldn't be created or failed)
+	 */
+	public SimulationBatchResult run(long seed, int games) {
+		int poolSize = Math.max(1, Math.min(threads, games));
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		long startTime = System.nanoTime();
+
+		try {
+			List<Future<SimulationResult>> futures = new ArrayList<Future<SimulationResult>>(games);
+			for(int i = 0; i < games; i++) {
+				final long gameSeed = seed + i;
+				futures.add(executor.submit(new Callable<SimulationResult>() {
+					public SimulationResult call() {
+						return runner.runGame(gameSeed);
+					}
+				}));
+			}
+
+			// Collect in seed order
+			SimulationResult[] results = new SimulationResult[games];
+			for(int i = 0; i < games; i++) {
+				results[i] = futures.get(i).get();
+				if(results[i] == null) return null;
+			}
+
+			SimulationBatchResult batchResult = new SimulationBatchResult(seed, poolSize, results);
+			batchResult.nanoTime = System.nanoTime() - startTime;
+			return batchResult;
+		} catch (InterruptedException e) {
+			log.warn("Simulation interrupted");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.error("Simulation failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return null;
+	}
+}
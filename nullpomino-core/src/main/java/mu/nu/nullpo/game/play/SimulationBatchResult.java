@@ -0,0 +1,141 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import mu.nu.nullpo.game.component.Statistics;
+
+/**
+ * Results of many games played by SimulationBatch.
+ * The games are kept in seed order and the totals are made in the same order,
+ * so the result is the same whatever the number of threads was.
+ */
+public class SimulationBatchResult {
+	/** Random seed of the first game */
+	public long seed;
+
+	/** Number of threads used */
+	public int threads;
+
+	/** Result of each game (Game i used seed + i) */
+	public SimulationResult[] results;
+
+	/** Total statistics of each player (Rates are calculated from the totals) */
+	public Statistics[] total;
+
+	/** Number of wins of each player */
+	public int[] wins;
+
+	/** Number of games which ended by themselves */
+	public int finished;
+
+	/** Total number of frames of every game */
+	public long frames;
+
+	/** Time the whole batch took (in nanoseconds) */
+	public long nanoTime;
+
+	/**
+	 * Constructor
+	 * @param seed Random seed of the first game
+	 * @param threads Number of threads used
+	 * @param results Result of each game in seed order (No null elements)
+	 */
+	public SimulationBatchResult(long seed, int threads, SimulationResult[] results) {
+		this.seed = seed;
+		this.threads = threads;
+		this.results = results;
+
+		int players = (results.length > 0) ? results[0].statistics.length : 0;
+		total = new Statistics[players];
+		wins = new int[players];
+		for(int i = 0; i < players; i++) total[i] = new Statistics();
+
+		for(int i = 0; i < results.length; i++) {
+			SimulationResult r = results[i];
+			for(int j = 0; j < players; j++) {
+				if(r.statistics[j] != null) total[j].add(r.statistics[j]);
+			}
+			if((r.winner >= 0) && (r.winner < players)) wins[r.winner]++;
+			if(r.finished) finished++;
+			frames += r.frames;
+		}
+
+		for(int i = 0; i < players; i++) total[i].update();
+	}
+
+	/**
+	 * Get the number of games
+	 * @return Number of games
+	 */
+	public int getGames() {
+		return results.length;
+	}
+
+	/**
+	 * Get the average of a value of one player
+	 * @param value Total value (For example total[0].score)
+	 * @return Average per game (0 if there are no games)
+	 */
+	public double getAverage(long value) {
+		if(results.length == 0) return 0;
+		return (double)value / (double)results.length;
+	}
+
+	/**
+	 * Get the speed of the whole batch
+	 * @return Frames per second of every thread together (0 if the time is unknown)
+	 */
+	public double getFPS() {
+		if(nanoTime <= 0) return 0;
+		return frames / (nanoTime / 1000000000.0);
+	}
+
+	/**
+	 * Get the result as text (One line per player and one line of summary)
+	 * @return Result string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < total.length; i++) {
+			Statistics s = total[i];
+			sb.append(i).append(":");
+			sb.append(String.format(" avg score=%.1f", getAverage(s.score)));
+			sb.append(String.format(" avg lines=%.2f", getAverage(s.lines)));
+			sb.append(String.format(" avg pieces=%.2f", getAverage(s.totalPieceLocked)));
+			sb.append(" max level=").append(s.level);
+			sb.append(String.format(" spl=%.2f lpm=%.2f pps=%.3f", s.spl, s.lpm, s.pps));
+			if(wins[i] > 0) sb.append(" wins=").append(wins[i]);
+			sb.append("\n");
+		}
+		sb.append(String.format("%d games (%d finished), %d frames, %d threads, %.2f sec, %.1f fps",
+				results.length, finished, frames, threads, nanoTime / 1000000000.0, getFPS()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import mu.nu.nullpo.game.component.Statistics;
+
+/**
+ * Result of one game played by SimulationRunner
+ */
+public class SimulationResult {
+	/** Random seed of the game */
+	public long seed;
+
+	/** Number of frames the game ran */
+	public int frames;
+
+	/** Time the game took (in nanoseconds) */
+	public long nanoTime;
+
+	/** true if the game ended by itself, false if it hit the frame limit */
+	public boolean finished;
+
+	/** Winner (Player ID, -1 in single player game, -2 in tied game) */
+	public int winner;
+
+	/** Statistics of each player */
+	public Statistics[] statistics;
+
+	/**
+	 * Constructor
+	 * @param seed Random seed of the game
+	 * @param players Number of players
+	 */
+	public SimulationResult(long seed, int players) {
+		this.seed = seed;
+		winner = -1;
+		statistics = new Statistics[players];
+	}
+
+	/**
+	 * Get the speed the game ran at
+	 * @return Frames per second (0 if the time is unknown)
+	 */
+	public double getFPS() {
+		if(nanoTime <= 0) return 0;
+		return frames / (nanoTime / 1000000000.0);
+	}
+
+	/**
+	 * Get the result as one line of text
+	 * @return Result string
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("seed=").append(Long.toString(seed, 16));
+		sb.append(" frames=").append(frames);
+		sb.append(" finished=").append(finished);
+		if(winner != -1) sb.append(" winner=").append(winner);
+		for(int i = 0; i < statistics.length; i++) {
+			Statistics s = statistics[i];
+			if(s == null) continue;
+			sb.append(" | ").append(i).append(":");
+			sb.append(" score=").append(s.score);
+			sb.append(" lines=").append(s.lines);
+			sb.append(" pieces=").append(s.totalPieceLocked);
+			sb.append(" level=").append(s.level);
+		}
+		sb.append(" | fps=").append(String.format("%.1f", getFPS()));
+		return sb.toString();
+	}
+}
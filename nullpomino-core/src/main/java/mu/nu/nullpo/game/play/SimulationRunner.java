@@ -0,0 +1,336 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+import mu.nu.nullpo.game.component.RuleOptions;
+import mu.nu.nullpo.game.component.Statistics;
+import mu.nu.nullpo.game.event.NullEventReceiver;
+import mu.nu.nullpo.game.subsystem.ai.DummyAI;
+import mu.nu.nullpo.game.subsystem.mode.GameMode;
+import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
+import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.ModeManager;
+import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Runs games without a screen, as fast as the CPU allows.
+ * Mode, rule, randomizer and AI are read from a CustomProperties which uses the same keys as
+ * "config/setting/global.cfg" (name.mode, 0.rule, 0.ai, 0.aiMoveDelay etc.), plus these:
+ * <ul>
+ * <li>(playerID).randomizer : Randomizer class to use instead of the one of the rule</li>
+ * <li>simulation.maxFrames : Frame limit of one game</li>
+ * </ul>
+ * The settings screen of the mode is skipped, so the mode uses the settings in the mode config.
+ * AI runs without its own thread unless (playerID).aiUseThread is true, so a game with the same seed always plays the same.
+ */
+public class SimulationRunner {
+	/** Log */
+	static Logger log = Logger.getLogger(SimulationRunner.class);
+
+	/** Default frame limit of one game (1 hour at 60fps) */
+	public static final int DEFAULT_MAX_FRAMES = 60 * 60 * 60;
+
+	/** Settings (Same format as global.cfg) */
+	protected CustomProperties propConfig;
+
+	/** Mode config (Same format as mode.cfg) */
+	protected CustomProperties propModeConfig;
+
+	/** Mode list */
+	protected ModeManager modeManager;
+
+	/** Frame limit of one game */
+	protected int maxFrames;
+
+	/**
+	 * Constructor
+	 * @param propConfig Settings (Same format as global.cfg)
+	 * @param propModeConfig Mode config (null to use the defaults of the mode)
+	 * @param modeManager Mode list
+	 */
+	public SimulationRunner(CustomProperties propConfig, CustomProperties propModeConfig, ModeManager modeManager) {
+		this.propConfig = propConfig;
+		this.propModeConfig = propModeConfig;
+		this.modeManager = modeManager;
+		maxFrames = propConfig.getProperty("simulation.maxFrames", DEFAULT_MAX_FRAMES);
+	}
+
+	/**
+	 * Get the frame limit of one game
+	 * @return Frame limit
+	 */
+	public int getMaxFrames() {
+		return maxFrames;
+	}
+
+	/**
+	 * Set the frame limit of one game
+	 * @param maxFrames Frame limit
+	 */
+	public void setMaxFrames(int maxFrames) {
+		this.maxFrames = maxFrames;
+	}
+
+	/**
+	 * Creates a new instance of the mode, so every game has its own
+	 * @param modeName Mode name
+	 * @return Mode (null if not found)
+	 */
+	protected GameMode createMode(String modeName) {
+		GameMode modeObj = modeManager.getMode(modeName);
+		if(modeObj == null) return null;
+
+		try {
+			return modeObj.getClass().newInstance();
+		} catch(Exception e) {
+			log.warn("Mode class " + modeObj.getClass().getName() + " load failed", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a game that is ready to run
+	 * @param seed Random seed (Every player uses the same seed)
+	 * @return GameManager (null if the mode can't be found)
+	 */
+	public GameManager createGame(long seed) {
+		String modeName = propConfig.getProperty("name.mode", "");
+		GameMode modeObj = createMode(modeName);
+		if(modeObj == null) {
+			log.error("Couldn't find mode:" + modeName);
+			return null;
+		}
+
+		GameManager gameManager = new GameManager(new NullEventReceiver(propModeConfig));
+		gameManager.mode = modeObj;
+		gameManager.init();
+
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			GameEngine engine = gameManager.engine[i];
+
+			// Rule
+			RuleOptions ruleopt = null;
+			String rulename = propConfig.getProperty(i + ".rule", "");
+			if(gameManager.mode.getGameStyle() > 0) {
+				rulename = propConfig.getProperty(i + ".rule." + gameManager.mode.getGameStyle(), "");
+			}
+			if(rulename.length() > 0) {
+				ruleopt = GeneralUtil.loadRule(rulename);
+			} else {
+				ruleopt = new RuleOptions();
+				ruleopt.readProperty(propConfig, i);
+			}
+			engine.ruleopt = ruleopt;
+
+			// NEXTOrder generation algorithm
+			String strRandomizer = propConfig.getProperty(i + ".randomizer", ruleopt.strRandomizer);
+			if((strRandomizer != null) && (strRandomizer.length() > 0)) {
+				Randomizer randomizerObject = GeneralUtil.loadRandomizer(strRandomizer);
+				engine.randomizer = randomizerObject;
+			}
+
+			// Wallkick
+			if((ruleopt.strWallkick != null) && (ruleopt.strWallkick.length() > 0)) {
+				Wallkick wallkickObject = GeneralUtil.loadWallkick(ruleopt.strWallkick);
+				engine.wallkick = wallkickObject;
+			}
+
+			// AI
+			String aiName = propConfig.getProperty(i + ".ai", "");
+			if(aiName.length() > 0) {
+				DummyAI aiObj = GeneralUtil.loadAIPlayer(aiName);
+				engine.ai = aiObj;
+				engine.aiMoveDelay = propConfig.getProperty(i + ".aiMoveDelay", 0);
+				engine.aiThinkDelay = propConfig.getProperty(i + ".aiThinkDelay", 0);
+				engine.aiUseThread = propConfig.getProperty(i + ".aiUseThread", false);
+				engine.aiPrethink = propConfig.getProperty(i + ".aiPrethink", false);
+				engine.aiParallelThink = propConfig.getProperty(i + ".aiParallelThink", false);
+				engine.aiThinkDepth = propConfig.getProperty(i + ".aiThinkDepth", 0);
+				engine.aiMoveSearch = propConfig.getProperty(i + ".aiMoveSearch", false);
+			}
+
+			// Random seed
+			engine.randSeed = seed;
+			engine.randSeedFixed = true;
+
+			// Called at initialization
+			engine.init();
+		}
+
+		return gameManager;
+	}
+
+	/**
+	 * Plays one game until it ends or hits the frame limit
+	 * @param seed Random seed
+	 * @return Result (null if the game can't be created)
+	 */
+	public SimulationResult runGame(long seed) {
+		GameManager gameManager = createGame(seed);
+		if(gameManager == null) return null;
+
+		SimulationResult result = new SimulationResult(seed, gameManager.getPlayers());
+		boolean started = false;
+		long startTime = System.nanoTime();
+
+		while(result.frames < maxFrames) {
+			skipSetting(gameManager);
+			gameManager.updateAll();
+			result.frames++;
+
+			if(gameManager.isGameActive()) {
+				started = true;
+			} else if(started || gameManager.getQuitFlag()) {
+				result.finished = true;
+				break;
+			}
+		}
+
+		result.nanoTime = System.nanoTime() - startTime;
+		result.winner = gameManager.getWinner();
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			result.statistics[i] = new Statistics(gameManager.engine[i].statistics);
+			result.statistics[i].update();
+		}
+		gameManager.shutdown();
+
+		return result;
+	}
+
+	/**
+	 * Moves every player on the settings screen to the Ready screen, as if the mode had nothing to set
+	 * @param gameManager GameManager
+	 */
+	protected void skipSetting(GameManager gameManager) {
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			GameEngine engine = gameManager.engine[i];
+			if(engine.stat == GameEngine.Status.SETTING) {
+				engine.stat = GameEngine.Status.READY;
+				engine.resetStatc();
+			}
+		}
+	}
+
+	/**
+	 * Load a property file
+	 * @param filename Filename
+	 * @return Properties (null if failed)
+	 */
+	public static CustomProperties loadConfig(String filename) {
+		CustomProperties prop = new CustomProperties();
+
+		try {
+			FileInputStream in = new FileInputStream(filename);
+			prop.load(in);
+			in.close();
+		} catch(IOException e) {
+			log.debug("Failed to load config file from " + filename, e);
+			return null;
+		}
+
+		return prop;
+	}
+
+	/**
+	 * Load the mode list
+	 * @param filename Mode list filename
+	 * @return Mode list
+	 */
+	public static ModeManager loadModeList(String filename) {
+		ModeManager modeManager = new ModeManager();
+
+		try {
+			BufferedReader txtMode = new BufferedReader(new FileReader(filename));
+			modeManager.loadGameModes(txtMode);
+			txtMode.close();
+		} catch (IOException e) {
+			log.error("Mode list load failed", e);
+		}
+
+		return modeManager;
+	}
+
+	/**
+	 * Main (Command line: [-config file] [-modeconfig file] [-games N] [-seed hex] [-frames N] [-threads N])
+	 * @param args Command line arguments
+	 */
+	public static void main(String[] args) {
+		PropertyConfigurator.configure("config/etc/log_simulation.cfg");
+
+		String strConfig = "config/setting/global.cfg";
+		String strModeConfig = "config/setting/mode.cfg";
+		int games = 1;
+		long seed = new Random().nextLong();
+		int frames = -1;
+		int threads = 1;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("-config")) strConfig = args[++i];
+				else if(args[i].equals("-modeconfig")) strModeConfig = args[++i];
+				else if(args[i].equals("-games")) games = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-seed")) seed = Long.parseLong(args[++i], 16);
+				else if(args[i].equals("-frames")) frames = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-threads")) threads = Integer.parseInt(args[++i]);
+				else throw new IllegalArgumentException(args[i]);
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Usage: SimulationRunner [-config file] [-modeconfig file] [-games N] [-seed hex] [-frames N] [-threads N]");
+			System.exit(1);
+		}
+
+		CustomProperties propConfig = loadConfig(strConfig);
+		if(propConfig == null) {
+			log.error("Couldn't load config file from " + strConfig);
+			System.exit(1);
+		}
+		CustomProperties propModeConfig = loadConfig(strModeConfig);
+
+		SimulationRunner runner = new SimulationRunner(propConfig, propModeConfig, loadModeList("config/list/mode.lst"));
+		if(frames > 0) runner.setMaxFrames(frames);
+
+		SimulationBatchResult batchResult = new SimulationBatch(runner, threads).run(seed, games);
+		if(batchResult == null) System.exit(1);
+
+		for(int i = 0; i < batchResult.results.length; i++) {
+			System.out.println("Game " + (i + 1) + ": " + batchResult.results[i]);
+		}
+		System.out.println(batchResult);
+	}
+}
@@ -0,0 +1,217 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.ai;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mu.nu.nullpo.game.play.GameEngine;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the think routines of AI players in a pool of worker threads shared by every AI,
+ * instead of one thread per AI which checks for requests every few milliseconds.
+ * An AI gets a Client at init and calls Client.request() when it wants to think;
+ * the worker then calls DummyAI.think and DummyAI.onThinkComplete.
+ * The think routine of an AI never runs twice at the same time. A request made while it's running runs it once more afterwards.
+ */
+public class AIScheduler {
+	/** Log */
+	static Logger log = Logger.getLogger(AIScheduler.class);
+
+	/** Scheduler used by the AIs (null until first use) */
+	private static AIScheduler defaultScheduler;
+
+	/** Worker threads */
+	protected ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Think requests of an AI player
+	 */
+	public class Client implements Runnable {
+		/** AI */
+		protected final DummyAI ai;
+
+		/** GameEngine that owns the AI */
+		protected final GameEngine engine;
+
+		/** Player ID */
+		protected final int playerID;
+
+		/** Minimum time between two think routines (Milliseconds, GameEngine.aiThinkDelay) */
+		protected final int thinkDelay;
+
+		/** true while waiting for a worker */
+		protected boolean queued;
+
+		/** true while the think routine is running */
+		protected boolean running;
+
+		/** true if requested again while running */
+		protected boolean again;
+
+		/** true after close */
+		protected boolean closed;
+
+		/** Time when the last think routine ended (System.nanoTime) */
+		protected long lastEndTime;
+
+		/**
+		 * Constructor
+		 * @param ai AI
+		 * @param engine GameEngine that owns the AI
+		 * @param playerID Player ID
+		 */
+		protected Client(DummyAI ai, GameEngine engine, int playerID) {
+			this.ai = ai;
+			this.engine = engine;
+			this.playerID = playerID;
+			this.thinkDelay = engine.aiThinkDelay;
+		}
+
+		/**
+		 * Asks a worker to run the think routine
+		 */
+		public synchronized void request() {
+			if(closed || queued) return;
+			if(running) {
+				again = true;
+				return;
+			}
+			schedule();
+		}
+
+		/**
+		 * Stops taking requests (The think routine that is running now is not stopped)
+		 */
+		public synchronized void close() {
+			closed = true;
+			again = false;
+		}
+
+		/**
+		 * Check if the think routine is queued or running
+		 * @return true if queued or running
+		 */
+		public synchronized boolean isBusy() {
+			return queued || running;
+		}
+
+		/**
+		 * Queues the think routine (Called with this Client locked)
+		 */
+		protected void schedule() {
+			queued = true;
+			long wait = 0;
+			if((thinkDelay > 0) && (lastEndTime != 0)) {
+				wait = lastEndTime + TimeUnit.MILLISECONDS.toNanos(thinkDelay) - System.nanoTime();
+			}
+			executor.schedule(this, Math.max(wait, 0), TimeUnit.NANOSECONDS);
+		}
+
+		/*
+		 * Runs the think routine (Called by a worker)
+		 */
+		public void run() {
+			synchronized(this) {
+				queued = false;
+				if(closed) return;
+				running = true;
+			}
+
+			boolean success = false;
+			try {
+				success = ai.think(engine, playerID);
+			} catch (Throwable e) {
+				log.debug(ai.getName() + ": think failed", e);
+			}
+			try {
+				ai.onThinkComplete(engine, playerID, success);
+			} catch (Throwable e) {
+				log.debug(ai.getName() + ": onThinkComplete failed", e);
+			}
+
+			synchronized(this) {
+				running = false;
+				lastEndTime = System.nanoTime();
+				if(again && !closed) {
+					again = false;
+					schedule();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the scheduler used by the AIs (One worker per CPU)
+	 * @return AIScheduler
+	 */
+	public static synchronized AIScheduler getDefault() {
+		if(defaultScheduler == null) {
+			defaultScheduler = new AIScheduler(Runtime.getRuntime().availableProcessors());
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Constructor
+	 * @param threads Number of workers
+	 */
+	public AIScheduler(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "AI_Worker_" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Creates the think requests of an AI
+	 * @param ai AI
+	 * @param engine GameEngine that owns the AI
+	 * @param playerID Player ID
+	 * @return Client
+	 */
+	public Client createClient(DummyAI ai, GameEngine engine, int playerID) {
+		return new Client(ai, engine, playerID);
+	}
+
+	/**
+	 * Stops the workers (Queued think routines are not run)
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
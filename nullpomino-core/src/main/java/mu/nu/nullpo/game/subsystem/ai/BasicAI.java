@@ -28,6 +28,8 @@
 */
 package mu.nu.nullpo.game.subsystem.ai;
 
+import java.util.List;
+
 import mu.nu.nullpo.game.component.Controller;
 import mu.nu.nullpo.game.component.Field;
 import mu.nu.nullpo.game.component.Piece;
@@ -40,7 +42,7 @@ import org.apache.log4j.Logger;
 /**
  * CommonAI
  */
-public class BasicAI extends DummyAI implements Runnable {
+public class BasicAI extends DummyAI implements Cloneable {
 	/** Log */
 	static Logger log = Logger.getLogger(BasicAI.class);
 
@@ -68,17 +70,20 @@ public class BasicAI extends DummyAI implements Runnable {
 	/** When true,To threadThink routineInstructing the execution of the */
 	public boolean thinkRequest;
 
-	/** true when thread is executing the think routine. */
-	public boolean thinking;
+	/** When true, think requests are taken by the shared AI workers */
+	public volatile boolean threadRunning;
+
+	/** When true, the moves are scored with several threads (ParallelPlacementSearch) */
+	public boolean parallelThink;
 
-	/** To stop a thread time */
-	public int thinkDelay;
+	/** Maximum compromise level (0: Use getMaxThinkDepth) */
+	public int thinkDepth;
 
-	/** When true,Running thread */
-	public volatile boolean threadRunning;
+	/** When true, the moves are planned with MoveGenerator (Tucks and spins) */
+	public boolean moveSearch;
 
-	/** Thread for executing the think routine */
-	public Thread thread;
+	/** Path to the best position (null if not planned with MoveGenerator) */
+	public MoveGenerator.Placement bestPath;
 
 	/*
 	 * AIOfName
@@ -99,12 +104,15 @@ public class BasicAI extends DummyAI implements Runnable {
 		thinkRequest = false;
 		thinking = false;
 		threadRunning = false;
-
-		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
-			thread = new Thread(this, "AI_" + playerID);
-			thread.setDaemon(true);
-			thread.start();
-			thinkDelay = engine.aiThinkDelay;
+		parallelThink = engine.aiParallelThink;
+		thinkDepth = engine.aiThinkDepth;
+		moveSearch = engine.aiMoveSearch;
+		bestPath = null;
+		moveGenerator = null;
+
+		if(engine.aiUseThread) {
+			startThinkClient(engine, playerID);
+			threadRunning = true;
 			thinkCurrentPieceNo = 0;
 			thinkLastPieceNo = 0;
 		}
@@ -115,11 +123,8 @@ public class BasicAI extends DummyAI implements Runnable {
 	 */
 	@Override
 	public void shutdown(GameEngine engine, int playerID) {
-		if((thread != null) && (thread.isAlive())) {
-			thread.interrupt();
-			threadRunning = false;
-			thread = null;
-		}
+		stopThinkClient();
+		threadRunning = false;
 	}
 
 	/*
@@ -132,6 +137,7 @@ public class BasicAI extends DummyAI implements Runnable {
 		} else {
 			thinkRequest = true;
 			thinkCurrentPieceNo++;
+			requestThink();
 		}
 	}
 
@@ -168,6 +174,9 @@ public class BasicAI extends DummyAI implements Runnable {
 			if((bestHold || forceHold) && engine.isHoldOK()) {
 				// Hold
 				input |= Controller.BUTTON_BIT_D;
+			} else if(bestPath != null) {
+				// Path from MoveGenerator
+				input = followPath(engine, playerID, ctrl, bestPath);
 			} else {
 				// rotation
 				if(rt != bestRt) {
@@ -195,6 +204,7 @@ public class BasicAI extends DummyAI implements Runnable {
 					// Again because it is thought unreachable
 					//thinkBestPosition(engine, playerID);
 					thinkRequest = true;
+					requestThink();
 					//thinkCurrentPieceNo++;
 					//System.out.println("rethink c:" + thinkCurrentPieceNo + " l:" + thinkLastPieceNo);
 				} else {
@@ -260,6 +270,19 @@ public class BasicAI extends DummyAI implements Runnable {
 		bestRtSub = -1;
 		bestPts = 0;
 		forceHold = false;
+		bestPath = null;
+
+		if(moveSearch) {
+			thinkBestPath(engine, playerID);
+			thinkLastPieceNo++;
+			return;
+		}
+
+		if(parallelThink) {
+			new ParallelPlacementSearch(this, engine).search();
+			thinkLastPieceNo++;
+			return;
+		}
 
 		Piece pieceNow = engine.nowPieceObject;
 		int nowX = engine.nowPieceX;
@@ -272,8 +295,10 @@ public class BasicAI extends DummyAI implements Runnable {
 			holdEmpty = true;
 		}
 		Field fld = new Field(engine.field);
+		fld.setOccupancyEnabled(true);
+		fld.setSharedBlocksEnabled(true);
 
-		for(int depth = 0; depth < getMaxThinkDepth(); depth++) {
+		for(int depth = 0; depth < getThinkDepth(); depth++) {
 			for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
 				// Peace for now
 				int minX = pieceNow.getMostMovableLeft(nowX, nowY, rt, engine.field);
@@ -482,6 +507,210 @@ public class BasicAI extends DummyAI implements Runnable {
 		//System.out.println("X:" + bestX + " Y:" + bestY + " R:" + bestRt + " H:" + bestHold + " Pts:" + bestPts);
 	}
 
+	/**
+	 * Search for the best choice among every position reachable with MoveGenerator
+	 * @param engine The GameEngine that owns this AI
+	 * @param playerID Player ID
+	 */
+	protected void thinkBestPath(GameEngine engine, int playerID) {
+		Piece pieceNow = engine.nowPieceObject;
+		if(pieceNow == null) return;
+		boolean holdOK = engine.isHoldOK();
+		boolean holdEmpty = (engine.holdPieceObject == null);
+		Piece pieceHold = holdEmpty ? engine.getNextObject(engine.nextPieceCount) : engine.holdPieceObject;
+		Piece pieceNext = engine.getNextObject(engine.nextPieceCount);
+		Piece pieceNext2 = engine.getNextObject(engine.nextPieceCount + (holdEmpty ? 1 : 0));
+		boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+							  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
+
+		MoveGenerator gen = getMoveGenerator(engine);
+		List<MoveGenerator.Placement> nowList =
+			gen.generate(pieceNow, engine.field, engine.nowPieceX, engine.nowPieceY, pieceNow.direction, allowUpward);
+		List<MoveGenerator.Placement> holdList = null;
+		if(holdOK && (pieceHold != null)) {
+			holdList = gen.generate(pieceHold, engine.field, engine.getSpawnPosX(engine.field, pieceHold),
+									engine.getSpawnPosY(pieceHold), pieceHold.direction, true);
+		}
+
+		Field fld = new Field(engine.field);
+		fld.setOccupancyEnabled(true);
+		fld.setSharedBlocksEnabled(true);
+
+		for(int depth = 0; depth < getThinkDepth(); depth++) {
+			// The lists are in the order of their number of inputs, so a later position needs a better score
+			for(MoveGenerator.Placement p : nowList) {
+				fld.copy(engine.field);
+				int pts = thinkMain(engine, p.x, p.y, p.rt, p.rtOld, fld, pieceNow, pieceNext, pieceHold, depth);
+
+				if((bestPath == null) ? (pts >= bestPts) : (pts > bestPts)) {
+					setBestPath(p, false, pts);
+				}
+			}
+
+			if((holdList != null) && (depth == 0)) {
+				for(MoveGenerator.Placement p : holdList) {
+					fld.copy(engine.field);
+					int pts = thinkMain(engine, p.x, p.y, p.rt, p.rtOld, fld, pieceHold, pieceNext2, null, depth);
+
+					if(pts > bestPts) {
+						setBestPath(p, true, pts);
+					}
+				}
+			}
+
+			if(bestPts > 0) break;
+		}
+	}
+
+	/**
+	 * Sets the best choice to a position from MoveGenerator
+	 * @param p Position and path
+	 * @param hold true if the hold piece is used
+	 * @param pts Evaluation score
+	 */
+	protected void setBestPath(MoveGenerator.Placement p, boolean hold, int pts) {
+		bestHold = hold;
+		bestX = p.x;
+		bestY = p.y;
+		bestRt = p.rt;
+		bestXSub = p.x;
+		bestYSub = p.y;
+		bestRtSub = -1;
+		bestPts = pts;
+		bestPath = p;
+	}
+
+	/**
+	 * Calculates the input that follows the path from MoveGenerator.
+	 * The piece may have fallen since the last input, so the current state is searched in the path.
+	 * If it isn't on the path anymore, the AI thinks again from the current state.
+	 * @param engine The GameEngine that owns this AI
+	 * @param playerID Player ID
+	 * @param ctrl Button input state of the last frame
+	 * @param path Path
+	 * @return Button input bits
+	 */
+	protected int followPath(GameEngine engine, int playerID, Controller ctrl, MoveGenerator.Placement path) {
+		Piece piece = engine.nowPieceObject;
+		Field fld = engine.field;
+		int x = engine.nowPieceX;
+		int y = engine.nowPieceY;
+		int rt = piece.direction;
+
+		if(isOnPath(path, path.inputs.length, piece, fld, x, y, rt)) {
+			// Lock
+			if(engine.ruleopt.harddropEnable && !ctrl.isPress(Controller.BUTTON_UP))
+				return Controller.BUTTON_BIT_UP;
+			if(engine.ruleopt.softdropEnable || engine.ruleopt.softdropLock)
+				return Controller.BUTTON_BIT_DOWN;
+			return 0;
+		}
+
+		// The latest state of the path whose next state is still the same even if the piece has fallen
+		boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+							  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
+		int input = -1;
+		for(int i = path.inputs.length - 1; (i >= 0) && (input == -1); i--) {
+			if(isOnDasSlide(path, i, piece, fld, x, y, rt)) {
+				input = path.inputs[i];
+			} else if(isOnPath(path, i, piece, fld, x, y, rt)) {
+				int[] next = getMoveGenerator(engine).applyInput(piece, fld, x, y, rt, path.inputs[i], allowUpward);
+				if((next != null) && isOnPath(path, i + 1, piece, fld, next[0], next[1], next[2]))
+					input = path.inputs[i];
+			}
+		}
+
+		if(input == -1) {
+			// Not on the path anymore
+			bestPath = null;
+			if(!engine.aiUseThread) {
+				thinkBestPosition(engine, playerID);
+			} else {
+				thinkRequest = true;
+				thinkCurrentPieceNo++;
+				requestThink();
+			}
+			return 0;
+		}
+
+		switch(input) {
+		case MoveGenerator.INPUT_LEFT:
+			return ctrl.isPress(Controller.BUTTON_LEFT) ? 0 : Controller.BUTTON_BIT_LEFT;
+		case MoveGenerator.INPUT_RIGHT:
+			return ctrl.isPress(Controller.BUTTON_RIGHT) ? 0 : Controller.BUTTON_BIT_RIGHT;
+		case MoveGenerator.INPUT_DAS_LEFT:
+			return Controller.BUTTON_BIT_LEFT;
+		case MoveGenerator.INPUT_DAS_RIGHT:
+			return Controller.BUTTON_BIT_RIGHT;
+		case MoveGenerator.INPUT_ROTATE_LEFT:
+			return getRotateInput(engine, ctrl, -1);
+		case MoveGenerator.INPUT_ROTATE_RIGHT:
+			return getRotateInput(engine, ctrl, 1);
+		case MoveGenerator.INPUT_ROTATE_180:
+			return getRotateInput(engine, ctrl, 2);
+		case MoveGenerator.INPUT_DROP:
+			if(engine.ruleopt.softdropEnable && !engine.ruleopt.softdropLock)
+				return Controller.BUTTON_BIT_DOWN;
+			return 0;	// Wait for gravity
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks if a state is a state of the path, or below it before the piece lands
+	 * @param path Path
+	 * @param i Index of the state in the path
+	 * @param piece Piece
+	 * @param fld Field
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @return true if the state matches
+	 */
+	protected boolean isOnPath(MoveGenerator.Placement path, int i, Piece piece, Field fld, int x, int y, int rt) {
+		if((path.pathX[i] != x) || (path.pathRt[i] != rt) || (y < path.pathY[i])) return false;
+		return piece.getBottom(x, y, rt, fld) == piece.getBottom(x, path.pathY[i], rt, fld);
+	}
+
+	/**
+	 * Checks if a state is in the middle of the auto shift of a path
+	 * @param path Path
+	 * @param i Index of the auto shift input in the path
+	 * @param piece Piece
+	 * @param fld Field
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @return true if the piece has not reached the end of the auto shift yet
+	 */
+	protected boolean isOnDasSlide(MoveGenerator.Placement path, int i, Piece piece, Field fld, int x, int y, int rt) {
+		if(i >= path.inputs.length) return false;
+		int input = path.inputs[i];
+		if((input != MoveGenerator.INPUT_DAS_LEFT) && (input != MoveGenerator.INPUT_DAS_RIGHT)) return false;
+		if((path.pathRt[i] != rt) || (y < path.pathY[i])) return false;
+		if((x < Math.min(path.pathX[i], path.pathX[i + 1])) || (x > Math.max(path.pathX[i], path.pathX[i + 1]))) return false;
+		return piece.getBottom(x, y, rt, fld) == piece.getBottom(x, path.pathY[i], rt, fld);
+	}
+
+	/**
+	 * Get the button input for a rotation (Nothing for one frame if the button is still pressed)
+	 * @param engine GameEngine
+	 * @param ctrl Button input state of the last frame
+	 * @param rtDir Rotation direction (-1: Left 1: Right 2: 180-degree)
+	 * @return Button input bits
+	 */
+	protected int getRotateInput(GameEngine engine, Controller ctrl, int rtDir) {
+		int button;
+		if(rtDir == 2) {
+			button = Controller.BUTTON_E;
+		} else if(rtDir == (engine.isRotateButtonDefaultRight() ? 1 : -1)) {
+			button = Controller.BUTTON_A;
+		} else {
+			button = Controller.BUTTON_B;
+		}
+		return ctrl.isPress(button) ? 0 : (1 << button);
+	}
+
 	/**
 	 * Think routine
 	 * @param engine GameEngine
@@ -493,7 +722,7 @@ public class BasicAI extends DummyAI implements Runnable {
 	 * @param piece Piece
 	 * @param nextpiece NEXTPeace
 	 * @param holdpiece HOLDPeace(nullMay be)
-	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
+	 * @param depth Compromise level (ranges from 0 through getThinkDepth-1)
 	 * @return Evaluation score
 	 */
 	public int thinkMain(GameEngine engine, int x, int y, int rt, int rtOld, Field fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
@@ -638,35 +867,36 @@ public class BasicAI extends DummyAI implements Runnable {
 		return 2;
 	}
 
-	/*
-	 * Processing of the thread
+	/**
+	 * Get the compromise level used by the search (thinkDepth if set)
+	 * @return Compromise level
 	 */
-	public void run() {
-		log.info("BasicAI: Thread start");
-		threadRunning = true;
-
-		while(threadRunning) {
-			if(thinkRequest) {
-				thinkRequest = false;
-				thinking = true;
-				try {
-					thinkBestPosition(gEngine, gEngine.playerID);
-				} catch (Throwable e) {
-					log.debug("BasicAI: thinkBestPosition Failed", e);
-				}
-				thinking = false;
-			}
+	public int getThinkDepth() {
+		return (thinkDepth > 0) ? thinkDepth : getMaxThinkDepth();
+	}
 
-			if(thinkDelay > 0) {
-				try {
-					Thread.sleep(thinkDelay);
-				} catch (InterruptedException e) {
-					break;
-				}
-			}
+	/**
+	 * Copy used by ParallelPlacementSearch to call thinkMain from other threads.
+	 * thinkMain of the copy may only change forceHold.
+	 * @return Copy of this AI
+	 */
+	protected BasicAI createSearchCopy() {
+		try {
+			return (BasicAI)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
 		}
+	}
 
-		threadRunning = false;
-		log.info("BasicAI: Thread end");
+	/*
+	 * Think routine (Run by the shared AI workers)
+	 */
+	@Override
+	public boolean think(GameEngine engine, int playerID) {
+		if(!thinkRequest) return false;
+		thinkRequest = false;
+		thinking = true;
+		thinkBestPosition(engine, playerID);
+		return true;
 	}
 }
@@ -59,6 +59,15 @@ public class DummyAI implements AIPlayer {
 	/** Did the thinking thread finish successfully? */
 	public boolean thinkComplete;
 
+	/** true while the think routine is running */
+	public volatile boolean thinking;
+
+	/** Think requests in the shared AI workers (null if not used) */
+	protected volatile AIScheduler.Client thinkClient;
+
+	/** Move generator (null until getMoveGenerator is called) */
+	protected MoveGenerator moveGenerator;
+
 	public String getName() {
 		return "DummyAI";
 	}
@@ -86,4 +95,68 @@ public class DummyAI implements AIPlayer {
 
 	public void renderHint(GameEngine engine, int playerID) {
 	}
+
+	/**
+	 * Think routine, run by a worker of AIScheduler after requestThink
+	 * @param engine The GameEngine that owns this AI
+	 * @param playerID Player ID
+	 * @return true if the AI has thought (thinkComplete becomes true), false if there was nothing to do
+	 */
+	public boolean think(GameEngine engine, int playerID) {
+		return false;
+	}
+
+	/**
+	 * Called by the AIScheduler worker after think (Also when think threw an exception)
+	 * @param engine The GameEngine that owns this AI
+	 * @param playerID Player ID
+	 * @param success Return value of think (false if it failed)
+	 */
+	public void onThinkComplete(GameEngine engine, int playerID, boolean success) {
+		if(success) thinkComplete = true;
+		thinking = false;
+	}
+
+	/**
+	 * Starts taking think requests in the shared AI workers (The previous Client is closed)
+	 * @param engine The GameEngine that owns this AI
+	 * @param playerID Player ID
+	 */
+	protected void startThinkClient(GameEngine engine, int playerID) {
+		stopThinkClient();
+		thinkClient = AIScheduler.getDefault().createClient(this, engine, playerID);
+	}
+
+	/**
+	 * Stops taking think requests
+	 */
+	protected void stopThinkClient() {
+		AIScheduler.Client client = thinkClient;
+		if(client != null) {
+			client.close();
+			thinkClient = null;
+		}
+	}
+
+	/**
+	 * Get the move generator of this AI (A new one is created on first use, or for another GameEngine)
+	 * @param engine The GameEngine that owns this AI
+	 * @return MoveGenerator
+	 */
+	protected MoveGenerator getMoveGenerator(GameEngine engine) {
+		MoveGenerator gen = moveGenerator;
+		if((gen == null) || (gen.getEngine() != engine)) {
+			gen = new MoveGenerator(engine);
+			moveGenerator = gen;
+		}
+		return gen;
+	}
+
+	/**
+	 * Asks the shared AI workers to run think (Does nothing if startThinkClient isn't called)
+	 */
+	protected void requestThink() {
+		AIScheduler.Client client = thinkClient;
+		if(client != null) client.request();
+	}
 }
@@ -0,0 +1,532 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.WallkickResult;
+import mu.nu.nullpo.game.play.GameEngine;
+
+/**
+ * Move generator for the AIs.
+ * Searches every state (X, Y, Direction) that the piece can reach from a start state
+ * with shifts, DAS, rotations (with the Wallkick of the GameEngine) and soft drop,
+ * and returns each lock position with a shortest input path.
+ * This includes the tucks and spins that can't be reached by dropping the piece from the top.
+ * The results of the last few searches are kept, so searching the same field again is free.
+ * Lock delay, shift lock and the move/rotate count limits are not taken into account.
+ */
+public class MoveGenerator {
+	/** Input: Move left by one cell */
+	public static final int INPUT_LEFT = 0;
+
+	/** Input: Move right by one cell */
+	public static final int INPUT_RIGHT = 1;
+
+	/** Input: Hold left until the piece stops (DAS) */
+	public static final int INPUT_DAS_LEFT = 2;
+
+	/** Input: Hold right until the piece stops (DAS) */
+	public static final int INPUT_DAS_RIGHT = 3;
+
+	/** Input: Left rotation */
+	public static final int INPUT_ROTATE_LEFT = 4;
+
+	/** Input: Right rotation */
+	public static final int INPUT_ROTATE_RIGHT = 5;
+
+	/** Input: 180-degree rotation */
+	public static final int INPUT_ROTATE_180 = 6;
+
+	/** Input: Soft drop (or wait for gravity) until the piece lands, without locking it */
+	public static final int INPUT_DROP = 7;
+
+	/** Number of input types */
+	public static final int INPUT_COUNT = 8;
+
+	/** Default number of searches kept */
+	public static final int DEFAULT_CACHE_SIZE = 8;
+
+	/** Space around the field for the coordinates of states */
+	protected static final int MARGIN = 8;
+
+	/**
+	 * Lock position and the path to it
+	 */
+	public static class Placement {
+		/** X-coordinate of the locked piece */
+		public final int x;
+
+		/** Y-coordinate of the locked piece */
+		public final int y;
+
+		/** Direction of the locked piece */
+		public final int rt;
+
+		/** Direction before the last rotation (-1: The piece didn't lock right after a rotation) */
+		public final int rtOld;
+
+		/** true if the last rotation used a wallkick */
+		public final boolean kick;
+
+		/** Inputs of the path (INPUT_*); the piece is then hard dropped or left to lock */
+		public final byte[] inputs;
+
+		/** X-coordinate before each input and after the last one */
+		public final int[] pathX;
+
+		/** Y-coordinate before each input and after the last one */
+		public final int[] pathY;
+
+		/** Direction before each input and after the last one */
+		public final int[] pathRt;
+
+		/**
+		 * Constructor
+		 * @param y Y-coordinate of the locked piece
+		 * @param rtOld Direction before the last rotation (-1: None)
+		 * @param kick true if the last rotation used a wallkick
+		 * @param inputs Inputs of the path
+		 * @param pathX X-coordinate of each state
+		 * @param pathY Y-coordinate of each state
+		 * @param pathRt Direction of each state
+		 */
+		public Placement(int y, int rtOld, boolean kick, byte[] inputs, int[] pathX, int[] pathY, int[] pathRt) {
+			this.x = pathX[inputs.length];
+			this.y = y;
+			this.rt = pathRt[inputs.length];
+			this.rtOld = rtOld;
+			this.kick = kick;
+			this.inputs = inputs;
+			this.pathX = pathX;
+			this.pathY = pathY;
+			this.pathRt = pathRt;
+		}
+
+		/**
+		 * Get the number of inputs of the path
+		 * @return Number of inputs
+		 */
+		public int getCost() {
+			return inputs.length;
+		}
+	}
+
+	/**
+	 * Key of a search in the cache
+	 */
+	protected static class SearchKey {
+		/** Occupancy row masks of the field */
+		protected final long[] rows;
+
+		/** Other parameters of the search */
+		protected final int[] params;
+
+		/** Hash code */
+		protected final int hash;
+
+		/**
+		 * Constructor
+		 * @param rows Occupancy row masks of the field
+		 * @param params Other parameters of the search
+		 */
+		protected SearchKey(long[] rows, int[] params) {
+			this.rows = rows;
+			this.params = params;
+			hash = (Arrays.hashCode(rows) * 31) + Arrays.hashCode(params);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof SearchKey)) return false;
+			SearchKey k = (SearchKey)o;
+			return (hash == k.hash) && Arrays.equals(rows, k.rows) && Arrays.equals(params, k.params);
+		}
+	}
+
+	/** GameEngine whose rules are used */
+	protected final GameEngine engine;
+
+	/** Results of the last searches (Oldest first) */
+	protected final Map<SearchKey, List<Placement>> cache;
+
+	/** Number of searches kept */
+	protected final int cacheSize;
+
+	/**
+	 * Constructor
+	 * @param engine GameEngine whose rules are used
+	 */
+	public MoveGenerator(GameEngine engine) {
+		this(engine, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param engine GameEngine whose rules are used
+	 * @param cacheSize Number of searches kept (0: No cache)
+	 */
+	public MoveGenerator(GameEngine engine, int cacheSize) {
+		this.engine = engine;
+		this.cacheSize = cacheSize;
+		cache = new LinkedHashMap<SearchKey, List<Placement>>(16, 0.75f, true);
+	}
+
+	/**
+	 * Get the GameEngine whose rules are used
+	 * @return GameEngine
+	 */
+	public GameEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Removes the results of the last searches
+	 */
+	public void clearCache() {
+		synchronized(cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Searches every lock position reachable from a state
+	 * @param piece Piece
+	 * @param fld Field (Not modified)
+	 * @param x X-coordinate of the start state
+	 * @param y Y-coordinate of the start state
+	 * @param rt Direction of the start state
+	 * @param allowUpward If true, upward wallkicks are allowed
+	 * @return Lock positions in the order of their number of inputs (Not modifiable, empty if the start state is blocked)
+	 */
+	public List<Placement> generate(Piece piece, Field fld, int x, int y, int rt, boolean allowUpward) {
+		SearchKey key = null;
+		if((cacheSize > 0) && (fld.getWidth() <= Field.OCCUPANCY_MAX_WIDTH)) {
+			key = createKey(piece, fld, x, y, rt, allowUpward);
+			synchronized(cache) {
+				List<Placement> list = cache.get(key);
+				if(list != null) return list;
+			}
+		}
+
+		List<Placement> list = Collections.unmodifiableList(search(piece, fld, x, y, rt, allowUpward));
+
+		if(key != null) {
+			synchronized(cache) {
+				cache.put(key, list);
+				while(cache.size() > cacheSize) {
+					cache.remove(cache.keySet().iterator().next());
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Applies one input to a state
+	 * @param piece Piece
+	 * @param fld Field
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param input Input (INPUT_*)
+	 * @param allowUpward If true, upward wallkicks are allowed
+	 * @return X-coordinate, Y-coordinate and Direction after the input, 1 if a wallkick was used,
+	 *         and the number of rows the piece fell after the input (null if the input does nothing)
+	 */
+	public int[] applyInput(Piece piece, Field fld, int x, int y, int rt, int input, boolean allowUpward) {
+		int move = getMoveAmount();
+		int nx = x;
+		int ny = y;
+		int nrt = rt;
+		int kick = 0;
+
+		switch(input) {
+		case INPUT_LEFT:
+		case INPUT_RIGHT:
+			nx = x + ((input == INPUT_LEFT) ? -move : move);
+			if(piece.checkCollision(nx, y, rt, fld)) return null;
+			break;
+		case INPUT_DAS_LEFT:
+		case INPUT_DAS_RIGHT:
+			int step = (input == INPUT_DAS_LEFT) ? -move : move;
+			while(!piece.checkCollision(nx + step, y, rt, fld)) nx += step;
+			// A single cell is INPUT_LEFT or INPUT_RIGHT
+			if(Math.abs(nx - x) <= move) return null;
+			break;
+		case INPUT_ROTATE_LEFT:
+		case INPUT_ROTATE_RIGHT:
+		case INPUT_ROTATE_180:
+			int rtDir = (input == INPUT_ROTATE_LEFT) ? -1 : (input == INPUT_ROTATE_RIGHT) ? 1 : 2;
+			if(!isRotationAllowed(rtDir)) return null;
+			int rtNew = piece.getRotateDirection(rtDir, rt);
+			if(!piece.checkCollision(x, y, rtNew, fld)) {
+				nrt = rtNew;
+			} else if(engine.ruleopt.rotateWallkick && (engine.wallkick != null)) {
+				WallkickResult result = engine.wallkick.executeWallkick(x, y, rtDir, rt, rtNew, allowUpward, piece, fld, null);
+				if(result == null) return null;
+				nx = x + result.offsetX;
+				ny = y + result.offsetY;
+				nrt = result.direction;
+				kick = 1;
+			} else {
+				return null;
+			}
+			break;
+		case INPUT_DROP:
+			if(isInstantGravity() || !isDropAllowed()) return null;
+			ny = piece.getBottom(x, y, rt, fld);
+			if(ny == y) return null;
+			break;
+		default:
+			return null;
+		}
+
+		int fall = 0;
+		if(isInstantGravity()) {
+			int bottom = piece.getBottom(nx, ny, nrt, fld);
+			fall = bottom - ny;
+			ny = bottom;
+		}
+		return new int[] {nx, ny, nrt, kick, fall};
+	}
+
+	/**
+	 * Checks if a rotation direction can be used with the rules
+	 * @param rtDir Rotation direction (-1: Left 1: Right 2: 180-degree)
+	 * @return true if there is a button for it
+	 */
+	public boolean isRotationAllowed(int rtDir) {
+		if(rtDir == 2) return engine.ruleopt.rotateButtonAllowDouble;
+		int defaultDir = engine.isRotateButtonDefaultRight() ? 1 : -1;
+		return (rtDir == defaultDir) || engine.ruleopt.rotateButtonAllowReverse;
+	}
+
+	/**
+	 * Get the number of cells moved by a shift
+	 * @return 2 in big mode with bigmove, 1 otherwise
+	 */
+	public int getMoveAmount() {
+		return (engine.big && engine.bigmove) ? 2 : 1;
+	}
+
+	/**
+	 * Checks if the piece drops to the bottom right after each move (20G)
+	 * @return true if the gravity is instant
+	 */
+	public boolean isInstantGravity() {
+		return (engine.speed.gravity < 0) ||
+			   ((engine.speed.denominator > 0) && (engine.speed.gravity >= engine.speed.denominator * engine.fieldHeight));
+	}
+
+	/**
+	 * Checks if the piece can be brought down without locking it
+	 * @return true if soft drop can be used, or if the piece falls by itself
+	 */
+	public boolean isDropAllowed() {
+		return (engine.ruleopt.softdropEnable && !engine.ruleopt.softdropLock) || (engine.speed.gravity != 0);
+	}
+
+	/**
+	 * Creates the key of a search
+	 * @param piece Piece
+	 * @param fld Field
+	 * @param x X-coordinate of the start state
+	 * @param y Y-coordinate of the start state
+	 * @param rt Direction of the start state
+	 * @param allowUpward If true, upward wallkicks are allowed
+	 * @return Key
+	 */
+	protected SearchKey createKey(Piece piece, Field fld, int x, int y, int rt, boolean allowUpward) {
+		int hiddenHeight = fld.getHiddenHeight();
+		long[] rows = new long[hiddenHeight + fld.getHeight()];
+		for(int i = 0; i < rows.length; i++) {
+			int fy = i - hiddenHeight;
+			if(fld.isOccupancyEnabled()) {
+				rows[i] = fld.getOccupancyRow(fy);
+			} else {
+				for(int fx = 0; fx < fld.getWidth(); fx++) {
+					if(!fld.getBlockEmpty(fx, fy)) rows[i] |= 1L << fx;
+				}
+			}
+		}
+
+		int flags = (allowUpward ? 1 : 0) | (isInstantGravity() ? 2 : 0) | (isDropAllowed() ? 4 : 0) | (piece.big ? 8 : 0);
+		int shape = (Arrays.deepHashCode(piece.dataX) * 31) + Arrays.deepHashCode(piece.dataY);
+		return new SearchKey(rows, new int[] {fld.getWidth(), hiddenHeight, piece.id, shape, x, y, rt, flags});
+	}
+
+	/**
+	 * Breadth-first search of the states (Every input costs the same)
+	 * @param piece Piece
+	 * @param fld Field
+	 * @param startX X-coordinate of the start state
+	 * @param startY Y-coordinate of the start state
+	 * @param startRt Direction of the start state
+	 * @param allowUpward If true, upward wallkicks are allowed
+	 * @return Lock positions in the order of their number of inputs
+	 */
+	protected List<Placement> search(Piece piece, Field fld, int startX, int startY, int startRt, boolean allowUpward) {
+		List<Placement> result = new ArrayList<Placement>();
+
+		if(isInstantGravity() && !piece.checkCollision(startX, startY, startRt, fld))
+			startY = piece.getBottom(startX, startY, startRt, fld);
+		if(piece.checkCollision(startX, startY, startRt, fld)) return result;
+
+		// State index: ((Y * sizeX + X) * 4 + Direction) * 2 + (1 if the last input was a rotation)
+		int minX = -MARGIN;
+		int minY = -fld.getHiddenHeight() - MARGIN;
+		int sizeX = fld.getWidth() + (MARGIN * 2);
+		int sizeY = fld.getHiddenHeight() + fld.getHeight() + (MARGIN * 2);
+		int count = sizeX * sizeY * Piece.DIRECTION_COUNT * 2;
+
+		int[] parent = new int[count];
+		byte[] via = new byte[count];
+		boolean[] kicked = new boolean[count];
+		int[] queue = new int[count];
+		boolean[] locked = new boolean[count];
+		Arrays.fill(parent, -2);
+
+		int start = stateIndex(startX - minX, startY - minY, startRt, 0, sizeX, sizeY);
+		if(start < 0) return result;
+		parent[start] = -1;
+		queue[0] = start;
+		int head = 0;
+		int tail = 1;
+
+		while(head < tail) {
+			int s = queue[head++];
+			int sx = ((s >> 3) % sizeX) + minX;
+			int sy = ((s >> 3) / sizeX) + minY;
+			int srt = (s >> 1) & 3;
+
+			for(int input = 0; input < INPUT_COUNT; input++) {
+				int[] next = applyInput(piece, fld, sx, sy, srt, input, allowUpward);
+				if(next == null) continue;
+
+				// A rotation only counts for spins when the piece didn't fall after it (20G)
+				boolean rotation = (input >= INPUT_ROTATE_LEFT) && (input <= INPUT_ROTATE_180);
+				int spin = (rotation && (next[4] == 0)) ? 1 : 0;
+
+				int n = stateIndex(next[0] - minX, next[1] - minY, next[2], spin, sizeX, sizeY);
+				if((n < 0) || (parent[n] != -2)) continue;
+				parent[n] = s;
+				via[n] = (byte)input;
+				kicked[n] = (next[3] == 1);
+				queue[tail++] = n;
+			}
+		}
+
+		// Queue order is the order of the number of inputs, so the first path to each lock position is the shortest
+		for(int i = 0; i < tail; i++) {
+			int s = queue[i];
+			int sx = ((s >> 3) % sizeX) + minX;
+			int sy = ((s >> 3) / sizeX) + minY;
+			int srt = (s >> 1) & 3;
+			int bottom = piece.getBottom(sx, sy, srt, fld);
+			int spin = ((s & 1) == 1) && (bottom == sy) ? 1 : 0;
+
+			int l = stateIndex(sx - minX, bottom - minY, srt, spin, sizeX, sizeY);
+			if((l < 0) || locked[l]) continue;
+			locked[l] = true;
+			result.add(createPlacement(s, bottom, spin == 1, parent, via, kicked, sizeX, minX, minY));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Calculates the index of a state
+	 * @param ix X-coordinate from the left of the search area
+	 * @param iy Y-coordinate from the top of the search area
+	 * @param rt Direction
+	 * @param spin 1 if the last input was a rotation
+	 * @param sizeX Width of the search area
+	 * @param sizeY Height of the search area
+	 * @return Index (-1 if outside the search area)
+	 */
+	protected static int stateIndex(int ix, int iy, int rt, int spin, int sizeX, int sizeY) {
+		if((ix < 0) || (ix >= sizeX) || (iy < 0) || (iy >= sizeY)) return -1;
+		return ((((iy * sizeX) + ix) * Piece.DIRECTION_COUNT + rt) << 1) | spin;
+	}
+
+	/**
+	 * Creates a Placement from the search tree
+	 * @param s Index of the last state of the path
+	 * @param bottom Y-coordinate of the locked piece
+	 * @param spin true if the piece locks right after the last rotation
+	 * @param parent Previous state of each state
+	 * @param via Input used to reach each state
+	 * @param kicked true for each state reached by a rotation which used a wallkick
+	 * @param sizeX Width of the search area
+	 * @param minX X-coordinate of the left of the search area
+	 * @param minY Y-coordinate of the top of the search area
+	 * @return Placement
+	 */
+	protected Placement createPlacement(int s, int bottom, boolean spin, int[] parent, byte[] via, boolean[] kicked,
+										int sizeX, int minX, int minY) {
+		int length = 0;
+		for(int i = s; parent[i] != -1; i = parent[i]) length++;
+
+		byte[] inputs = new byte[length];
+		int[] pathX = new int[length + 1];
+		int[] pathY = new int[length + 1];
+		int[] pathRt = new int[length + 1];
+		int i = s;
+		for(int n = length; n >= 0; n--) {
+			pathX[n] = ((i >> 3) % sizeX) + minX;
+			pathY[n] = ((i >> 3) / sizeX) + minY;
+			pathRt[n] = (i >> 1) & 3;
+			if(n > 0) {
+				inputs[n - 1] = via[i];
+				i = parent[i];
+			}
+		}
+
+		int rtOld = -1;
+		boolean kick = false;
+		if(spin) {
+			rtOld = pathRt[length - 1];
+			kick = kicked[s];
+		}
+		return new Placement(bottom, rtOld, kick, inputs, pathX, pathY, pathRt);
+	}
+}
@@ -0,0 +1,539 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.WallkickResult;
+import mu.nu.nullpo.game.play.GameEngine;
+
+/**
+ * Parallel version of BasicAI.thinkBestPosition.
+ * The placements are scored by fork-join tasks in a pool shared by every AI, each task with its own Field and Piece copies,
+ * then the scores are compared in the same order as the serial search, so the chosen move is always the same.
+ * The extra moves (Shifts and rotations) are only scored where the serial search would look at them.
+ */
+public class ParallelPlacementSearch {
+	/** Number of candidates scored by a task without splitting it */
+	protected static final int TASK_THRESHOLD = 2;
+
+	/** Index of the extra moves in Column.moves (In the order of the serial search) */
+	protected static final int MOVE_LEFT = 0, MOVE_RIGHT = 1, MOVE_ROTATE_LEFT = 2, MOVE_ROTATE_RIGHT = 3, MOVE_ROTATE_180 = 4,
+							   MOVE_COUNT = 5;
+
+	/** Pool shared by every parallel search (null until first use) */
+	private static ForkJoinPool pool;
+
+	/**
+	 * Score of a placement
+	 */
+	protected static class Move {
+		/** true if the serial search would score this move */
+		boolean enabled;
+
+		/** Position and direction after the move */
+		int x, y, rt;
+
+		/** Direction after rotation (-1: Not rotated) */
+		int rtSub = -1;
+
+		/** Evaluation score */
+		int pts;
+
+		/** forceHold set by thinkMain */
+		boolean forceHold;
+	}
+
+	/**
+	 * A column of the current or hold piece with its extra moves
+	 */
+	protected static class Column {
+		/** Direction */
+		final int rt;
+
+		/** X-coordinate */
+		final int x;
+
+		/** Y-coordinate to drop from */
+		final int startY;
+
+		/** Y-coordinate after dropping */
+		int y;
+
+		/** true if the piece fits */
+		boolean valid;
+
+		/** Dropped straight down */
+		final Move drop = new Move();
+
+		/** Extra moves (null until scored) */
+		Move[] moves;
+
+		/**
+		 * Constructor
+		 * @param rt Direction
+		 * @param x X-coordinate
+		 * @param startY Y-coordinate to drop from
+		 */
+		Column(int rt, int x, int startY) {
+			this.rt = rt;
+			this.x = x;
+			this.startY = startY;
+		}
+	}
+
+	/**
+	 * Field, piece and AI copies used by one task
+	 */
+	protected class Scratch {
+		/** Copy of the AI (Only forceHold changes) */
+		final BasicAI evaluator = ai.createSearchCopy();
+
+		/** Field */
+		final Field fld = new Field(engine.field);
+
+		/** Current piece */
+		final Piece now = new Piece(pieceNow);
+
+		/** Hold piece (null if none) */
+		final Piece hold = (pieceHoldSub != null) ? new Piece(pieceHoldSub) : null;
+
+		/**
+		 * Constructor
+		 */
+		Scratch() {
+			fld.setOccupancyEnabled(true);
+			fld.setSharedBlocksEnabled(true);
+		}
+
+		/**
+		 * Call thinkMain of the AI copy
+		 * @param m Result (pts and forceHold are set)
+		 * @param rtOld Direction before rotation (-1: None)
+		 * @param piece Piece
+		 * @param next NEXT piece
+		 * @param holdpiece HOLD piece (null allowed)
+		 * @param depth Compromise level
+		 */
+		void evaluate(Move m, int rtOld, Piece piece, Piece next, Piece holdpiece, int depth) {
+			evaluator.forceHold = false;
+			m.pts = evaluator.thinkMain(engine, m.x, m.y, m.rt, rtOld, fld, piece, next, holdpiece, depth);
+			m.forceHold = evaluator.forceHold;
+		}
+	}
+
+	/**
+	 * Work done for one column
+	 */
+	protected abstract class Job {
+		/**
+		 * Run this job
+		 * @param s Scratch data of the task
+		 */
+		abstract void run(Scratch s);
+	}
+
+	/**
+	 * Runs a range of jobs, split in half until it's small
+	 */
+	protected class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** Jobs */
+		final ArrayList<Job> jobs;
+
+		/** Range */
+		final int start, end;
+
+		/**
+		 * Constructor
+		 * @param jobs Jobs
+		 * @param start First index
+		 * @param end Last index + 1
+		 */
+		SearchTask(ArrayList<Job> jobs, int start, int end) {
+			this.jobs = jobs;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(end - start <= TASK_THRESHOLD) {
+				Scratch s = new Scratch();
+				for(int i = start; i < end; i++) jobs.get(i).run(s);
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new SearchTask(jobs, start, mid), new SearchTask(jobs, mid, end));
+			}
+		}
+	}
+
+	/** AI that receives the result */
+	protected BasicAI ai;
+
+	/** GameEngine */
+	protected GameEngine engine;
+
+	/** Current piece and its position */
+	protected Piece pieceNow;
+	protected int nowX, nowY;
+
+	/** NEXT piece */
+	protected Piece pieceNext;
+
+	/** HOLD piece (null if empty) */
+	protected Piece pieceHold;
+
+	/** HOLD piece, or the NEXT piece if the hold is empty (Same as pieceHold after the first direction of the serial search) */
+	protected Piece pieceHoldSub;
+
+	/** NEXT piece after using hold */
+	protected Piece pieceNext2;
+
+	/** true if hold can be used */
+	protected boolean holdOK;
+
+	/**
+	 * Get the pool shared by every parallel search
+	 * @return ForkJoinPool
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if(pool == null) {
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+					ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+					t.setName("AI_Search_" + t.getPoolIndex());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * Constructor
+	 * @param ai AI that receives the result (The best* fields must be reset)
+	 * @param engine GameEngine
+	 */
+	public ParallelPlacementSearch(BasicAI ai, GameEngine engine) {
+		this.ai = ai;
+		this.engine = engine;
+
+		pieceNow = engine.nowPieceObject;
+		nowX = engine.nowPieceX;
+		nowY = engine.nowPieceY;
+		holdOK = engine.isHoldOK();
+		pieceHold = engine.holdPieceObject;
+		pieceNext = engine.getNextObject(engine.nextPieceCount);
+		pieceHoldSub = (pieceHold != null) ? pieceHold : engine.getNextObject(engine.nextPieceCount);
+		pieceNext2 = (pieceHold != null) ? engine.getNextObject(engine.nextPieceCount) : engine.getNextObject(engine.nextPieceCount + 1);
+	}
+
+	/**
+	 * Search for the best choice (Same result as BasicAI.thinkBestPosition)
+	 */
+	public void search() {
+		for(int depth = 0; depth < ai.getThinkDepth(); depth++) {
+			searchDepth(depth);
+			if(ai.bestPts > 0) break;
+		}
+	}
+
+	/**
+	 * Search at one compromise level
+	 * @param depth Compromise level
+	 */
+	protected void searchDepth(final int depth) {
+		List<List<Column>> columns = createColumns(depth);
+		ArrayList<Job> jobs = new ArrayList<Job>();
+
+		// Score every straight drop
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			final Piece holdArg = ((depth == 0) && (rt == 0)) ? pieceHold : pieceHoldSub;
+			for(final Column c : columns.get(rt)) {
+				jobs.add(new Job() {
+					void run(Scratch s) {
+						scoreDrop(s, c, s.now, pieceNext, holdArg, depth);
+					}
+				});
+			}
+			if(columns.get(Piece.DIRECTION_COUNT + rt) != null) {
+				for(final Column c : columns.get(Piece.DIRECTION_COUNT + rt)) {
+					jobs.add(new Job() {
+						void run(Scratch s) {
+							scoreDrop(s, c, s.hold, pieceNext2, null, depth);
+						}
+					});
+				}
+			}
+		}
+		runJobs(jobs);
+
+		// Score the extra moves where the serial search may use them.
+		// bestPts only increases, so a column which doesn't need them without the extra moves never needs them.
+		jobs.clear();
+		int bestPts = ai.bestPts;
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			for(final Column c : columns.get(rt)) {
+				if(!c.valid) continue;
+				if(c.drop.pts >= bestPts) bestPts = c.drop.pts;
+				if(needExtraMoves(depth, bestPts)) {
+					final Piece holdArg = ((depth == 0) && (rt == 0)) ? pieceHold : pieceHoldSub;
+					jobs.add(new Job() {
+						void run(Scratch s) {
+							scoreExtraMoves(s, c, holdArg, depth);
+						}
+					});
+				}
+			}
+			if(columns.get(Piece.DIRECTION_COUNT + rt) != null) {
+				for(Column c : columns.get(Piece.DIRECTION_COUNT + rt)) {
+					if(c.valid && (c.drop.pts > bestPts)) bestPts = c.drop.pts;
+				}
+			}
+		}
+		runJobs(jobs);
+
+		// Pick the best one in the order of the serial search
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			for(Column c : columns.get(rt)) {
+				if(!c.valid) continue;
+
+				if(c.drop.forceHold) ai.forceHold = true;
+				if(c.drop.pts >= ai.bestPts) setBest(false, c, c.drop);
+
+				if(needExtraMoves(depth, ai.bestPts)) {
+					if(c.moves == null) {
+						// Never happens (See above)
+						scoreExtraMoves(new Scratch(), c, ((depth == 0) && (rt == 0)) ? pieceHold : pieceHoldSub, depth);
+					}
+					for(int i = 0; i < MOVE_COUNT; i++) {
+						Move m = c.moves[i];
+						if(!m.enabled) continue;
+						if(m.forceHold) ai.forceHold = true;
+						if(m.pts > ai.bestPts) setBest(false, c, m);
+					}
+				}
+			}
+			if(columns.get(Piece.DIRECTION_COUNT + rt) != null) {
+				for(Column c : columns.get(Piece.DIRECTION_COUNT + rt)) {
+					if(!c.valid) continue;
+					if(c.drop.forceHold) ai.forceHold = true;
+					if(c.drop.pts > ai.bestPts) setBest(true, c, c.drop);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes the columns of every direction
+	 * @param depth Compromise level
+	 * @return Columns of the current piece ([0-3]) and the hold piece ([4-7], null if hold is not used)
+	 */
+	protected List<List<Column>> createColumns(int depth) {
+		List<List<Column>> columns = new ArrayList<List<Column>>(Piece.DIRECTION_COUNT * 2);
+		for(int i = 0; i < Piece.DIRECTION_COUNT * 2; i++) columns.add(null);
+
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			columns.set(rt, new ArrayList<Column>());
+			int minX = pieceNow.getMostMovableLeft(nowX, nowY, rt, engine.field);
+			int maxX = pieceNow.getMostMovableRight(nowX, nowY, rt, engine.field);
+			for(int x = minX; x <= maxX; x++) columns.get(rt).add(new Column(rt, x, nowY));
+
+			if(holdOK && (pieceHoldSub != null) && (depth == 0)) {
+				columns.set(Piece.DIRECTION_COUNT + rt, new ArrayList<Column>());
+				int spawnX = engine.getSpawnPosX(engine.field, pieceHoldSub);
+				int spawnY = engine.getSpawnPosY(pieceHoldSub);
+				int minHoldX = pieceHoldSub.getMostMovableLeft(spawnX, spawnY, rt, engine.field);
+				int maxHoldX = pieceHoldSub.getMostMovableRight(spawnX, spawnY, rt, engine.field);
+				for(int x = minHoldX; x <= maxHoldX; x++) columns.get(Piece.DIRECTION_COUNT + rt).add(new Column(rt, x, spawnY));
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Scores a piece dropped straight down
+	 * @param s Scratch data
+	 * @param c Column
+	 * @param piece Piece
+	 * @param next NEXT piece
+	 * @param holdpiece HOLD piece
+	 * @param depth Compromise level
+	 */
+	protected void scoreDrop(Scratch s, Column c, Piece piece, Piece next, Piece holdpiece, int depth) {
+		s.fld.copy(engine.field);
+		c.y = piece.getBottom(c.x, c.startY, c.rt, s.fld);
+		c.valid = !piece.checkCollision(c.x, c.y, c.rt, s.fld);
+		if(c.valid) {
+			c.drop.enabled = true;
+			c.drop.x = c.x;
+			c.drop.y = c.y;
+			c.drop.rt = c.rt;
+			s.evaluate(c.drop, -1, piece, next, holdpiece, depth);
+		}
+	}
+
+	/**
+	 * Scores the shifts and rotations after dropping the current piece
+	 * @param s Scratch data
+	 * @param c Column
+	 * @param holdpiece HOLD piece
+	 * @param depth Compromise level
+	 */
+	protected void scoreExtraMoves(Scratch s, Column c, Piece holdpiece, int depth) {
+		Move[] moves = new Move[MOVE_COUNT];
+		for(int i = 0; i < MOVE_COUNT; i++) moves[i] = new Move();
+		int x = c.x, y = c.y, rt = c.rt;
+		Piece piece = s.now;
+
+		// Left shift
+		s.fld.copy(engine.field);
+		if(!piece.checkCollision(x - 1, y, rt, s.fld) && piece.checkCollision(x - 1, y - 1, rt, s.fld)) {
+			scoreMove(s, moves[MOVE_LEFT], x - 1, y, rt, holdpiece, depth);
+		}
+
+		// Right shift
+		s.fld.copy(engine.field);
+		if(!piece.checkCollision(x + 1, y, rt, s.fld) && piece.checkCollision(x + 1, y - 1, rt, s.fld)) {
+			scoreMove(s, moves[MOVE_RIGHT], x + 1, y, rt, holdpiece, depth);
+		}
+
+		// Rotations
+		if(!engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
+			scoreRotation(s, moves[MOVE_ROTATE_LEFT], c, -1, holdpiece, depth);
+		}
+		if(engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
+			scoreRotation(s, moves[MOVE_ROTATE_RIGHT], c, 1, holdpiece, depth);
+		}
+		if(engine.ruleopt.rotateButtonAllowDouble) {
+			scoreRotation(s, moves[MOVE_ROTATE_180], c, 2, holdpiece, depth);
+		}
+
+		c.moves = moves;
+	}
+
+	/**
+	 * Scores a rotation (With wallkick if the rule has it)
+	 * @param s Scratch data
+	 * @param m Result
+	 * @param c Column
+	 * @param move Rotation (-1: Left 1: Right 2: 180 degrees)
+	 * @param holdpiece HOLD piece
+	 * @param depth Compromise level
+	 */
+	protected void scoreRotation(Scratch s, Move m, Column c, int move, Piece holdpiece, int depth) {
+		Piece piece = s.now;
+		int rot = piece.getRotateDirection(move, c.rt);
+		m.enabled = true;
+		m.x = c.x;
+		m.y = c.y;
+		m.rt = rot;
+		m.rtSub = rot;
+		s.fld.copy(engine.field);
+
+		if(!piece.checkCollision(c.x, c.y, rot, s.fld)) {
+			s.evaluate(m, c.rt, piece, pieceNext, holdpiece, depth);
+		} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
+			boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+								  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
+			WallkickResult kick = engine.wallkick.executeWallkick(c.x, c.y, move, c.rt, rot, allowUpward, piece, s.fld, null);
+
+			if(kick != null) {
+				m.x = c.x + kick.offsetX;
+				m.y = c.y + kick.offsetY;
+				s.evaluate(m, c.rt, piece, pieceNext, holdpiece, depth);
+			}
+		}
+	}
+
+	/**
+	 * Scores a shift
+	 * @param s Scratch data
+	 * @param m Result
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param holdpiece HOLD piece
+	 * @param depth Compromise level
+	 */
+	protected void scoreMove(Scratch s, Move m, int x, int y, int rt, Piece holdpiece, int depth) {
+		m.enabled = true;
+		m.x = x;
+		m.y = y;
+		m.rt = rt;
+		s.evaluate(m, -1, s.now, pieceNext, holdpiece, depth);
+	}
+
+	/**
+	 * Checks if the serial search looks at the shifts and rotations
+	 * @param depth Compromise level
+	 * @param bestPts Best score so far
+	 * @return true if they are used
+	 */
+	protected boolean needExtraMoves(int depth, int bestPts) {
+		return (depth > 0) || (bestPts <= 10) || (pieceNow.id == Piece.PIECE_T);
+	}
+
+	/**
+	 * Sets the move to the AI
+	 * @param hold true if the hold piece is used
+	 * @param c Column
+	 * @param m Move
+	 */
+	protected void setBest(boolean hold, Column c, Move m) {
+		ai.bestHold = hold;
+		ai.bestX = c.x;
+		ai.bestY = c.y;
+		ai.bestRt = c.rt;
+		if(!hold) {
+			ai.bestXSub = m.x;
+			ai.bestYSub = m.y;
+		}
+		ai.bestRtSub = m.rtSub;
+		ai.bestPts = m.pts;
+	}
+
+	/**
+	 * Runs the jobs in the shared pool and waits for them
+	 * @param jobs Jobs
+	 */
+	protected void runJobs(ArrayList<Job> jobs) {
+		if(!jobs.isEmpty()) getPool().invoke(new SearchTask(jobs, 0, jobs.size()));
+	}
+}
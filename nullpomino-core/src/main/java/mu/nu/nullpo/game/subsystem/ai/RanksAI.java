@@ -31,7 +31,6 @@ package mu.nu.nullpo.game.subsystem.ai;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Arrays;
 
 import mu.nu.nullpo.game.component.Controller;
@@ -45,7 +44,7 @@ import mu.nu.nullpo.util.CustomProperties;
 
 import org.apache.log4j.Logger;
 
-public class RanksAI extends DummyAI implements Runnable {
+public class RanksAI extends DummyAI {
 
 	static Logger log = Logger.getLogger(RanksAI.class);
 
@@ -78,18 +77,12 @@ public class RanksAI extends DummyAI implements Runnable {
 
 	public boolean thinkRequest;
 
-	public boolean thinking;
-
-	public int thinkDelay;
-
 	//public int thinkCurrentPieceNo;
 
 	//public int thinkLastPieceNo;
 
 	public volatile boolean threadRunning;
 
-	public Thread thread;
-
 	private Ranks ranks;
 	private boolean skipNextFrame;
 
@@ -211,17 +204,12 @@ public class RanksAI extends DummyAI implements Runnable {
 			if (file!=null && file.trim().length()>0){
 			 inputFile=AIRanksConstants.RANKSAI_DIR+currentRanksFile;
 			}
-			FileInputStream fis = null;
-			ObjectInputStream in = null;
 
 			if (inputFile.trim().length() == 0)
 				ranks=new Ranks(4,9);
 			else {
 				try {
-					fis = new FileInputStream(inputFile);
-					in = new ObjectInputStream(fis);
-					ranks = (Ranks)in.readObject();
-					in.close();
+					ranks = Ranks.load(inputFile, true);
 
 				} catch (FileNotFoundException e) {
 					ranks=new Ranks(4,9);
@@ -247,12 +235,10 @@ public class RanksAI extends DummyAI implements Runnable {
 		// Inits the ranks
 		initRanks();
 
-		//Starts the thread
-		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
-			thread = new Thread(this, "AI_" + playerID);
-			thread.setDaemon(true);
-			thread.start();
-			thinkDelay = engine.aiThinkDelay;
+		//Starts taking think requests
+		if(engine.aiUseThread) {
+			startThinkClient(engine, playerID);
+			threadRunning = true;
 			thinkCurrentPieceNo = 0;
 			thinkLastPieceNo = 0;
 		}
@@ -262,11 +248,8 @@ public class RanksAI extends DummyAI implements Runnable {
 	@Override
 	public void shutdown(GameEngine engine, int playerID) {
 		ranks=null;
-		if((thread != null) && (thread.isAlive())) {
-			thread.interrupt();
-			threadRunning = false;
-			thread = null;
-		}
+		stopThinkClient();
+		threadRunning = false;
 	}
 
 	@Override
@@ -276,6 +259,7 @@ public class RanksAI extends DummyAI implements Runnable {
 		} else {
 			thinkRequest = true;
 			thinkCurrentPieceNo++;
+			requestThink();
 		}
 	}
 
@@ -334,6 +318,7 @@ public class RanksAI extends DummyAI implements Runnable {
 						if( ((bestX < minX - 1) || (bestX > maxX + 1) || (bestY < nowY)) && (rt == bestRt)  ){
 
 							thinkRequest = true;
+							requestThink();
 
 						} else {
 
@@ -858,37 +843,29 @@ public class RanksAI extends DummyAI implements Runnable {
 	 }
 
 	 /*
-	  * Thread routine for this AI
+	  * Think routine for this AI (Run by the shared AI workers)
 	 */
-	 public void run() {
-		 log.info("RanksAI: Thread start");
-		 threadRunning = true;
-
-		 while(threadRunning) {
-			 if(thinkRequest) {
-				 thinkRequest = false;
-				 thinking = true;
-				 try {
-					 thinkBestPosition(gEngine, gEngine.playerID);
-
-				 } catch (Throwable e) {
-					 log.debug("RanksAI: thinkBestPosition Failed", e);
-				 }
-				 thinking = false;
-				 skipNextFrame=false;
-			 }
+	 @Override
+	 public boolean think(GameEngine engine, int playerID) {
+		 if(!thinkRequest) return false;
+		 thinkRequest = false;
+		 thinking = true;
+		 thinkBestPosition(engine, playerID);
+		 return true;
+	 }
 
-			 if(thinkDelay > 0) {
-				 try {
-					 Thread.sleep(thinkDelay);
-				 } catch (InterruptedException e) {
-					 break;
-				 }
-			 }
+	 /*
+	  * Called after the think routine
+	 */
+	 @Override
+	 public void onThinkComplete(GameEngine engine, int playerID, boolean success) {
+		 super.onThinkComplete(engine, playerID, success);
+		 skipNextFrame=false;
+
+		 // thinkBestPosition stops the AI when the pieces don't fit anymore
+		 if(!threadRunning) {
+			 stopThinkClient();
+			 ranks=null;
 		 }
-
-		 threadRunning = false;
-		 ranks=null;
-		 log.info("RanksAI: Thread end");
 	 }
 }
@@ -38,6 +38,7 @@ import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.game.subsystem.mode.menu.AbstractMenuItem;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.StateBuffer;
 
 /**
  * Dummy implementation of game mode. Used as a base of most game modes.
@@ -268,6 +269,20 @@ public abstract class AbstractMode implements GameMode {
 	public void netplayOnRetryKey(GameEngine engine, int playerID) {
 	}
 
+	/*
+	 * Saves every variable declared in the mode class (See ModeStateFields)
+	 */
+	public boolean writeState(GameManager manager, StateBuffer buf) {
+		return ModeStateFields.writeState(this, buf);
+	}
+
+	/*
+	 * Restores the variables saved by writeState
+	 */
+	public void readState(GameManager manager, StateBuffer buf) {
+		ModeStateFields.readState(this, buf);
+	}
+
 	/**
 	 * Update menu cursor
 	 * @param engine GameEngine
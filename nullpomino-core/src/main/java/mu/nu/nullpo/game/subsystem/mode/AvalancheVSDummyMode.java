@@ -39,6 +39,7 @@ import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 
 /**
  * AVALANCHE VS DUMMY Mode
@@ -481,7 +482,7 @@ public abstract class AvalancheVSDummyMode extends AbstractMode {
 		receiver = engine.owner.receiver;
 		if(playerID == 1) {
 			engine.randSeed = owner.engine[0].randSeed;
-			engine.random = new Random(owner.engine[0].randSeed);
+			engine.random = new SeedRandom(owner.engine[0].randSeed);
 		}
 
 		engine.framecolor = PLAYER_COLOR_FRAME[playerID];
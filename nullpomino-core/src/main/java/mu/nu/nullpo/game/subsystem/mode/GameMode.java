@@ -32,6 +32,7 @@ import mu.nu.nullpo.game.component.Block;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.StateBuffer;
 
 /**
  * Game mode interface
@@ -393,4 +394,20 @@ public interface GameMode {
 	 * @param playerID Player ID
 	 */
 	public void netplayOnRetryKey(GameEngine engine, int playerID);
+
+	/**
+	 * Write the variables of this mode (Score, level, timers etc.) to a snapshot.
+	 * Called from GameManager.writeState (Used by replay keyframes).
+	 * @param manager GameManager
+	 * @param buf Snapshot buffer
+	 * @return false if this mode can't save its state (Nothing is written)
+	 */
+	public boolean writeState(GameManager manager, StateBuffer buf);
+
+	/**
+	 * Restore the variables written by writeState
+	 * @param manager GameManager
+	 * @param buf Snapshot buffer
+	 */
+	public void readState(GameManager manager, StateBuffer buf);
 }
@@ -48,6 +48,7 @@ import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
 import mu.nu.nullpo.gui.net.NetLobbyFrame;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
 
 import org.apache.log4j.Logger;
@@ -2309,7 +2310,7 @@ public class LegacyNetVSBattleMode extends NetDummyMode {
 					playerActive[i] = true;
 					engine.stat = GameEngine.Status.READY;
 					engine.randSeed = randseed;
-					engine.random = new Random(randseed);
+					engine.random = new SeedRandom(randseed);
 
 					if((numMaxPlayers == 2) && (numNowPlayers == 2)) {
 						engine.isVisible = true;
@@ -0,0 +1,436 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.mode;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.event.EventReceiver;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.mode.menu.AbstractMenuItem;
+import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.SeedRandom;
+import mu.nu.nullpo.util.StateBuffer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the variables of a game mode to a snapshot (Used by the default writeState/readState of AbstractMode).
+ * Every non-static, non-final, non-transient variable of the mode (Including the menu variables of AbstractMode) is written.
+ * Transient variables are left to the writeState and readState of the mode itself,
+ * and the netplay variables of NetDummyMode are skipped because replays are played offline.
+ * Supported types are primitives, String, enums, Field, Random (Only the state of SeedRandom),
+ * Lists of boxed primitives, String or Field, and arrays of any of them.
+ * References to the game and its settings (GameManager, EventReceiver, CustomProperties, menu items, GUI and netplay objects)
+ * are not part of the state and are skipped.
+ * A mode which has a variable of any other type can't be saved, unless it overrides writeState and readState.
+ */
+public final class ModeStateFields {
+	/** Log */
+	static Logger log = Logger.getLogger(ModeStateFields.class);
+
+	/** Variables of each mode class (An empty array if the mode can't be saved) */
+	private static final HashMap<Class<?>, java.lang.reflect.Field[]> fieldCache = new HashMap<Class<?>, java.lang.reflect.Field[]>();
+
+	/** Used in fieldCache for classes which can't be saved */
+	private static final java.lang.reflect.Field[] UNSUPPORTED = new java.lang.reflect.Field[0];
+
+	private ModeStateFields() {
+	}
+
+	/**
+	 * Checks if the variables of a mode can be saved
+	 * @param mode Game mode
+	 * @return true if writeState can save the mode
+	 */
+	public static boolean isSupported(Object mode) {
+		return getFields(mode.getClass()) != UNSUPPORTED;
+	}
+
+	/**
+	 * Writes the variables of a mode
+	 * @param mode Game mode
+	 * @param buf Snapshot buffer
+	 * @return false if the mode can't be saved (Nothing is written)
+	 */
+	public static boolean writeState(Object mode, StateBuffer buf) {
+		java.lang.reflect.Field[] fields = getFields(mode.getClass());
+		if(fields == UNSUPPORTED) return false;
+
+		try {
+			for(int i = 0; i < fields.length; i++) {
+				writeValue(buf, fields[i].getGenericType(), fields[i].get(mode));
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Can't read the variables of " + mode.getClass().getName(), e);
+		}
+		return true;
+	}
+
+	/**
+	 * Restores the variables written by writeState (Arrays, lists and fields are reused when possible)
+	 * @param mode Game mode
+	 * @param buf Snapshot buffer
+	 */
+	public static void readState(Object mode, StateBuffer buf) {
+		java.lang.reflect.Field[] fields = getFields(mode.getClass());
+		if(fields == UNSUPPORTED) {
+			throw new IllegalStateException(mode.getClass().getName() + " can't restore its state");
+		}
+
+		try {
+			for(int i = 0; i < fields.length; i++) {
+				fields[i].set(mode, readValue(buf, fields[i].getGenericType(), fields[i].get(mode)));
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Can't write the variables of " + mode.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Get the variables to save (Cached for each class)
+	 * @param c Mode class
+	 * @return Variables, or UNSUPPORTED
+	 */
+	private static synchronized java.lang.reflect.Field[] getFields(Class<?> c) {
+		java.lang.reflect.Field[] fields = fieldCache.get(c);
+		if(fields != null) return fields;
+
+		ArrayList<java.lang.reflect.Field> list = new ArrayList<java.lang.reflect.Field>();
+		boolean supported = true;
+
+		for(Class<?> k = c; (k != null) && (k != Object.class); k = k.getSuperclass()) {
+			if(k == NetDummyMode.class) continue;
+			for(java.lang.reflect.Field f : k.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if(Modifier.isStatic(mod) || Modifier.isFinal(mod) || Modifier.isTransient(mod) || f.isSynthetic()) continue;
+				if(isReference(f.getGenericType())) continue;
+
+				if(!isSupportedType(f.getGenericType())) {
+					log.debug(c.getName() + " can't be saved because of " + k.getSimpleName() + "." + f.getName());
+					supported = false;
+					break;
+				}
+				f.setAccessible(true);
+				list.add(f);
+			}
+			if(!supported) break;
+		}
+
+		fields = supported ? list.toArray(new java.lang.reflect.Field[list.size()]) : UNSUPPORTED;
+		fieldCache.put(c, fields);
+		return fields;
+	}
+
+	/**
+	 * Checks if a variable type is a reference to the game or its settings (Not saved)
+	 * @param type Type
+	 * @return true if it is skipped
+	 */
+	private static boolean isReference(Type type) {
+		if(type instanceof GenericArrayType) {
+			return isReference(((GenericArrayType)type).getGenericComponentType());
+		}
+		if(type instanceof ParameterizedType) {
+			// Lists of references (Menu items etc.)
+			Type element = ((ParameterizedType)type).getActualTypeArguments()[0];
+			return (element instanceof Class) && isReference(element);
+		}
+		if(!(type instanceof Class)) return false;
+
+		Class<?> c = (Class<?>)type;
+		while(c.isArray()) c = c.getComponentType();
+		if(GameManager.class.isAssignableFrom(c) || EventReceiver.class.isAssignableFrom(c) ||
+		   CustomProperties.class.isAssignableFrom(c) || AbstractMenuItem.class.isAssignableFrom(c))
+			return true;
+
+		String name = c.getName();
+		return name.startsWith("mu.nu.nullpo.gui.") || name.startsWith("mu.nu.nullpo.game.net.");
+	}
+
+	/**
+	 * Checks if a type can be saved
+	 * @param type Type
+	 * @return true if it can be saved
+	 */
+	private static boolean isSupportedType(Type type) {
+		if(type instanceof Class) {
+			Class<?> c = (Class<?>)type;
+			if(c.isArray()) return isSupportedType(c.getComponentType());
+			return c.isPrimitive() || isBoxedType(c) || c.isEnum() || (c == String.class) || (c == Field.class) || (c == Random.class);
+		}
+		if(type instanceof GenericArrayType) {
+			return isSupportedType(((GenericArrayType)type).getGenericComponentType());
+		}
+		if(type instanceof ParameterizedType) {
+			ParameterizedType p = (ParameterizedType)type;
+			Class<?> raw = (Class<?>)p.getRawType();
+			if(!List.class.isAssignableFrom(raw)) return false;
+			Type element = p.getActualTypeArguments()[0];
+			return (element instanceof Class) && (isBoxedType((Class<?>)element) || (element == String.class) || (element == Field.class));
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a class is a boxed primitive
+	 * @param c Class
+	 * @return true if c is Integer, Long, Float, Double or Boolean
+	 */
+	private static boolean isBoxedType(Class<?> c) {
+		return (c == Integer.class) || (c == Long.class) || (c == Float.class) || (c == Double.class) || (c == Boolean.class);
+	}
+
+	/**
+	 * Writes a value
+	 * @param buf Snapshot buffer
+	 * @param type Declared type
+	 * @param v Value
+	 */
+	private static void writeValue(StateBuffer buf, Type type, Object v) {
+		if((type instanceof Class) && ((Class<?>)type).isPrimitive()) {
+			writePrimitive(buf, (Class<?>)type, v);
+			return;
+		}
+
+		buf.writeBoolean(v != null);
+		if(v == null) return;
+
+		if(type instanceof Class) {
+			Class<?> c = (Class<?>)type;
+			if(c == int[].class) {
+				buf.writeIntArray((int[])v);
+			} else if(c == boolean[].class) {
+				buf.writeBooleanArray((boolean[])v);
+			} else if(c.isArray()) {
+				int length = Array.getLength(v);
+				buf.writeInt(length);
+				for(int i = 0; i < length; i++) writeValue(buf, c.getComponentType(), Array.get(v, i));
+			} else if(c == Random.class) {
+				// Only SeedRandom has a state which can be saved
+				buf.writeBoolean(v instanceof SeedRandom);
+				if(v instanceof SeedRandom) buf.writeLong(((SeedRandom)v).getState());
+			} else {
+				writeObject(buf, v);
+			}
+		} else if(type instanceof GenericArrayType) {
+			Type component = ((GenericArrayType)type).getGenericComponentType();
+			Object[] a = (Object[])v;
+			buf.writeInt(a.length);
+			for(int i = 0; i < a.length; i++) writeValue(buf, component, a[i]);
+		} else {
+			List<?> list = (List<?>)v;
+			buf.writeInt(list.size());
+			for(Object o : list) {
+				buf.writeBoolean(o != null);
+				if(o != null) writeObject(buf, o);
+			}
+		}
+	}
+
+	/**
+	 * Writes a primitive value
+	 * @param buf Snapshot buffer
+	 * @param c Primitive type
+	 * @param v Boxed value
+	 */
+	private static void writePrimitive(StateBuffer buf, Class<?> c, Object v) {
+		if(c == int.class) buf.writeInt((Integer)v);
+		else if(c == boolean.class) buf.writeBoolean((Boolean)v);
+		else if(c == long.class) buf.writeLong((Long)v);
+		else if(c == float.class) buf.writeFloat((Float)v);
+		else if(c == double.class) buf.writeDouble((Double)v);
+		else if(c == byte.class) buf.writeByte((Byte)v);
+		else if(c == short.class) buf.writeShort((Short)v);
+		else if(c == char.class) buf.writeShort((Character)v);
+	}
+
+	/**
+	 * Writes a non-null object which is not an array, list or Random
+	 * @param buf Snapshot buffer
+	 * @param v Value
+	 */
+	private static void writeObject(StateBuffer buf, Object v) {
+		if(v instanceof Integer) buf.writeInt((Integer)v);
+		else if(v instanceof Boolean) buf.writeBoolean((Boolean)v);
+		else if(v instanceof Long) buf.writeLong((Long)v);
+		else if(v instanceof Float) buf.writeFloat((Float)v);
+		else if(v instanceof Double) buf.writeDouble((Double)v);
+		else if(v instanceof String) buf.writeString((String)v);
+		else if(v instanceof Enum) buf.writeInt(((Enum<?>)v).ordinal());
+		else if(v instanceof Field) ((Field)v).writeState(buf);
+		else throw new IllegalStateException("Can't save " + v.getClass().getName());
+	}
+
+	/**
+	 * Reads a value
+	 * @param buf Snapshot buffer
+	 * @param type Declared type
+	 * @param old Current value (Reused if possible)
+	 * @return Value
+	 */
+	private static Object readValue(StateBuffer buf, Type type, Object old) {
+		if((type instanceof Class) && ((Class<?>)type).isPrimitive()) {
+			return readPrimitive(buf, (Class<?>)type);
+		}
+
+		if(!buf.readBoolean()) return null;
+
+		if(type instanceof Class) {
+			Class<?> c = (Class<?>)type;
+			if(c == int[].class) {
+				return buf.readIntArray((int[])old);
+			} else if(c == boolean[].class) {
+				return buf.readBooleanArray((boolean[])old);
+			} else if(c.isArray()) {
+				return readArray(buf, c.getComponentType(), c.getComponentType(), old);
+			} else if(c == Random.class) {
+				if(!buf.readBoolean()) return old;
+				SeedRandom r = (old instanceof SeedRandom) ? (SeedRandom)old : new SeedRandom(0);
+				r.setState(buf.readLong());
+				return r;
+			} else {
+				return readObject(buf, c, old);
+			}
+		} else if(type instanceof GenericArrayType) {
+			Type component = ((GenericArrayType)type).getGenericComponentType();
+			Class<?> raw = (component instanceof ParameterizedType) ?
+					(Class<?>)((ParameterizedType)component).getRawType() : Object.class;
+			return readArray(buf, component, raw, old);
+		} else {
+			return readList(buf, (ParameterizedType)type, old);
+		}
+	}
+
+	/**
+	 * Reads an array
+	 * @param buf Snapshot buffer
+	 * @param component Declared type of the elements
+	 * @param raw Class of the elements
+	 * @param old Current array (Reused if it has the same length)
+	 * @return Array
+	 */
+	private static Object readArray(StateBuffer buf, Type component, Class<?> raw, Object old) {
+		int length = buf.readInt();
+		Object a = old;
+		if((a == null) || (Array.getLength(a) != length)) a = Array.newInstance(raw, length);
+		for(int i = 0; i < length; i++) {
+			Array.set(a, i, readValue(buf, component, Array.get(a, i)));
+		}
+		return a;
+	}
+
+	/**
+	 * Reads a list
+	 * @param buf Snapshot buffer
+	 * @param type Declared type
+	 * @param old Current list (Reused if not null)
+	 * @return List
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object readList(StateBuffer buf, ParameterizedType type, Object old) {
+		Class<?> raw = (Class<?>)type.getRawType();
+		Class<?> element = (Class<?>)type.getActualTypeArguments()[0];
+
+		List<Object> list = (List<Object>)old;
+		if(list == null) {
+			if(raw.isInterface()) {
+				list = new ArrayList<Object>();
+			} else {
+				try {
+					list = (List<Object>)raw.newInstance();
+				} catch (Exception e) {
+					throw new IllegalStateException("Can't create " + raw.getName(), e);
+				}
+			}
+		}
+
+		int size = buf.readInt();
+		ArrayList<Object> oldElements = new ArrayList<Object>(list);
+		list.clear();
+		for(int i = 0; i < size; i++) {
+			if(!buf.readBoolean()) {
+				list.add(null);
+			} else {
+				list.add(readObject(buf, element, (i < oldElements.size()) ? oldElements.get(i) : null));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Reads a primitive value
+	 * @param buf Snapshot buffer
+	 * @param c Primitive type
+	 * @return Boxed value
+	 */
+	private static Object readPrimitive(StateBuffer buf, Class<?> c) {
+		if(c == int.class) return buf.readInt();
+		if(c == boolean.class) return buf.readBoolean();
+		if(c == long.class) return buf.readLong();
+		if(c == float.class) return buf.readFloat();
+		if(c == double.class) return buf.readDouble();
+		if(c == byte.class) return buf.readByte();
+		if(c == short.class) return (short)buf.readShort();
+		return (char)buf.readShort();
+	}
+
+	/**
+	 * Reads a non-null object written by writeObject
+	 * @param buf Snapshot buffer
+	 * @param c Declared class
+	 * @param old Current value (Reused if it is a Field)
+	 * @return Value
+	 */
+	private static Object readObject(StateBuffer buf, Class<?> c, Object old) {
+		if(c == Integer.class) return buf.readInt();
+		if(c == Boolean.class) return buf.readBoolean();
+		if(c == Long.class) return buf.readLong();
+		if(c == Float.class) return buf.readFloat();
+		if(c == Double.class) return buf.readDouble();
+		if(c == String.class) return buf.readString();
+		if(c.isEnum()) {
+			Object[] values = c.getEnumConstants();
+			int ordinal = buf.readInt();
+			if((ordinal < 0) || (ordinal >= values.length)) throw new IllegalStateException("Broken snapshot (" + c.getName() + ")");
+			return values[ordinal];
+		}
+		Field field = (old instanceof Field) ? (Field)old : new Field();
+		field.readState(buf);
+		return field;
+	}
+}
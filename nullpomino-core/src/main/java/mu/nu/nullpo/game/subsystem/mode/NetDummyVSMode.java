@@ -16,6 +16,7 @@ import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
 import mu.nu.nullpo.gui.net.NetLobbyFrame;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
 
 /**
@@ -1330,7 +1331,7 @@ public class NetDummyVSMode extends NetDummyMode {
 					netvsPlayerActive[i] = true;
 					engine.stat = GameEngine.Status.READY;
 					engine.randSeed = randseed;
-					engine.random = new Random(randseed);
+					engine.random = new SeedRandom(randseed);
 
 					if((netCurrentRoomInfo.maxPlayers == 2) && (netvsNumPlayers == 2)) {
 						engine.isVisible = true;
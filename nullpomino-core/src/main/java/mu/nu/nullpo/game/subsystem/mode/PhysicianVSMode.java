@@ -42,6 +42,7 @@ import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 
 /**
  * PHYSICIAN VS-BATTLE mode (beta)
@@ -350,7 +351,7 @@ public class PhysicianVSMode extends AbstractMode {
 	public void playerInit(GameEngine engine, int playerID) {
 		if(playerID == 1) {
 			engine.randSeed = owner.engine[0].randSeed;
-			engine.random = new Random(owner.engine[0].randSeed);
+			engine.random = new SeedRandom(owner.engine[0].randSeed);
 		}
 
 		engine.framecolor = PLAYER_COLOR_FRAME[playerID];
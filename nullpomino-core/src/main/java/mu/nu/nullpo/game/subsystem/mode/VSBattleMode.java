@@ -41,6 +41,8 @@ import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
+import mu.nu.nullpo.util.StateBuffer;
 
 /**
  * VS-BATTLE Mode
@@ -178,8 +180,8 @@ public class VSBattleMode extends AbstractMode {
 	/** Winner */
 	private int winnerID;
 
-	/** I was sent from the enemygarbage blockA list of */
-	private LinkedList<GarbageEntry>[] garbageEntries;
+	/** I was sent from the enemygarbage blockA list of (Saved by writeState of this class) */
+	private transient LinkedList<GarbageEntry>[] garbageEntries;
 
 	/** HurryupAfterBlockI put count */
 	private int[] hurryupCount;
@@ -456,7 +458,7 @@ public class VSBattleMode extends AbstractMode {
 	public void playerInit(GameEngine engine, int playerID) {
 		if (playerID == 1) {
 			engine.randSeed = owner.engine[0].randSeed;
-			engine.random = new Random(owner.engine[0].randSeed);
+			engine.random = new SeedRandom(owner.engine[0].randSeed);
 		}
 
 		engine.framecolor = PLAYER_COLOR_FRAME[playerID];
@@ -1417,6 +1419,48 @@ public class VSBattleMode extends AbstractMode {
 		owner.replayProp.setProperty("vsbattle.version", version);
 	}
 
+	/*
+	 * Saves the variables and the garbage waiting for each player
+	 */
+	@Override
+	public boolean writeState(GameManager manager, StateBuffer buf) {
+		if(!super.writeState(manager, buf)) return false;
+
+		for(int i = 0; i < MAX_PLAYERS; i++) {
+			if(garbageEntries[i] == null) {
+				buf.writeInt(-1);
+			} else {
+				buf.writeInt(garbageEntries[i].size());
+				for(GarbageEntry garbageEntry : garbageEntries[i]) {
+					buf.writeInt(garbageEntry.lines);
+					buf.writeInt(garbageEntry.playerID);
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Restores the variables and the garbage waiting for each player
+	 */
+	@Override
+	public void readState(GameManager manager, StateBuffer buf) {
+		super.readState(manager, buf);
+
+		for(int i = 0; i < MAX_PLAYERS; i++) {
+			int count = buf.readInt();
+			if(count < 0) {
+				garbageEntries[i] = null;
+			} else {
+				garbageEntries[i] = new LinkedList<GarbageEntry>();
+				for(int j = 0; j < count; j++) {
+					int lines = buf.readInt();
+					garbageEntries[i].add(new GarbageEntry(lines, buf.readInt()));
+				}
+			}
+		}
+	}
+
 	/**
 	 * I was sent from the enemygarbage blockOf data
 	 */
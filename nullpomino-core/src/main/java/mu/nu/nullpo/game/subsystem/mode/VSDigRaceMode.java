@@ -1,6 +1,5 @@
 package mu.nu.nullpo.game.subsystem.mode;
 
-import java.util.Random;
 
 import mu.nu.nullpo.game.component.BGMStatus;
 import mu.nu.nullpo.game.component.Block;
@@ -10,6 +9,7 @@ import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 
 /**
  * VS-DIG RACE mode
@@ -154,7 +154,7 @@ public class VSDigRaceMode extends AbstractMode {
 	public void playerInit(GameEngine engine, int playerID) {
 		if(playerID == 1) {
 			engine.randSeed = owner.engine[0].randSeed;
-			engine.random = new Random(owner.engine[0].randSeed);
+			engine.random = new SeedRandom(owner.engine[0].randSeed);
 		}
 
 		engine.framecolor = PLAYER_COLOR_FRAME[playerID];
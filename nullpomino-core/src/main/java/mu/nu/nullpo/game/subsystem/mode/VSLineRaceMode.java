@@ -1,6 +1,5 @@
 package mu.nu.nullpo.game.subsystem.mode;
 
-import java.util.Random;
 
 import mu.nu.nullpo.game.component.BGMStatus;
 import mu.nu.nullpo.game.component.Controller;
@@ -9,6 +8,7 @@ import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.SeedRandom;
 
 /**
  * VS-LINE RACE Mode
@@ -153,7 +153,7 @@ public class VSLineRaceMode extends AbstractMode {
 	public void playerInit(GameEngine engine, int playerID) {
 		if(playerID == 1) {
 			engine.randSeed = owner.engine[0].randSeed;
-			engine.random = new Random(owner.engine[0].randSeed);
+			engine.random = new SeedRandom(owner.engine[0].randSeed);
 		}
 
 		engine.framecolor = PLAYER_COLOR_FRAME[playerID];
@@ -44,6 +44,7 @@ import javax.swing.JOptionPane;
 
 import mu.nu.nullpo.game.net.NetObserverClient;
 import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.util.AsyncPropertiesWriter;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.ModeManager;
 
@@ -662,6 +663,9 @@ public class NullpoMinoSDL {
 	public static void shutdown() {
 		log.info("NullpoMinoSDL shutdown()");
 
+		// Wait for the files saved in the background
+		AsyncPropertiesWriter.flush();
+
 		try {
 			stopObserverClient();
 			for(int i = 0; i < joystickMax; i++) {
@@ -231,6 +231,9 @@ public class StateConfigGameTuningSDL extends BaseStateSDL {
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSDL.propConfig.getProperty("option.showInput", false);
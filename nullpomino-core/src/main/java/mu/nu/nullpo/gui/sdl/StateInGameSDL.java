@@ -30,8 +30,10 @@ package mu.nu.nullpo.gui.sdl;
 
 import org.apache.log4j.Logger;
 
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplayKeyframes;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
@@ -66,6 +68,9 @@ public class StateInGameSDL extends BaseStateSDL {
 	/** Fast forward */
 	protected int fastforward = 0;
 
+	/** Number of frames moved by one replay seek (Up/Down key) */
+	protected static final int REPLAY_SEEK_FRAMES = 600;
+
 	/** Pause menu cursor position */
 	protected int cursor = 0;
 
@@ -104,6 +109,7 @@ public class StateInGameSDL extends BaseStateSDL {
 	 */
 	public void startNewGame(String strRulePath) {
 		gameManager = new GameManager(new RendererSDL());
+		gameManager.replayFormat = ReplayProperties.getFormat(NullpoMinoSDL.propGlobal.getProperty("replay.format", "text"));
 		pause = false;
 
 		try {
@@ -177,6 +183,9 @@ public class StateInGameSDL extends BaseStateSDL {
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSDL.propConfig.getProperty("option.showInput", false);
@@ -196,6 +205,7 @@ public class StateInGameSDL extends BaseStateSDL {
 		gameManager = new GameManager(new RendererSDL());
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayKeyframes = new ReplayKeyframes();
 		pause = false;
 
 		try {
@@ -244,6 +254,9 @@ public class StateInGameSDL extends BaseStateSDL {
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSDL.propConfig.getProperty("option.showInput", false);
@@ -255,6 +268,18 @@ public class StateInGameSDL extends BaseStateSDL {
 		updateTitleBarCaption();
 	}
 
+	/**
+	 * Move the replay forward or backward
+	 * @param frames Number of frames (Negative to go back)
+	 */
+	protected void seekReplay(int frames) {
+		if(gameManager.replayKeyframes == null) return;
+		int target = Math.max(0, gameManager.replayKeyframes.getFrame() + frames);
+		if(gameManager.replayKeyframes.seek(gameManager, target)) {
+			ResourceHolderSDL.soundManager.play("cursor");
+		}
+	}
+
 	/**
 	 * Update title bar text
 	 */
@@ -452,6 +477,14 @@ public class StateInGameSDL extends BaseStateSDL {
 				}
 			}
 
+			// Replay seek
+			if(!pause && GameKeySDL.gamekey[0].isMenuRepeatKey(GameKeySDL.BUTTON_UP)) {
+				seekReplay(-REPLAY_SEEK_FRAMES);
+			}
+			if(!pause && GameKeySDL.gamekey[0].isMenuRepeatKey(GameKeySDL.BUTTON_DOWN)) {
+				seekReplay(REPLAY_SEEK_FRAMES);
+			}
+
 			// Replay re-record
 			if(GameKeySDL.gamekey[0].isPushKey(GameKeySDL.BUTTON_D)) {
 				gameManager.replayRerecord = true;
@@ -328,6 +328,9 @@ public class StateNetGameSDL extends BaseStateSDL implements NetLobbyListener {
 				gameManager.engine[0].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiUseThread", true);
 				gameManager.engine[0].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiShowHint", false);
 				gameManager.engine[0].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiPrethink", false);
+				gameManager.engine[0].aiParallelThink = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiParallelThink", false);
+				gameManager.engine[0].aiThinkDepth = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiThinkDepth", 0);
+				gameManager.engine[0].aiMoveSearch = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiMoveSearch", false);
 				gameManager.engine[0].aiShowState = NullpoMinoSDL.propGlobal.getProperty(0 + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSDL.propConfig.getProperty("option.showInput", false);
@@ -34,6 +34,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
 
+import mu.nu.nullpo.game.component.ReplayIndex;
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.component.Statistics;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
@@ -55,14 +57,8 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 	/** 1Displayed on the screenMaximumFilecount */
 	public static final int PAGE_HEIGHT = 20;
 
-	/** Mode  name */
-	protected String[] modenameList;
-
-	/** Rule name */
-	protected String[] rulenameList;
-
-	/** ScoreInformation such as the */
-	protected Statistics[] statsList;
+	/** Mode name, rule name and score of the replays */
+	protected ReplayIndex replayIndex;
 
 	public StateReplaySelectSDL () {
 		pageHeight = PAGE_HEIGHT;
@@ -104,32 +100,13 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 	}
 
 	/**
-	 * Set the details of replay
+	 * Set the details of replay (Replays not in the index are read in the background)
 	 */
 	protected void setReplayRuleAndModeList() {
 		if(list == null) return;
 
-		modenameList = new String[list.length];
-		rulenameList = new String[list.length];
-		statsList = new Statistics[list.length];
-
-		for(int i = 0; i < list.length; i++) {
-			CustomProperties prop = new CustomProperties();
-
-			try {
-				FileInputStream in = new FileInputStream(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i]);
-				prop.load(in);
-				in.close();
-			} catch (IOException e) {
-				log.warn("Failed to load replay file from " + list[i], e);
-			}
-
-			modenameList[i] = prop.getProperty("name.mode", "");
-			rulenameList[i] = prop.getProperty("name.rule", "");
-
-			statsList[i] = new Statistics();
-			statsList[i].readProperty(prop, 0);
-		}
+		if(replayIndex == null) replayIndex = new ReplayIndex();
+		replayIndex.update(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay"), list);
 	}
 
 	/*
@@ -142,16 +119,23 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 
 		NormalFontSDL.printFontGrid(1, 1, title, NormalFontSDL.COLOR_ORANGE);
 
-		NormalFontSDL.printFontGrid(1, 24, "MODE:" + modenameList[cursor] + " RULE:" + rulenameList[cursor], NormalFontSDL.COLOR_CYAN);
+		ReplayIndex.Entry entry = replayIndex.getEntry(cursor);
+		if(!entry.loaded) {
+			NormalFontSDL.printFontGrid(1, 24, "LOADING...", NormalFontSDL.COLOR_CYAN);
+			return;
+		}
+		Statistics stats = entry.statistics;
+
+		NormalFontSDL.printFontGrid(1, 24, "MODE:" + entry.modeName + " RULE:" + entry.ruleName, NormalFontSDL.COLOR_CYAN);
 		NormalFontSDL.printFontGrid(1, 25,
-									"SCORE:" + statsList[cursor].score + " LINE:" + statsList[cursor].lines
+									"SCORE:" + stats.score + " LINE:" + stats.lines
 									, NormalFontSDL.COLOR_CYAN);
 		NormalFontSDL.printFontGrid(1, 26,
-									"LEVEL:" + (statsList[cursor].level + statsList[cursor].levelDispAdd) +
-									" TIME:" + GeneralUtil.getTime(statsList[cursor].time)
+									"LEVEL:" + (stats.level + stats.levelDispAdd) +
+									" TIME:" + GeneralUtil.getTime(stats.time)
 									, NormalFontSDL.COLOR_CYAN);
 		NormalFontSDL.printFontGrid(1, 27,
-									"GAME RATE:" + ( (statsList[cursor].gamerate == 0f) ? "UNKNOWN" : ((100*statsList[cursor].gamerate) + "%") )
+									"GAME RATE:" + ( (stats.gamerate == 0f) ? "UNKNOWN" : ((100*stats.gamerate) + "%") )
 									, NormalFontSDL.COLOR_CYAN);
 	}
 
@@ -159,7 +143,7 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 	protected boolean onDecide() throws SDLException {
 		ResourceHolderSDL.soundManager.play("decide");
 
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop = new ReplayProperties();
 
 		try {
 			FileInputStream in = new FileInputStream(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor]);
@@ -45,6 +45,7 @@ import javax.swing.JOptionPane;
 
 import mu.nu.nullpo.game.net.NetObserverClient;
 import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.util.AsyncPropertiesWriter;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.ModeManager;
 
@@ -431,6 +432,9 @@ public class NullpoMinoSlick extends StateBasedGame {
 			stateNetGame.netLobby.shutdown();
 		}
 
+		// Wait for the files saved in the background
+		AsyncPropertiesWriter.flush();
+
 		System.exit(0);
 	}
 
@@ -244,6 +244,9 @@ public class StateConfigGameTuning extends BaseGameState {
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSlick.propConfig.getProperty("option.showInput", false);
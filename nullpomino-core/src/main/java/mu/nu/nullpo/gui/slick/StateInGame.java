@@ -30,8 +30,10 @@ package mu.nu.nullpo.gui.slick;
 
 import org.apache.log4j.Logger;
 
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplayKeyframes;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
@@ -73,6 +75,9 @@ public class StateInGame extends BasicGameState {
 	/** Fast forward */
 	protected int fastforward = 0;
 
+	/** Number of frames moved by one replay seek (Up/Down key) */
+	protected static final int REPLAY_SEEK_FRAMES = 600;
+
 	/** Pause menu cursor position */
 	protected int cursor = 0;
 
@@ -133,6 +138,7 @@ public class StateInGame extends BasicGameState {
 	 */
 	public void startNewGame(String strRulePath) {
 		gameManager = new GameManager(new RendererSlick());
+		gameManager.replayFormat = ReplayProperties.getFormat(NullpoMinoSlick.propGlobal.getProperty("replay.format", "text"));
 		pause = false;
 
 		gameManager.receiver.setGraphics(appContainer.getGraphics());
@@ -201,6 +207,9 @@ public class StateInGame extends BasicGameState {
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSlick.propConfig.getProperty("option.showInput", false);
@@ -220,6 +229,7 @@ public class StateInGame extends BasicGameState {
 		gameManager = new GameManager(new RendererSlick());
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayKeyframes = new ReplayKeyframes();
 		pause = false;
 
 		gameManager.receiver.setGraphics(appContainer.getGraphics());
@@ -264,6 +274,9 @@ public class StateInGame extends BasicGameState {
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSlick.propConfig.getProperty("option.showInput", false);
@@ -275,6 +288,18 @@ public class StateInGame extends BasicGameState {
 		updateTitleBarCaption();
 	}
 
+	/**
+	 * Move the replay forward or backward
+	 * @param frames Number of frames (Negative to go back)
+	 */
+	protected void seekReplay(int frames) {
+		if(gameManager.replayKeyframes == null) return;
+		int target = Math.max(0, gameManager.replayKeyframes.getFrame() + frames);
+		if(gameManager.replayKeyframes.seek(gameManager, target)) {
+			ResourceHolderSlick.soundManager.play("cursor");
+		}
+	}
+
 	/**
 	 * Update title bar text
 	 */
@@ -495,6 +520,14 @@ public class StateInGame extends BasicGameState {
 				}
 			}
 
+			// Replay seek
+			if(!pause && GameKeySlick.gamekey[0].isMenuRepeatKey(GameKeySlick.BUTTON_UP)) {
+				seekReplay(-REPLAY_SEEK_FRAMES);
+			}
+			if(!pause && GameKeySlick.gamekey[0].isMenuRepeatKey(GameKeySlick.BUTTON_DOWN)) {
+				seekReplay(REPLAY_SEEK_FRAMES);
+			}
+
 			// Replay re-record
 			if(GameKeySlick.gamekey[0].isPushKey(GameKeySlick.BUTTON_D)) {
 				gameManager.replayRerecord = true;
@@ -370,6 +370,9 @@ public class StateNetGame extends BasicGameState implements NetLobbyListener {
 				gameManager.engine[0].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiUseThread", true);
 				gameManager.engine[0].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiShowHint", false);
 				gameManager.engine[0].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiPrethink", false);
+				gameManager.engine[0].aiParallelThink = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiParallelThink", false);
+				gameManager.engine[0].aiThinkDepth = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiThinkDepth", 0);
+				gameManager.engine[0].aiMoveSearch = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiMoveSearch", false);
 				gameManager.engine[0].aiShowState = NullpoMinoSlick.propGlobal.getProperty(0 + ".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSlick.propConfig.getProperty("option.showInput", false);
@@ -34,6 +34,8 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
 
+import mu.nu.nullpo.game.component.ReplayIndex;
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.component.Statistics;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
@@ -57,14 +59,8 @@ public class StateReplaySelect extends DummyMenuScrollState {
 	/** Log */
 	static Logger log = Logger.getLogger(StateReplaySelect.class);
 
-	/** Mode  name */
-	protected String[] modenameList;
-
-	/** Rule name */
-	protected String[] rulenameList;
-
-	/** ScoreInformation such as the */
-	protected Statistics[] statsList;
+	/** Mode name, rule name and score of the replays */
+	protected ReplayIndex replayIndex;
 
 	public StateReplaySelect () {
 		pageHeight = PAGE_HEIGHT;
@@ -124,32 +120,13 @@ public class StateReplaySelect extends DummyMenuScrollState {
 	}
 
 	/**
-	 * Set the details of replay
+	 * Set the details of replay (Replays not in the index are read in the background)
 	 */
 	protected void setReplayRuleAndModeList() {
 		if(list == null) return;
 
-		modenameList = new String[list.length];
-		rulenameList = new String[list.length];
-		statsList = new Statistics[list.length];
-
-		for(int i = 0; i < list.length; i++) {
-			CustomProperties prop = new CustomProperties();
-
-			try {
-				FileInputStream in = new FileInputStream(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i]);
-				prop.load(in);
-				in.close();
-			} catch (IOException e) {
-				log.error("Failed to load replay file (" + list[i] + ")", e);
-			}
-
-			modenameList[i] = prop.getProperty("name.mode", "");
-			rulenameList[i] = prop.getProperty("name.rule", "");
-
-			statsList[i] = new Statistics();
-			statsList[i].readProperty(prop, 0);
-		}
+		if(replayIndex == null) replayIndex = new ReplayIndex();
+		replayIndex.update(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay"), list);
 	}
 
 	@Override
@@ -158,16 +135,23 @@ public class StateReplaySelect extends DummyMenuScrollState {
 		title += " (" + (cursor + 1) + "/" + (list.length) + ")";
 		NormalFontSlick.printFontGrid(1, 1, title, NormalFontSlick.COLOR_ORANGE);
 
-		NormalFontSlick.printFontGrid(1, 24, "MODE:" + modenameList[cursor] + " RULE:" + rulenameList[cursor], NormalFontSlick.COLOR_CYAN);
+		ReplayIndex.Entry entry = replayIndex.getEntry(cursor);
+		if(!entry.loaded) {
+			NormalFontSlick.printFontGrid(1, 24, "LOADING...", NormalFontSlick.COLOR_CYAN);
+			return;
+		}
+		Statistics stats = entry.statistics;
+
+		NormalFontSlick.printFontGrid(1, 24, "MODE:" + entry.modeName + " RULE:" + entry.ruleName, NormalFontSlick.COLOR_CYAN);
 		NormalFontSlick.printFontGrid(1, 25,
-									"SCORE:" + statsList[cursor].score + " LINE:" + statsList[cursor].lines
+									"SCORE:" + stats.score + " LINE:" + stats.lines
 									, NormalFontSlick.COLOR_CYAN);
 		NormalFontSlick.printFontGrid(1, 26,
-									"LEVEL:" + (statsList[cursor].level + statsList[cursor].levelDispAdd) +
-									" TIME:" + GeneralUtil.getTime(statsList[cursor].time)
+									"LEVEL:" + (stats.level + stats.levelDispAdd) +
+									" TIME:" + GeneralUtil.getTime(stats.time)
 									, NormalFontSlick.COLOR_CYAN);
 		NormalFontSlick.printFontGrid(1, 27,
-									"GAME RATE:" + ( (statsList[cursor].gamerate == 0f) ? "UNKNOWN" : ((100*statsList[cursor].gamerate) + "%") )
+									"GAME RATE:" + ( (stats.gamerate == 0f) ? "UNKNOWN" : ((100*stats.gamerate) + "%") )
 									, NormalFontSlick.COLOR_CYAN);
 	}
 
@@ -175,7 +159,7 @@ public class StateReplaySelect extends DummyMenuScrollState {
 	protected boolean onDecide(GameContainer container, StateBasedGame game, int delta) {
 		ResourceHolderSlick.soundManager.play("decide");
 
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop = new ReplayProperties();
 
 		try {
 			FileInputStream in = new FileInputStream(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor]);
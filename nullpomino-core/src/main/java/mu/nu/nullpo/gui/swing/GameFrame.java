@@ -135,6 +135,9 @@ public class GameFrame extends JFrame implements Runnable {
 	/** Double speedMode */
 	protected int fastforward = 0;
 
+	/** Number of frames moved by one replay seek (Up/Down key) */
+	protected static final int REPLAY_SEEK_FRAMES = 600;
+
 	/** ScreenshotCreating flag */
 	protected boolean ssflag = false;
 
@@ -471,6 +474,14 @@ public class GameFrame extends JFrame implements Runnable {
 				}
 			}
 
+			// Replay seek
+			if(!pause && GameKeySwing.gamekey[0].isMenuRepeatKey(GameKeySwing.BUTTON_UP)) {
+				seekReplay(-REPLAY_SEEK_FRAMES);
+			}
+			if(!pause && GameKeySwing.gamekey[0].isMenuRepeatKey(GameKeySwing.BUTTON_DOWN)) {
+				seekReplay(REPLAY_SEEK_FRAMES);
+			}
+
 			// Replay re-record
 			if(GameKeySwing.gamekey[0].isPushKey(GameKeySwing.BUTTON_D)) {
 				NullpoMinoSwing.gameManager.replayRerecord = true;
@@ -864,6 +875,17 @@ public class GameFrame extends JFrame implements Runnable {
 		}
 	}
 
+	/**
+	 * Move the replay forward or backward
+	 * @param frames Number of frames (Negative to go back)
+	 */
+	protected void seekReplay(int frames) {
+		GameManager gameManager = NullpoMinoSwing.gameManager;
+		if(gameManager.replayKeyframes == null) return;
+		int target = Math.max(0, gameManager.replayKeyframes.getFrame() + frames);
+		gameManager.replayKeyframes.seek(gameManager, target);
+	}
+
 	/**
 	 * Update title bar text
 	 */
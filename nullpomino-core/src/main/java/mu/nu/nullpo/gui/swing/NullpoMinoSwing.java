@@ -69,12 +69,14 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.filechooser.FileFilter;
 
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.net.NetObserverClient;
 import mu.nu.nullpo.game.net.NetPlayerClient;
 import mu.nu.nullpo.game.net.NetRoomInfo;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplayKeyframes;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.mode.NetDummyMode;
@@ -83,6 +85,7 @@ import mu.nu.nullpo.gui.net.NetLobbyFrame;
 import mu.nu.nullpo.gui.net.NetLobbyListener;
 import mu.nu.nullpo.gui.net.UpdateChecker;
 import mu.nu.nullpo.gui.net.UpdateCheckerListener;
+import mu.nu.nullpo.util.AsyncPropertiesWriter;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
 import mu.nu.nullpo.util.ModeManager;
@@ -798,6 +801,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 		propConfig.setProperty("mainwindow.x", getLocation().x);
 		propConfig.setProperty("mainwindow.y", getLocation().y);
 		saveConfig();
+		AsyncPropertiesWriter.flush();
 		System.exit(0);
 	}
 
@@ -958,6 +962,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 	public void startNewGame(String strRulePath) {
 		rendererSwing = new RendererSwing();
 		gameManager = new GameManager(rendererSwing);
+		gameManager.replayFormat = ReplayProperties.getFormat(propGlobal.getProperty("replay.format", "text"));
 
 		// Mode
 		String modeName = propGlobal.getProperty("name.mode", "");
@@ -1024,6 +1029,9 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[i].aiUseThread = propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = propGlobal.getProperty(i+".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = propGlobal.getProperty(i+".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = propGlobal.getProperty(i+".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = propGlobal.getProperty(i+".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = propGlobal.getProperty(i+".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSwing.propGlobal.getProperty(i+".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSwing.propConfig.getProperty("option.showInput", false);
@@ -1039,7 +1047,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 	 */
 	public void startReplayGame(String filename) {
 		log.info("Loading Replay:" + filename);
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop = new ReplayProperties();
 
 		try {
 			FileInputStream stream = new FileInputStream(filename);
@@ -1054,6 +1062,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 		gameManager = new GameManager(rendererSwing);
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayKeyframes = new ReplayKeyframes();
 
 		// Mode
 		String modeName = prop.getProperty("name.mode", "");
@@ -1095,6 +1104,9 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[i].aiUseThread = propGlobal.getProperty(i + ".aiUseThread", true);
 				gameManager.engine[i].aiShowHint = propGlobal.getProperty(i+".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = propGlobal.getProperty(i+".aiPrethink", false);
+				gameManager.engine[i].aiParallelThink = propGlobal.getProperty(i+".aiParallelThink", false);
+				gameManager.engine[i].aiThinkDepth = propGlobal.getProperty(i+".aiThinkDepth", 0);
+				gameManager.engine[i].aiMoveSearch = propGlobal.getProperty(i+".aiMoveSearch", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSwing.propGlobal.getProperty(i+".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSwing.propConfig.getProperty("option.showInput", false);
@@ -1199,6 +1211,9 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[0].aiUseThread = NullpoMinoSwing.propGlobal.getProperty(0 + ".aiUseThread", true);
 				gameManager.engine[0].aiShowHint = NullpoMinoSwing.propGlobal.getProperty(0+".aiShowHint", false);
 				gameManager.engine[0].aiPrethink = NullpoMinoSwing.propGlobal.getProperty(0+".aiPrethink", false);
+				gameManager.engine[0].aiParallelThink = NullpoMinoSwing.propGlobal.getProperty(0+".aiParallelThink", false);
+				gameManager.engine[0].aiThinkDepth = NullpoMinoSwing.propGlobal.getProperty(0+".aiThinkDepth", 0);
+				gameManager.engine[0].aiMoveSearch = NullpoMinoSwing.propGlobal.getProperty(0+".aiMoveSearch", false);
 				gameManager.engine[0].aiShowState = NullpoMinoSwing.propGlobal.getProperty(0+".aiShowState", false);
 			}
 			gameManager.showInput = NullpoMinoSwing.propConfig.getProperty("option.showInput", false);
@@ -10,7 +10,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Locale;
 
 import javax.swing.BorderFactory;
@@ -21,6 +20,7 @@ import javax.swing.JDialog;
 import javax.swing.JFormattedTextField;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.JTabbedPane;
@@ -70,6 +70,9 @@ public class AIRanksTool extends JFrame implements ActionListener {
 	// View the worst surfaces button
 	private JButton viewWorstsButton;
 
+	// Convert to raw format button
+	private JButton convertButton;
+
 
 	//***************************
 	//Tab 2 (AI Config) variables
@@ -229,6 +232,13 @@ public class AIRanksTool extends JFrame implements ActionListener {
 		viewWorstsButton.setToolTipText(getUIText("Main_Worsts_Tip"));
 		viewWorstsButton.setMnemonic('W');
 
+		// Convert Button
+		convertButton = new JButton(getUIText("Main_Convert_Label"));
+		convertButton.setActionCommand("convert");
+		convertButton.addActionListener(this);
+		convertButton.setToolTipText(getUIText("Main_Convert_Tip"));
+		convertButton.setMnemonic('C');
+
 		//*******************************************************************
 
 		//Tab 2
@@ -326,6 +336,7 @@ public class AIRanksTool extends JFrame implements ActionListener {
 		buttonsPane.add(goButton);
 		buttonsPane.add(viewBestsButton);
 		buttonsPane.add(viewWorstsButton);
+		buttonsPane.add(convertButton);
 
 	JPanel pane1 = new JPanel(new BorderLayout());
 
@@ -441,17 +452,11 @@ public class AIRanksTool extends JFrame implements ActionListener {
 				setEnabledBWButtons(false);
 				Ranks ranks = null;
 
-				FileInputStream fis = null;
-				ObjectInputStream in = null;
-
 				if (inputFile.trim().length() == 0)
 					ranks = new Ranks(4, 9);
 				else {
 					try {
-						fis = new FileInputStream(AIRanksConstants.RANKSAI_DIR+inputFile);
-						in = new ObjectInputStream(fis);
-						ranks = (Ranks) in.readObject();
-						in.close();
+						ranks = Ranks.load(AIRanksConstants.RANKSAI_DIR+inputFile, true);
 					} catch (FileNotFoundException e1) {
 						ranks = new Ranks(4, 9);
 					} catch (IOException e1) {
@@ -479,6 +484,11 @@ public class AIRanksTool extends JFrame implements ActionListener {
 				});
 
 			}
+			else if ("convert".equals(e.getActionCommand())){
+				if (inputFile.trim().length() > 0){
+					convertRanksFile(inputFile);
+				}
+			}
 			else {
 				if ("default".equals(e.getActionCommand())){
 					setDefaults();
@@ -511,6 +521,26 @@ public class AIRanksTool extends JFrame implements ActionListener {
 
 		}
 	}
+	/**
+	 * Converts a ranks file of an older version to the raw format, which RanksAI maps into memory
+	 * @param file Ranks file name
+	 */
+	public void convertRanksFile(String file){
+		String path=AIRanksConstants.RANKSAI_DIR+file;
+		try {
+			Ranks ranks=Ranks.load(path, true);
+			if (!ranks.isMapped()){
+				ranks.saveRaw(path);
+				log.info("Converted ranks file " + path);
+			}
+			JOptionPane.showMessageDialog(this, String.format(getUIText("Main_Convert_Done"), file));
+		} catch (Exception exc) {
+			log.error("Failed to convert ranks file " + path, exc);
+			JOptionPane.showMessageDialog(this, String.format(getUIText("Main_Convert_Failed"), file),
+					getUIText("Main_Title"), JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	public void setEnabledBWButtons(boolean b){
 		viewBestsButton.setEnabled(b);
 		viewWorstsButton.setEnabled(b);
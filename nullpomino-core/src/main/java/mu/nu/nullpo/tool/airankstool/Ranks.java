@@ -1,5 +1,14 @@
 package mu.nu.nullpo.tool.airankstool;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import mu.nu.nullpo.game.component.Piece;
@@ -10,6 +19,12 @@ public class Ranks implements Serializable{
 
 	private static final long serialVersionUID = 1L;
 
+	/** Magic number at the beginning of a raw ranks file ("NRK1" in little-endian) */
+	public static final int RAW_MAGIC = 0x314B524E;
+
+	/** Size of the header of a raw ranks file (magic number, maxJump, stackWidth, size) */
+	public static final int RAW_HEADER_SIZE = 16;
+
 	
 
 	//Number of different orientations a piece can have (this is used to save computing time)
@@ -98,6 +113,8 @@ public class Ranks implements Serializable{
 		{{1,1},{1,0},{0,1},{1,1}}      //L3
 	};
 private int  [] ranks;
+// Ranks of a raw file mapped into memory (ranks is null then)
+private transient IntBuffer mappedRanks;
 
 private int stackWidth;
 private int size;
@@ -162,6 +179,103 @@ public Ranks(int maxJump,int stackWidth){
 
 }
 
+private Ranks(int maxJump,int stackWidth,int [] ranks,IntBuffer mappedRanks){
+	this.maxJump=maxJump;
+	base=2*maxJump+1;
+	this.stackWidth=stackWidth;
+	surfaceWidth=stackWidth-1;
+	size=(int) Math.pow(base,surfaceWidth);
+	this.ranks=ranks;
+	this.mappedRanks=mappedRanks;
+	rankMin=Integer.MAX_VALUE;
+	rankMax=0;
+}
+
+/**
+ * Loads a ranks file. A raw file is mapped read-only, so that every RanksAI shares the same pages,
+ * and a file from older versions is deserialized.
+ * @param file Ranks file
+ * @param readOnly false to read a raw file into memory, for ranks that will be computed again
+ * @return Ranks
+ * @throws IOException If the file can't be read
+ * @throws ClassNotFoundException If the file is an unknown serialized object
+ */
+public static Ranks load(String file,boolean readOnly) throws IOException, ClassNotFoundException{
+	FileInputStream fis=new FileInputStream(file);
+	try {
+		FileChannel channel=fis.getChannel();
+		ByteBuffer header=ByteBuffer.allocate(RAW_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && (channel.read(header)>=0));
+
+		if (header.hasRemaining() || (header.getInt(0)!=RAW_MAGIC)){
+			// Serialized ranks
+			channel.position(0);
+			ObjectInputStream in=new ObjectInputStream(fis);
+			return (Ranks)in.readObject();
+		}
+
+		int maxJump=header.getInt(4);
+		int stackWidth=header.getInt(8);
+		int size=header.getInt(12);
+		if ((maxJump<0) || (stackWidth<2) || (size!=(int) Math.pow(2*maxJump+1,stackWidth-1))
+				|| (channel.size()<RAW_HEADER_SIZE+(long)size*4)){
+			throw new IOException("Invalid ranks file: "+file);
+		}
+
+		IntBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,RAW_HEADER_SIZE,(long)size*4).
+			order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		if (readOnly){
+			return new Ranks(maxJump,stackWidth,null,buffer);
+		}
+		int [] ranks=new int[size];
+		buffer.get(ranks);
+		return new Ranks(maxJump,stackWidth,ranks,null);
+	} finally {
+		fis.close();
+	}
+}
+
+/**
+ * Saves the ranks as a raw file (header, then every rank as a little-endian int).
+ * It is written to a temporary file first, as the old file may still be mapped by a RanksAI.
+ * @param file Ranks file
+ * @throws IOException If the file can't be written
+ */
+public void saveRaw(String file) throws IOException{
+	File target=new File(file);
+	File temp=new File(file+".tmp");
+	FileOutputStream fos=new FileOutputStream(temp);
+	try {
+		FileChannel channel=fos.getChannel();
+		ByteBuffer buffer=ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(RAW_MAGIC).putInt(maxJump).putInt(stackWidth).putInt(size);
+		for (int i=0;i<size;i++){
+			if (!buffer.hasRemaining()){
+				buffer.flip();
+				while (buffer.hasRemaining()) channel.write(buffer);
+				buffer.clear();
+			}
+			buffer.putInt(getRankValue(i));
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+	} finally {
+		fos.close();
+	}
+	if (!temp.renameTo(target)){
+		target.delete();
+		if (!temp.renameTo(target))
+			throw new IOException("Failed to rename "+temp+" to "+target);
+	}
+}
+
+/**
+ * @return true if the ranks are mapped from a raw file (and can't be modified)
+ */
+public boolean isMapped(){
+	return mappedRanks!=null;
+}
+
 public Ranks(Ranks rankFrom){
 
 	this.ranksFrom=rankFrom;
@@ -199,6 +313,8 @@ public int getSize(){
 	return size;
 }
 public int getRankValue(int surface){
+		if (ranks==null)
+			return mappedRanks.get(surface);
 		return ranks[surface];
 }
 public int encode(int [] surface){
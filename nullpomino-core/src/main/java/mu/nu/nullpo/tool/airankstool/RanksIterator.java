@@ -7,12 +7,8 @@ import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
@@ -120,16 +116,12 @@ public class RanksIterator extends JDialog implements PropertyChangeListener,Act
         public Void doInBackground() {
         	progressLabel.setText(AIRanksTool.getUIText("Progress_Note_Load_File"));
 
-        	FileInputStream fis = null;
-        	ObjectInputStream in = null;
         	if (inputFile.trim().length() == 0)
         		ranksFrom=new Ranks(4,9);
         	else {
         		  try {
-        			fis = new FileInputStream(AIRanksConstants.RANKSAI_DIR+inputFile);
-        			   in = new ObjectInputStream(fis);
-        			   ranksFrom = (Ranks)in.readObject();
-        			   in.close();
+        			// The ranks are overwritten by the iterations, so they are read into memory
+        			ranksFrom = Ranks.load(AIRanksConstants.RANKSAI_DIR+inputFile, false);
 
         		} catch (FileNotFoundException e) {
         			ranksFrom=new Ranks(4,9);
@@ -187,13 +179,8 @@ public class RanksIterator extends JDialog implements PropertyChangeListener,Act
            	if (!ranksAIDir.exists()){
            		ranksAIDir.mkdirs();
            	}
-               FileOutputStream fos=null;
-               ObjectOutputStream out=null;
-               fos=new FileOutputStream(AIRanksConstants.RANKSAI_DIR+ outputFile);
-               out = new ObjectOutputStream(fos);
                ranks.freeRanksFrom();
-               out.writeObject(ranks);
-               out.close();
+               ranks.saveRaw(AIRanksConstants.RANKSAI_DIR+ outputFile);
 
            } catch(Exception e) {
                e.printStackTrace();
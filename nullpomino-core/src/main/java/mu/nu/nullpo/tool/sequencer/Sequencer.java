@@ -68,6 +68,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.ReplayProperties;
 import mu.nu.nullpo.util.CustomProperties;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
 
@@ -358,7 +359,7 @@ public class Sequencer extends JFrame implements ActionListener {
 
 	public CustomProperties load(String filename) throws IOException {
 		log.info("Loading replay file from " + filename);
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop = new ReplayProperties();
 
 		FileInputStream in = new FileInputStream(filename);
 		prop.load(in);
@@ -0,0 +1,245 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mu.nu.nullpo.game.component.ReplayProperties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Saves properties files in a background thread, so the game thread doesn't wait for the disk.
+ * A copy of the properties is taken when save is called, and only the latest copy of each file is written
+ * if the same file is saved again before the thread gets to it.
+ * Each file is written to a temporary file first and then renamed, so a crash never leaves a half-written file.
+ * Everything left is written by flush() or at JVM shutdown.
+ * Until then, getPending returns the latest copy, so a file can be loaded right after it's saved.
+ */
+public class AsyncPropertiesWriter {
+	/** Log */
+	static Logger log = Logger.getLogger(AsyncPropertiesWriter.class);
+
+	/**
+	 * A file waiting to be written
+	 */
+	protected static class Task {
+		/** Copy of the properties */
+		final CustomProperties prop;
+
+		/** Comment */
+		final String comment;
+
+		/**
+		 * Constructor
+		 * @param prop Copy of the properties
+		 * @param comment Comment
+		 */
+		Task(CustomProperties prop, String comment) {
+			this.prop = prop;
+			this.comment = comment;
+		}
+	}
+
+	/** Files waiting to be written (Filename -> Latest task) */
+	protected static LinkedHashMap<String, Task> queue = new LinkedHashMap<String, Task>();
+
+	/** Number of files being written by the thread now */
+	protected static int writing;
+
+	/** Files being written by the thread now (Filename -> Task) */
+	protected static HashMap<String, Task> inProgress = new HashMap<String, Task>();
+
+	/** Writer thread (null until the first save) */
+	protected static Thread thread;
+
+	/**
+	 * Saves properties to a file in the background
+	 * @param filename Filename
+	 * @param prop Properties (A copy is saved, so it can be changed right after this call)
+	 * @param comment Comment
+	 */
+	public static void save(String filename, CustomProperties prop, String comment) {
+		CustomProperties copy = (CustomProperties)prop.clone();
+
+		synchronized(queue) {
+			queue.put(filename, new Task(copy, comment));
+			if(thread == null) start();
+			queue.notifyAll();
+		}
+	}
+
+	/**
+	 * Get the latest properties saved to a file which are not written yet
+	 * @param filename Filename (Same as given to save)
+	 * @return Copy of the properties (null if everything saved to the file is already written)
+	 */
+	public static CustomProperties getPending(String filename) {
+		synchronized(queue) {
+			Task task = queue.get(filename);
+			if(task == null) task = inProgress.get(filename);
+			return (task != null) ? (CustomProperties)task.prop.clone() : null;
+		}
+	}
+
+	/**
+	 * Waits until every file saved so far is written
+	 */
+	public static void flush() {
+		synchronized(queue) {
+			while(!queue.isEmpty() || (writing > 0)) {
+				if((thread == null) || !thread.isAlive()) {
+					// Nobody else will write them
+					writeAll(takeAll());
+					continue;
+				}
+				try {
+					queue.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts the writer thread (Called with the queue locked)
+	 */
+	protected static void start() {
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "AsyncPropertiesWriter");
+		thread.setDaemon(true);
+		thread.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, "AsyncPropertiesWriter shutdown"));
+	}
+
+	/**
+	 * Main loop of the writer thread
+	 */
+	protected static void writeLoop() {
+		while(true) {
+			ArrayList<Map.Entry<String, Task>> tasks;
+			synchronized(queue) {
+				while(queue.isEmpty()) {
+					try {
+						queue.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				tasks = takeAll();
+			}
+
+			writeAll(tasks);
+		}
+	}
+
+	/**
+	 * Takes every waiting file from the queue (Called with the queue locked)
+	 * @return Files to write
+	 */
+	protected static ArrayList<Map.Entry<String, Task>> takeAll() {
+		ArrayList<Map.Entry<String, Task>> tasks = new ArrayList<Map.Entry<String, Task>>(queue.entrySet());
+		for(Map.Entry<String, Task> e : tasks) inProgress.put(e.getKey(), e.getValue());
+		queue.clear();
+		writing += tasks.size();
+		return tasks;
+	}
+
+	/**
+	 * Writes the files taken by takeAll
+	 * @param tasks Files to write
+	 */
+	protected static void writeAll(ArrayList<Map.Entry<String, Task>> tasks) {
+		for(Map.Entry<String, Task> e : tasks) {
+			try {
+				writeFile(e.getKey(), e.getValue());
+			} catch (IOException ex) {
+				log.error("Failed to save " + e.getKey(), ex);
+			} finally {
+				synchronized(queue) {
+					writing--;
+					inProgress.remove(e.getKey());
+					queue.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a file through a temporary file
+	 * @param filename Filename
+	 * @param task Properties and comment
+	 * @throws IOException When the file can't be written
+	 */
+	protected static void writeFile(String filename, Task task) throws IOException {
+		File file = new File(filename);
+		File temp = new File(filename + ".tmp");
+
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			BufferedOutputStream out = new BufferedOutputStream(fileOut);
+			if(task.prop instanceof ReplayProperties) {
+				((ReplayProperties)task.prop).storeReplay(out, task.comment);
+			} else {
+				task.prop.store(out, task.comment);
+			}
+			out.flush();
+			fileOut.getFD().sync();
+		} finally {
+			fileOut.close();
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		log.debug("Saved " + filename);
+	}
+}
@@ -0,0 +1,296 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed settings store used by CustomProperties.
+ * Each value is kept as a slot holding the string and the numbers parsed from it,
+ * so a value is parsed only the first time it is read as a number.
+ * Reads don't lock (ConcurrentHashMap), writes replace the whole slot.
+ */
+public class ConfigStore {
+	/** Parsed flags of a slot */
+	protected static final int PARSED_LONG = 1, PARSED_FLOAT = 2, PARSED_DOUBLE = 4;
+
+	/** Invalid flags of a slot (The value isn't a number of that type) */
+	protected static final int INVALID_LONG = 8, INVALID_FLOAT = 16, INVALID_DOUBLE = 32;
+
+	/**
+	 * Value of a key
+	 */
+	protected static final class Slot {
+		/** String value */
+		final String value;
+
+		/** Parsed and invalid flags (Written after the values) */
+		volatile int flags;
+
+		/** Parsed integer value */
+		long longValue;
+
+		/** Parsed float value */
+		float floatValue;
+
+		/** Parsed double value */
+		double doubleValue;
+
+		/**
+		 * Constructor
+		 * @param value String value
+		 */
+		Slot(String value) {
+			this.value = value;
+		}
+
+		/**
+		 * Parses the value as an integer (Once)
+		 * @return true if the value is an integer (longValue is set)
+		 */
+		boolean parseLong() {
+			int f = flags;
+			if((f & PARSED_LONG) != 0) return true;
+			if((f & INVALID_LONG) != 0) return false;
+			try {
+				longValue = Long.parseLong(value);
+				flags = f | PARSED_LONG;
+				return true;
+			} catch(NumberFormatException e) {
+				flags = f | INVALID_LONG;
+				return false;
+			}
+		}
+
+		/**
+		 * Parses the value as a float (Once)
+		 * @return true if the value is a float (floatValue is set)
+		 */
+		boolean parseFloat() {
+			int f = flags;
+			if((f & PARSED_FLOAT) != 0) return true;
+			if((f & INVALID_FLOAT) != 0) return false;
+			try {
+				floatValue = Float.parseFloat(value);
+				flags = f | PARSED_FLOAT;
+				return true;
+			} catch(NumberFormatException e) {
+				flags = f | INVALID_FLOAT;
+				return false;
+			}
+		}
+
+		/**
+		 * Parses the value as a double (Once)
+		 * @return true if the value is a double (doubleValue is set)
+		 */
+		boolean parseDouble() {
+			int f = flags;
+			if((f & PARSED_DOUBLE) != 0) return true;
+			if((f & INVALID_DOUBLE) != 0) return false;
+			try {
+				doubleValue = Double.parseDouble(value);
+				flags = f | PARSED_DOUBLE;
+				return true;
+			} catch(NumberFormatException e) {
+				flags = f | INVALID_DOUBLE;
+				return false;
+			}
+		}
+	}
+
+	/** Slots */
+	protected final ConcurrentHashMap<String, Slot> slots;
+
+	/**
+	 * Constructor
+	 */
+	public ConfigStore() {
+		slots = new ConcurrentHashMap<String, Slot>();
+	}
+
+	/**
+	 * Constructor that copies the String keys and values of a map
+	 * @param map Source
+	 */
+	public ConfigStore(Map<?, ?> map) {
+		slots = new ConcurrentHashMap<String, Slot>(Math.max(16, map.size() * 2));
+		putAll(map);
+	}
+
+	/**
+	 * Set a value
+	 * @param key Key
+	 * @param value Value (null to remove)
+	 */
+	public void put(String key, String value) {
+		if(value == null) slots.remove(key);
+		else slots.put(key, new Slot(value));
+	}
+
+	/**
+	 * Copies the String keys and values of a map (Others are ignored)
+	 * @param map Source
+	 */
+	public void putAll(Map<?, ?> map) {
+		for(Map.Entry<?, ?> e : map.entrySet()) {
+			if((e.getKey() instanceof String) && (e.getValue() instanceof String))
+				put((String)e.getKey(), (String)e.getValue());
+		}
+	}
+
+	/**
+	 * Remove a value
+	 * @param key Key
+	 */
+	public void remove(String key) {
+		slots.remove(key);
+	}
+
+	/**
+	 * Remove every value
+	 */
+	public void clear() {
+		slots.clear();
+	}
+
+	/**
+	 * Get a value
+	 * @param key Key
+	 * @return Value (null if not found)
+	 */
+	public String get(String key) {
+		Slot slot = slots.get(key);
+		return (slot == null) ? null : slot.value;
+	}
+
+	/**
+	 * Get an integer value (Within the range of long)
+	 * @param key Key
+	 * @param min Minimum value of the type
+	 * @param max Maximum value of the type
+	 * @param defaultValue Value returned if not found or not an integer in range
+	 * @return Value
+	 */
+	protected long getInteger(String key, long min, long max, long defaultValue) {
+		Slot slot = slots.get(key);
+		if((slot == null) || !slot.parseLong()) return defaultValue;
+		long value = slot.longValue;
+		return ((value < min) || (value > max)) ? defaultValue : value;
+	}
+
+	/**
+	 * Get a byte value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public byte getByte(String key, byte defaultValue) {
+		return (byte)getInteger(key, Byte.MIN_VALUE, Byte.MAX_VALUE, defaultValue);
+	}
+
+	/**
+	 * Get a short value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public short getShort(String key, short defaultValue) {
+		return (short)getInteger(key, Short.MIN_VALUE, Short.MAX_VALUE, defaultValue);
+	}
+
+	/**
+	 * Get an int value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public int getInt(String key, int defaultValue) {
+		return (int)getInteger(key, Integer.MIN_VALUE, Integer.MAX_VALUE, defaultValue);
+	}
+
+	/**
+	 * Get a long value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public long getLong(String key, long defaultValue) {
+		return getInteger(key, Long.MIN_VALUE, Long.MAX_VALUE, defaultValue);
+	}
+
+	/**
+	 * Get a float value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public float getFloat(String key, float defaultValue) {
+		Slot slot = slots.get(key);
+		if((slot == null) || !slot.parseFloat()) return defaultValue;
+		return slot.floatValue;
+	}
+
+	/**
+	 * Get a double value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or invalid
+	 * @return Value
+	 */
+	public double getDouble(String key, double defaultValue) {
+		Slot slot = slots.get(key);
+		if((slot == null) || !slot.parseDouble()) return defaultValue;
+		return slot.doubleValue;
+	}
+
+	/**
+	 * Get a char value (First character)
+	 * @param key Key
+	 * @param defaultValue Value returned if not found or empty
+	 * @return Value
+	 */
+	public char getChar(String key, char defaultValue) {
+		Slot slot = slots.get(key);
+		if((slot == null) || (slot.value.length() == 0)) return defaultValue;
+		return slot.value.charAt(0);
+	}
+
+	/**
+	 * Get a boolean value
+	 * @param key Key
+	 * @param defaultValue Value returned if not found
+	 * @return Value (true if the value is "true", ignoring case)
+	 */
+	public boolean getBoolean(String key, boolean defaultValue) {
+		Slot slot = slots.get(key);
+		if(slot == null) return defaultValue;
+		return Boolean.parseBoolean(slot.value);
+	}
+}
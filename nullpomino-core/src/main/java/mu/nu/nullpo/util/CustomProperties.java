@@ -30,13 +30,19 @@ package mu.nu.nullpo.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Map;
 import java.util.Properties;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * StringSet of properties that can be stored in non-
+ * (Every change is copied to a ConfigStore, so reading doesn't lock and numbers are parsed only once)
  */
 public class CustomProperties extends Properties {
 	/**
@@ -44,6 +50,182 @@ public class CustomProperties extends Properties {
 	 */
 	private static final long serialVersionUID = 2L;
 
+	/** Typed copy of the properties, used for reading */
+	private transient ConfigStore store = new ConfigStore();
+
+	/**
+	 * Get a property (Without locking)
+	 * @param key Key
+	 * @return Value (null if not found)
+	 */
+	@Override
+	public String getProperty(String key) {
+		String value = store.get(key);
+		if((value == null) && (defaults != null)) return defaults.getProperty(key);
+		return value;
+	}
+
+	/*
+	 * Set a value
+	 */
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		Object result = super.put(key, value);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Set every value of a map
+	 */
+	@Override
+	public synchronized void putAll(Map<?, ?> t) {
+		super.putAll(t);
+		for(Object key : t.keySet()) update(key);
+	}
+
+	/*
+	 * Remove a value
+	 */
+	@Override
+	public synchronized Object remove(Object key) {
+		Object result = super.remove(key);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Remove a value
+	 */
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		boolean result = super.remove(key, value);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Remove every value
+	 */
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		store.clear();
+	}
+
+	/*
+	 * Set a value if not found
+	 */
+	@Override
+	public synchronized Object putIfAbsent(Object key, Object value) {
+		Object result = super.putIfAbsent(key, value);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Replace a value
+	 */
+	@Override
+	public synchronized Object replace(Object key, Object value) {
+		Object result = super.replace(key, value);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Replace a value
+	 */
+	@Override
+	public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+		boolean result = super.replace(key, oldValue, newValue);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Replace every value
+	 */
+	@Override
+	public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+		super.replaceAll(function);
+		store.clear();
+		store.putAll(this);
+	}
+
+	/*
+	 * Compute a value
+	 */
+	@Override
+	public synchronized Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.compute(key, remappingFunction);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Compute a value if not found
+	 */
+	@Override
+	public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+		Object result = super.computeIfAbsent(key, mappingFunction);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Compute a value if found
+	 */
+	@Override
+	public synchronized Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.computeIfPresent(key, remappingFunction);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Merge a value
+	 */
+	@Override
+	public synchronized Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		Object result = super.merge(key, value, remappingFunction);
+		update(key);
+		return result;
+	}
+
+	/*
+	 * Copy (With its own ConfigStore)
+	 */
+	@Override
+	public synchronized Object clone() {
+		CustomProperties p = (CustomProperties)super.clone();
+		p.store = new ConfigStore(p);
+		return p;
+	}
+
+	/**
+	 * Copies the current value of a key to the ConfigStore
+	 * @param key Key
+	 */
+	private void update(Object key) {
+		// store is null while the superclass is being deserialized (readObject copies everything after that)
+		if((store != null) && (key instanceof String)) {
+			Object value = super.get(key);
+			store.put((String)key, (value instanceof String) ? (String)value : null);
+		}
+	}
+
+	/**
+	 * Rebuilds the ConfigStore after deserialization
+	 * @param in Input stream
+	 * @throws IOException When a read error occurs
+	 * @throws ClassNotFoundException When a class is not found
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		store = new ConfigStore((Map<?, ?>)this);
+	}
+
 	/**
 	 * byteSet the properties of the type
 	 * @param key Key
@@ -131,16 +313,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public byte getProperty(String key, byte defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		byte result;
-		try {
-			result = Byte.parseByte(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getByte(key, defaultValue);
 	}
 
 	/**
@@ -150,16 +323,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public short getProperty(String key, short defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		short result;
-		try {
-			result = Short.parseShort(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getShort(key, defaultValue);
 	}
 
 	/**
@@ -169,16 +333,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public int getProperty(String key, int defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		int result;
-		try {
-			result = Integer.parseInt(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getInt(key, defaultValue);
 	}
 
 	/**
@@ -188,16 +343,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public long getProperty(String key, long defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		long result;
-		try {
-			result = Long.parseLong(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getLong(key, defaultValue);
 	}
 
 	/**
@@ -207,16 +353,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public float getProperty(String key, float defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		float result;
-		try {
-			result = Float.parseFloat(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getFloat(key, defaultValue);
 	}
 
 	/**
@@ -226,16 +363,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public double getProperty(String key, double defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		double result;
-		try {
-			result = Double.parseDouble(str);
-		} catch(NumberFormatException e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getDouble(key, defaultValue);
 	}
 
 	/**
@@ -245,16 +373,7 @@ public class CustomProperties extends Properties {
 	 * @return Integer that corresponds to the specified keycount (Not founddefaultValue)
 	 */
 	public char getProperty(String key, char defaultValue) {
-		String str = getProperty(key, String.valueOf(defaultValue));
-
-		char result;
-		try {
-			result = str.charAt(0);
-		} catch(Exception e) {
-			result = defaultValue;
-		}
-
-		return result;
+		return store.getChar(key, defaultValue);
 	}
 
 	/**
@@ -264,8 +383,7 @@ public class CustomProperties extends Properties {
 	 * @return Corresponding to the specified keybooleanType variablecount (Not founddefaultValue)
 	 */
 	public boolean getProperty(String key, boolean defaultValue) {
-		String str = getProperty(key, Boolean.toString(defaultValue));
-		return Boolean.valueOf(str);
+		return store.getBoolean(key, defaultValue);
 	}
 
 	/**
@@ -0,0 +1,90 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.util;
+
+import java.util.Random;
+
+/**
+ * java.util.Random whose internal seed can be read and restored.
+ * Gives exactly the same numbers as Random with the same seed, so old replays still play the same,
+ * but the state can be saved in a snapshot (GameEngine.writeState) and restored later.
+ * The cached value of nextGaussian is not part of the state.
+ */
+public class SeedRandom extends Random {
+	/** Serial version ID */
+	private static final long serialVersionUID = 4307214590736587734L;
+
+	/** Same constants as java.util.Random */
+	private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL, MASK = (1L << 48) - 1;
+
+	/** Internal seed (48 bits) */
+	private long state;
+
+	/**
+	 * Constructor
+	 * @param seed Random seed
+	 */
+	public SeedRandom(long seed) {
+		super(seed);
+	}
+
+	/*
+	 * Set the random seed (Scrambled in the same way as Random)
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	/*
+	 * Generates the next bits in the same way as Random
+	 */
+	@Override
+	protected int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(state >>> (48 - bits));
+	}
+
+	/**
+	 * Get the internal seed
+	 * @return Internal seed
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Restores the internal seed returned by getState
+	 * @param state Internal seed
+	 */
+	public void setState(long state) {
+		this.state = state & MASK;
+	}
+}
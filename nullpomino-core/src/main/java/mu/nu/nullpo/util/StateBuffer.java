@@ -0,0 +1,420 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.util;
+
+/**
+ * Growable byte buffer for game state snapshots (GameEngine.writeState etc.)
+ * Values are written and read back in the same order, without any names or Java serialization.
+ * Each component writes a version number first, so a newer component can still read an older snapshot.
+ * The same buffer can be cleared and reused, so taking a snapshot every frame doesn't allocate.
+ */
+public class StateBuffer {
+	/** Default initial capacity */
+	public static final int DEFAULT_CAPACITY = 16384;
+
+	/** Data */
+	protected byte[] data;
+
+	/** Number of bytes written */
+	protected int size;
+
+	/** Read position */
+	protected int position;
+
+	/**
+	 * Default constructor
+	 */
+	public StateBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity Initial capacity in bytes
+	 */
+	public StateBuffer(int capacity) {
+		data = new byte[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * Constructor to read a snapshot
+	 * @param b Snapshot data (Not copied)
+	 */
+	public StateBuffer(byte[] b) {
+		data = b;
+		size = b.length;
+	}
+
+	/**
+	 * Empties the buffer (The capacity stays)
+	 */
+	public void clear() {
+		size = 0;
+		position = 0;
+	}
+
+	/**
+	 * Discards everything written after the given size
+	 * @param size New size in bytes (Must not be larger than the current size)
+	 */
+	public void setSize(int size) {
+		if((size < 0) || (size > this.size)) throw new IllegalArgumentException("Invalid size " + size);
+		this.size = size;
+		if(position > size) position = size;
+	}
+
+	/**
+	 * Moves the read position back to the start
+	 */
+	public void rewind() {
+		position = 0;
+	}
+
+	/**
+	 * Get the number of bytes written
+	 * @return Size in bytes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the read position
+	 * @return Read position in bytes
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * Get the snapshot as a new byte array
+	 * @return Copy of the written bytes
+	 */
+	public byte[] toByteArray() {
+		byte[] b = new byte[size];
+		System.arraycopy(data, 0, b, 0, size);
+		return b;
+	}
+
+	/**
+	 * Replaces the contents with a copy of another buffer (Read position goes back to the start)
+	 * @param b Copy source
+	 */
+	public void copy(StateBuffer b) {
+		clear();
+		ensureCapacity(b.size);
+		System.arraycopy(b.data, 0, data, 0, b.size);
+		size = b.size;
+	}
+
+	/**
+	 * Grows the buffer if needed
+	 * @param n Number of bytes about to be written
+	 */
+	protected void ensureCapacity(int n) {
+		if(size + n > data.length) {
+			byte[] b = new byte[Math.max(data.length * 2, size + n)];
+			System.arraycopy(data, 0, b, 0, size);
+			data = b;
+		}
+	}
+
+	/**
+	 * Checks that there is enough data left to read
+	 * @param n Number of bytes about to be read
+	 * @throws IllegalStateException If the snapshot ends before n bytes
+	 */
+	protected void checkRemaining(int n) {
+		if(position + n > size) {
+			throw new IllegalStateException("Snapshot is truncated (position " + position + ", size " + size + ")");
+		}
+	}
+
+	/**
+	 * Writes the version number of a component
+	 * @param version Version number
+	 */
+	public void writeVersion(int version) {
+		writeShort(version);
+	}
+
+	/**
+	 * Reads the version number of a component
+	 * @param current Newest version the caller can read
+	 * @return Version number of the snapshot
+	 * @throws IllegalStateException If the snapshot is newer than current
+	 */
+	public int readVersion(int current) {
+		int version = readShort();
+		if((version < 1) || (version > current)) {
+			throw new IllegalStateException("Unsupported snapshot version " + version + " (Supported: 1-" + current + ")");
+		}
+		return version;
+	}
+
+	/**
+	 * Writes a boolean
+	 * @param v Value
+	 */
+	public void writeBoolean(boolean v) {
+		writeByte(v ? 1 : 0);
+	}
+
+	/**
+	 * Writes a byte
+	 * @param v Value
+	 */
+	public void writeByte(int v) {
+		ensureCapacity(1);
+		data[size++] = (byte)v;
+	}
+
+	/**
+	 * Writes a short (16 bits)
+	 * @param v Value
+	 */
+	public void writeShort(int v) {
+		ensureCapacity(2);
+		data[size++] = (byte)(v >>> 8);
+		data[size++] = (byte)v;
+	}
+
+	/**
+	 * Writes an int
+	 * @param v Value
+	 */
+	public void writeInt(int v) {
+		ensureCapacity(4);
+		data[size++] = (byte)(v >>> 24);
+		data[size++] = (byte)(v >>> 16);
+		data[size++] = (byte)(v >>> 8);
+		data[size++] = (byte)v;
+	}
+
+	/**
+	 * Writes a long
+	 * @param v Value
+	 */
+	public void writeLong(long v) {
+		writeInt((int)(v >>> 32));
+		writeInt((int)v);
+	}
+
+	/**
+	 * Writes a float
+	 * @param v Value
+	 */
+	public void writeFloat(float v) {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	/**
+	 * Writes a double
+	 * @param v Value
+	 */
+	public void writeDouble(double v) {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	/**
+	 * Writes the ordinal of an enum constant
+	 * @param v Enum constant (Can be null)
+	 */
+	public void writeEnum(Enum<?> v) {
+		writeByte((v == null) ? -1 : v.ordinal());
+	}
+
+	/**
+	 * Writes a String
+	 * @param v String (Can be null)
+	 */
+	public void writeString(String v) {
+		if(v == null) {
+			writeInt(-1);
+			return;
+		}
+		writeInt(v.length());
+		ensureCapacity(v.length() * 2);
+		for(int i = 0; i < v.length(); i++) {
+			char c = v.charAt(i);
+			data[size++] = (byte)(c >>> 8);
+			data[size++] = (byte)c;
+		}
+	}
+
+	/**
+	 * Writes an int array
+	 * @param v Array (Can be null)
+	 */
+	public void writeIntArray(int[] v) {
+		if(v == null) {
+			writeInt(-1);
+			return;
+		}
+		writeInt(v.length);
+		ensureCapacity(v.length * 4);
+		for(int i = 0; i < v.length; i++) writeInt(v[i]);
+	}
+
+	/**
+	 * Writes a boolean array
+	 * @param v Array (Can be null)
+	 */
+	public void writeBooleanArray(boolean[] v) {
+		if(v == null) {
+			writeInt(-1);
+			return;
+		}
+		writeInt(v.length);
+		ensureCapacity(v.length);
+		for(int i = 0; i < v.length; i++) data[size++] = (byte)(v[i] ? 1 : 0);
+	}
+
+	/**
+	 * Reads a boolean
+	 * @return Value
+	 */
+	public boolean readBoolean() {
+		return readByte() != 0;
+	}
+
+	/**
+	 * Reads a byte
+	 * @return Value
+	 */
+	public byte readByte() {
+		checkRemaining(1);
+		return data[position++];
+	}
+
+	/**
+	 * Reads an unsigned short (16 bits)
+	 * @return Value
+	 */
+	public int readShort() {
+		checkRemaining(2);
+		int v = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+		position += 2;
+		return v;
+	}
+
+	/**
+	 * Reads an int
+	 * @return Value
+	 */
+	public int readInt() {
+		checkRemaining(4);
+		int v = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16) |
+				((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+		position += 4;
+		return v;
+	}
+
+	/**
+	 * Reads a long
+	 * @return Value
+	 */
+	public long readLong() {
+		long hi = readInt();
+		long lo = readInt() & 0xFFFFFFFFL;
+		return (hi << 32) | lo;
+	}
+
+	/**
+	 * Reads a float
+	 * @return Value
+	 */
+	public float readFloat() {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	/**
+	 * Reads a double
+	 * @return Value
+	 */
+	public double readDouble() {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * Reads an enum constant written by writeEnum
+	 * @param values All constants of the enum (values())
+	 * @return Enum constant (null if null was written)
+	 */
+	public <T extends Enum<T>> T readEnum(T[] values) {
+		int i = readByte();
+		if(i < 0) return null;
+		if(i >= values.length) throw new IllegalStateException("Unknown enum ordinal " + i);
+		return values[i];
+	}
+
+	/**
+	 * Reads a String
+	 * @return String (null if null was written)
+	 */
+	public String readString() {
+		int len = readInt();
+		if(len < 0) return null;
+		checkRemaining(len * 2);
+		char[] c = new char[len];
+		for(int i = 0; i < len; i++) {
+			c[i] = (char)(((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF));
+			position += 2;
+		}
+		return new String(c);
+	}
+
+	/**
+	 * Reads an int array
+	 * @param dest Array to read into if it has the same length (Can be null)
+	 * @return dest or a new array (null if null was written)
+	 */
+	public int[] readIntArray(int[] dest) {
+		int len = readInt();
+		if(len < 0) return null;
+		checkRemaining(len * 4);
+		if((dest == null) || (dest.length != len)) dest = new int[len];
+		for(int i = 0; i < len; i++) dest[i] = readInt();
+		return dest;
+	}
+
+	/**
+	 * Reads a boolean array
+	 * @param dest Array to read into if it has the same length (Can be null)
+	 * @return dest or a new array (null if null was written)
+	 */
+	public boolean[] readBooleanArray(boolean[] dest) {
+		int len = readInt();
+		if(len < 0) return null;
+		checkRemaining(len);
+		if((dest == null) || (dest.length != len)) dest = new boolean[len];
+		for(int i = 0; i < len; i++) dest[i] = (data[position++] != 0);
+		return dest;
+	}
+}
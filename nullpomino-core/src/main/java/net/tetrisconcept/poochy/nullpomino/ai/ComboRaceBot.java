@@ -7,6 +7,7 @@ import mu.nu.nullpo.game.component.WallkickResult;
 import mu.nu.nullpo.game.event.EventReceiver;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.AIScheduler;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.util.GeneralUtil;
 
@@ -17,7 +18,7 @@ import org.apache.log4j.Logger;
  * @author Poochy.EXE
  *         Poochy.Spambucket@gmail.com
  */
-public class ComboRaceBot extends DummyAI implements Runnable {
+public class ComboRaceBot extends DummyAI {
 	/** Log */
 	static Logger log = Logger.getLogger(ComboRaceBot.class);
 
@@ -66,26 +67,15 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 	/** When true,To threadThink routineInstructing the execution of the */
 	public ThinkRequestMutex thinkRequest;
 
-	/** true when thread is executing the think routine. */
-	public boolean thinking;
-
-	/** To stop a thread time */
-	public int thinkDelay;
-
-	/** When true,Running thread */
+	/** When true, think requests are taken by the shared AI workers */
 	public volatile boolean threadRunning;
 
-	/** Thread for executing the think routine */
-	public Thread thread;
-
 	/** Last input if done in ARE */
 	protected int inputARE;
 	/** Number of pieces to think ahead */
 	protected static final int MAX_THINK_DEPTH = 6;
 	/** Set to true to print debug information */
 	protected static final boolean DEBUG_ALL = false;
-	/** Did the thinking thread finish successfully? */
-	protected boolean thinkComplete;
 	/** Did the thinking thread find a possible position? */
 	protected boolean thinkSuccess;
 	/** Was the game in ARE as of the last frame? */
@@ -116,11 +106,10 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 		thinkSuccess = false;
 		inARE = false;
 
-		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
-			thread = new Thread(this, "AI_" + playerID);
-			thread.setDaemon(true);
-			thread.start();
-			thinkDelay = engine.aiThinkDelay;
+		if(engine.aiUseThread) {
+			startThinkClient(engine, playerID);
+			thinkRequest.client = thinkClient;
+			threadRunning = true;
 			thinkCurrentPieceNo = 0;
 			thinkLastPieceNo = 0;
 		}
@@ -131,11 +120,8 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 	 */
 	@Override
 	public void shutdown(GameEngine engine, int playerID) {
-		if((thread != null) && (thread.isAlive())) {
-			thread.interrupt();
-			threadRunning = false;
-			thread = null;
-		}
+		stopThinkClient();
+		threadRunning = false;
 	}
 
 	/*
@@ -651,48 +637,20 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 	}
 
 	/*
-	 * Processing of the thread
+	 * Think routine (Run by the shared AI workers)
 	 */
-	public void run() {
-		log.info("ComboRaceBot: Thread start");
-		threadRunning = true;
-
-		while(threadRunning) {
-			try {
-				synchronized(thinkRequest)
-				{
-					if (!thinkRequest.active && !thinkRequest.createTablesRequest)
-						thinkRequest.wait();
-				}
-			} catch (InterruptedException e) {
-				log.debug("ComboRaceBot: InterruptedException waiting for thinkRequest signal");
-			}
-			if(thinkRequest.active) {
-				thinkRequest.active = false;
-				thinking = true;
-				try {
-					thinkBestPosition(gEngine, gEngine.playerID);
-					thinkComplete = true;
-					//log.debug("ComboRaceBot: thinkBestPosition completed successfully");
-				} catch (Throwable e) {
-					log.debug("ComboRaceBot: thinkBestPosition Failed", e);
-				}
-				thinking = false;
-			}
-			else if (thinkRequest.createTablesRequest)
-				createTables(gEngine);
-
-			if(thinkDelay > 0) {
-				try {
-					Thread.sleep(thinkDelay);
-				} catch (InterruptedException e) {
-					break;
-				}
-			}
+	@Override
+	public boolean think(GameEngine engine, int playerID) {
+		if(thinkRequest.active) {
+			thinkRequest.active = false;
+			thinking = true;
+			thinkBestPosition(engine, playerID);
+			//log.debug("ComboRaceBot: thinkBestPosition completed successfully");
+			return true;
 		}
-
-		threadRunning = false;
-		log.info("ComboRaceBot: Thread end");
+		else if (thinkRequest.createTablesRequest)
+			createTables(engine);
+		return false;
 	}
 
 	/**
@@ -1172,6 +1130,7 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 	private static class ThinkRequestMutex
 	{
 		public boolean active;
+		public AIScheduler.Client client;
 		public boolean createTablesRequest;
 		public ThinkRequestMutex()
 		{
@@ -1182,11 +1141,15 @@ public class ComboRaceBot extends DummyAI implements Runnable {
 		{
 			active = true;
 			notifyAll();
+			if (client != null)
+				client.request();
 		}
 		public synchronized void newCreateTablesRequest()
 		{
 			createTablesRequest = true;
 			notifyAll();
+			if (client != null)
+				client.request();
 		}
 	}
 }
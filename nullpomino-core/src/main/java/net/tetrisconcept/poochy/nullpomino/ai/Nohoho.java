@@ -5,6 +5,7 @@ import mu.nu.nullpo.game.component.Field;
 import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.AIScheduler;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 
 import org.apache.log4j.Logger;
@@ -14,7 +15,7 @@ import org.apache.log4j.Logger;
  * @author Poochy.EXE
  *         Poochy.Spambucket@gmail.com
  */
-public class Nohoho extends DummyAI implements Runnable {
+public class Nohoho extends DummyAI {
 	/** Log */
 	static Logger log = Logger.getLogger(Nohoho.class);
 
@@ -42,18 +43,9 @@ public class Nohoho extends DummyAI implements Runnable {
 	/** When true,To threadThink routineInstructing the execution of the */
 	public ThinkRequestMutex thinkRequest;
 
-	/** true when thread is executing the think routine. */
-	public boolean thinking;
-
-	/** To stop a thread time */
-	public int thinkDelay;
-
-	/** When true,Running thread */
+	/** When true, think requests are taken by the shared AI workers */
 	public volatile boolean threadRunning;
 
-	/** Thread for executing the think routine */
-	public Thread thread;
-
 	/** Number of frames for which piece has been stuck */
 	protected int stuckDelay;
 
@@ -69,12 +61,12 @@ public class Nohoho extends DummyAI implements Runnable {
 	protected static final int MAX_THINK_DEPTH = 2;
 	/** Set to true to print debug information */
 	protected static final boolean DEBUG_ALL = true;
-	/** Did the thinking thread finish successfully? */
-	protected boolean thinkComplete;
 	/** Did the thinking thread find a possible position? */
 	protected boolean thinkSuccess;
 	/** Was the game in ARE as of the last frame? */
 	protected boolean inARE;
+	/** Scores of the placements already evaluated */
+	protected TranspositionTable transTable;
 
 	/*
 	 * AI's name
@@ -105,12 +97,15 @@ public class Nohoho extends DummyAI implements Runnable {
 		thinkComplete = false;
 		thinkSuccess = false;
 		inARE = false;
-
-		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
-			thread = new Thread(this, "AI_" + playerID);
-			thread.setDaemon(true);
-			thread.start();
-			thinkDelay = engine.aiThinkDelay;
+		if(transTable == null)
+			transTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_BITS);
+		else
+			transTable.clear();
+
+		if(engine.aiUseThread) {
+			startThinkClient(engine, playerID);
+			thinkRequest.client = thinkClient;
+			threadRunning = true;
 			thinkCurrentPieceNo = 0;
 			thinkLastPieceNo = 0;
 		}
@@ -120,11 +115,8 @@ public class Nohoho extends DummyAI implements Runnable {
 	 * End processing
 	 */
 	public void shutdown(GameEngine engine, int playerID) {
-		if((thread != null) && (thread.isAlive())) {
-			thread.interrupt();
-			threadRunning = false;
-			thread = null;
-		}
+		stopThinkClient();
+		threadRunning = false;
 	}
 
 	/*
@@ -374,6 +366,8 @@ public class Nohoho extends DummyAI implements Runnable {
 
 		engine.createFieldIfNeeded();
 		Field fld = new Field(engine.field);
+		fld.setOccupancyEnabled(true);
+		fld.setSharedBlocksEnabled(true);
 		Piece pieceNow = engine.nowPieceObject;
 		Piece pieceHold = engine.holdPieceObject;
 		boolean holdOK = engine.isHoldOK();
@@ -399,6 +393,11 @@ public class Nohoho extends DummyAI implements Runnable {
 				pieceHold = null;
 		}
 
+		transTable.newSearch();
+		long fieldHash = TranspositionTable.hashField(engine.field, true);
+		long nowHash = fieldHash ^ TranspositionTable.hashPiece(pieceNow);
+		long holdHash = (pieceHold == null) ? 0 : fieldHash ^ TranspositionTable.hashPiece(pieceHold);
+
 		int defcon = 5; //Defense condition. 1 = most defensive, 5 = least defensive.
 		int[] depths = getColumnDepths(fld);
 		if (depths[2] <= 3)
@@ -423,7 +422,7 @@ public class Nohoho extends DummyAI implements Runnable {
 				int y = pieceNow.getBottom(x, nowY, rt, fld);
 
 				if(!pieceNow.checkCollision(x, y, rt, fld)) {
-					int pts = thinkMain(x, y, rt, -1, fld, pieceNow, defcon);
+					int pts = thinkCached(x, y, rt, -1, fld, pieceNow, defcon, nowHash);
 
 					if(pts >= bestPts) {
 						bestHold = false;
@@ -445,7 +444,7 @@ public class Nohoho extends DummyAI implements Runnable {
 					y = pieceHold.getBottom(x, nowY, rt, fld);
 
 					if(!pieceHold.checkCollision(x, y, rt, fld)) {
-						int pts = thinkMain(x, y, rt, -1, fld, pieceHold, defcon);
+						int pts = thinkCached(x, y, rt, -1, fld, pieceHold, defcon, holdHash);
 
 						if(pts >= bestPts) {
 							bestHold = false;
@@ -474,7 +473,7 @@ public class Nohoho extends DummyAI implements Runnable {
 
 					if(!pieceNow.checkCollision(x, y, rt, fld)) {
 						// As it is
-						int pts = thinkMain(x, y, rt, -1, fld, pieceNow, defcon);
+						int pts = thinkCached(x, y, rt, -1, fld, pieceNow, defcon, nowHash);
 
 						if(pts >= bestPts) {
 							bestHold = false;
@@ -506,7 +505,7 @@ public class Nohoho extends DummyAI implements Runnable {
 
 						if(!pieceHold.checkCollision(x, y, rt, fld)) {
 							// As it is
-							int pts = thinkMain(x, y, rt, -1, fld, pieceHold, defcon);
+							int pts = thinkCached(x, y, rt, -1, fld, pieceHold, defcon, holdHash);
 							if(pts >= bestPts) {
 								bestHold = true;
 								bestX = x;
@@ -531,6 +530,29 @@ public class Nohoho extends DummyAI implements Runnable {
 		//System.out.println("X:" + bestX + " Y:" + bestY + " R:" + bestRt + " H:" + bestHold + " Pts:" + bestPts);
 	}
 
+	/**
+	 * Think routine, using the scores already in the transposition table
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param rtOld Direction before rotation (-1: None)
+	 * @param fld Field (Same contents as the one hashed to pieceHash)
+	 * @param piece Piece
+	 * @param defcon Defense level (the lower, the more defensive)
+	 * @param pieceHash Hash of the field and the piece
+	 * @return Evaluation score
+	 */
+	protected int thinkCached(int x, int y, int rt, int rtOld, Field fld, Piece piece, int defcon, long pieceHash) {
+		long key = TranspositionTable.placementKey(pieceHash, x, y, rt, 0, defcon);
+		int index = transTable.find(key);
+		if(index >= 0)
+			return transTable.getScore(index);
+
+		int pts = thinkMain(x, y, rt, rtOld, fld, piece, defcon);
+		transTable.store(key, pts);
+		return pts;
+	}
+
 	/**
 	 * Think routine
 	 * @param x X-coordinate
@@ -658,52 +680,23 @@ public class Nohoho extends DummyAI implements Runnable {
 	}
 
 	/*
-	 * Processing of the thread
+	 * Think routine (Run by the shared AI workers)
 	 */
-	public void run() {
-		log.info("Nohoho: Thread start");
-		threadRunning = true;
-
-		while(threadRunning) {
-			try {
-				synchronized(thinkRequest)
-				{
-					if (!thinkRequest.active)
-						thinkRequest.wait();
-				}
-			} catch (InterruptedException e) {
-				log.debug("PoochyBot: InterruptedException waiting for thinkRequest signal");
-			}
-			if(thinkRequest.active) {
-				thinkRequest.active = false;
-				thinking = true;
-				try {
-					thinkBestPosition(gEngine, gEngine.playerID);
-					thinkComplete = true;
-					log.debug("Nohoho: thinkBestPosition completed successfully");
-				} catch (Throwable e) {
-					log.debug("Nohoho: thinkBestPosition Failed", e);
-				}
-				thinking = false;
-			}
-
-			if(thinkDelay > 0) {
-				try {
-					Thread.sleep(thinkDelay);
-				} catch (InterruptedException e) {
-					break;
-				}
-			}
-		}
-
-		threadRunning = false;
-		log.info("Nohoho: Thread end");
+	@Override
+	public boolean think(GameEngine engine, int playerID) {
+		if(!thinkRequest.active) return false;
+		thinkRequest.active = false;
+		thinking = true;
+		thinkBestPosition(engine, playerID);
+		log.debug("Nohoho: thinkBestPosition completed successfully");
+		return true;
 	}
 	
 	//Wrapper for think requests
 	private static class ThinkRequestMutex
 	{
 		public boolean active;
+		public AIScheduler.Client client;
 		public ThinkRequestMutex()
 		{
 			active = false;
@@ -712,6 +705,8 @@ public class Nohoho extends DummyAI implements Runnable {
 		{
 			active = true;
 			notifyAll();
+			if (client != null)
+				client.request();
 		}
 	}
 }
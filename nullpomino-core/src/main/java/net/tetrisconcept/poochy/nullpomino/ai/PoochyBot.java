@@ -8,7 +8,9 @@ import mu.nu.nullpo.game.component.WallkickResult;
 import mu.nu.nullpo.game.event.EventReceiver;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.AIScheduler;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
+import mu.nu.nullpo.game.subsystem.ai.MoveGenerator;
 import mu.nu.nullpo.util.GeneralUtil;
 
 import org.apache.log4j.Logger;
@@ -18,7 +20,7 @@ import org.apache.log4j.Logger;
  * @author Poochy.EXE
  *         Poochy.Spambucket@gmail.com
  */
-public class PoochyBot extends DummyAI implements Runnable {
+public class PoochyBot extends DummyAI {
 	/** Log */
 	static Logger log = Logger.getLogger(PoochyBot.class);
 
@@ -46,18 +48,9 @@ public class PoochyBot extends DummyAI implements Runnable {
 	/** When true,To threadThink routineInstructing the execution of the */
 	public ThinkRequestMutex thinkRequest;
 
-	/** true when thread is executing the think routine. */
-	public boolean thinking;
-
-	/** To stop a thread time */
-	public int thinkDelay;
-
-	/** When true,Running thread */
+	/** When true, think requests are taken by the shared AI workers */
 	public volatile boolean threadRunning;
 
-	/** Thread for executing the think routine */
-	public Thread thread;
-
 	/** Number of frames for which piece has been stuck */
 	protected int stuckDelay;
 
@@ -83,6 +76,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 	protected boolean thinkSuccess;
 	/** Was the game in ARE as of the last frame? */
 	protected boolean inARE;
+	/** Scores of the placements already evaluated */
+	protected TranspositionTable transTable;
 
 	/*
 	 * AI's name
@@ -114,12 +109,15 @@ public class PoochyBot extends DummyAI implements Runnable {
 		thinkComplete = false;
 		thinkSuccess = false;
 		inARE = false;
+		if(transTable == null)
+			transTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_BITS);
+		else
+			transTable.clear();
 
-		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
-			thread = new Thread(this, "AI_" + playerID);
-			thread.setDaemon(true);
-			thread.start();
-			thinkDelay = engine.aiThinkDelay;
+		if(engine.aiUseThread) {
+			startThinkClient(engine, playerID);
+			thinkRequest.client = thinkClient;
+			threadRunning = true;
 			thinkCurrentPieceNo = 0;
 			thinkLastPieceNo = 0;
 		}
@@ -129,11 +127,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 	 * End processing
 	 */
 	public void shutdown(GameEngine engine, int playerID) {
-		if((thread != null) && (thread.isAlive())) {
-			thread.interrupt();
-			threadRunning = false;
-			thread = null;
-		}
+		stopThinkClient();
+		threadRunning = false;
 	}
 
 	/*
@@ -800,6 +795,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 					engine.fieldHiddenHeight, engine.ruleopt.fieldCeiling);
 		else
 			fld = new Field(engine.field);
+		fld.setOccupancyEnabled(true);
+		fld.setSharedBlocksEnabled(true);
 		Piece pieceNow = engine.nowPieceObject;
 		Piece pieceHold = engine.holdPieceObject;
 		/*
@@ -841,6 +838,11 @@ public class PoochyBot extends DummyAI implements Runnable {
 		*/
 		boolean holdOK = engine.isHoldOK();
 
+		transTable.newSearch();
+		long fieldHash = TranspositionTable.hashField(engine.field, false);
+		long nowHash = fieldHash ^ TranspositionTable.hashPiece(pieceNow);
+		long holdHash = (pieceHold == null) ? 0 : fieldHash ^ TranspositionTable.hashPiece(pieceHold);
+
 		boolean canFloorKick = engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick
 			|| engine.ruleopt.rotateMaxUpwardWallkick < 0;
 		boolean canFloorKickI = (pieceNow.id == Piece.PIECE_I && (nowRt&1) == 0 && canFloorKick);
@@ -871,6 +873,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 				else if (canFloorKickT && rt == Piece.DIRECTION_UP)
 					tempY--;
 
+				// Previous evaluations (or their cached scores) leave other blocks in fld
+				fld.copy(engine.field);
 				int minX = Math.max(mostMovableX(nowX, tempY, -1, engine, fld, pieceNow, rt),
 						pieceNow.getMostMovableLeft(nowX, tempY, rt, engine.field));
 				int maxX = Math.min(mostMovableX(nowX, tempY, 1, engine, fld, pieceNow, rt),
@@ -888,7 +892,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 
 					if(!pieceNow.checkCollision(x, y, rt, fld)) {
 						// As it is
-						int pts = thinkMain(x, y, rt, -1, fld, pieceNow, depth);
+						int pts = thinkCached(x, y, rt, -1, fld, pieceNow, depth, nowHash);
 
 						if(pts >= bestPts) {
 							bestHold = false;
@@ -908,7 +912,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 						// Left shift
 						fld.copy(engine.field);
 						if(!pieceNow.checkCollision(x - move, y, rt, fld) && pieceNow.checkCollision(x - move, y - 1, rt, fld)) {
-							pts = thinkMain(x - move, y, rt, -1, fld, pieceNow, depth);
+							pts = thinkCached(x - move, y, rt, -1, fld, pieceNow, depth, nowHash);
 
 							if(pts > bestPts) {
 								bestHold = false;
@@ -928,7 +932,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 						// Right shift
 						fld.copy(engine.field);
 						if(!pieceNow.checkCollision(x + move, y, rt, fld) && pieceNow.checkCollision(x + 1, y - move, rt, fld)) {
-							pts = thinkMain(x + move, y, rt, -1, fld, pieceNow, depth);
+							pts = thinkCached(x + move, y, rt, -1, fld, pieceNow, depth, nowHash);
 
 							if(pts > bestPts) {
 								bestHold = false;
@@ -954,7 +958,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 							pts = Integer.MIN_VALUE;
 
 							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
+								pts = thinkCached(x, y, rot, rt, fld, pieceNow, depth, nowHash);
 							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -964,7 +968,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								if(kick != null) {
 									newX = x + kick.offsetX;
 									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
+									pts = thinkCached(newX, newY, rot, rt, fld, pieceNow, depth, nowHash);
 								}
 							}
 
@@ -992,7 +996,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 							pts = Integer.MIN_VALUE;
 
 							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
+								pts = thinkCached(x, y, rot, rt, fld, pieceNow, depth, nowHash);
 							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -1002,7 +1006,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								if(kick != null) {
 									newX = x + kick.offsetX;
 									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
+									pts = thinkCached(newX, newY, rot, rt, fld, pieceNow, depth, nowHash);
 								}
 							}
 
@@ -1030,7 +1034,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 							pts = Integer.MIN_VALUE;
 
 							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
+								pts = thinkCached(x, y, rot, rt, fld, pieceNow, depth, nowHash);
 							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -1040,7 +1044,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								if(kick != null) {
 									newX = x + kick.offsetX;
 									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
+									pts = thinkCached(newX, newY, rot, rt, fld, pieceNow, depth, nowHash);
 								}
 							}
 
@@ -1095,7 +1099,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 
 						if(!pieceHold.checkCollision(x, y, rt, fld)) {
 							// As it is
-							int pts = thinkMain(x, y, rt, -1, fld, pieceHold, depth);
+							int pts = thinkCached(x, y, rt, -1, fld, pieceHold, depth, holdHash);
 							if (pts > Integer.MIN_VALUE+30)
 								pts += holdPts;
 							if(pts >= bestPts) {
@@ -1116,7 +1120,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 							// Left shift
 							fld.copy(engine.field);
 							if(!pieceHold.checkCollision(x - move, y, rt, fld) && pieceHold.checkCollision(x - move, y - 1, rt, fld)) {
-								pts = thinkMain(x - move, y, rt, -1, fld, pieceHold, depth);
+								pts = thinkCached(x - move, y, rt, -1, fld, pieceHold, depth, holdHash);
 								if (pts > Integer.MIN_VALUE+30)
 									pts += holdPts;
 								if(pts > bestPts) {
@@ -1137,7 +1141,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 							// Right shift
 							fld.copy(engine.field);
 							if(!pieceHold.checkCollision(x + move, y, rt, fld) && pieceHold.checkCollision(x + move, y - 1, rt, fld)) {
-								pts = thinkMain(x + move, y, rt, -1, fld, pieceHold, depth);
+								pts = thinkCached(x + move, y, rt, -1, fld, pieceHold, depth, holdHash);
 								if (pts > Integer.MIN_VALUE+30)
 									pts += holdPts;
 								if(pts > bestPts) {
@@ -1164,7 +1168,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								pts = Integer.MIN_VALUE;
 
 								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
+									pts = thinkCached(x, y, rot, rt, fld, pieceHold, depth, holdHash);
 								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -1174,7 +1178,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 									if(kick != null) {
 										newX = x + kick.offsetX;
 										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
+										pts = thinkCached(newX, newY, rot, rt, fld, pieceHold, depth, holdHash);
 									}
 								}
 								if (pts > Integer.MIN_VALUE+30)
@@ -1203,7 +1207,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								pts = Integer.MIN_VALUE;
 
 								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
+									pts = thinkCached(x, y, rot, rt, fld, pieceHold, depth, holdHash);
 								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -1213,7 +1217,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 									if(kick != null) {
 										newX = x + kick.offsetX;
 										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
+										pts = thinkCached(newX, newY, rot, rt, fld, pieceHold, depth, holdHash);
 									}
 								}
 								if (pts > Integer.MIN_VALUE+30)
@@ -1242,7 +1246,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 								pts = Integer.MIN_VALUE;
 
 								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
+									pts = thinkCached(x, y, rot, rt, fld, pieceHold, depth, holdHash);
 								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
 									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
 														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
@@ -1252,7 +1256,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 									if(kick != null) {
 										newX = x + kick.offsetX;
 										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
+										pts = thinkCached(newX, newY, rot, rt, fld, pieceHold, depth, holdHash);
 									}
 								}
 								if (pts > Integer.MIN_VALUE+30)
@@ -1294,6 +1298,31 @@ public class PoochyBot extends DummyAI implements Runnable {
 		//System.out.println("X:" + bestX + " Y:" + bestY + " R:" + bestRt + " H:" + bestHold + " Pts:" + bestPts);
 	}
 
+	/**
+	 * Think routine, using the scores already in the transposition table
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param rtOld Direction before rotation (-1: None)
+	 * @param fld Field (Same contents as the one hashed to pieceHash)
+	 * @param piece Piece
+	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
+	 * @param pieceHash Hash of the field and the piece
+	 * @return Evaluation score
+	 */
+	protected int thinkCached(int x, int y, int rt, int rtOld, Field fld, Piece piece, int depth, long pieceHash) {
+		// rtOld only matters for the T-Spin check
+		int rotated = ((piece.id == Piece.PIECE_T) && (rtOld != -1)) ? 1 : 0;
+		long key = TranspositionTable.placementKey(pieceHash, x, y, rt, rotated, depth);
+		int index = transTable.find(key);
+		if(index >= 0)
+			return transTable.getScore(index);
+
+		int pts = thinkMain(x, y, rt, rtOld, fld, piece, depth);
+		transTable.store(key, pts);
+		return pts;
+	}
+
 	/**
 	 * Think routine
 	 * @param x X-coordinate
@@ -1785,6 +1814,7 @@ public class PoochyBot extends DummyAI implements Runnable {
 	}
 	/**
 	 * Returns the farthest x position the piece can move.
+	 * With high gravity, the positions are found by the MoveGenerator of DummyAI.
 	 * @param x X coord
 	 * @param y Y coord
 	 * @param dir -1 to move left, 1 to move right.
@@ -1798,12 +1828,6 @@ public class PoochyBot extends DummyAI implements Runnable {
 	{
 		if (dir == 0)
 			return x;
-		int shift = 1;
-		if (piece.big)
-			shift = 2;
-		int testX = x;
-		int testY = y;
-		int testRt = Piece.DIRECTION_UP;
 		SpeedParam speed = engine.speed;
 		if (speed.gravity >= 0 && speed.gravity < speed.denominator)
 		{
@@ -1811,83 +1835,37 @@ public class PoochyBot extends DummyAI implements Runnable {
 				log.debug("mostMovableX not applicable - low gravity (gravity = " +
 						speed.gravity + ", denominator = " + speed.denominator + ")");
 			if (dir < 0)
-				return piece.getMostMovableLeft(testX, testY, rt, fld);
+				return piece.getMostMovableLeft(x, y, rt, fld);
 			else if (dir > 0)
-				return piece.getMostMovableRight(testX, testY, rt, fld);
+				return piece.getMostMovableRight(x, y, rt, fld);
 		}
-		if (piece.id == Piece.PIECE_I && dir > 0)
-			return piece.getMostMovableRight(testX, testY, rt, fld);
-		boolean floorKickOK = false;
-		if ((piece.id == Piece.PIECE_I || piece.id == Piece.PIECE_T) &&
-				((engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick
-						|| engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-						(engine.stat == GameEngine.Status.ARE)))
-			floorKickOK = true;
-		testY = piece.getBottom(testX, testY, testRt, fld);
-		if (piece.id == Piece.PIECE_T && piece.direction != Piece.DIRECTION_UP)
+		boolean allowUpward = (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick
+				|| engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+				(engine.stat == GameEngine.Status.ARE);
+		// Farthest lock position facing rt among every position the piece can reach (Tucks and kicks included)
+		int testX = x;
+		boolean found = false;
+		for (MoveGenerator.Placement p : getMoveGenerator(engine).generate(piece, fld, x, y, piece.direction, allowUpward))
 		{
-			int testY2 = piece.getBottom(testX, testY, Piece.DIRECTION_DOWN, fld);
-			if (testY2 > testY)
-			{
-				boolean kickRight = piece.checkCollision(testX+shift, testY2, testRt, fld);
-				boolean kickLeft = piece.checkCollision(testX-shift, testY2, testRt, fld);
-				if (kickRight)
-				{
-					testY = testY2;
-					if (rt == Piece.DIRECTION_UP)
-						testX+=shift;
-				}
-				else if (kickLeft)
-				{
-					testY = testY2;
-					if (rt == Piece.DIRECTION_UP)
-						testX-=shift;
-				}
-				else if (floorKickOK)
-					floorKickOK = false;
-				else
-					return testX;
-			}
+			if (p.rt != rt)
+				continue;
+			if (!found || (dir < 0 && p.x < testX) || (dir > 0 && p.x > testX))
+				testX = p.x;
+			found = true;
 		}
-		while (true)
+		if (DEBUG_ALL)
+			log.debug("mostMovableX(" + x + ", " + y + ", " + dir +
+					", piece " + Piece.PIECE_NAMES[piece.id] + ", " + rt + ") = " + testX);
+		if (piece.id == Piece.PIECE_I && testX < 0 && (rt&1) == 1)
 		{
-			if (!piece.checkCollision(testX+dir, testY, testRt, fld))
-				testX += dir;
-			else if (testRt != rt)
-			{
-				testRt = rt;
-				if (floorKickOK && piece.checkCollision(testX, testY, testRt, fld))
-				{
-					if (piece.id == Piece.PIECE_I)
-					{
-						if (piece.big)
-							testY -= 4;
-						else
-							testY -= 2;
-					}
-					else
-						testY--;
-					floorKickOK = false;
-				}
-			}
-			else
-			{
-				if (DEBUG_ALL)
-					log.debug("mostMovableX(" + x + ", " + y + ", " + dir +
-							", piece " + Piece.PIECE_NAMES[piece.id] + ", " + rt + ") = " + testX);
-				if (piece.id == Piece.PIECE_I && testX < 0 && (rt&1) == 1)
-				{
-					int height1 = fld.getHighestBlockY(1);
-					if (height1 < fld.getHighestBlockY(2) &&
-							height1 < fld.getHighestBlockY(3)+2)
-						return 0;
-					else if (height1 > fld.getHighestBlockY(0))
-						return -1;
-				}
-				return testX;
-			}
-			testY = piece.getBottom(testX, testY, testRt, fld);
+			int height1 = fld.getHighestBlockY(1);
+			if (height1 < fld.getHighestBlockY(2) &&
+					height1 < fld.getHighestBlockY(3)+2)
+				return 0;
+			else if (height1 > fld.getHighestBlockY(0))
+				return -1;
 		}
+		return testX;
 	}
 
 	protected void logBest(int caseNum)
@@ -1940,52 +1918,23 @@ public class PoochyBot extends DummyAI implements Runnable {
 	}
 
 	/*
-	 * Processing of the thread
+	 * Think routine (Run by the shared AI workers)
 	 */
-	public void run() {
-		log.info("PoochyBot: Thread start");
-		threadRunning = true;
-
-		while(threadRunning) {
-			try {
-				synchronized(thinkRequest)
-				{
-					if (!thinkRequest.active)
-						thinkRequest.wait();
-				}
-			} catch (InterruptedException e) {
-				log.debug("PoochyBot: InterruptedException waiting for thinkRequest signal");
-			}
-			if(thinkRequest.active) {
-				thinkRequest.active = false;
-				thinking = true;
-				try {
-					thinkBestPosition(gEngine, gEngine.playerID);
-					thinkComplete = true;
-					log.debug("PoochyBot: thinkBestPosition completed successfully");
-				} catch (Throwable e) {
-					log.debug("PoochyBot: thinkBestPosition Failed", e);
-				}
-				thinking = false;
-			}
-
-			if(thinkDelay > 0) {
-				try {
-					Thread.sleep(thinkDelay);
-				} catch (InterruptedException e) {
-					log.debug("PoochyBot: InterruptedException trying to sleep");
-				}
-			}
-		}
-
-		threadRunning = false;
-		log.info("PoochyBot: Thread end");
+	@Override
+	public boolean think(GameEngine engine, int playerID) {
+		if(!thinkRequest.active) return false;
+		thinkRequest.active = false;
+		thinking = true;
+		thinkBestPosition(engine, playerID);
+		log.debug("PoochyBot: thinkBestPosition completed successfully");
+		return true;
 	}
 	
 	//Wrapper for think requests
 	private static class ThinkRequestMutex
 	{
 		public boolean active;
+		public AIScheduler.Client client;
 		public ThinkRequestMutex()
 		{
 			active = false;
@@ -1994,6 +1943,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 		{
 			active = true;
 			notifyAll();
+			if (client != null)
+				client.request();
 		}
 	}
 }
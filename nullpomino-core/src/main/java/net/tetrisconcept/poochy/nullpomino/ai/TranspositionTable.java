@@ -0,0 +1,186 @@
+package net.tetrisconcept.poochy.nullpomino.ai;
+
+import java.util.Arrays;
+
+import mu.nu.nullpo.game.component.Block;
+import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.Piece;
+
+/**
+ * Transposition table for the placement scores of PoochyBot and Nohoho.
+ * The key is a Zobrist hash of the field contents, combined with the piece
+ * (type, shape, direction and colors), the placement and the compromise level,
+ * so a placement that is reached by another move order is scored only once.
+ * Entries are stored in 2-way buckets. A new entry replaces an empty slot or a
+ * slot left by an older search, otherwise the second slot of the bucket.
+ * Not thread-safe: every AI instance uses its own table.
+ */
+public class TranspositionTable {
+	/** Default size of the table (log2 of the number of entries) */
+	public static final int DEFAULT_SIZE_BITS = 16;
+
+	/** Seed of the Zobrist keys */
+	protected static final long ZOBRIST_SEED = 0x2545F4914F6CDD1DL;
+
+	/** Block attributes that change the score of a placement */
+	protected static final int HASH_ATTRIBUTES = Block.BLOCK_ATTRIBUTE_GARBAGE | Block.BLOCK_ATTRIBUTE_WALL;
+
+	/** Keys of the entries */
+	protected long[] keys;
+
+	/** Scores of the entries */
+	protected int[] scores;
+
+	/** Search number in which each entry was stored (0: empty) */
+	protected int[] ages;
+
+	/** Mask of the bucket index */
+	protected int bucketMask;
+
+	/** Current search number */
+	protected int age;
+
+	/**
+	 * Constructor
+	 * @param sizeBits log2 of the number of entries (at least 1)
+	 */
+	public TranspositionTable(int sizeBits) {
+		int size = 1 << Math.max(1, sizeBits);
+		keys = new long[size];
+		scores = new int[size];
+		ages = new int[size];
+		bucketMask = (size >> 1) - 1;
+		age = 1;
+	}
+
+	/**
+	 * Removes every entry
+	 */
+	public void clear() {
+		Arrays.fill(ages, 0);
+		age = 1;
+	}
+
+	/**
+	 * Starts a new search. Entries of older searches stay valid, but are replaced first.
+	 */
+	public void newSearch() {
+		age++;
+		if(age == Integer.MAX_VALUE) clear();
+	}
+
+	/**
+	 * Searches an entry
+	 * @param key Key (from placementKey)
+	 * @return Index of the entry (-1 if not found)
+	 */
+	public int find(long key) {
+		int i = bucketIndex(key);
+		if((ages[i] != 0) && (keys[i] == key)) return i;
+		if((ages[i + 1] != 0) && (keys[i + 1] == key)) return i + 1;
+		return -1;
+	}
+
+	/**
+	 * Gets the score of an entry
+	 * @param index Index returned by find
+	 * @return Score
+	 */
+	public int getScore(int index) {
+		ages[index] = age;
+		return scores[index];
+	}
+
+	/**
+	 * Stores a score
+	 * @param key Key (from placementKey)
+	 * @param score Score
+	 */
+	public void store(long key, int score) {
+		int i = find(key);
+		if(i < 0) {
+			i = bucketIndex(key);
+			if((ages[i] != 0) && ((ages[i + 1] < ages[i]) || (ages[i] == age))) i++;
+		}
+		keys[i] = key;
+		scores[i] = score;
+		ages[i] = age;
+	}
+
+	/**
+	 * Gets the first slot of the bucket of a key
+	 * @param key Key
+	 * @return Index of the first slot
+	 */
+	protected int bucketIndex(long key) {
+		return ((int)(key ^ (key >>> 32)) & bucketMask) << 1;
+	}
+
+	/**
+	 * Calculates the Zobrist hash of the field contents
+	 * @param fld Field
+	 * @param colors true to include the block colors (false: only whether each cell is empty)
+	 * @return Hash value
+	 */
+	public static long hashField(Field fld, boolean colors) {
+		int width = fld.getWidth();
+		long hash = mix(((long)width << 40) ^ ((long)fld.getHeight() << 20) ^ fld.getHiddenHeight());
+
+		for(int y = -fld.getHiddenHeight(); y < fld.getHeight(); y++) {
+			for(int x = 0; x < width; x++) {
+				// getBlock would replace a shared empty cell, so only non-empty cells are fetched
+				if(fld.getBlockEmpty(x, y)) continue;
+				Block blk = fld.getBlock(x, y);
+
+				long state = 1 + (blk.attribute & HASH_ATTRIBUTES);
+				if(colors) state += (long)blk.color << 32;
+				hash ^= mix(ZOBRIST_SEED + ((long)(y * width + x) << 48) + state);
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Calculates the hash of a piece (type, shape, direction and colors)
+	 * @param piece Piece
+	 * @return Hash value
+	 */
+	public static long hashPiece(Piece piece) {
+		long hash = mix(ZOBRIST_SEED ^ (piece.id + 1) ^ ((long)piece.direction << 8) ^ (piece.big ? 1L << 16 : 0));
+		for(int rt = 0; rt < piece.dataX.length; rt++) {
+			for(int i = 0; i < piece.dataX[rt].length; i++) {
+				hash = mix(hash + ((long)piece.dataX[rt][i] << 32) + (piece.dataY[rt][i] & 0xFFFFFFFFL));
+			}
+		}
+		for(int i = 0; i < piece.block.length; i++) {
+			hash = mix(hash + piece.block[i].color);
+		}
+		return hash;
+	}
+
+	/**
+	 * Calculates the key of a placement
+	 * @param hash Hash of the field and the piece
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param flags Other state that changes the score (e.g. 1 if the T piece was rotated)
+	 * @param depth Compromise level
+	 * @return Key
+	 */
+	public static long placementKey(long hash, int x, int y, int rt, int flags, int depth) {
+		long move = ((x & 0xFFFFL) << 48) | ((y & 0xFFFFL) << 32) | ((rt & 0xFFL) << 24) | ((flags & 0xFFL) << 16) | (depth & 0xFFFFL);
+		return hash ^ mix(move + ZOBRIST_SEED);
+	}
+
+	/**
+	 * Scrambles a 64-bit value (SplitMix64 finalizer)
+	 * @param z Value
+	 * @return Scrambled value
+	 */
+	protected static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,94 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import mu.nu.nullpo.game.play.GameEngine;
+
+import org.junit.Test;
+
+/**
+ * Checks the blocks reported as moved by the cascade gravity
+ */
+public class FieldCascadeTest {
+	@Test
+	public void testMovedBlocks() {
+		Field field = new Field(4, 6, 0);
+		setBlock(field, 0, 5);
+		setBlock(field, 1, 2);
+		setBlock(field, 2, 2);
+		setBlock(field, 3, 3);
+		field.getBlock(1, 2).setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, true);
+		field.getBlock(2, 2).setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, true);
+
+		assertTrue(field.doCascadeGravity(GameEngine.LineGravity.CASCADE));
+		assertEquals(3, field.getCascadeMovedCount());
+		assertEquals("[1,3, 2,3, 3,4]", getMoved(field).toString());
+
+		assertTrue(field.doCascadeGravity(GameEngine.LineGravity.CASCADE));
+		assertEquals("[1,4, 2,4, 3,5]", getMoved(field).toString());
+
+		assertTrue(field.doCascadeGravity(GameEngine.LineGravity.CASCADE));
+		assertEquals("[1,5, 2,5]", getMoved(field).toString());
+
+		assertFalse(field.doCascadeGravity(GameEngine.LineGravity.CASCADE));
+		assertEquals(0, field.getCascadeMovedCount());
+	}
+
+	/**
+	 * Put a visible block
+	 * @param field Field
+	 * @param x X coord
+	 * @param y Y coord
+	 */
+	private static void setBlock(Field field, int x, int y) {
+		Block blk = new Block(Block.BLOCK_COLOR_RED);
+		blk.setAttribute(Block.BLOCK_ATTRIBUTE_VISIBLE, true);
+		field.setBlock(x, y, blk);
+	}
+
+	/**
+	 * Get the destinations of the moved blocks
+	 * @param field Field
+	 * @return Coordinates ("X,Y") in sorted order
+	 */
+	private static Set<String> getMoved(Field field) {
+		Set<String> moved = new TreeSet<String>();
+		for(int i = 0; i < field.getCascadeMovedCount(); i++) {
+			moved.add(field.getCascadeMovedX(i) + "," + field.getCascadeMovedY(i));
+		}
+		return moved;
+	}
+}
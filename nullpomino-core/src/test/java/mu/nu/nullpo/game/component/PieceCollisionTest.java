@@ -0,0 +1,127 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the collision check with the occupancy row masks of Field against the check per block
+ */
+public class PieceCollisionTest {
+	/** Range of the piece offsets of RuleOptions to test (-OFFSET_RANGE to OFFSET_RANGE) */
+	private static final int OFFSET_RANGE = 3;
+
+	/** Field sizes to test ({width, height, hidden height}) */
+	private static final int[][] FIELD_SIZES = {{10, 20, 3}, {4, 8, 0}, {12, 24, 5}, {1, 6, 2}};
+
+	@Test
+	public void testAllPiecesAndOffsets() {
+		Random random = new Random(1234567L);
+
+		for(int[] size : FIELD_SIZES) {
+			for(int c = 0; c < 2; c++) {
+				boolean ceiling = (c == 1);
+				Field fldBlock = new Field(size[0], size[1], size[2], ceiling);
+				Field fldMask = new Field(size[0], size[1], size[2], ceiling);
+				fldMask.setOccupancyEnabled(true);
+
+				for(int density = 0; density <= 4; density++) {
+					fillRandom(fldBlock, fldMask, random, density / 5f);
+
+					for(int id = 0; id < Piece.PIECE_COUNT; id++) {
+						for(int b = 0; b < 2; b++) {
+							checkOffsets(id, b == 1, fldBlock, fldMask);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills both fields with the same random blocks
+	 * @param fldBlock Field without row masks
+	 * @param fldMask Field with row masks
+	 * @param random Random number generator
+	 * @param density Probability of a block in each cell
+	 */
+	private void fillRandom(Field fldBlock, Field fldMask, Random random, float density) {
+		for(int y = -fldBlock.getHiddenHeight(); y < fldBlock.getHeight(); y++) {
+			for(int x = 0; x < fldBlock.getWidth(); x++) {
+				int color = (random.nextFloat() < density) ? Block.BLOCK_COLOR_GRAY : Block.BLOCK_COLOR_NONE;
+				fldBlock.setBlockColor(x, y, color);
+				fldMask.setBlockColor(x, y, color);
+			}
+		}
+	}
+
+	/**
+	 * Checks every offset, direction and position of a piece
+	 * @param id Piece ID
+	 * @param big true if the piece is big
+	 * @param fldBlock Field without row masks
+	 * @param fldMask Field with row masks
+	 */
+	private void checkOffsets(int id, boolean big, Field fldBlock, Field fldMask) {
+		int[] offsetX = new int[Piece.DIRECTION_COUNT];
+		int[] offsetY = new int[Piece.DIRECTION_COUNT];
+		int margin = big ? 12 : 6;
+
+		for(int ox = -OFFSET_RANGE; ox <= OFFSET_RANGE; ox++) {
+			for(int oy = -OFFSET_RANGE; oy <= OFFSET_RANGE; oy++) {
+				// Every direction uses the same offset, as a direction only uses its own one
+				for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+					offsetX[rt] = ox;
+					offsetY[rt] = oy;
+				}
+				Piece piece = new Piece(id);
+				piece.big = big;
+				piece.applyOffsetArray(offsetX, offsetY);
+
+				for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+					for(int y = -fldBlock.getHiddenHeight() - margin; y < fldBlock.getHeight() + margin; y++) {
+						for(int x = -margin; x < fldBlock.getWidth() + margin; x++) {
+							boolean expected = piece.checkCollision(x, y, rt, fldBlock);
+							boolean actual = piece.checkCollision(x, y, rt, fldMask);
+							if(expected != actual) {
+								assertEquals("piece " + Piece.getPieceName(id) + " big:" + big + " offset:" + ox + "," + oy +
+											 " rt:" + rt + " x:" + x + " y:" + y + " field:" + fldBlock.getWidth() + "x" +
+											 fldBlock.getHeight() + " ceiling:" + fldBlock.ceiling, expected, actual);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
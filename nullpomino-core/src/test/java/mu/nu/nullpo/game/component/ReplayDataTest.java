@@ -0,0 +1,98 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Reads the binary replay input format, including broken input
+ */
+public class ReplayDataTest {
+	@Test
+	public void testRoundTrip() throws IOException {
+		ReplayData replay = new ReplayData();
+		for(int i = 0; i < 500; i++) replay.setInputData(i / 7, i);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		replay.writeBinary(new DataOutputStream(bytes), -1);
+
+		ReplayData read = new ReplayData();
+		read.readBinary(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(500, read.getLength());
+		for(int i = 0; i < 500; i++) assertEquals(i / 7, read.getInputData(i));
+	}
+
+	@Test
+	public void testRunLengthOverflow() throws IOException {
+		// frame + length overflows to a negative number on the second run
+		assertBroken(10, 2, 1, 1, 5, 0x7FFFFFFF);
+	}
+
+	@Test
+	public void testNegativeRunLength() throws IOException {
+		assertBroken(10, 1, 1, -1);
+	}
+
+	@Test
+	public void testRunsLongerThanHeader() throws IOException {
+		assertBroken(10, 2, 1, 6, 2, 5);
+	}
+
+	@Test
+	public void testTooManyFrames() throws IOException {
+		assertBroken(ReplayData.MAX_FRAMES + 1, 0);
+	}
+
+	/**
+	 * Checks that readBinary rejects the given numbers
+	 * @param values Numbers written with writeVarInt (Frames, runs, then input and length of each run)
+	 * @throws IOException Never (Written to memory)
+	 */
+	private static void assertBroken(int... values) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for(int v : values) ReplayData.writeVarInt(out, v);
+
+		try {
+			new ReplayData().readBinary(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("Broken replay input was accepted");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}